@@ -23,8 +23,11 @@ package org.zilverline.core;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -35,8 +38,13 @@ import org.springframework.util.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.search.IndexSearcher;
 
 import org.zilverline.service.CollectionManager;
+import org.zilverline.util.DigestSet;
 import org.zilverline.util.FileUtils;
 
 /**
@@ -113,10 +121,10 @@ public abstract class AbstractCollection implements DocumentCollection {
 	protected File indexDir;
 
 	/**
-	 * The thread used to index this collection.
+	 * The job indexing this collection in the background.
 	 * 
 	 */
-	protected transient Thread indexingThread;
+	protected transient IndexingJob indexingJob;
 
 	/**
 	 * Attribute used to find out whether <code>keepCache</code> has been set
@@ -139,7 +147,7 @@ public abstract class AbstractCollection implements DocumentCollection {
 	/** Reference back to the collectionManager. */
 	protected transient CollectionManager manager;
 
-	/** This cache is used to store the MD5 keys of all indexed documents. */
+	/** This cache is used to store the MD5 keys of all indexed documents, in a synchronized DigestSet. */
 	protected transient Set md5DocumentCache;
 
 	/** Name of collection, also used as part of the name of index. */
@@ -156,6 +164,11 @@ public abstract class AbstractCollection implements DocumentCollection {
 	 */
 	protected transient int numberOfDocs;
 
+	/**
+	 * What the current or latest indexing run has done so far.
+	 */
+	protected transient volatile IndexingCounters counters;
+
 	/**
 	 * The url is the location this collection is mapped to as a result of a
 	 * search. e.g. d:\books\java could be mapped to https://server/path/java/
@@ -165,6 +178,36 @@ public abstract class AbstractCollection implements DocumentCollection {
 	/** The version of the index of this collection. */
 	protected transient long version;
 
+	/** The IndexWriter shared by everyone adding to the index of this collection. */
+	private transient SharedIndexWriter indexWriter;
+
+	/** Guards the index directory while it is being replaced. */
+	private transient Object swapLock;
+
+	/** Whether the collection is waiting to be initialized. */
+	private transient boolean warming;
+
+	/** Guards warming. */
+	private transient Object warmLock;
+
+	/** The threads running an indexing run of this collection. */
+	private transient List runners;
+
+	/** Whether the index is being rebuilt beside the old one. */
+	private transient boolean rebuilding;
+
+	/** Guards runners and rebuilding. */
+	private transient Object runLock;
+
+	/** Suffix of the directory the old index is moved to while it is replaced. */
+	private static final String OLD_SUFFIX = ".old";
+
+	/** Number of times a directory is renamed before giving up. */
+	private static final int RENAME_ATTEMPTS = 20;
+
+	/** Milliseconds between attempts to rename a directory. */
+	private static final long RENAME_WAIT = 500;
+
 	/**
 	 * Returns an Analyzer for this collection based on configuration.
 	 * 
@@ -376,12 +419,309 @@ public abstract class AbstractCollection implements DocumentCollection {
 	/**
 	 * Gets the cache of MD5 hashes of all documents (previously) indexed.
 	 * 
-	 * @return HashSet containing hashes of all documents (previously) indexed
+	 * @return DigestSet containing hashes of all documents (previously) indexed
 	 */
 	public final Set getMd5DocumentCache() {
 		return md5DocumentCache;
 	}
 
+	/**
+	 * Get the IndexWriter of this collection, shared by all indexing runs and
+	 * uploads. It keeps the version and date of this collection up to date
+	 * whenever new documents become visible.
+	 * 
+	 * @return the SharedIndexWriter
+	 */
+	final synchronized SharedIndexWriter getIndexWriter() {
+		if (indexWriter == null) {
+			indexWriter = new SharedIndexWriter(this);
+			indexWriter.addListener(new SharedIndexWriter.Listener() {
+				public void flushed(final SharedIndexWriter writer) {
+					File thisIndex = getIndexDirWithManagerDefaults();
+					try {
+						version = IndexReader.getCurrentVersion(thisIndex);
+						lastIndexed = new Date(IndexReader.lastModified(thisIndex));
+					} catch (IOException e) {
+						log.warn("Can't read version of index of collection '"
+								+ name + "'", e);
+					}
+				}
+			});
+		}
+		return indexWriter;
+	}
+
+	/**
+	 * Get the lock that guards the index directory while it is being
+	 * replaced.
+	 * 
+	 * @return the lock
+	 */
+	private synchronized Object getSwapLock() {
+		if (swapLock == null) {
+			swapLock = new Object();
+		}
+		return swapLock;
+	}
+
+	/**
+	 * Get the lock that guards warming.
+	 * 
+	 * @return the lock
+	 */
+	private synchronized Object getWarmLock() {
+		if (warmLock == null) {
+			warmLock = new Object();
+		}
+		return warmLock;
+	}
+
+	/**
+	 * Indicates whether this collection is waiting to be initialized.
+	 * 
+	 * @return true if so.
+	 */
+	public final boolean isWarming() {
+		synchronized (getWarmLock()) {
+			return warming;
+		}
+	}
+
+	/**
+	 * Mark this collection as waiting to be initialized, or as initialized.
+	 * 
+	 * @param isWarming
+	 *            true if warming
+	 */
+	public final void setWarming(final boolean isWarming) {
+		synchronized (getWarmLock()) {
+			warming = isWarming;
+			getWarmLock().notifyAll();
+		}
+	}
+
+	/**
+	 * Wait until this collection is initialized, so indexing does not add
+	 * hashes that the initialization is about to replace.
+	 * 
+	 * @throws IndexException
+	 *             if interrupted while waiting
+	 */
+	protected final void awaitWarm() throws IndexException {
+		synchronized (getWarmLock()) {
+			while (warming) {
+				log.debug("Waiting for collection '" + name
+						+ "' to be initialized");
+				try {
+					getWarmLock().wait();
+				} catch (InterruptedException e) {
+					throw new IndexException("Interrupted while waiting for collection '"
+							+ name + "' to be initialized", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the lock that guards the indexing runs.
+	 * 
+	 * @return the lock
+	 */
+	private synchronized Object getRunLock() {
+		if (runLock == null) {
+			runLock = new Object();
+			runners = new ArrayList();
+		}
+		return runLock;
+	}
+
+	/**
+	 * Register the current thread as running an indexing run of this
+	 * collection, until {@link #endRun()}. Waits while the index is being
+	 * rebuilt by another run, since documents added now would only end up in
+	 * the new index, and be lost if the rebuild fails.
+	 * 
+	 * @throws IndexException
+	 *             if interrupted while waiting
+	 */
+	protected final void beginRun() throws IndexException {
+		synchronized (getRunLock()) {
+			while (rebuilding) {
+				log.debug("Waiting for the index of collection '" + name
+						+ "' to be rebuilt");
+				try {
+					getRunLock().wait();
+				} catch (InterruptedException e) {
+					throw new IndexException("Interrupted while waiting for collection '"
+							+ name + "' to be rebuilt", e);
+				}
+			}
+			runners.add(Thread.currentThread());
+		}
+	}
+
+	/**
+	 * Mark the run of the current thread as rebuilding the index beside the
+	 * old one, once the other runs have ended. No other runs start until this
+	 * run ends.
+	 * 
+	 * @throws IndexException
+	 *             if interrupted while waiting
+	 */
+	protected final void beginRebuild() throws IndexException {
+		synchronized (getRunLock()) {
+			while (isIndexedByOthers()) {
+				log.debug("Waiting for other runs on collection '" + name
+						+ "' to end before rebuilding");
+				try {
+					getRunLock().wait();
+				} catch (InterruptedException e) {
+					throw new IndexException("Interrupted while waiting to rebuild collection '"
+							+ name + "'", e);
+				}
+			}
+			rebuilding = true;
+		}
+	}
+
+	/**
+	 * End the run of the current thread, started with {@link #beginRun()}.
+	 */
+	protected final void endRun() {
+		synchronized (getRunLock()) {
+			runners.remove(Thread.currentThread());
+			if (runners.isEmpty()) {
+				rebuilding = false;
+			}
+			getRunLock().notifyAll();
+		}
+	}
+
+	/**
+	 * Indicates whether the index of this collection is being rebuilt beside
+	 * the old one. Changes are best kept until the rebuild is done.
+	 * 
+	 * @return true if so.
+	 */
+	public final boolean isRebuilding() {
+		synchronized (getRunLock()) {
+			return rebuilding;
+		}
+	}
+
+	/**
+	 * Indicates whether the index of this collection is being written right
+	 * now: by an indexing run, an upload or a watcher.
+	 * 
+	 * @return true if so.
+	 */
+	public final boolean isBeingIndexed() {
+		synchronized (getRunLock()) {
+			if (!runners.isEmpty()) {
+				return true;
+			}
+		}
+		return getIndexWriter().isOpen();
+	}
+
+	/**
+	 * Indicates whether another thread than the current one runs an indexing
+	 * run of this collection. Must be called holding the run lock.
+	 * 
+	 * @return true if so.
+	 */
+	private boolean isIndexedByOthers() {
+		for (int i = 0; i < runners.size(); i++) {
+			if (runners.get(i) != Thread.currentThread()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Create an IndexSearcher on the index of this collection. While the index
+	 * is being replaced by a rebuilt one, this waits until the new index is in
+	 * place, so a searcher sees either the old or the new index, never none.
+	 * 
+	 * @return the IndexSearcher, to be closed by the caller, or null if there
+	 *         is no valid index
+	 * @throws IndexException
+	 *             if the index can't be checked
+	 * @throws IOException
+	 *             if the index can't be opened
+	 */
+	public final IndexSearcher createSearcher() throws IndexException,
+			IOException {
+		synchronized (getSwapLock()) {
+			if (!isIndexValid()) {
+				return null;
+			}
+			return new IndexSearcher(getIndexDirWithManagerDefaults()
+					.toString());
+		}
+	}
+
+	/**
+	 * Replace the index of this collection by a new one, built in another
+	 * directory on the same file system. The directories are renamed, and
+	 * searchers are not created in between. The old index is removed.
+	 * 
+	 * @param newIndex
+	 *            the directory of the new index
+	 * @throws IOException
+	 *             if the index can't be replaced, the old index is then kept
+	 */
+	final void replaceIndex(final File newIndex) throws IOException {
+		File thisIndex = getIndexDirWithManagerDefaults();
+		File oldIndex = new File(thisIndex.getPath() + OLD_SUFFIX);
+		FileUtils.removeDir(oldIndex);
+		synchronized (getSwapLock()) {
+			if (!rename(thisIndex, oldIndex)) {
+				throw new IOException("Can't move " + thisIndex
+						+ " out of the way of the new index");
+			}
+			if (!rename(newIndex, thisIndex)) {
+				if (!rename(oldIndex, thisIndex)) {
+					log.error("Can't move old index " + oldIndex + " back to "
+							+ thisIndex);
+				}
+				throw new IOException("Can't move new index " + newIndex
+						+ " to " + thisIndex);
+			}
+		}
+		log.info("Replaced index of collection '" + name + "' by " + newIndex);
+		if (!FileUtils.removeDir(oldIndex)) {
+			log.warn("Can't remove old index " + oldIndex);
+		}
+	}
+
+	/**
+	 * Rename a directory. Searchers still open on an index keep its files open,
+	 * which on Windows stops the directory from being renamed until they are
+	 * closed, so this tries a few times.
+	 * 
+	 * @param from
+	 *            the directory
+	 * @param to
+	 *            the new name
+	 * @return true if renamed
+	 */
+	private boolean rename(final File from, final File to) {
+		for (int i = 0; i < RENAME_ATTEMPTS; i++) {
+			if (from.renameTo(to)) {
+				return true;
+			}
+			log.debug("Can't rename " + from + " to " + to + " yet");
+			try {
+				Thread.sleep(RENAME_WAIT);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Get the name of this collection.
 	 * 
@@ -394,38 +734,55 @@ public abstract class AbstractCollection implements DocumentCollection {
 	/**
 	 * Get the number of documents in this collection. The number is not
 	 * calculated, but stored after indexing process, so it is a cheap
-	 * operation.
+	 * operation. While indexing, it is the number of documents when the run
+	 * started plus the number added since, as counted by the run.
 	 * 
 	 * @return number of documents in collection
 	 */
 	public final int getNumberOfDocs() {
-		if (isIndexingInProgress()) {
-			IndexReader index = null;
-			try {
-				File thisIndex = getIndexDirWithManagerDefaults();
-				index = IndexReader.open(thisIndex);
-
-				if (index != null) {
-					return index.numDocs();
-				}
-			} catch (IOException e) {
-				log
-						.warn("Error getting index for collection '" + name
-								+ "'", e);
-			} finally {
-				if (index != null) {
-					try {
-						index.close();
-					} catch (IOException e1) {
-						log.error("Error closing index for collection " + name,
-								e1);
-					}
-				}
-			}
+		IndexingCounters c = counters;
+		if (c != null && isIndexingInProgress()) {
+			return c.getNumberOfDocs();
 		}
 		return numberOfDocs;
 	}
 
+	/**
+	 * Get what the current or latest indexing run of this collection has
+	 * done so far.
+	 * 
+	 * @return the IndexingCounters, or null if not indexed since startup
+	 */
+	public final IndexingCounters getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Start counting a new indexing run.
+	 * 
+	 * @param docs
+	 *            the number of documents in the index the run adds to
+	 * @return the IndexingCounters of the run
+	 */
+	protected final IndexingCounters startCounting(final int docs) {
+		counters = new IndexingCounters(docs);
+		return counters;
+	}
+
+	/**
+	 * Get the counters of the current indexing run, starting a new run if
+	 * there is none.
+	 * 
+	 * @return the IndexingCounters of the run
+	 */
+	protected final IndexingCounters counting() {
+		IndexingCounters c = counters;
+		if (c == null) {
+			c = startCounting(numberOfDocs);
+		}
+		return c;
+	}
+
 	/**
 	 * Gets the URL where this collection's documents can be retrieved.
 	 * 
@@ -485,8 +842,9 @@ public abstract class AbstractCollection implements DocumentCollection {
 	public abstract void index(final boolean fullIndex) throws IndexException;
 
 	/**
-	 * Index the given Collection in a background thread. Stops the indexing if
-	 * already running.
+	 * Index the given Collection in a background thread, by queueing it at the
+	 * IndexingScheduler of the manager. Stops the indexing if already queued
+	 * or running.
 	 * 
 	 * @param fullIndex
 	 *            indicated whether a full or incremental index should be
@@ -503,39 +861,22 @@ public abstract class AbstractCollection implements DocumentCollection {
 			return;
 		}
 		stopRequested = false;
-		Runnable r = new Runnable() {
-			public void run() {
-				try {
-					index(fullIndex);
-				} catch (Exception x) {
-					// in case ANY exception slips through
-					log
-							.error(
-									"Can't succesfully finish background indexing process",
-									x);
-				}
-			}
-		};
 		if (fullIndex) {
 			// update the info now so it is shown in user interface
 			numberOfDocs = 0;
 			lastIndexed = new Date();
 		}
-		indexingThread = new Thread(r);
-		indexingThread.setName(name + "IndexingThread");
-		if (manager.getPriority() != null) {
-			indexingThread.setPriority(manager.getPriority().intValue());
-		} else {
-			indexingThread.setPriority(Thread.NORM_PRIORITY);
-		}
-		indexingThread.start();
+		indexingJob = manager.getIndexingScheduler().submit(this, fullIndex);
 	}
 
 	/**
 	 * Initialize this collection by getting its index. It retrieves the number
 	 * of documents and the MD5 hash of all documents in the collection.
 	 * 
-	 * If the index does not exist (this is a new Collection) just return.
+	 * If the index does not exist (this is a new Collection) just return. If
+	 * another thread is indexing the collection, only the number of documents
+	 * and the version are updated: the hashes then include documents that are
+	 * not in the index yet, or belong to an index being rebuilt.
 	 * 
 	 * @throws IndexException
 	 *             when existing index of Collection can not be succesfully
@@ -547,9 +888,10 @@ public abstract class AbstractCollection implements DocumentCollection {
 		// Determine whether the collection exists on disk
 		setExistsOnDisk();
 		// check whether this collection has a cache for the MD5 hashes of
-		// documents
+		// documents, synchronized since the indexing pipeline uses it from
+		// multiple threads
 		if (md5DocumentCache == null) {
-			md5DocumentCache = new HashSet();
+			md5DocumentCache = Collections.synchronizedSet(new DigestSet());
 		}
 		// check whether this collection has a cache for the MD5 hashes of
 		// indexed archives
@@ -570,15 +912,31 @@ public abstract class AbstractCollection implements DocumentCollection {
 
 			if (index != null) {
 				numberOfDocs = index.numDocs();
-				// retrieve all hashes of Documents from the cache
-				md5DocumentCache.clear();
-				for (int i = 0; i < numberOfDocs; i++) {
-					Document d = index.document(i);
-					String hashValue = d.get("hash");
-					md5DocumentCache.add(hashValue);
-				}
 				// get some relevant information from the index
-				version = IndexReader.getCurrentVersion(thisIndex);
+				version = index.getVersion();
+				boolean indexedByOthers;
+				synchronized (getRunLock()) {
+					indexedByOthers = isIndexedByOthers();
+				}
+				if (indexedByOthers) {
+					log.debug("Collection " + name
+							+ " is being indexed, keeping its hashes");
+				} else {
+					// retrieve all hashes of Documents from the file next to
+					// the index, or from the index if that's not of this
+					// version
+					md5DocumentCache.clear();
+					DocumentHashes documentHashes = new DocumentHashes(thisIndex);
+					if (!documentHashes.load(version, md5DocumentCache)) {
+						md5DocumentCache.clear();
+						readHashes(index, md5DocumentCache);
+						try {
+							documentHashes.save(version, md5DocumentCache);
+						} catch (IOException e) {
+							log.warn("Can't save hashes of collection " + name, e);
+						}
+					}
+				}
 				// deprecated, but needed
 				lastIndexed = new Date(IndexReader.lastModified(thisIndex));
 				log.debug("Collection " + name + " has " + numberOfDocs
@@ -606,6 +964,57 @@ public abstract class AbstractCollection implements DocumentCollection {
 		}
 	}
 
+	/**
+	 * Read the MD5 hashes of all documents in an index. The hashes are taken
+	 * from the terms of the hash field, which is much faster than reading
+	 * all stored documents. Only an index without hash terms, which can't be
+	 * made by this version, has its stored documents read.
+	 * 
+	 * @param index
+	 *            the index
+	 * @param hashes
+	 *            the Set to add the hashes to
+	 * @throws IOException
+	 *             if the index can't be read
+	 */
+	protected static void readHashes(final IndexReader index, final Set hashes)
+			throws IOException {
+		int found = 0;
+		TermEnum terms = index.terms(new Term("hash", ""));
+		TermDocs docs = index.termDocs();
+		try {
+			do {
+				Term term = terms.term();
+				if (term == null || !"hash".equals(term.field())) {
+					break;
+				}
+				// a term may only be left of deleted documents, skip those
+				docs.seek(terms);
+				if (docs.next()) {
+					hashes.add(term.text());
+					found++;
+				}
+			} while (terms.next());
+		} finally {
+			docs.close();
+			terms.close();
+		}
+		if (found > 0 || index.numDocs() == 0) {
+			return;
+		}
+		log.info("Index has no hash terms, reading hashes from documents");
+		// the index may contain deleted documents, skip those
+		int maxDoc = index.maxDoc();
+		for (int i = 0; i < maxDoc; i++) {
+			if (index.isDeleted(i)) {
+				continue;
+			}
+			Document d = index.document(i);
+			String hashValue = d.get("hash");
+			hashes.add(hashValue);
+		}
+	}
+
 	/**
 	 * Returns whether the collection exists on disk. It does not actually
 	 * determine that.
@@ -617,15 +1026,24 @@ public abstract class AbstractCollection implements DocumentCollection {
 	}
 
 	/**
-	 * Indicates whether any indexing is going on.
+	 * Indicates whether any indexing is going on, or waiting for its turn.
 	 * 
 	 * @return true if so.
 	 */
 	public final boolean isIndexingInProgress() {
-		if (indexingThread == null) {
+		if (indexingJob == null) {
 			return false;
 		}
-		return indexingThread.isAlive();
+		return !indexingJob.isFinished();
+	}
+
+	/**
+	 * Get the job of the latest background index of this collection.
+	 * 
+	 * @return the IndexingJob, or null if not indexed in the background yet
+	 */
+	public final IndexingJob getIndexingJob() {
+		return indexingJob;
 	}
 
 	/**
@@ -862,11 +1280,35 @@ public abstract class AbstractCollection implements DocumentCollection {
 	}
 
 	/**
-	 * Stop the indexing thread.
+	 * Stop the indexing thread, or remove the collection from the queue if it
+	 * is still waiting.
 	 */
 	public final void stopRequest() {
 		stopRequested = true;
-		indexingThread.interrupt();
+		if (indexingJob != null) {
+			manager.getIndexingScheduler().cancel(indexingJob);
+		}
+	}
+
+	/**
+	 * Wait until the read rate limit of the manager allows reading the given
+	 * number of bytes while indexing. Only for reads that can't be taken from
+	 * the throttle as they happen, such as reads by a worker process: this
+	 * takes all bytes at once, before they are read.
+	 * 
+	 * @param bytes
+	 *            the number of bytes about to be read
+	 */
+	protected final void throttleRead(final long bytes) {
+		manager.getReadThrottle().acquire(bytes);
+	}
+
+	/**
+	 * Wait until the document rate limit of the manager allows adding a
+	 * document while indexing.
+	 */
+	protected final void throttleDocument() {
+		manager.getDocumentThrottle().acquire(1);
 	}
 
 	/**
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.util.LinkedList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.service.CollectionManager;
+
+/**
+ * Initializes collections in the background, at most <code>initThreads</code> of the CollectionManager at the same time.
+ *
+ * <p>
+ * A collection is warming from the moment it is submitted until its initialization is done. Warming collections are not
+ * searched, and indexing them waits until they are initialized, but other collections can be searched and indexed in the
+ * meantime. So Zilverline is available as soon as it starts, instead of after reading the hashes of all collections.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see DocumentCollection#init()
+ */
+public class CollectionInitializer {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(CollectionInitializer.class);
+
+    /** The number of collections initialized at the same time, if not set. */
+    public static final int DEFAULT_INIT_THREADS = 4;
+
+    /** The manager holding the settings. */
+    private final CollectionManager manager;
+
+    /** The collections waiting for a thread, oldest first. */
+    private final LinkedList queue = new LinkedList();
+
+    /** The number of threads taking collections from the queue. */
+    private int workers = 0;
+
+    /**
+     * Create an initializer.
+     *
+     * @param theManager the manager holding the number of threads
+     */
+    public CollectionInitializer(final CollectionManager theManager) {
+        manager = theManager;
+    }
+
+    /**
+     * Queue a collection for initialization, and mark it warming until done. A thread is started if less than the maximum are
+     * running. A collection that is already queued is not queued again.
+     *
+     * @param collection the collection
+     */
+    public synchronized void submit(final DocumentCollection collection) {
+        collection.setWarming(true);
+        if (queue.contains(collection)) {
+            return;
+        }
+        queue.addLast(collection);
+        log.debug("Queued collection " + collection.getName() + " for initialization, " + queue.size() + " waiting");
+        if (workers < getInitThreads()) {
+            startWorker();
+        }
+    }
+
+    /**
+     * Get the number of collections waiting to be initialized.
+     *
+     * @return the number of collections
+     */
+    public synchronized int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Get the maximum number of collections initialized at the same time.
+     *
+     * @return the maximum set on the manager, or DEFAULT_INIT_THREADS
+     */
+    public int getInitThreads() {
+        if (manager.getInitThreads() != null && manager.getInitThreads().intValue() > 0) {
+            return manager.getInitThreads().intValue();
+        }
+        return DEFAULT_INIT_THREADS;
+    }
+
+    /**
+     * Start a thread taking collections from the queue.
+     */
+    private void startWorker() {
+        workers++;
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        });
+        worker.setName("InitThread" + workers);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Main loop of an initializing thread: initialize the queued collections one by one, until the queue is empty.
+     */
+    private void work() {
+        while (true) {
+            DocumentCollection collection;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    workers--;
+                    return;
+                }
+                collection = (DocumentCollection) queue.removeFirst();
+            }
+            try {
+                collection.init();
+                log.debug("Initialized collection " + collection.getName());
+            }
+            catch (Exception e) {
+                // in case ANY exception slips through, the other collections must still be initialized
+                log.error("Can't initialize collection " + collection.getName(), e);
+            }
+            finally {
+                synchronized (this) {
+                    // it may have been submitted again in the meantime
+                    if (!queue.contains(collection)) {
+                        collection.setWarming(false);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -22,6 +22,9 @@
 package org.zilverline.core;
 
 import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.search.IndexSearcher;
 
 import org.zilverline.service.CollectionManager;
 
@@ -68,6 +71,13 @@ public interface DocumentCollection {
      */
     int getNumberOfDocs();
 
+    /**
+     * Get what the current or latest indexing run of this collection has done so far.
+     * 
+     * @return the IndexingCounters, or null if not indexed since startup
+     */
+    IndexingCounters getCounters();
+
     /**
      * The URL maps the cacheDir to another location.
      * 
@@ -106,6 +116,17 @@ public interface DocumentCollection {
      */
     boolean isIndexValid() throws IndexException;
 
+    /**
+     * Create an IndexSearcher on the index of this collection. A searcher never sees the index while it is being replaced by a
+     * rebuilt one.
+     * 
+     * @return the IndexSearcher, to be closed by the caller, or null if there is no valid index
+     * 
+     * @throws IndexException when the index can't be checked
+     * @throws IOException when the index can't be opened
+     */
+    IndexSearcher createSearcher() throws IndexException, IOException;
+
     /**
      * Get the id of the collection.
      * 
@@ -127,6 +148,27 @@ public interface DocumentCollection {
      */
     boolean isIndexingInProgress();
 
+    /**
+     * Indicates whether the index of this collection is being written right now: by an indexing run, an upload or a watcher.
+     * 
+     * @return true if so.
+     */
+    boolean isBeingIndexed();
+
+    /**
+     * Indicates whether this collection is waiting to be initialized. A warming collection is not searched.
+     * 
+     * @return true if so.
+     */
+    boolean isWarming();
+
+    /**
+     * Mark this collection as waiting to be initialized, or as initialized. Indexing waits while the collection is warming.
+     * 
+     * @param isWarming true if warming
+     */
+    void setWarming(boolean isWarming);
+
     /**
      * Index the given Collection.
      * 
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.util.DigestSet;
+
+/**
+ * The hashes of all documents in an index, stored in a file next to the index, so that a collection can be initialized without
+ * reading every document in the index.
+ *
+ * <p>
+ * The file records the version of the index it was written for, and is only used as long as the index has that version. MD5
+ * hashes are stored as the two longs of a {@link DigestSet}, other hashes (the message ids of an IMAPCollection) as they are.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see AbstractCollection#init()
+ */
+final class DocumentHashes {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(DocumentHashes.class);
+
+    /** Name of the hashes file in the index directory. */
+    public static final String FILE_NAME = "zilverline.hashes";
+
+    /** First entry of a hashes file, identifying the format. */
+    private static final String HEADER = "zilverline hashes 1";
+
+    /** Tag of an MD5 hash, followed by its high and low half as longs. */
+    private static final int MD5 = 0;
+
+    /** Tag of any other hash, followed by the hash in UTF-8. */
+    private static final int OTHER = 1;
+
+    /** Tag marking the end of the file, so that a truncated file is recognized. */
+    private static final int END = 2;
+
+    /** The file the hashes are stored in. */
+    private final File file;
+
+    /**
+     * Create the DocumentHashes of the given index directory.
+     *
+     * @param indexDir the index directory of the collection
+     */
+    DocumentHashes(final File indexDir) {
+        file = new File(indexDir, FILE_NAME);
+    }
+
+    /**
+     * Read the hashes from disk, if they were written for the given version of the index.
+     *
+     * @param version the current version of the index
+     * @param hashes the Set to add the hashes to, only if all of them can be read
+     * @return true if the hashes were read, false if the file is missing, of another version or unreadable
+     */
+    boolean load(final long version, final Set hashes) {
+        if (!file.exists()) {
+            log.debug("No hashes " + file + " yet");
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (!HEADER.equals(in.readUTF())) {
+                log.warn("Ignoring hashes " + file + " with unknown format");
+                return false;
+            }
+            long fileVersion = in.readLong();
+            if (fileVersion != version) {
+                log.debug("Ignoring hashes " + file + " of index version " + fileVersion + ", the index has version " + version);
+                return false;
+            }
+            // read into a DigestSet of our own, so the hashes are not made into Strings when added to a DigestSet
+            DigestSet loaded = new DigestSet();
+            int tag;
+            while ((tag = in.readByte()) != END) {
+                if (tag == MD5) {
+                    long high = in.readLong();
+                    loaded.add(high, in.readLong());
+                } else if (tag == OTHER) {
+                    loaded.add(in.readUTF());
+                } else {
+                    log.warn("Ignoring corrupt hashes " + file);
+                    return false;
+                }
+            }
+            hashes.addAll(loaded);
+            log.debug("Read " + loaded.size() + " hashes from " + file);
+            return true;
+        }
+        catch (EOFException e) {
+            log.warn("Ignoring truncated hashes " + file);
+            return false;
+        }
+        catch (IOException e) {
+            log.warn("Can't read hashes " + file + ", the index will be read instead", e);
+            return false;
+        }
+        finally {
+            if (in != null) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {
+                    log.warn("Can't close hashes " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the hashes to disk, replacing the previous file.
+     *
+     * @param version the version of the index the hashes were read from
+     * @param hashes the hashes, if synchronized it is iterated while holding its lock
+     * @throws IOException if the hashes can't be written
+     */
+    void save(final long version, final Set hashes) throws IOException {
+        // write to a temporary file first, so a crash does not leave half the hashes
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        int count = 0;
+        try {
+            out.writeUTF(HEADER);
+            out.writeLong(version);
+            synchronized (hashes) {
+                for (Iterator iter = hashes.iterator(); iter.hasNext();) {
+                    Object hash = iter.next();
+                    if (hash == null) {
+                        continue;
+                    }
+                    if (DigestSet.isDigest(hash)) {
+                        out.writeByte(MD5);
+                        out.writeLong(DigestSet.parse((String) hash, 0));
+                        out.writeLong(DigestSet.parse((String) hash, 16));
+                    } else {
+                        out.writeByte(OTHER);
+                        out.writeUTF((String) hash);
+                    }
+                    count++;
+                }
+            }
+            out.writeByte(END);
+        }
+        finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can't replace hashes " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Can't rename " + tmp + " to " + file);
+        }
+        log.debug("Wrote " + count + " hashes to " + file);
+    }
+}
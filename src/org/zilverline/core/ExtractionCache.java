@@ -0,0 +1,467 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.util.DigestSet;
+
+/**
+ * A cache on disk of the info extracted from documents, by the MD5 hash of their content.
+ *
+ * <p>
+ * Extracting PDF, Word or HTML documents takes much longer than reading them. With this cache, documents whose content has been
+ * extracted before, in another collection or by an earlier full index, are not extracted again. An entry is only used for the
+ * same extractor and the same maximum number of characters. Each entry is a compressed file, named by the hash. When the cache
+ * grows over its maximum size, the least recently used entries are removed.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see org.zilverline.service.CollectionManager#getExtractionCache()
+ */
+public class ExtractionCache {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(ExtractionCache.class);
+
+    /** Name of the directory of the cache in the cache base directory. */
+    public static final String DIR_NAME = ".extractions";
+
+    /** Extension of an entry. */
+    private static final String SUFFIX = ".gz";
+
+    /** Version of the format of an entry. */
+    private static final int FORMAT = 1;
+
+    /** The directory of the cache. */
+    private final File dir;
+
+    /** The maximum number of bytes of all entries. */
+    private long maxBytes;
+
+    /** The number of bytes of all entries. */
+    private long bytes;
+
+    /** The sizes (Longs) of the entries by hash, least recently used first, read from disk when first needed. */
+    private Map entries;
+
+    /** Number of times an entry was found, and not found. */
+    private int hits;
+
+    private int misses;
+
+    /**
+     * Create a cache in a directory. Entries already in the directory are used.
+     *
+     * @param theDir the directory, created when needed
+     * @param theMaxBytes the maximum number of bytes of all entries
+     */
+    public ExtractionCache(final File theDir, final long theMaxBytes) {
+        dir = theDir;
+        maxBytes = theMaxBytes;
+    }
+
+    /**
+     * @return Returns the directory of the cache.
+     */
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Set the maximum number of bytes of all entries, removing the least recently used ones if they take more.
+     *
+     * @param theMaxBytes the maximum
+     */
+    public synchronized void setMaxBytes(final long theMaxBytes) {
+        maxBytes = theMaxBytes;
+        if (entries != null) {
+            evict();
+        }
+    }
+
+    /**
+     * @return Returns the number of bytes of all entries.
+     */
+    public synchronized long getBytes() {
+        getEntries();
+        return bytes;
+    }
+
+    /**
+     * @return Returns the number of times an entry was found.
+     */
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Returns the number of times an entry was not found.
+     */
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the info extracted earlier from a document with the same content.
+     *
+     * @param hash the MD5 hash of the content
+     * @param extractor the class name of the extractor
+     * @param maxChars the maximum number of characters extracted
+     * @param f the file the info is for
+     * @return the info, with a new Reader of the content, or null if not in the cache
+     */
+    public ParsedFileInfo get(final String hash, final String extractor, final int maxChars, final File f) {
+        File file = getFile(hash);
+        synchronized (this) {
+            if (file == null || getEntries().get(hash) == null) {
+                misses++;
+                return null;
+            }
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != FORMAT || !extractor.equals(in.readUTF()) || in.readInt() != maxChars) {
+                synchronized (this) {
+                    misses++;
+                }
+                return null;
+            }
+            ParsedFileInfo info = new ParsedFileInfo();
+            info.setFile(f);
+            info.setType(readString(in));
+            info.setAuthor(readString(in));
+            info.setTitle(readString(in));
+            info.setSummary(readString(in));
+            info.setISBN(readString(in));
+            info.setCreationDate(in.readLong());
+            long modificationDate = in.readLong();
+            // the date of the file the info was extracted from, rather than of the content, is replaced by that of this file
+            if (in.readBoolean()) {
+                modificationDate = f.lastModified();
+            }
+            info.setModificationDate(modificationDate);
+            info.setSize(in.readLong());
+            String text = readString(in);
+            if (text != null) {
+                info.setReader(new StringReader(text));
+            }
+            synchronized (this) {
+                hits++;
+            }
+            // so that it is not the first to be removed after a restart either
+            file.setLastModified(System.currentTimeMillis());
+            log.debug("Found extracted info of " + f + " in cache");
+            return info;
+        }
+        catch (IOException e) {
+            log.warn("Can't read cached info " + file + ", removing it", e);
+            remove(hash);
+            return null;
+        }
+        finally {
+            close(in, file);
+        }
+    }
+
+    /**
+     * Store the info extracted from a document. The content is read from the Reader of the info, which is replaced by a new one.
+     *
+     * @param hash the MD5 hash of the content
+     * @param extractor the class name of the extractor
+     * @param maxChars the maximum number of characters extracted
+     * @param info the info
+     * @return the info, with a Reader that has not been read
+     */
+    public ParsedFileInfo put(final String hash, final String extractor, final int maxChars, final ParsedFileInfo info) {
+        String text = null;
+        if (info.getReader() != null) {
+            StringBuffer sb = new StringBuffer();
+            boolean complete = readFully(info.getReader(), sb);
+            text = sb.toString();
+            info.setReader(new StringReader(text));
+            if (!complete) {
+                log.warn("Can't read extracted content of " + info.getFile() + ", not caching it");
+                return info;
+            }
+        }
+        File file = getFile(hash);
+        if (file == null || maxBytes <= 0) {
+            return info;
+        }
+        synchronized (this) {
+            // read the entries on disk before adding a temporary file, which would be removed as a left over
+            getEntries();
+        }
+        File tmp = null;
+        try {
+            file.getParentFile().mkdirs();
+            // another thread may write the same hash at the same time, so use a temporary file of our own
+            tmp = File.createTempFile(hash, ".tmp", file.getParentFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))));
+            try {
+                out.writeInt(FORMAT);
+                out.writeUTF(extractor);
+                out.writeInt(maxChars);
+                writeString(out, info.getType());
+                writeString(out, info.getAuthor());
+                writeString(out, info.getTitle());
+                writeString(out, info.getSummary());
+                writeString(out, info.getISBN());
+                out.writeLong(info.getCreationDate());
+                out.writeLong(info.getModificationDate());
+                out.writeBoolean(info.getFile() != null && info.getModificationDate() == info.getFile().lastModified());
+                out.writeLong(info.getSize());
+                writeString(out, text);
+            }
+            finally {
+                out.close();
+            }
+            synchronized (this) {
+                if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+                    throw new IOException("Can't rename " + tmp + " to " + file);
+                }
+                add(hash, file.length());
+                evict();
+            }
+        }
+        catch (IOException e) {
+            log.warn("Can't cache extracted info of " + info.getFile(), e);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param hash the MD5 hash of the content
+     */
+    public synchronized void remove(final String hash) {
+        Long size = (Long) getEntries().remove(hash);
+        if (size != null) {
+            bytes -= size.longValue();
+        }
+        File file = getFile(hash);
+        if (file != null && file.exists() && !file.delete()) {
+            log.warn("Can't remove cached info " + file);
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public synchronized String toString() {
+        return "ExtractionCache " + dir + ": " + (entries == null ? 0 : entries.size()) + " entries, " + bytes + " of " + maxBytes
+            + " bytes, " + hits + " hits, " + misses + " misses";
+    }
+
+    /**
+     * Get the file of an entry. Entries are spread over 256 subdirectories, by the first two characters of the hash.
+     *
+     * @param hash the MD5 hash
+     * @return the file, or null if the hash is not an MD5 hash
+     */
+    private File getFile(final String hash) {
+        if (!DigestSet.isDigest(hash)) {
+            return null;
+        }
+        return new File(new File(dir, hash.substring(0, 2)), hash + SUFFIX);
+    }
+
+    /**
+     * Get the entries, reading them from disk the first time, oldest first. Left over temporary files are removed.
+     *
+     * @return the entries
+     */
+    private Map getEntries() {
+        if (entries != null) {
+            return entries;
+        }
+        // access order, so that the first entry is the least recently used
+        entries = new LinkedHashMap(16, 0.75f, true);
+        bytes = 0;
+        List files = new ArrayList();
+        File[] subDirs = dir.listFiles();
+        for (int i = 0; subDirs != null && i < subDirs.length; i++) {
+            File[] children = subDirs[i].listFiles();
+            for (int j = 0; children != null && j < children.length; j++) {
+                if (children[j].getName().endsWith(SUFFIX)) {
+                    files.add(children[j]);
+                } else {
+                    children[j].delete();
+                }
+            }
+        }
+        Collections.sort(files, new Comparator() {
+            public int compare(final Object o1, final Object o2) {
+                long m1 = ((File) o1).lastModified();
+                long m2 = ((File) o2).lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        for (Iterator iter = files.iterator(); iter.hasNext();) {
+            File file = (File) iter.next();
+            String name = file.getName();
+            add(name.substring(0, name.length() - SUFFIX.length()), file.length());
+        }
+        log.debug("Read " + entries.size() + " entries of " + bytes + " bytes from extraction cache " + dir);
+        evict();
+        return entries;
+    }
+
+    /**
+     * Add an entry, replacing any with the same hash.
+     *
+     * @param hash the MD5 hash
+     * @param size the size of its file
+     */
+    private void add(final String hash, final long size) {
+        Long old = (Long) entries.put(hash, new Long(size));
+        if (old != null) {
+            bytes -= old.longValue();
+        }
+        bytes += size;
+    }
+
+    /**
+     * Remove the least recently used entries until the entries take no more than the maximum.
+     */
+    private void evict() {
+        Iterator iter = entries.entrySet().iterator();
+        while (bytes > maxBytes && iter.hasNext()) {
+            Map.Entry e = (Map.Entry) iter.next();
+            iter.remove();
+            bytes -= ((Long) e.getValue()).longValue();
+            File file = getFile((String) e.getKey());
+            if (file != null && !file.delete()) {
+                log.warn("Can't remove cached info " + file);
+            }
+        }
+    }
+
+    /**
+     * Write a String that may be null or longer than writeUTF allows.
+     *
+     * @param out the stream
+     * @param s the String
+     * @throws IOException on error
+     */
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes("UTF-8");
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Read a String written by writeString.
+     *
+     * @param in the stream
+     * @return the String, can be null
+     * @throws IOException on error
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return new String(b, "UTF-8");
+    }
+
+    /**
+     * Read the remainder of a Reader, and close it.
+     *
+     * @param reader the Reader
+     * @param sb the buffer to add the characters read to
+     * @return true if all characters were read, false if the Reader failed halfway
+     */
+    private static boolean readFully(final Reader reader, final StringBuffer sb) {
+        char[] buffer = new char[8192];
+        try {
+            int n;
+            while ((n = reader.read(buffer)) > -1) {
+                sb.append(buffer, 0, n);
+            }
+            return true;
+        }
+        catch (IOException e) {
+            log.debug("Can't read content", e);
+            return false;
+        }
+        finally {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                log.debug("Can't close content", e);
+            }
+        }
+    }
+
+    /**
+     * Close a stream, logging any error.
+     *
+     * @param in the stream, can be null
+     * @param file the file being read
+     */
+    private static void close(final DataInputStream in, final File file) {
+        if (in != null) {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                log.warn("Can't close cached info " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Thread that runs the extractions of an indexing thread, so that an extraction that takes too long can be stopped.
+ *
+ * <p>
+ * Every indexing thread hands its extractions to its own ExtractionThread, and waits for the result until a deadline. If the
+ * extraction is overdue, the ExtractionThread is abandoned and the indexing thread gets a new one for its next extraction. An
+ * extraction in a worker JVM is stopped by killing the worker. Threads can't be stopped safely in Java, so an extraction in this
+ * JVM is only interrupted: the thread ends by itself when the extraction ends, and its result is ignored. Since every extraction
+ * has an Extractor of its own, the abandoned thread shares nothing with the next extraction. Interrupting doesn't stop a parser
+ * that is looping, so use extraction workers to have every overdue extraction stopped.
+ * </p>
+ * <p>
+ * An ExtractionThread ends by itself once its indexing thread has ended.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see FileSystemCollection#index(boolean)
+ */
+final class ExtractionThread extends Thread {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(ExtractionThread.class);
+
+    /** Default number of seconds an extraction may take. */
+    public static final int DEFAULT_TIMEOUT = 600;
+
+    /** Milliseconds an idle thread waits before checking whether its indexing thread has ended. */
+    private static final long IDLE_CHECK = 60000;
+
+    /** The ExtractionThread of every indexing thread. */
+    private static final ThreadLocal THREADS = new ThreadLocal();
+
+    /** Number of threads created, for their names. */
+    private static int created;
+
+    /** The indexing thread this thread extracts for. */
+    private final Thread owner;
+
+    /** The Extractor of the current extraction. */
+    private Extractor extractor;
+
+    /** The file of the current extraction. */
+    private File file;
+
+    /** The content of the file, or null if the Extractor reads the file. */
+    private InputStream content;
+
+    /** The result of the current extraction. */
+    private ParsedFileInfo result;
+
+    /** Whether there is no extraction running. */
+    private boolean done = true;
+
+    /** Whether an extraction was overdue. */
+    private boolean overdue;
+
+    /** Whether this thread has been stopped. */
+    private boolean stopped;
+
+    /**
+     * Create an ExtractionThread for the given indexing thread.
+     *
+     * @param theOwner the indexing thread
+     */
+    private ExtractionThread(final Thread theOwner) {
+        super(theOwner.getName() + "-ExtractionThread-" + nextNumber());
+        owner = theOwner;
+        setDaemon(true);
+    }
+
+    /**
+     * Get the next number for the name of a thread.
+     *
+     * @return the number
+     */
+    private static synchronized int nextNumber() {
+        return created++;
+    }
+
+    /**
+     * Get the ExtractionThread of the current thread, starting one if needed.
+     *
+     * @return the ExtractionThread
+     */
+    static ExtractionThread forCurrentThread() {
+        ExtractionThread thread = (ExtractionThread) THREADS.get();
+        if (thread == null) {
+            thread = new ExtractionThread(Thread.currentThread());
+            thread.start();
+            THREADS.set(thread);
+        }
+        return thread;
+    }
+
+    /**
+     * Stop the ExtractionThread of the current thread, if any, instead of letting it find out that its indexing thread has ended.
+     * For indexing threads that end while the index goes on.
+     */
+    static void releaseCurrentThread() {
+        ExtractionThread thread = (ExtractionThread) THREADS.get();
+        if (thread != null) {
+            THREADS.set(null);
+            synchronized (thread) {
+                thread.stopped = true;
+                thread.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Extract a file, waiting at most the given time. If the extraction takes longer, this thread is abandoned, and
+     * {@link #isOverdue()} returns true. Must be called by the indexing thread this thread belongs to.
+     *
+     * @param ext the Extractor for the file
+     * @param f the file
+     * @param in the content of the file, or null to let the Extractor read the file, which must be a StreamExtractor if not
+     * @param timeout the maximum number of milliseconds
+     * @return the extracted info, null if overdue or interrupted
+     */
+    synchronized ParsedFileInfo extract(final Extractor ext, final File f, final InputStream in, final long timeout) {
+        extractor = ext;
+        file = f;
+        content = in;
+        result = null;
+        done = false;
+        notifyAll();
+        long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (!done) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    overdue = true;
+                    kill();
+                    return null;
+                }
+                wait(left);
+            }
+        }
+        catch (InterruptedException e) {
+            log.debug("Interrupted while extracting " + f);
+            kill();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        ParsedFileInfo info = result;
+        extractor = null;
+        file = null;
+        content = null;
+        result = null;
+        return info;
+    }
+
+    /**
+     * @return Returns whether this thread has been abandoned because an extraction was overdue.
+     */
+    synchronized boolean isOverdue() {
+        return overdue;
+    }
+
+    /**
+     * Abandon this thread, and make sure the indexing thread gets a new one. An extraction in a worker JVM is stopped by killing
+     * the worker, one in this JVM is interrupted and left to end by itself.
+     */
+    private void kill() {
+        THREADS.set(null);
+        stopped = true;
+        done = true;
+        interrupt();
+        if (extractor instanceof RemoteExtractor) {
+            log.debug("Stopping " + getName() + ", extracting " + file);
+            // the worker is killed, which ends the wait of this thread for its result
+            ((RemoteExtractor) extractor).abort(this);
+        } else {
+            log.warn("Abandoning " + getName() + " while it extracts " + file
+                + ", use extraction workers to have extractions stopped");
+        }
+    }
+
+    /**
+     * Runs the extractions, until this thread is stopped or its indexing thread has ended.
+     */
+    public void run() {
+        while (true) {
+            Extractor ext;
+            File f;
+            InputStream in;
+            synchronized (this) {
+                try {
+                    while (done) {
+                        if (!owner.isAlive() || stopped) {
+                            return;
+                        }
+                        wait(IDLE_CHECK);
+                    }
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                ext = extractor;
+                f = file;
+                in = content;
+            }
+            ParsedFileInfo info = null;
+            try {
+                if (in != null) {
+                    info = ((StreamExtractor) ext).extractInfo(f, in);
+                } else {
+                    info = ext.extractInfo(f);
+                }
+            }
+            catch (RuntimeException e) {
+                log.warn("Unexpected Error extracting content from " + f.getName(), e);
+            }
+            synchronized (this) {
+                if (stopped) {
+                    return;
+                }
+                result = info;
+                done = true;
+                notifyAll();
+            }
+        }
+    }
+}
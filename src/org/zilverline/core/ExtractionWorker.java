@@ -0,0 +1,229 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.zilverline.extractors.AbstractExtractor;
+import org.zilverline.extractors.ContentWriter;
+
+/**
+ * Main class of a separate JVM that extracts documents for an {@link ExtractionWorkerPool}.
+ *
+ * <p>
+ * The worker reads requests from its standard input, and writes the extracted info to its standard output, until its input is
+ * closed. A request is the classname of the Extractor, the path of the file and the maximum number of characters of content. The
+ * Reader of the ParsedFileInfo can't cross the process boundary, so the extracted content is sent in chunks, which the pool
+ * collects in a ContentWriter. The content is never held as a whole String or byte array on either side. Anything else printed to
+ * the standard output goes to the standard error instead.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public final class ExtractionWorker {
+    /** Maximum number of characters in a chunk of content, which is at most three times as many bytes in a UTF string. */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Hidden default constructor.
+     */
+    private ExtractionWorker() {
+    }
+
+    /**
+     * Extract documents until the standard input is closed.
+     *
+     * @param args not used
+     * @throws IOException if the standard input or output fail
+     */
+    public static void main(final String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // the standard output is ours, so extractors and logging print to standard error
+        System.setOut(System.err);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        while (true) {
+            String className;
+            String path;
+            int maxChars;
+            try {
+                className = in.readUTF();
+                path = in.readUTF();
+                maxChars = in.readInt();
+            }
+            catch (EOFException e) {
+                // the pool is done with us
+                return;
+            }
+            ParsedFileInfo info = null;
+            try {
+                Extractor ext = (Extractor) Class.forName(className).newInstance();
+                if (ext instanceof AbstractExtractor) {
+                    ((AbstractExtractor) ext).setMaxContentChars(maxChars);
+                }
+                info = ext.extractInfo(new File(path));
+            }
+            catch (Throwable e) {
+                System.err.println("Can't extract " + path + " with " + className + ": " + e);
+                info = null;
+            }
+            write(out, info);
+            out.flush();
+        }
+    }
+
+    /**
+     * Write the result of an extraction, the content in chunks.
+     *
+     * @param out the stream to the pool
+     * @param info the extracted info, null if extraction failed
+     * @throws IOException if the stream fails
+     */
+    static void write(final DataOutputStream out, final ParsedFileInfo info) throws IOException {
+        out.writeBoolean(info != null);
+        if (info == null) {
+            return;
+        }
+        writeString(out, info.getType());
+        writeString(out, info.getTitle());
+        writeString(out, info.getAuthor());
+        writeString(out, info.getISBN());
+        writeString(out, info.getSummary());
+        out.writeLong(info.getSize());
+        out.writeLong(info.getModificationDate());
+        out.writeLong(info.getCreationDate());
+        writeContent(out, info.getReader());
+    }
+
+    /**
+     * Write content as a number of chunks, each preceded by true, and followed by false. A Reader that fails halfway ends the
+     * content, so the stream stays in sync.
+     *
+     * @param out the stream
+     * @param reader the content, can be null
+     * @throws IOException if the stream fails
+     */
+    private static void writeContent(final DataOutputStream out, final Reader reader) throws IOException {
+        out.writeBoolean(reader != null);
+        if (reader == null) {
+            return;
+        }
+        try {
+            char[] buffer = new char[CHUNK_SIZE];
+            int len;
+            while ((len = reader.read(buffer)) > -1) {
+                out.writeBoolean(true);
+                out.writeUTF(new String(buffer, 0, len));
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Can't read extracted content: " + e);
+        }
+        finally {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                System.err.println("Can't close extracted content: " + e);
+            }
+        }
+        out.writeBoolean(false);
+    }
+
+    /**
+     * Read the result of an extraction. The content is collected in a ContentWriter, up to the maximum number of characters.
+     *
+     * @param in the stream from the worker
+     * @param f the file that was extracted
+     * @param maxChars the maximum number of characters of content, 0 for no maximum
+     * @return the extracted info, null if extraction failed
+     * @throws IOException if the stream fails
+     */
+    static ParsedFileInfo read(final DataInputStream in, final File f, final int maxChars) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        ParsedFileInfo info = new ParsedFileInfo();
+        info.setFile(f);
+        info.setType(readString(in));
+        info.setTitle(readString(in));
+        info.setAuthor(readString(in));
+        info.setISBN(readString(in));
+        info.setSummary(readString(in));
+        info.setSize(in.readLong());
+        info.setModificationDate(in.readLong());
+        info.setCreationDate(in.readLong());
+        if (in.readBoolean()) {
+            ContentWriter content = new ContentWriter(maxChars);
+            while (in.readBoolean()) {
+                // chunks beyond the maximum are read, to stay in sync, but dropped
+                content.write(in.readUTF());
+            }
+            info.setReader(content.getReader());
+        }
+        return info;
+    }
+
+    /**
+     * Write a String of any length, or null.
+     *
+     * @param out the stream
+     * @param s the String
+     * @throws IOException if the stream fails
+     */
+    private static void writeString(final DataOutputStream out, final String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read a String written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in the stream
+     * @return the String
+     * @throws IOException if the stream fails
+     */
+    private static String readString(final DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pool of separate JVMs extracting documents, so that the heap and garbage collection of the JVM serving searches are not
+ * affected by huge documents.
+ *
+ * <p>
+ * Workers are started when needed, up to the size of the pool, with a limited heap. A worker is replaced after it has extracted a
+ * number of documents, or when it crashes or is stopped. Workers run {@link ExtractionWorker} with the classpath of Zilverline:
+ * the classpath of this JVM, plus the jars next to the classes of Zilverline, as in a web application.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see ExtractorFactory#setWorkers(int)
+ */
+final class ExtractionWorkerPool {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(ExtractionWorkerPool.class);
+
+    /** Default maximum heap of a worker in megabytes. */
+    public static final int DEFAULT_HEAP = 128;
+
+    /** Default number of documents after which a worker is replaced. */
+    public static final int DEFAULT_DOCUMENTS = 100;
+
+    /** The maximum number of workers. */
+    private final int size;
+
+    /** The maximum heap of a worker in megabytes. */
+    private final int heap;
+
+    /** The number of documents after which a worker is replaced. */
+    private final int documents;
+
+    /** The workers waiting for a document. */
+    private final List idle = new ArrayList();
+
+    /** The workers extracting a document, by the thread waiting for the result. */
+    private final Map busy = new HashMap();
+
+    /** The number of workers running. */
+    private int running;
+
+    /** The number of workers started, for statistics. */
+    private int started;
+
+    /** Whether the pool has been shut down. */
+    private boolean shutdown;
+
+    /**
+     * A worker JVM.
+     */
+    static final class Worker {
+        /** The process. */
+        private final Process process;
+
+        /** Requests to the worker. */
+        private final DataOutputStream out;
+
+        /** Results from the worker. */
+        private final DataInputStream in;
+
+        /** The number of documents extracted. */
+        private int count;
+
+        /**
+         * Start a worker.
+         *
+         * @param command the command line
+         * @throws IOException if the worker can't be started
+         */
+        Worker(final String[] command) throws IOException {
+            process = Runtime.getRuntime().exec(command);
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            // the worker blocks if nobody reads its standard error
+            final BufferedReader err = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+            Thread logger = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        String line;
+                        while ((line = err.readLine()) != null) {
+                            log.debug("worker: " + line);
+                        }
+                    }
+                    catch (IOException e) {
+                        log.debug("Worker has gone", e);
+                    }
+                }
+            }, "ExtractionWorkerLogger");
+            logger.setDaemon(true);
+            logger.start();
+        }
+
+        /**
+         * Extract a file.
+         *
+         * @param className the classname of the Extractor
+         * @param f the file
+         * @param maxChars the maximum number of characters of content, 0 for no maximum
+         * @return the extracted info, null if the extraction failed
+         * @throws IOException if the worker has crashed
+         */
+        ParsedFileInfo extract(final String className, final File f, final int maxChars) throws IOException {
+            count++;
+            out.writeUTF(className);
+            out.writeUTF(f.getAbsolutePath());
+            out.writeInt(maxChars);
+            out.flush();
+            return ExtractionWorker.read(in, f, maxChars);
+        }
+
+        /**
+         * Kill the worker process right away, without waiting for anything. The thread waiting for its result gets an IOException.
+         */
+        void kill() {
+            process.destroy();
+        }
+
+        /**
+         * Stop the worker.
+         */
+        void destroy() {
+            try {
+                // closing its input lets the worker exit by itself
+                out.close();
+            }
+            catch (IOException e) {
+                log.debug("Can't close worker", e);
+            }
+            process.destroy();
+        }
+    }
+
+    /**
+     * Create a pool.
+     *
+     * @param theSize the maximum number of workers
+     * @param theHeap the maximum heap of a worker in megabytes, 0 for the default
+     * @param theDocuments the number of documents after which a worker is replaced, 0 for the default
+     */
+    ExtractionWorkerPool(final int theSize, final int theHeap, final int theDocuments) {
+        size = Math.max(1, theSize);
+        heap = theHeap > 0 ? theHeap : DEFAULT_HEAP;
+        documents = theDocuments > 0 ? theDocuments : DEFAULT_DOCUMENTS;
+    }
+
+    /**
+     * Extract a file in a worker. Waits for a worker if all are busy.
+     *
+     * @param className the classname of the Extractor
+     * @param f the file
+     * @param maxChars the maximum number of characters of content, 0 for no maximum
+     * @return the extracted info, null if the extraction failed
+     */
+    ParsedFileInfo extract(final String className, final File f, final int maxChars) {
+        Worker worker;
+        try {
+            worker = borrow();
+        }
+        catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for a worker to extract " + f);
+            return null;
+        }
+        catch (IOException e) {
+            log.error("Can't start worker to extract " + f, e);
+            return null;
+        }
+        synchronized (this) {
+            busy.put(Thread.currentThread(), worker);
+        }
+        boolean healthy = false;
+        try {
+            ParsedFileInfo info = worker.extract(className, f, maxChars);
+            healthy = true;
+            return info;
+        }
+        catch (IOException e) {
+            log.warn("Worker crashed extracting " + f + ", skipping it", e);
+            return null;
+        }
+        finally {
+            // if the extraction is aborted because it takes too long, the worker is not healthy and is replaced
+            release(worker, healthy);
+        }
+    }
+
+    /**
+     * Abort the extraction a thread is waiting for, by killing the worker doing it. The thread then gets null as the result.
+     *
+     * @param thread the thread that called {@link #extract(String, File, int)}
+     * @return true if the thread was waiting for a worker
+     */
+    synchronized boolean abort(final Thread thread) {
+        Worker worker = (Worker) busy.get(thread);
+        if (worker == null) {
+            return false;
+        }
+        log.debug("Killing worker extracting for " + thread.getName());
+        worker.kill();
+        return true;
+    }
+
+    /**
+     * Get an idle worker, starting one if the pool is not full.
+     *
+     * @return the worker
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IOException if a worker can't be started
+     */
+    private synchronized Worker borrow() throws InterruptedException, IOException {
+        while (true) {
+            if (shutdown) {
+                throw new IOException("Pool has been shut down");
+            }
+            if (!idle.isEmpty()) {
+                return (Worker) idle.remove(idle.size() - 1);
+            }
+            if (running < size) {
+                Worker worker = new Worker(getCommand());
+                running++;
+                started++;
+                return worker;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Return a worker to the pool, or stop it if it has done enough or is not healthy.
+     *
+     * @param worker the worker
+     * @param healthy whether the worker is still usable
+     */
+    private synchronized void release(final Worker worker, final boolean healthy) {
+        busy.remove(Thread.currentThread());
+        if (healthy && !shutdown && worker.count < documents) {
+            idle.add(worker);
+        } else {
+            worker.destroy();
+            running--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stop all idle workers, and the others when they are done.
+     */
+    synchronized void shutdown() {
+        shutdown = true;
+        for (Iterator iter = idle.iterator(); iter.hasNext();) {
+            ((Worker) iter.next()).destroy();
+            running--;
+        }
+        idle.clear();
+        notifyAll();
+    }
+
+    /**
+     * @return Returns the number of workers started.
+     */
+    synchronized int getStarted() {
+        return started;
+    }
+
+    /**
+     * Get the command line that starts a worker.
+     *
+     * @return the command line
+     */
+    private String[] getCommand() {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new String[] {java, "-Xmx" + heap + "m", "-cp", getClassPath(), ExtractionWorker.class.getName()};
+    }
+
+    /**
+     * Get the classpath for a worker: the classpath of this JVM, the location of the classes of Zilverline, and the jars in the
+     * lib directory next to it (WEB-INF/lib) or in the same directory, if the classes are in a jar.
+     *
+     * @return the classpath
+     */
+    static String getClassPath() {
+        List entries = new ArrayList();
+        StringTokenizer tokens = new StringTokenizer(System.getProperty("java.class.path"), File.pathSeparator);
+        while (tokens.hasMoreTokens()) {
+            entries.add(tokens.nextToken());
+        }
+        CodeSource source = ExtractionWorker.class.getProtectionDomain().getCodeSource();
+        if (source != null && "file".equals(source.getLocation().getProtocol())) {
+            File location = toFile(source.getLocation());
+            addEntry(entries, location);
+            File lib = location.isDirectory() ? new File(location.getParentFile(), "lib") : location.getParentFile();
+            File[] jars = lib.listFiles();
+            for (int i = 0; jars != null && i < jars.length; i++) {
+                if (jars[i].getName().endsWith(".jar")) {
+                    addEntry(entries, jars[i]);
+                }
+            }
+        }
+        StringBuffer cp = new StringBuffer();
+        for (Iterator iter = entries.iterator(); iter.hasNext();) {
+            cp.append(iter.next());
+            if (iter.hasNext()) {
+                cp.append(File.pathSeparator);
+            }
+        }
+        return cp.toString();
+    }
+
+    /**
+     * Add a file to the entries of a classpath, unless it is there already.
+     *
+     * @param entries the entries
+     * @param f the file
+     */
+    private static void addEntry(final List entries, final File f) {
+        String path = f.getAbsolutePath();
+        if (!entries.contains(path)) {
+            entries.add(path);
+        }
+    }
+
+    /**
+     * Convert a file URL to a File.
+     *
+     * @param url the URL
+     * @return the File
+     */
+    private static File toFile(final URL url) {
+        try {
+            return new File(URLDecoder.decode(url.getPath(), "UTF-8"));
+        }
+        catch (UnsupportedEncodingException e) {
+            return new File(url.getPath());
+        }
+    }
+}
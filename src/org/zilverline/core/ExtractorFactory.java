@@ -65,6 +65,27 @@ public final class ExtractorFactory {
     /** Map holding mappings from mime types to extractor classname. */
     private Map mimeMappings = new TreeMap();
 
+    /** Map holding the number of seconds an extraction may take, by extractor classname; by default there are none. */
+    private Map timeouts = new TreeMap();
+
+    /**
+     * Map holding the number of threads extracting files at the same time, by extractor classname, for extractors that have a lane
+     * of their own in the indexing pipeline; by default there are none.
+     */
+    private Map lanes = new TreeMap();
+
+    /** Number of worker JVMs extracting files, by default 0: files are extracted in this JVM. */
+    private int workers;
+
+    /** Maximum heap of a worker JVM in megabytes, 0 for the default. */
+    private int workerHeap;
+
+    /** Number of documents after which a worker JVM is replaced, 0 for the default. */
+    private int workerDocuments;
+
+    /** The pool of worker JVMs, started when first needed. */
+    private transient ExtractionWorkerPool pool;
+
     /** The Factory ignores case by default. */
     private boolean caseSensitive = false;
 
@@ -142,7 +163,7 @@ public final class ExtractorFactory {
 
     /**
      * Returns an Extractor for a given File, based on its extension. A new Extractor object is created everytime, preventing any
-     * threadsafety issues
+     * threadsafety issues. If there are worker JVMs, the Extractor has the file extracted by a worker.
      * 
      * @param f File that needs an Extractor
      * 
@@ -151,16 +172,7 @@ public final class ExtractorFactory {
     public Extractor createExtractor(final File f) {
         log.debug("returning Extractor for: " + f.getName());
 
-        String extension = FileUtils.getExtension(f);
-
-        if (!caseSensitive) {
-            extension = extension.toLowerCase();
-        }
-        
-
-        String className = (String) mappings.get(extension);
-        // if we found nothing return the FileInfoExtractor if that's the default
-        if (!StringUtils.hasText(className) && defaultFileinfo) className = "org.zilverline.extractors.FileInfoExtractor";
+        String className = getClassName(f);
 
         try {
             if (className != null) {
@@ -169,6 +181,10 @@ public final class ExtractorFactory {
                 if (c != null) {
                     log.debug("Returning Extractor: " + className);
 
+                    if (workers > 0) {
+                        // the worker creates the Extractor
+                        return new RemoteExtractor(className, getPool());
+                    }
                     return (Extractor) c.newInstance();
                 }
             }
@@ -188,6 +204,28 @@ public final class ExtractorFactory {
         return null;
     }
 
+    /**
+     * Returns the classname of the Extractor for a File, based on its extension.
+     * 
+     * @param f File that needs an Extractor
+     * 
+     * @return classname of the Extractor, or null if mapping is unknown
+     */
+    public String getClassName(final File f) {
+        String extension = FileUtils.getExtension(f);
+
+        if (!caseSensitive) {
+            extension = extension.toLowerCase();
+        }
+
+        String className = (String) mappings.get(extension);
+        // if we found nothing return the FileInfoExtractor if that's the default
+        if (!StringUtils.hasText(className) && defaultFileinfo) {
+            className = "org.zilverline.extractors.FileInfoExtractor";
+        }
+        return className;
+    }
+
     /**
      * Get the MIME-type of a given file.
      * 
@@ -315,6 +353,160 @@ public final class ExtractorFactory {
         return mappings;
     }
 
+    /**
+     * Get the number of seconds an extraction may take for specific extractors. Other extractors use the default of the
+     * CollectionManager.
+     * 
+     * @return the timeouts as a Map with extractor classname as key and number of seconds (Integer) as value
+     */
+    public Map getTimeouts() {
+        if (timeouts == null) {
+            // factories stored before there were timeouts
+            timeouts = new TreeMap();
+        }
+        return timeouts;
+    }
+
+    /**
+     * Set the number of seconds an extraction may take for specific extractors.
+     * 
+     * @param theTimeouts the timeouts as a Map with extractor classname as key and number of seconds (Integer) as value
+     */
+    public void setTimeouts(final Map theTimeouts) {
+        timeouts = theTimeouts;
+    }
+
+    /**
+     * Get the number of seconds an extraction by the given extractor may take.
+     * 
+     * @param ext the Extractor
+     * @return the number of seconds, or null if the extractor has no specific timeout
+     */
+    public Integer getTimeout(final Extractor ext) {
+        if (ext instanceof RemoteExtractor) {
+            return (Integer) getTimeouts().get(((RemoteExtractor) ext).getClassName());
+        }
+        return (Integer) getTimeouts().get(ext.getClass().getName());
+    }
+
+    /**
+     * Get the number of threads extracting files at the same time for extractors that have a lane of their own in the indexing
+     * pipeline. Files of other extractors share the default lane, which has <code>indexingThreads</code> of the CollectionManager.
+     * Giving expensive extractors, such as the PDFExtractor, a lane of their own keeps a run of large files from holding up all
+     * others.
+     * 
+     * @return the lanes as a Map with extractor classname as key and number of threads (Integer) as value
+     */
+    public Map getLanes() {
+        if (lanes == null) {
+            // factories stored before there were lanes
+            lanes = new TreeMap();
+        }
+        return lanes;
+    }
+
+    /**
+     * Set the number of threads extracting files at the same time for extractors that have a lane of their own.
+     * 
+     * @param theLanes the lanes as a Map with extractor classname as key and number of threads (Integer) as value
+     */
+    public void setLanes(final Map theLanes) {
+        lanes = theLanes;
+    }
+
+    /**
+     * Get the pool of worker JVMs, creating it if needed.
+     * 
+     * @return the pool
+     */
+    private synchronized ExtractionWorkerPool getPool() {
+        if (pool == null) {
+            pool = new ExtractionWorkerPool(workers, workerHeap, workerDocuments);
+        }
+        return pool;
+    }
+
+    /**
+     * Stop the worker JVMs, new ones are started with the current settings when needed.
+     */
+    private synchronized void resetPool() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Stop the worker JVMs. Called when the application stops.
+     */
+    public void destroy() {
+        resetPool();
+    }
+
+    /**
+     * Get the number of worker JVMs extracting files.
+     * 
+     * @return the number of workers, 0 if files are extracted in this JVM
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Set the number of worker JVMs extracting files. Extracting in separate JVMs keeps huge documents from exhausting the heap
+     * of this JVM, at the cost of starting the workers and copying the extracted content.
+     * 
+     * @param theWorkers the number of workers, 0 to extract files in this JVM
+     */
+    public void setWorkers(final int theWorkers) {
+        if (theWorkers != workers) {
+            workers = Math.max(0, theWorkers);
+            resetPool();
+        }
+    }
+
+    /**
+     * Get the maximum heap of a worker JVM.
+     * 
+     * @return the heap in megabytes, 0 for the default
+     */
+    public int getWorkerHeap() {
+        return workerHeap;
+    }
+
+    /**
+     * Set the maximum heap of a worker JVM.
+     * 
+     * @param theWorkerHeap the heap in megabytes, 0 for the default
+     */
+    public void setWorkerHeap(final int theWorkerHeap) {
+        if (theWorkerHeap != workerHeap) {
+            workerHeap = Math.max(0, theWorkerHeap);
+            resetPool();
+        }
+    }
+
+    /**
+     * Get the number of documents after which a worker JVM is replaced.
+     * 
+     * @return the number of documents, 0 for the default
+     */
+    public int getWorkerDocuments() {
+        return workerDocuments;
+    }
+
+    /**
+     * Set the number of documents after which a worker JVM is replaced.
+     * 
+     * @param theWorkerDocuments the number of documents, 0 for the default
+     */
+    public void setWorkerDocuments(final int theWorkerDocuments) {
+        if (theWorkerDocuments != workerDocuments) {
+            workerDocuments = Math.max(0, theWorkerDocuments);
+            resetPool();
+        }
+    }
+
     /**
      * Find all Extractors on the classpath. This is an expensive operation, use with care.
      * 
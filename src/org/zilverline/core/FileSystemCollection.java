@@ -21,23 +21,45 @@
 
 package org.zilverline.core;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 
 import org.springframework.util.StringUtils;
+import org.zilverline.extractors.AbstractExtractor;
 import org.zilverline.service.CollectionManagerImpl;
+import org.zilverline.util.ContentHasher;
+import org.zilverline.util.DigestSet;
+import org.zilverline.util.DirectoryCrawler;
 import org.zilverline.util.FileUtils;
 import org.zilverline.util.StopWatch;
+import org.zilverline.util.ThrottledInputStream;
 
 /**
  * A Collection is a number of documents in a directory that are indexed together.
@@ -49,6 +71,48 @@ public class FileSystemCollection extends AbstractCollection {
     /** logger for Commons logging. */
     private static Log log = LogFactory.getLog(FileSystemCollection.class);
 
+    /** Lists and classifies the entries of the directories being indexed. */
+    private static final DirectoryCrawler CRAWLER = new DirectoryCrawler();
+
+    /**
+     * Name of the file in the index directory that marks an index created from scratch, but not finished yet. It is removed when
+     * the index is complete.
+     */
+    static final String CHECKPOINT_FILE = "zilverline.checkpoint";
+
+    /** Suffix of the directory beside the index directory in which a full index is built. */
+    static final String SHADOW_SUFFIX = ".new";
+
+    /** Suffix, followed by its number, of the temporary index of a partition of a full index, beside the index being built. */
+    static final String PARTITION_SUFFIX = ".part";
+
+    /**
+     * Files up to this size (in bytes) are read into memory once, so that they can be hashed before they are parsed. Larger files
+     * are hashed while they are parsed.
+     */
+    static final int SINGLE_READ_LIMIT = 2 * 1024 * 1024;
+
+    /** Size of the buffer that files are read through, and that is taken from the read throttle at a time. */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** The manifest of the files in this collection, only available while indexing. */
+    private transient Manifest manifest;
+
+    /** The files whose extraction took too long, read when first needed. */
+    private transient Quarantine quarantine;
+
+    /**
+     * Whether very large files must get their MD5 hash even if the manager allows tree hashes, because the index may contain
+     * their MD5 hash.
+     */
+    private transient boolean md5Only;
+
+    /** Whether changes in the content directory are indexed as they happen. */
+    private boolean watch;
+
+    /** The maximum number of characters of content indexed per document, null for the manager's default. */
+    private Integer maxContentChars;
+
     /**
      * Default Constructor setting all fields to non null defaults.
      */
@@ -91,6 +155,53 @@ public class FileSystemCollection extends AbstractCollection {
         return getContentDir().getAbsolutePath();
     }
 
+    /**
+     * Indicates whether changes in the content directory are indexed as they happen, instead of at the next index only.
+     * 
+     * @return true if the content directory is watched
+     * @see org.zilverline.service.WatchService
+     */
+    public final boolean isWatch() {
+        return watch;
+    }
+
+    /**
+     * @param thisWatch Whether changes in the content directory are indexed as they happen.
+     */
+    public final void setWatch(final boolean thisWatch) {
+        this.watch = thisWatch;
+    }
+
+    /**
+     * @return Returns the maximum number of characters of content indexed per document, null for the manager's default.
+     */
+    public final Integer getMaxContentChars() {
+        return maxContentChars;
+    }
+
+    /**
+     * @param thisMaxContentChars The maximum number of characters of content indexed per document to set, null for the
+     *            manager's default.
+     */
+    public final void setMaxContentChars(final Integer thisMaxContentChars) {
+        this.maxContentChars = thisMaxContentChars;
+    }
+
+    /**
+     * Gets the maximum number of characters of content indexed per document. If not set, the manager's default is used.
+     * 
+     * @return the maximum, 0 for no maximum
+     */
+    public final int getMaxContentCharsWithManagerDefaults() {
+        if (maxContentChars != null) {
+            return maxContentChars.intValue();
+        }
+        if (manager != null && manager.getMaxContentChars() != null) {
+            return manager.getMaxContentChars().intValue();
+        }
+        return 0;
+    }
+
     /**
      * Prints Collection as String for logging.
      * 
@@ -101,7 +212,7 @@ public class FileSystemCollection extends AbstractCollection {
             + contentDir + ",\n\t\turl: " + url + ",\n\t\texistsOnDisk: " + existsOnDisk + ",\n\t\tindexDir: " + indexDir
             + ",\n\t\tcacheDir: " + cacheDir + ",\n\t\tcacheUrl: " + cacheUrl + ",\n\t\tanalyzer: " + analyzer
             + ",\n\t\tkeepCache: " + keepCache + ",\n\t\tisKeepCacheSet: " + isKeepCacheSet + ",\n\t\tnumberOfDocs: "
-            + numberOfDocs + ",\n\t\tmanager: " + manager + ",\n\t\tlastIndexed: " + lastIndexed;
+            + numberOfDocs + ",\n\t\twatch: " + watch + ",\n\t\tmaxContentChars: " + maxContentChars + ",\n\t\tmanager: " + manager + ",\n\t\tlastIndexed: " + lastIndexed;
         // +
         // ",\n\t\tmd5DocumentCache:
         // " + md5DocumentCache +
@@ -111,13 +222,34 @@ public class FileSystemCollection extends AbstractCollection {
     /**
      * Index the given Collection.
      * 
+     * <p>
+     * A full index of a large collection may take hours. Whenever the IndexWriter is flushed, the files recorded in the manifest
+     * so far are synced to disk as well, so that the documents added so far are a checkpoint. If the index is stopped or the JVM
+     * dies, the next index (full or not) continues from the last checkpoint: it skips the files recorded in the manifest instead
+     * of starting from scratch.
+     * </p>
+     * <p>
+     * A full index of a collection that has an index already is built beside it, in the index directory with suffix
+     * <code>.new</code>, and replaces the old index once complete. Until then searches use the old index, and if the full index
+     * fails, the old index is kept.
+     * </p>
+     * <p>
+     * If the manager sets <code>indexPartitions</code>, an index from scratch is built in that many partitions at the same time.
+     * </p>
+     * 
      * @param fullIndex indicated whether a full or incremental index should be created
      * @throws IndexException if the Collections can not be indexed
      */
     public final void index(final boolean fullIndex) throws IndexException {
         log.info("Starting creation of index of " + this.getContentDir());
+        awaitWarm();
+        beginRun();
+        // until this run starts adding documents, the number of documents is that of the index
+        counters = null;
 
-        IndexWriter writer = null;
+        IndexSession session = null;
+        // the hashes of the documents in the old index, while a new one is built beside it
+        Set oldHashes = null;
 
         try {
             // record start time
@@ -127,6 +259,9 @@ public class FileSystemCollection extends AbstractCollection {
 
             // make sure the index exists
             File indexDirectory = this.getIndexDirWithManagerDefaults();
+            // the directory the index is built in, which is beside the index directory when an existing index is rebuilt
+            File buildDirectory = indexDirectory;
+            File shadow = new File(indexDirectory.getPath() + SHADOW_SUFFIX);
 
             // reindex if the index is not there or invalid
             int currentNumberOfDocs = 0;
@@ -136,44 +271,114 @@ public class FileSystemCollection extends AbstractCollection {
                 indexDirectory.mkdirs();
             } else {
                 currentNumberOfDocs = getNumberOfDocs();
+                if (new File(indexDirectory, CHECKPOINT_FILE).exists()) {
+                    // an earlier index from scratch has been interrupted, continue where it was
+                    log.info("Resuming interrupted index of " + this.getName() + " with " + currentNumberOfDocs + " documents");
+                    mustReindex = false;
+                    getIndexWriter().removeStaleLock();
+                } else if (new File(shadow, CHECKPOINT_FILE).exists() && IndexReader.indexExists(shadow)) {
+                    // an earlier rebuild has been interrupted, continue where it was
+                    buildDirectory = shadow;
+                    mustReindex = false;
+                } else if (mustReindex) {
+                    buildDirectory = shadow;
+                }
             }
-
-            // create an index(writer)
-            writer = new IndexWriter(indexDirectory, this.createAnalyzer(), mustReindex);
-            // see whether there are specific indexing settings in manager
-            if (manager.getMergeFactor() != null) {
-                writer.setMergeFactor(manager.getMergeFactor().intValue());
-            }
-            if (manager.getMinMergeDocs() != null) {
-                writer.setMaxBufferedDocs(manager.getMinMergeDocs().intValue());
+            boolean rebuilding = buildDirectory.equals(shadow);
+            if (!rebuilding && shadow.exists()) {
+                log.info("Removing unfinished rebuild " + shadow);
+                FileUtils.removeDir(shadow);
             }
-
-            if (manager.getMaxMergeDocs() != null) {
-                writer.setMaxMergeDocs(manager.getMaxMergeDocs().intValue());
+            if (rebuilding) {
+                // uploads and watchers wait until the new index is in place
+                beginRebuild();
+                // the old index keeps its hashes, the new one starts with its own
+                if (getMd5DocumentCache() == null) {
+                    init();
+                }
+                oldHashes = md5DocumentCache;
+                md5DocumentCache = Collections.synchronizedSet(new DigestSet());
+                getIndexWriter().setDirectory(shadow);
+                if (mustReindex) {
+                    log.info("Rebuilding index of " + this.getName() + " in " + shadow + ", searches use the old index until done");
+                    currentNumberOfDocs = 0;
+                } else {
+                    getIndexWriter().removeStaleLock();
+                    currentNumberOfDocs = readHashes(shadow, md5DocumentCache);
+                    log.info("Resuming interrupted rebuild of " + this.getName() + " with " + currentNumberOfDocs + " documents");
+                }
             }
+            File checkpoint = new File(buildDirectory, CHECKPOINT_FILE);
 
-            resetCache(fullIndex);
+            resetCache(mustReindex);
 
-            // prepare Index parameters
-            IndexCommand ic = new IndexCommand();
+            // when indexing incrementally, the manifest tells which files have not changed since the last time
+            manifest = new Manifest(buildDirectory);
+            if (!mustReindex) {
+                // without a manifest, unchanged files are recognized by their hash only, so they must be hashed like before
+                md5Only = !new File(buildDirectory, Manifest.FILE_NAME).exists();
+                manifest.load();
+            }
 
-            ic.setWriter(writer);
-            ic.setCollection(this);
-            ic.setFile(this.getContentDir());
-            ic.setInZip(false);
-            ic.setStart(true);
+            startCounting(currentNumberOfDocs);
+            // an index from scratch can be built in partitions at the same time, otherwise the session may use a pipeline
+            int partitions = 1;
+            if (mustReindex && manager.getIndexPartitions() != null) {
+                partitions = manager.getIndexPartitions().intValue();
+            }
+            // open a session on the index(writer), shared with uploads
+            session = new IndexSession(manifest, mustReindex, partitions < 2);
+            SharedIndexWriter writer = session.getWriter();
+            if (mustReindex) {
+                // the index is empty now, mark it as unfinished and forget about the files of the old one
+                checkpoint.createNewFile();
+                manifest.save(false);
+            }
 
             // and start indexing
-            this.indexDocs(ic);
-            log.debug("Optimizing index of " + this.getContentDir());
-            writer.optimize();
+            IndexCommand ic = session.createCommand(this.getContentDir());
+            if (partitions > 1) {
+                indexPartitioned(ic, partitions);
+            } else {
+                this.indexDocs(ic);
+            }
+            session.finishPipeline();
+            if (!mustReindex && !stopRequested) {
+                // all files have been crawled, so the files in the manifest that have not been seen are gone
+                removeUnseenDocuments(session);
+            }
+            session.finish(!stopRequested);
+            if (!stopRequested && checkpoint.exists() && !checkpoint.delete()) {
+                log.warn("Can't remove " + checkpoint + ", the next full index of " + this.getName() + " will resume this one");
+            }
+            if (OptimizePolicy.mustOptimize(manager, buildDirectory, mustReindex || rebuilding)) {
+                writer.optimize();
+            }
+            int docCount = writer.docCount();
+            if (rebuilding && !stopRequested) {
+                // the quarantine is kept with the index
+                File quarantined = new File(indexDirectory, Quarantine.FILE_NAME);
+                if (quarantined.exists() && !quarantined.renameTo(new File(shadow, Quarantine.FILE_NAME))) {
+                    log.warn("Can't move " + quarantined + " to the new index of " + this.getName());
+                }
+                writer.replaceIndex();
+                oldHashes = null;
+            }
+            // close the session, so all documents are on disk before the info of this collection is updated
+            session.close();
+            session = null;
 
             // update the info of this collection
             this.init();
 
             // record end time and report duration of indexing
             watch.stop();
-            log.info("Indexed " + (writer.docCount() - currentNumberOfDocs) + " new documents in " + watch.elapsedTime());
+            // the documents of changed and removed files have been removed along the way
+            int added = docCount - currentNumberOfDocs + counting().getRemoved();
+            log.info("Indexed " + added + " new documents in " + watch.elapsedTime());
+            if (manager.getExtractionCache() != null) {
+                log.info(manager.getExtractionCache());
+            }
         }
         catch (IOException e) {
             throw new IndexException("Error indexing '" + this.getName() + "'. Possibly unable to remove old index", e);
@@ -182,31 +387,397 @@ public class FileSystemCollection extends AbstractCollection {
             throw new IndexException("Error indexing '" + this.getName() + "'", e);
         }
         finally {
-            if (writer != null) {
+            if (session != null) {
+                // something went wrong
+                session.abort();
+            }
+            manifest = null;
+            md5Only = false;
+            if (oldHashes != null) {
+                // the rebuild has failed or been stopped, the old index stays, and the next index continues the rebuild
+                md5DocumentCache = oldHashes;
                 try {
-                    writer.close();
+                    getIndexWriter().setDirectory(null);
                 }
                 catch (IOException e1) {
-                    // assume the index is made, just can't close, so don't
-                    // rethrow, just log
-                    log.error("Error closing index for " + this.getName(), e1);
+                    log.error("Error closing new index for " + this.getName(), e1);
                 }
             }
+            endRun();
         }
 
     }
 
     /**
-     * Index the given Collection.
+     * Indexes the content directory in a number of partitions at the same time, each in a thread of its own writing its own
+     * temporary index, and adds those to the index when all partitions are done. The partitions take the entries of the content
+     * directory one by one, so a partition that is done with a small subdirectory takes the next entry, while another is still
+     * busy with a large one. Documents with the same content in different partitions are still added once, since all partitions
+     * share the hashes of the collection.
      * 
-     * @param fullIndex indicated whether a full or incremental index should be created
-     * @throws IndexException if the Collections can not be indexed
+     * @param ic IndexCommand of the content directory, with the writer of the index being built
+     * @param partitions the number of partitions
+     * @throws IndexException if a partition fails, none of the documents are added then
+     * @throws IOException if the temporary indexes can't be created or added to the index
+     */
+    private void indexPartitioned(final IndexCommand ic, final int partitions) throws IndexException, IOException {
+        DirectoryCrawler.Entry[] entries = CRAWLER.list(ic.getFile());
+        if (entries == null) {
+            log.warn("Could not access '" + ic.getFile() + "' for indexing.");
+            return;
+        }
+        log.info("Indexing " + getName() + " in " + partitions + " partitions");
+        PartitionWork work = new PartitionWork(entries);
+        File[] dirs = new File[partitions];
+        SharedIndexWriter[] writers = new SharedIndexWriter[partitions];
+        Thread[] threads = new Thread[partitions];
+        try {
+            try {
+                for (int i = 0; i < partitions; i++) {
+                    dirs[i] = new File(ic.getWriter().getDirectory().getPath() + PARTITION_SUFFIX + i);
+                    // left behind by an earlier run that died
+                    FileUtils.removeDir(dirs[i]);
+                    writers[i] = new SharedIndexWriter(this);
+                    writers[i].setDirectory(dirs[i]);
+                    writers[i].open(true);
+                    final IndexCommand partitionIc = new IndexCommand(ic);
+                    partitionIc.setWriter(writers[i]);
+                    partitionIc.setStart(false);
+                    final PartitionWork theWork = work;
+                    threads[i] = new Thread(new Runnable() {
+                        public void run() {
+                            indexPartition(partitionIc, theWork);
+                        }
+                    });
+                    threads[i].setName(getName() + "PartitionThread-" + i);
+                    threads[i].start();
+                }
+            }
+            catch (IOException e) {
+                work.fail(new IndexException("Can't create the partitions of '" + getName() + "'", e));
+            }
+            // wait for all partitions, a stop request makes them stop as well
+            for (int i = 0; i < threads.length; i++) {
+                while (threads[i] != null && threads[i].isAlive()) {
+                    try {
+                        threads[i].join();
+                    }
+                    catch (InterruptedException e) {
+                        for (int j = 0; j < threads.length; j++) {
+                            if (threads[j] != null) {
+                                threads[j].interrupt();
+                            }
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < writers.length; i++) {
+                if (writers[i] != null) {
+                    writers[i].close();
+                }
+            }
+            if (work.getFailure() != null) {
+                throw work.getFailure();
+            }
+            log.info("Adding the " + partitions + " partitions to the index of " + getName());
+            ic.getWriter().addIndexes(dirs);
+        }
+        finally {
+            for (int i = 0; i < partitions; i++) {
+                if (writers[i] != null && writers[i].isOpen()) {
+                    try {
+                        writers[i].close();
+                    }
+                    catch (IOException e) {
+                        log.warn("Can't close partition " + dirs[i], e);
+                    }
+                }
+                if (dirs[i] != null) {
+                    FileUtils.removeDir(dirs[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Main loop of a partition: index the entries of the content directory that no other partition has taken yet.
+     * 
+     * @param template IndexCommand with the writer of the partition
+     * @param work the entries to index
+     */
+    private void indexPartition(final IndexCommand template, final PartitionWork work) {
+        try {
+            DirectoryCrawler.Entry entry;
+            while ((entry = work.next()) != null) {
+                IndexCommand localIc = new IndexCommand(template);
+                localIc.setEntry(entry);
+                indexDocs(localIc);
+            }
+        }
+        catch (IndexException e) {
+            log.error("Can't index partition of " + getName() + ", stopping", e);
+            work.fail(e);
+        }
+        catch (RuntimeException e) {
+            log.error("Unexpected error indexing partition of " + getName() + ", stopping", e);
+            work.fail(new IndexException("Unexpected error indexing '" + getName() + "'", e));
+        }
+        finally {
+            ExtractionThread.releaseCurrentThread();
+        }
+    }
+
+    /**
+     * The entries of the content directory still to be indexed by the partitions, and the first failure of a partition.
+     */
+    private static final class PartitionWork {
+        /** The entries not taken yet. */
+        private final Iterator entries;
+
+        /** The first failure, if any. */
+        private IndexException failure;
+
+        /**
+         * Create the work for the given entries.
+         * 
+         * @param theEntries the entries of the content directory
+         */
+        PartitionWork(final DirectoryCrawler.Entry[] theEntries) {
+            entries = Arrays.asList(theEntries).iterator();
+        }
+
+        /**
+         * Take the next entry.
+         * 
+         * @return the entry, or null if all have been taken or a partition has failed
+         */
+        synchronized DirectoryCrawler.Entry next() {
+            if (failure != null || !entries.hasNext()) {
+                return null;
+            }
+            return (DirectoryCrawler.Entry) entries.next();
+        }
+
+        /**
+         * Record the failure of a partition, which stops the others.
+         * 
+         * @param e the failure
+         */
+        synchronized void fail(final IndexException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        /**
+         * @return Returns the first failure, null if none.
+         */
+        synchronized IndexException getFailure() {
+            return failure;
+        }
+    }
+
+    /**
+     * A session on the index of this collection, as used by index() and indexChanges(): the shared writer, the manifest that is
+     * checkpointed at every flush of the writer, and the pipeline of extraction threads, if any.
+     */
+    private final class IndexSession {
+        /** The writer, with an open session. */
+        private SharedIndexWriter writer;
+
+        /** The manifest to checkpoint and save, or null if another run saves it. */
+        private Manifest runManifest;
+
+        /** Checkpoints the manifest at every flush. */
+        private SharedIndexWriter.Listener checkpointer;
+
+        /** The pipeline, null if documents are indexed by the calling thread. */
+        private IndexingPipeline pipeline;
+
+        /**
+         * Open a session on the index.
+         * 
+         * @param theManifest the manifest of the run, or null if another run saves it
+         * @param create true to create a new index
+         * @param mayUsePipeline true if the manager may have the documents extracted by a pipeline of threads
+         * @throws IOException if the index can't be opened
+         */
+        IndexSession(final Manifest theManifest, final boolean create, final boolean mayUsePipeline) throws IOException {
+            // use a pipeline of threads if the manager says so, or if extractors have lanes of their own
+            int threads = 1;
+            if (manager.getIndexingThreads() != null) {
+                threads = manager.getIndexingThreads().intValue();
+            }
+            Map lanes = manager.getFactory().getLanes();
+            if (mayUsePipeline && (threads > 1 || !lanes.isEmpty())) {
+                int queueSize = IndexingPipeline.DEFAULT_QUEUE_SIZE;
+                if (manager.getIndexingQueueSize() != null) {
+                    queueSize = manager.getIndexingQueueSize().intValue();
+                }
+                pipeline = new IndexingPipeline(FileSystemCollection.this, threads, queueSize, lanes);
+                pipeline.start();
+            }
+            try {
+                writer = getIndexWriter();
+                writer.open(create);
+            }
+            catch (IOException e) {
+                writer = null;
+                abort();
+                throw e;
+            }
+            runManifest = theManifest;
+            if (runManifest != null) {
+                // every flush of the writer is a checkpoint
+                checkpointer = new SharedIndexWriter.Listener() {
+                    public void flushed(final SharedIndexWriter w) {
+                        try {
+                            runManifest.checkpoint();
+                        }
+                        catch (IOException e) {
+                            log.warn("Can't save checkpoint of " + getName(), e);
+                        }
+                    }
+                };
+                writer.addListener(checkpointer);
+            }
+        }
+
+        /**
+         * @return Returns the writer, with an open session.
+         */
+        SharedIndexWriter getWriter() {
+            return writer;
+        }
+
+        /**
+         * Create the command to index a file in this session.
+         * 
+         * @param theFile the file or directory
+         * @return the command
+         */
+        IndexCommand createCommand(final File theFile) {
+            IndexCommand ic = new IndexCommand();
+            ic.setWriter(writer);
+            ic.setCollection(FileSystemCollection.this);
+            ic.setFile(theFile);
+            ic.setInZip(false);
+            ic.setStart(true);
+            ic.setPipeline(pipeline);
+            return ic;
+        }
+
+        /**
+         * Wait for the pipeline, if any, to index all documents. Documents indexed afterwards are indexed by the calling thread.
+         * 
+         * @throws IndexException if a worker failed
+         */
+        void finishPipeline() throws IndexException {
+            if (pipeline != null) {
+                pipeline.finish();
+                pipeline = null;
+                // the unpacked archives could not be removed while the workers were using them
+                if (!isKeepCacheWithManagerDefaults()) {
+                    FileUtils.removeDir(getCacheDirWithManagerDefaults());
+                }
+            }
+        }
+
+        /**
+         * Finish indexing: wait for the pipeline and save the manifest.
+         * 
+         * @param complete true if all files have been indexed
+         * @throws IndexException if a worker failed
+         */
+        void finish(final boolean complete) throws IndexException {
+            finishPipeline();
+            if (checkpointer != null) {
+                writer.removeListener(checkpointer);
+                checkpointer = null;
+            }
+            if (runManifest != null) {
+                try {
+                    runManifest.save(complete);
+                }
+                catch (IOException e) {
+                    log.warn("Can't save manifest of " + getName() + ", next index will hash the files again", e);
+                }
+            }
+        }
+
+        /**
+         * Close the session, so all documents are on disk.
+         * 
+         * @throws IOException if the index can't be closed
+         */
+        void close() throws IOException {
+            SharedIndexWriter w = writer;
+            writer = null;
+            w.close();
+        }
+
+        /**
+         * Stop the pipeline and close the session after something went wrong.
+         */
+        void abort() {
+            if (pipeline != null) {
+                // stop all threads
+                pipeline.abort();
+                pipeline = null;
+            }
+            if (writer != null) {
+                if (checkpointer != null) {
+                    writer.removeListener(checkpointer);
+                    checkpointer = null;
+                }
+                try {
+                    close();
+                }
+                catch (IOException e1) {
+                    // assume the index is made, just can't close, so don't rethrow, just log
+                    log.error("Error closing index for " + getName(), e1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a single file to the index of this Collection.
+     * 
+     * @param theFile the file, in the content directory of this collection
+     * @throws IndexException if the file can not be indexed
      */
-    // TODO: this really looks like the previous method: refactor!
     public final void indexFile(final File theFile) throws IndexException {
-        log.info("Adding File " + theFile + " to collection " + name);
+        indexFiles(Collections.singletonList(theFile));
+    }
 
-        IndexWriter writer = null;
+    /**
+     * Add a number of files to the index of this Collection, in one session of the shared IndexWriter. Documents of earlier
+     * versions of the files are removed from the index.
+     * 
+     * @param theFiles List of Files, in the content directory of this collection
+     * @throws IndexException if the files can not be indexed
+     */
+    public final void indexFiles(final List theFiles) throws IndexException {
+        indexChanges(theFiles, Collections.EMPTY_LIST);
+    }
+
+    /**
+     * Bring the index of this Collection up to date with a number of changes in the content directory, in one session of the
+     * shared IndexWriter. Documents of earlier versions of the changed files, and of the deleted files, are removed from the index.
+     * 
+     * @param theFiles List of created or modified Files, in the content directory of this collection
+     * @param deletedLocations List of the locations (paths relative to the content directory) of deleted files
+     * @throws IndexException if the files can not be indexed
+     */
+    public final void indexChanges(final List theFiles, final List deletedLocations) throws IndexException {
+        log.info("Adding " + theFiles.size() + " files to collection " + name + ", removing " + deletedLocations.size());
+        awaitWarm();
+        // changes made while the index is rebuilt would only end up in the new index, so wait for it
+        beginRun();
+
+        IndexSession session = null;
+        Manifest ownManifest = null;
 
         try {
             // record start time
@@ -216,6 +787,8 @@ public class FileSystemCollection extends AbstractCollection {
 
             // make sure the index exists
             File indexDirectory = this.getIndexDirWithManagerDefaults();
+            // record the files in the manifest, so that the next index does not extract them again
+            ownManifest = shareManifest(indexDirectory);
 
             int currentNumberOfDocs = getNumberOfDocs();
 
@@ -223,42 +796,51 @@ public class FileSystemCollection extends AbstractCollection {
             if (!isIndexValid()) {
                 log.debug("Index for " + name + " is not valid, create a new one");
                 reindex = true;
+            } else {
+                // the files may replace earlier versions, which are at the same location
+                List locations = new ArrayList(deletedLocations);
+                for (Iterator iter = theFiles.iterator(); iter.hasNext();) {
+                    locations.add(getLocation((File) iter.next()));
+                }
+                if (md5DocumentCache == null) {
+                    init();
+                }
+                currentNumberOfDocs -= removeDocuments(locations, null);
             }
-
-            // create an index(writer)
-            writer = new IndexWriter(indexDirectory, this.createAnalyzer(), reindex);
-            // see whether there are specific indexing settings in manager
-            if (manager.getMergeFactor() != null) {
-                writer.setMergeFactor(manager.getMergeFactor().intValue());
-            }
-            if (manager.getMinMergeDocs() != null) {
-                writer.setMaxBufferedDocs(manager.getMinMergeDocs().intValue());
+            Manifest theManifest = manifest;
+            if (theManifest != null) {
+                for (Iterator iter = deletedLocations.iterator(); iter.hasNext();) {
+                    theManifest.remove((String) iter.next());
+                }
             }
 
-            if (manager.getMaxMergeDocs() != null) {
-                writer.setMaxMergeDocs(manager.getMaxMergeDocs().intValue());
+            if (counters == null || !getIndexWriter().isOpen()) {
+                // no running index to count along with
+                startCounting(currentNumberOfDocs);
             }
+            // open a session on the index(writer), shared with a running index, which checkpoints and saves its own manifest
+            session = new IndexSession(ownManifest, reindex, false);
 
-            // prepare Index parameters
-            IndexCommand ic = new IndexCommand();
-
-            ic.setWriter(writer);
-            ic.setCollection(this);
-            ic.setFile(theFile);
-            ic.setInZip(false);
-            ic.setStart(true);
-
-            // and start indexing
-            this.indexDocs(ic);
-            log.debug("Optimizing index of " + this.getContentDir());
-            writer.optimize();
+            for (Iterator iter = theFiles.iterator(); iter.hasNext();) {
+                File theFile = (File) iter.next();
+                log.debug("Adding File " + theFile + " to collection " + name);
+                indexFileAt(session, theFile);
+            }
+            session.finish(false);
+            if (OptimizePolicy.mustOptimize(manager, indexDirectory, reindex)) {
+                session.getWriter().optimize();
+            }
+            // close the session, so all documents are on disk before the info of this collection is updated
+            int docCount = session.getWriter().docCount();
+            session.close();
+            session = null;
 
             // update the info of this collection
             this.init();
 
             // record end time and report duration of indexing
             watch.stop();
-            log.info("Indexed " + (writer.docCount() - currentNumberOfDocs) + " new documents in " + watch.elapsedTime());
+            log.info("Indexed " + (docCount - currentNumberOfDocs) + " new documents in " + watch.elapsedTime());
         }
         catch (IOException e) {
             throw new IndexException("Error indexing '" + this.getName() + "'. Possibly unable to remove old index", e);
@@ -267,20 +849,42 @@ public class FileSystemCollection extends AbstractCollection {
             throw new IndexException("Error indexing '" + this.getName() + "'", e);
         }
         finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                }
-                catch (IOException e1) {
-                    // assume the index is made, just can't close, so don't
-                    // rethrow, just log
-                    log.error("Error closing index for " + this.getName(), e1);
-                }
+            if (session != null) {
+                session.abort();
             }
+            releaseManifest(ownManifest);
+            endRun();
         }
 
     }
 
+    /**
+     * Makes sure there is a manifest to record the files indexed in, for indexing changes. If an index is running, its manifest
+     * is used, and saved by that index. Otherwise the manifest of the index is loaded.
+     * 
+     * @param indexDirectory the index directory
+     * @return the manifest loaded, to be saved and released with {@link #releaseManifest(Manifest)}, or null if an index is running
+     */
+    private synchronized Manifest shareManifest(final File indexDirectory) {
+        if (manifest != null) {
+            return null;
+        }
+        manifest = new Manifest(indexDirectory);
+        manifest.load();
+        return manifest;
+    }
+
+    /**
+     * Releases the manifest loaded by {@link #shareManifest(File)}, unless an index has started using its own since.
+     * 
+     * @param own the manifest loaded, or null
+     */
+    private synchronized void releaseManifest(final Manifest own) {
+        if (own != null && manifest == own) {
+            manifest = null;
+        }
+    }
+
     /**
      * Reads a File from IndexCommand (a directory, 'straight' file or an archive) and creates an index for all files recursively.
      * 
@@ -297,13 +901,17 @@ public class FileSystemCollection extends AbstractCollection {
             log.info("Indexing stops, due to request");
             return;
         }
-        log.debug("indexDocs: document #" + ic.getWriter().docCount() + ": " + ic);
-        if (ic.getFile().isDirectory()) {
-            if (!FileUtils.isLink(ic.getFile())) {
-                indexDirectory(ic);
-            } else {
-                log.warn("Skipping symbolic link: " + ic.getFile().getAbsolutePath());
-            }
+        log.debug("indexDocs: " + ic);
+        // the entry is known if the file was found by crawling its directory
+        DirectoryCrawler.Entry entry = ic.getEntry();
+        if (entry == null) {
+            entry = CRAWLER.entry(ic.getFile());
+            ic.setEntry(entry);
+        }
+        if (entry.isLink()) {
+            log.warn("Skipping symbolic link: " + ic.getFile().getAbsolutePath());
+        } else if (entry.isDirectory()) {
+            indexDirectory(ic);
         } else {
             // handle composed docs first based on file extension, lookup in the manager.getArchiveHandler() whether
             // this is an archive
@@ -314,12 +922,8 @@ public class FileSystemCollection extends AbstractCollection {
                 indexArchive(ic, extension);
             } else {
                 // handle straight files
-                if (ic.getFile().isFile()) {
-                    if (!FileUtils.isLink(ic.getFile())) {
-                        indexStraightFile(ic);
-                    } else {
-                        log.warn("Skipping symbolic link: " + ic.getFile().getAbsolutePath());
-                    }
+                if (entry.isFile()) {
+                    indexStraightFile(ic);
                 } else {
                     log.debug("not a normal file: " + ic.getFile().getName());
                 }
@@ -328,6 +932,9 @@ public class FileSystemCollection extends AbstractCollection {
     }
 
     /**
+     * Indexes a straight file: hash it, parse it and add it to the index, unless it is a duplicate. If the indexing process uses a
+     * pipeline, the file is handed to the pipeline instead.
+     * 
      * @param ic
      * @throws IndexException
      */
@@ -335,61 +942,222 @@ public class FileSystemCollection extends AbstractCollection {
         log.debug(ic.getFile() + " is a straight file");
         if (!ic.isInZip()) {
             ic.setRealName(ic.getFile().getName());
+            ic.setLocation(ic.getRealPath() + ic.getFile().getName());
         } else {
             ic.setZipName(ic.getFile().getName());
         }
+        counting().discovered();
         // do we support this kind of file?
         if (manager.getFactory().canExtract(ic.getFile()) || manager.getFactory().isDefaultFileinfo()) {
-            // get the hash for this file
-            String hash = FileUtils.getMD5Hash(ic.getFile());
-            // if we can't get a hash, just set it to a non null value,
-            // so at least the indexing continues
-            if (hash == null) {
-                hash = "unknown";
-            }
-            // Check whether this file has been added already
-            if (!ic.getCollection().getMd5DocumentCache().contains(hash)) {
-                // new document, handle it
-                ic.setHash(hash);
-                Document doc = parse(ic);
-                if (doc != null) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Indexcommand: " + ic);
-                    }
-                    // add the document to the index(writer)
-                    try {
-                        ic.getWriter().addDocument(doc);
-
-                        // add the hash to hashtable if not "unknown" or
-                        // empty
-                        if (!"unknown".equals(hash) && (hash.length() > 0)) {
-                            boolean result = ic.getCollection().getMd5DocumentCache().add(hash);
+            if (isUnchanged(ic)) {
+                log.debug("skipping unchanged document: " + ic.getFile().getName());
+                counting().duplicate();
+            } else if (isQuarantined(ic)) {
+                log.info("skipping quarantined document: " + ic.getFile().getName());
+            } else if (ic.getPipeline() != null) {
+                ic.getPipeline().submit(ic);
+            } else if (prepareDocument(ic)) {
+                addDocument(ic);
+            }
+        } else {
+            log.debug("skipping unsupported document: " + ic.getFile().getName());
+        }
+    }
 
-                            if (result) {
-                                log.debug("Hash added for document: " + ic.getFile());
-                            } else {
-                                log.warn("No Hash added for document: " + ic.getFile());
-                            }
-                        }
+    /**
+     * Hashes and parses a straight file, and sets the resulting Document on the IndexCommand. Files that are already in the index
+     * are skipped.
+     * 
+     * <p>
+     * This is called by the workers of the pipeline, so it must not touch the IndexWriter.
+     * </p>
+     * 
+     * @param ic IndexCommand of a straight file
+     * @return true if the IndexCommand now contains a Document to add to the index
+     */
+    boolean prepareDocument(final IndexCommand ic) {
+        if (stopRequested) {
+            return false;
+        }
+        Extractor ext = manager.getFactory().createExtractor(ic.getFile());
+        // large files are hashed first, so that duplicates are not extracted
+        if (ext instanceof StreamExtractor && ic.getFile().length() < ContentHasher.MAP_THRESHOLD) {
+            try {
+                return prepareDocument(ic, (StreamExtractor) ext);
+            }
+            catch (IOException e) {
+                log.warn("Can't read " + ic.getFile() + " in one pass, reading it again", e);
+            }
+        }
+        // get the hash for this file, the extractor reads it again, unless its info is in the extraction cache
+        if (isDuplicate(ic, getHash(ic.getFile()))) {
+            return false;
+        }
+        return setDocument(ic, parse(ic, ext, null));
+    }
 
-                        log.info("document #" + ic.getWriter().docCount() + ": " + ic.getFile().getName() + " added to index");
-                    }
-                    catch (IOException e) {
-                        throw new IndexException("Error adding document '" + ic.getFile().getName() + "' to Index", e);
-                    }
+    /**
+     * Hashes and parses a straight file, reading it only once. Small files are read into memory and hashed, and only parsed if
+     * they are not a duplicate. Larger files are hashed while the extractor reads them, so duplicates are parsed as well, but
+     * still not added.
+     * 
+     * @param ic IndexCommand of a straight file
+     * @param ext the extractor for the file
+     * @return true if the IndexCommand now contains a Document to add to the index
+     * @throws IOException if the file can't be read
+     */
+    private boolean prepareDocument(final IndexCommand ic, final StreamExtractor ext) throws IOException {
+        MessageDigest md = FileUtils.getMD5Digest();
+        if (md == null) {
+            throw new IOException("No MD5 digest available");
+        }
+        long length = ic.getFile().length();
+        counting().read(length);
+        InputStream in = new DigestInputStream(openThrottled(ic.getFile()), md);
+        try {
+            if (length <= SINGLE_READ_LIMIT) {
+                byte[] content = FileUtils.readFully(in, (int) length);
+                if (isDuplicate(ic, FileUtils.toHexString(md.digest()))) {
+                    return false;
                 }
-            } else {
-                log.info("skipping duplicate document: " + ic.getFile().getName());
+                return setDocument(ic, parse(ic, ext, new ByteArrayInputStream(content)));
+            }
+            Document doc = parse(ic, ext, in);
+            if (doc == null) {
+                // nothing to add, and the extraction may have been stopped halfway
+                return false;
+            }
+            // hash whatever the extractor has not read
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) > -1) {
+                continue;
+            }
+            if (isDuplicate(ic, FileUtils.toHexString(md.digest()))) {
+                return false;
+            }
+            return setDocument(ic, doc);
+        }
+        finally {
+            in.close();
+        }
+    }
 
-                // if this document is in the cache, we may remove it
-                if (FileUtils.isIn(ic.getFile(), ic.getCollection().getCacheDirWithManagerDefaults())) {
-                    if (ic.getFile().delete()) {
-                        log.debug("Removed: " + ic.getFile() + " from cache.");
-                    }
-                }
+    /**
+     * Get the hash of a file, with as many threads as the manager allows.
+     * 
+     * @param f the file
+     * @return the hash, null if it can't be determined
+     */
+    private String getHash(final File f) {
+        int threads = 1;
+        if (!md5Only && manager.getHashThreads() != null) {
+            threads = manager.getHashThreads().intValue();
+        }
+        // every file is hashed once, so this is where its bytes are counted, not when it is read again
+        counting().read(f.length());
+        return FileUtils.getContentHash(f, threads, manager.getReadThrottle());
+    }
+
+    /**
+     * Open a file to be read within the read rate limit of the manager, one buffer at a time.
+     * 
+     * @param f the file
+     * @return a buffered stream on the file
+     * @throws FileNotFoundException if the file can't be opened
+     */
+    private InputStream openThrottled(final File f) throws FileNotFoundException {
+        InputStream in = new ThrottledInputStream(new FileInputStream(f), manager.getReadThrottle());
+        return new BufferedInputStream(in, READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Records the hash of a file on the IndexCommand and in the manifest, and checks whether a file with that hash has been added
+     * already.
+     * 
+     * @param ic IndexCommand of a straight file
+     * @param theHash the MD5 hash of the file, null if it can't be determined
+     * @return true if the file is a duplicate, and should be skipped
+     */
+    private boolean isDuplicate(final IndexCommand ic, final String theHash) {
+        // if we can't get a hash, just set it to a non null value,
+        // so at least the indexing continues
+        String hash = theHash;
+        if (hash == null) {
+            hash = "unknown";
+        }
+        record(ic, hash);
+        // Check whether this file has been added already
+        if (!ic.getCollection().getMd5DocumentCache().contains(hash)) {
+            // new document, handle it
+            ic.setHash(hash);
+            return false;
+        }
+        log.info("skipping duplicate document: " + ic.getFile().getName());
+        counting().duplicate();
+
+        // if this document is in the cache, we may remove it
+        if (FileUtils.isIn(ic.getFile(), ic.getCollection().getCacheDirWithManagerDefaults())) {
+            if (ic.getFile().delete()) {
+                log.debug("Removed: " + ic.getFile() + " from cache.");
             }
-        } else {
-            log.debug("skipping unsupported document: " + ic.getFile().getName());
+        }
+        return true;
+    }
+
+    /**
+     * Adds the hash to a parsed Document, and sets it on the IndexCommand.
+     * 
+     * @param ic IndexCommand containing the hash
+     * @param doc the Document, can be null
+     * @return true if there is a Document
+     */
+    private boolean setDocument(final IndexCommand ic, final Document doc) {
+        if (doc == null) {
+            return false;
+        }
+        doc.add(new Field("hash", ic.getHash(), Field.Store.YES, Field.Index.UN_TOKENIZED));
+        ic.setDocument(doc);
+        return true;
+    }
+
+    /**
+     * Adds the Document of the IndexCommand to the index, and records its hash. The Document is skipped if one with the same hash
+     * has been added in the meantime.
+     * 
+     * <p>
+     * This is called by the writer thread of the pipeline, if any, and by uploads while the collection is being indexed.
+     * </p>
+     * 
+     * @param ic IndexCommand containing the Document and its hash
+     * @throws IndexException when the Document can't be added to the index
+     */
+    void addDocument(final IndexCommand ic) throws IndexException {
+        String hash = ic.getHash();
+        Set cache = ic.getCollection().getMd5DocumentCache();
+        // with a pipeline or an upload, two threads may have parsed the same content, so claim the hash before adding the
+        // document; "unknown" or empty hashes are not recorded
+        boolean recordHash = !"unknown".equals(hash) && (hash.length() > 0);
+        if (recordHash ? !cache.add(hash) : cache.contains(hash)) {
+            log.info("skipping duplicate document: " + ic.getFile().getName());
+            counting().duplicate();
+            return;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Indexcommand: " + ic);
+        }
+        // add the document to the index(writer)
+        throttleDocument();
+        try {
+            ic.getWriter().addDocument(ic.getDocument());
+            counting().added();
+            log.info("document #" + ic.getWriter().docCount() + ": " + ic.getFile().getName() + " added to index");
+        }
+        catch (IOException e) {
+            counting().failed();
+            if (recordHash) {
+                cache.remove(hash);
+            }
+            throw new IndexException("Error adding document '" + ic.getFile().getName() + "' to Index", e);
         }
     }
 
@@ -405,67 +1173,74 @@ public class FileSystemCollection extends AbstractCollection {
         }
         // we have an archive
         log.debug(ic.getFile() + " is an archive");
+        if (!ic.isInZip()) {
+            // the documents in the archive share its location
+            ic.setLocation(ic.getRealPath() + ic.getFile().getName());
+        }
+        counting().discovered();
+        if (isUnchanged(ic)) {
+            log.debug("skipping unchanged archive: " + ic.getFile().getName());
+            counting().duplicate();
+            return;
+        }
         // add the document with just its name and hash to the collection as well, so that we can cache it
         // for incremental indexing
-        String hash = FileUtils.getMD5Hash(ic.getFile());
+        String hash = getHash(ic.getFile());
         // if we can't get a hash, just set it to a non null value, so at least the indexing continues
         if (hash == null) {
             hash = "unknown";
         }
+        record(ic, hash);
         // Check whether this file has been added already
         if (!ic.getCollection().getMd5DocumentCache().contains(hash)) {
-            try {
-                // add the document with just its name and hash
-                Document doc = new Document();
-                doc.add(new Field("hash", hash, Field.Store.YES, Field.Index.UN_TOKENIZED));
-                doc.add(new Field("name", ic.getRealName(), Field.Store.YES, Field.Index.TOKENIZED));
-                ic.getWriter().addDocument(doc);
-                log.debug("Archive " + ic.getFile() + " added to collection");
-                File dir = null;
-                if (!StringUtils.hasText(manager.getArchiveHandler().getUnArchiveCommand(extension))) {
-                    // this is a zip: handle with java's zip
-                    // capabilities
-                    log.debug(ic.getFile() + " is a zip file");
-                    dir = CollectionManagerImpl.unZip(ic.getFile(), ic.getCollection());
-                } else {
-                    log.debug(ic.getFile() + " is a external archive file");
-                    dir = manager.unPack(ic.getFile(), ic.getCollection());
-                }
-
-                IndexCommand localIc = new IndexCommand(ic);
-                if (ic.isInZip()) {
-                    // ic.setZipPath(ic.getZipPath() +
-                    // ic.getFile().getName() + "::/");
-                    localIc.setZipPath(ic.getZipPath() + dir.getName() + "/");
-                    localIc.setStart(true);
-                } else {
-                    localIc.setRealName(ic.getFile().getName());
-                    localIc.setInZip(true);
-                    localIc.setStart(false);
-                }
-
-                localIc.setFile(dir);
-                indexDocs(localIc);
-                // remove dir since it is temporary
-                if (!ic.getCollection().isKeepCacheWithManagerDefaults()) {
-                    FileUtils.removeDir(dir);
-                }
+            // add the document with just its name and hash, this records the hash as well
+            Document doc = new Document();
+            doc.add(new Field("hash", hash, Field.Store.YES, Field.Index.UN_TOKENIZED));
+            doc.add(new Field("name", ic.getRealName(), Field.Store.YES, Field.Index.TOKENIZED));
+            doc.add(new Field("location", ic.getLocation(), Field.Store.YES, Field.Index.UN_TOKENIZED));
+            IndexCommand archiveIc = new IndexCommand(ic);
+            archiveIc.setHash(hash);
+            archiveIc.setDocument(doc);
+            if (ic.getPipeline() != null) {
+                ic.getPipeline().add(archiveIc);
+            } else {
+                addDocument(archiveIc);
+            }
+            log.debug("Archive " + ic.getFile() + " added to collection");
+            // unpacking reads the archive again
+            throttleRead(ic.getFile().length());
+            File dir = null;
+            if (!StringUtils.hasText(manager.getArchiveHandler().getUnArchiveCommand(extension))) {
+                // this is a zip: handle with java's zip
+                // capabilities
+                log.debug(ic.getFile() + " is a zip file");
+                dir = CollectionManagerImpl.unZip(ic.getFile(), ic.getCollection());
+            } else {
+                log.debug(ic.getFile() + " is a external archive file");
+                dir = manager.unPack(ic.getFile(), ic.getCollection());
+            }
 
-                // add the hash to hashtable if not "unknown" or empty
-                if (!"unknown".equals(hash) && (hash.length() > 0)) {
-                    boolean result = ic.getCollection().getMd5DocumentCache().add(hash);
-                    if (result) {
-                        log.debug("Hash added for document: " + ic.getFile());
-                    } else {
-                        log.warn("No Hash added for document: " + ic.getFile());
-                    }
-                }
+            IndexCommand localIc = new IndexCommand(ic);
+            if (ic.isInZip()) {
+                // ic.setZipPath(ic.getZipPath() +
+                // ic.getFile().getName() + "::/");
+                localIc.setZipPath(ic.getZipPath() + dir.getName() + "/");
+                localIc.setStart(true);
+            } else {
+                localIc.setRealName(ic.getFile().getName());
+                localIc.setInZip(true);
+                localIc.setStart(false);
             }
-            catch (IOException e) {
-                throw new IndexException("Error adding document '" + ic.getFile().getName() + "' to Index", e);
+
+            localIc.setFile(dir);
+            indexDocs(localIc);
+            // remove dir since it is temporary, but not before the pipeline is done with its files
+            if (!ic.getCollection().isKeepCacheWithManagerDefaults() && ic.getPipeline() == null) {
+                FileUtils.removeDir(dir);
             }
         } else {
             log.info("skipping duplicate archive: " + ic.getFile().getName());
+            counting().duplicate();
         }
     }
 
@@ -480,10 +1255,8 @@ public class FileSystemCollection extends AbstractCollection {
         }
         log.debug(ic.getFile() + " is a directory");
         // recurse
-        String[] files = ic.getFile().list();
-        // I've seen list return null, so be carefull, guess dir names too long for OS
+        DirectoryCrawler.Entry[] files = CRAWLER.list(ic.getFile());
         if (files == null) {
-            log.warn("Something funny with '" + ic.getFile() + "'. Name or path too long?");
             log.warn("Could not access '" + ic.getFile() + "' for indexing. Skipping this directory.");
         } else {
 
@@ -503,40 +1276,360 @@ public class FileSystemCollection extends AbstractCollection {
                 }
             }
 
+            if (!ic.isInZip()) {
+                removeChangedDocuments(ic.getRealPath(), files);
+            }
+
             // Index the files using a new IndexCommand that's a copy of the current one
             // except with the new File, don't use the current since status will be overridden
             // when backtracking from recursion
             for (int i = 0; i < files.length; i++) {
                 IndexCommand localIc = new IndexCommand(ic);
-                localIc.setFile(new File(ic.getFile(), files[i]));
+                localIc.setEntry(files[i]);
                 indexDocs(localIc);
             }
         }
     }
 
     /**
-     * Makes a document for a File, by parsing the contents and metadata provided by {@link IndexCommand}.
+     * Removes the documents of the files in a directory that have changed since the last index, according to the manifest, so
+     * that they are indexed again. Uses the size and modification date the crawler has read, which are needed to index the files
+     * anyway.
+     * 
+     * @param realPath the location of the directory, ending with a /
+     * @param entries the entries of the directory
+     * @throws IndexException if the index can't be modified
+     */
+    private void removeChangedDocuments(final String realPath, final DirectoryCrawler.Entry[] entries) throws IndexException {
+        Manifest theManifest = manifest;
+        if (theManifest == null) {
+            return;
+        }
+        List changed = new ArrayList();
+        for (int i = 0; i < entries.length; i++) {
+            String location = realPath + entries[i].getName();
+            if (entries[i].isFile() && theManifest.removeIfChanged(location, entries[i])) {
+                changed.add(location);
+            }
+        }
+        try {
+            counting().removed(removeDocuments(changed, null));
+        }
+        catch (IOException e) {
+            throw new IndexException("Can't remove the documents of changed files from " + getName(), e);
+        }
+    }
+
+    /**
+     * Removes the documents of the files in the manifest that have not been seen by a run that has crawled all files, since they
+     * have been removed. A file that was moved has been skipped as a duplicate of the documents of its old location, so it is
+     * indexed now.
+     * 
+     * @param session the session of the run, with its pipeline finished
+     * @throws IOException if the index can't be modified
+     * @throws IndexException if a moved file can't be indexed
+     */
+    private void removeUnseenDocuments(final IndexSession session) throws IOException, IndexException {
+        List unseen = manifest.getUnseenPaths();
+        Set hashes = new HashSet();
+        int removed = removeDocuments(unseen, hashes);
+        counting().removed(removed);
+        if (removed > 0) {
+            log.info("Removed " + removed + " documents of " + unseen.size() + " removed files from " + getName());
+        }
+        for (Iterator iter = manifest.getAddedPaths(hashes).iterator(); iter.hasNext();) {
+            File moved = new File(getContentDir(), (String) iter.next());
+            log.debug("Indexing " + moved + ", which has been moved");
+            indexFileAt(session, moved);
+        }
+    }
+
+    /**
+     * Index a file anywhere in the content directory.
+     * 
+     * @param session the session to index the file in
+     * @param theFile the file
+     * @throws IndexException if the file can't be indexed
+     */
+    private void indexFileAt(final IndexSession session, final File theFile) throws IndexException {
+        IndexCommand ic = session.createCommand(theFile);
+        // the file may be in a subdirectory
+        String location = getLocation(theFile);
+        ic.setRealPath(location.substring(0, location.lastIndexOf('/') + 1));
+        indexDocs(ic);
+    }
+
+    /**
+     * Removes the documents of the files at the given locations from the index. The hashes of the removed documents are removed
+     * from the cache, so that changed and moved files are indexed again.
+     * 
+     * @param locations List of locations (paths relative to the content directory)
+     * @param removedHashes a Set to add the hashes of the removed documents to, or null
+     * @return the number of documents removed
+     * @throws IOException if the index can't be modified
+     */
+    private int removeDocuments(final List locations, final Set removedHashes) throws IOException {
+        if (locations.isEmpty()) {
+            return 0;
+        }
+        // the shared writer must be closed while deleting
+        return getIndexWriter().withReader(new SharedIndexWriter.ReaderTask() {
+            public int run(final IndexReader reader) throws IOException {
+                int removed = 0;
+                for (Iterator iter = locations.iterator(); iter.hasNext();) {
+                    Term term = new Term("location", (String) iter.next());
+                    TermDocs docs = reader.termDocs(term);
+                    try {
+                        while (docs.next()) {
+                            String hash = reader.document(docs.doc()).get("hash");
+                            if (hash != null) {
+                                getMd5DocumentCache().remove(hash);
+                                if (removedHashes != null) {
+                                    removedHashes.add(hash);
+                                }
+                            }
+                        }
+                    }
+                    finally {
+                        docs.close();
+                    }
+                    int n = reader.deleteDocuments(term);
+                    log.debug("Removed " + n + " document(s) of " + term.text());
+                    removed += n;
+                }
+                return removed;
+            }
+        });
+    }
+
+    /**
+     * Get the location of a file in the content directory: its path relative to the content directory, with / as separator.
+     * 
+     * @param theFile the file
+     * @return the location, or just the name of the file if it is not in the content directory
+     */
+    private String getLocation(final File theFile) {
+        String dir = getContentDir().getAbsolutePath() + File.separator;
+        String path = theFile.getAbsolutePath();
+        if (path.startsWith(dir)) {
+            return path.substring(dir.length()).replace(File.separatorChar, '/');
+        }
+        return theFile.getName();
+    }
+
+    /**
+     * Determines from the manifest whether a file on disk is unchanged since the last index, and still in the index.
+     * 
+     * @param ic IndexCommand of a straight file or archive
+     * @return true if the file can be skipped without hashing it
+     */
+    private boolean isUnchanged(final IndexCommand ic) {
+        Manifest theManifest = manifest;
+        if (theManifest == null || ic.isInZip() || ic.getEntry() == null) {
+            return false;
+        }
+        String hash = theManifest.getUnchangedHash(ic.getLocation(), ic.getEntry().getSize(), ic.getEntry().getLastModified());
+        return hash != null && getMd5DocumentCache().contains(hash);
+    }
+
+    /**
+     * Records the hash of a file on disk in the manifest, so that it needs not be hashed next time if unchanged.
+     * 
+     * @param ic IndexCommand of a straight file or archive
+     * @param hash the MD5 hash of the file
+     */
+    private void record(final IndexCommand ic, final String hash) {
+        // called from the workers of the pipeline, so use a local reference
+        Manifest theManifest = manifest;
+        if (theManifest == null || ic.isInZip() || ic.getEntry() == null || "unknown".equals(hash)) {
+            return;
+        }
+        theManifest.put(ic.getLocation(), ic.getEntry().getSize(), ic.getEntry().getLastModified(), hash);
+    }
+
+    /**
+     * Extracts the info of a file, up to the maximum number of characters of this collection. If the hash of the file is known,
+     * and the manager has an extraction cache, info extracted earlier from the same content is taken from the cache, and info
+     * extracted now is stored in it.
+     * 
+     * @param ic IndexCommand of the file
+     * @param ext the Extractor for the file
+     * @param content the content of the file, or null to let the extractor read the file
+     * @return the info, or null if the extraction was stopped
+     */
+    private ParsedFileInfo extract(final IndexCommand ic, final Extractor ext, final InputStream content) {
+        int maxChars = getMaxContentCharsWithManagerDefaults();
+        ExtractionCache cache = manager.getExtractionCache();
+        String extractor = ext.getClass().getName();
+        if (ext instanceof RemoteExtractor) {
+            extractor = ((RemoteExtractor) ext).getClassName();
+        }
+        if (cache != null && ic.getHash() != null) {
+            ParsedFileInfo fileInfo = cache.get(ic.getHash(), extractor, maxChars, ic.getFile());
+            if (fileInfo != null) {
+                return fileInfo;
+            }
+        }
+        ParsedFileInfo fileInfo = extract(ic, ext, content, maxChars);
+        if (cache != null && ic.getHash() != null && fileInfo != null) {
+            fileInfo = cache.put(ic.getHash(), extractor, maxChars, fileInfo);
+        }
+        return fileInfo;
+    }
+
+    /**
+     * Extracts the info of a file, stopping the extraction if it takes longer than the timeout of its extractor. A file whose
+     * extraction is stopped is quarantined.
+     * 
+     * @param ic IndexCommand of the file
+     * @param ext the Extractor for the file
+     * @param content the content of the file, or null to let the extractor read the file
+     * @param maxChars the maximum number of characters to extract
+     * @return the info, or null if the extraction was stopped
+     */
+    private ParsedFileInfo extract(final IndexCommand ic, final Extractor ext, final InputStream content, final int maxChars) {
+        if (content == null && ext instanceof StreamExtractor) {
+            // hand the extractor the file through the read throttle, so only what it reads is taken, as it is read
+            InputStream in = null;
+            try {
+                in = openThrottled(ic.getFile());
+            }
+            catch (FileNotFoundException e) {
+                log.debug("Can't open " + ic.getFile() + ", leaving it to the extractor", e);
+            }
+            if (in != null) {
+                try {
+                    return extract(ic, ext, in, maxChars);
+                }
+                finally {
+                    try {
+                        in.close();
+                    }
+                    catch (IOException e) {
+                        log.debug("Can't close " + ic.getFile(), e);
+                    }
+                }
+            }
+        }
+        if (content == null) {
+            // the file is read by a worker, or by an extractor that can't be given a stream: take it all at once
+            throttleRead(ic.getFile().length());
+        }
+        if (ext instanceof AbstractExtractor) {
+            ((AbstractExtractor) ext).setMaxContentChars(maxChars);
+        } else if (ext instanceof RemoteExtractor) {
+            ((RemoteExtractor) ext).setMaxContentChars(maxChars);
+        }
+        Integer seconds = manager.getFactory().getTimeout(ext);
+        if (seconds == null) {
+            seconds = manager.getExtractionTimeout();
+        }
+        long timeout = ExtractionThread.DEFAULT_TIMEOUT * 1000L;
+        if (seconds != null) {
+            timeout = seconds.intValue() * 1000L;
+        }
+        if (timeout <= 0) {
+            if (content != null) {
+                return ((StreamExtractor) ext).extractInfo(ic.getFile(), content);
+            }
+            return ext.extractInfo(ic.getFile());
+        }
+        ExtractionThread thread = ExtractionThread.forCurrentThread();
+        ParsedFileInfo fileInfo = thread.extract(ext, ic.getFile(), content, timeout);
+        if (thread.isOverdue()) {
+            log.warn("Extracting " + ic.getFile() + " took more than " + (timeout / 1000) + " seconds, it is skipped until it changes");
+            quarantine(ic);
+        }
+        return fileInfo;
+    }
+
+    /**
+     * Read the MD5 hashes of all documents in the index in a directory.
+     * 
+     * @param dir the directory of the index
+     * @param hashes the Set to add the hashes to
+     * @return the number of documents in the index
+     * @throws IOException if the index can't be read
+     */
+    private static int readHashes(final File dir, final Set hashes) throws IOException {
+        IndexReader reader = IndexReader.open(dir);
+        try {
+            readHashes(reader, hashes);
+            return reader.numDocs();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get the quarantine of this collection.
+     * 
+     * @return the quarantine
+     */
+    private synchronized Quarantine getQuarantine() {
+        if (quarantine == null) {
+            quarantine = new Quarantine(getIndexDirWithManagerDefaults());
+        }
+        return quarantine;
+    }
+
+    /**
+     * Determines whether a file on disk has been quarantined, and has not changed since.
+     * 
+     * @param ic IndexCommand of a straight file
+     * @return true if the file should be skipped
+     */
+    private boolean isQuarantined(final IndexCommand ic) {
+        if (ic.isInZip()) {
+            return false;
+        }
+        if (ic.getEntry() != null) {
+            return getQuarantine().contains(ic.getLocation(), ic.getEntry().getSize(), ic.getEntry().getLastModified());
+        }
+        return getQuarantine().contains(ic.getLocation(), ic.getFile().length(), ic.getFile().lastModified());
+    }
+
+    /**
+     * Quarantines a file on disk, so that it is skipped until it changes.
+     * 
+     * @param ic IndexCommand of a straight file
+     */
+    private void quarantine(final IndexCommand ic) {
+        if (ic.isInZip()) {
+            return;
+        }
+        try {
+            getQuarantine().add(ic.getLocation(), ic.getFile().length(), ic.getFile().lastModified());
+        }
+        catch (IOException e) {
+            log.warn("Can't quarantine " + ic.getFile() + ", it will be extracted again next time", e);
+        }
+    }
+
+    /**
+     * Makes a document for a File, by parsing the contents and metadata provided by {@link IndexCommand}. The hash is not added.
      * 
      * @param ic IndexCommand containing all parameters for parsing.
+     * @param ext the Extractor for the file, can be null
+     * @param content the content of the file, or null to let the extractor read the file
      * 
      * @return Document with parsed content, or null if unknown format, or empty content.
      */
-    private Document parse(final IndexCommand ic) {
+    private Document parse(final IndexCommand ic, final Extractor ext, final InputStream content) {
         log.debug("Parsing " + ic.getFile().getName());
 
-        // Extract relevant info from the file by first getting the relevant
-        // Extractor
-        Extractor ext = manager.getFactory().createExtractor(ic.getFile());
-
         if (ext == null) {
             log.debug("Skipping " + ic.getFile().getName());
 
             return null;
         }
 
-        ParsedFileInfo fileInfo = ext.extractInfo(ic.getFile());
+        // Extract relevant info from the file, from the content if we have it
+        ParsedFileInfo fileInfo = extract(ic, ext, content);
 
         if (fileInfo != null) {
+            counting().extracted();
             // make a new, empty document
             if (log.isDebugEnabled()) {
                 log.debug("Creating new Document with ParsedFileInfo: " + fileInfo);
@@ -550,6 +1643,8 @@ public class FileSystemCollection extends AbstractCollection {
             doc.add(new Field("zipPath", ic.getZipPath(), Field.Store.YES, Field.Index.TOKENIZED));
             doc.add(new Field("zipName", ic.getZipName(), Field.Store.YES, Field.Index.TOKENIZED));
             doc.add(new Field("collection", ic.getCollection().getName(), Field.Store.YES, Field.Index.TOKENIZED));
+            // untokenized, so that documents can be removed when their file changes
+            doc.add(new Field("location", ic.getLocation(), Field.Store.YES, Field.Index.UN_TOKENIZED));
 
             // Add all file info
             if (fileInfo.getReader() != null) {
@@ -568,7 +1663,6 @@ public class FileSystemCollection extends AbstractCollection {
 
             doc.add(new Field("modified", dfString, Field.Store.YES, Field.Index.UN_TOKENIZED));
             doc.add(new Field("size", Long.toString(fileInfo.getSize()), Field.Store.YES, Field.Index.UN_TOKENIZED));
-            doc.add(new Field("hash", ic.getHash(), Field.Store.YES, Field.Index.UN_TOKENIZED));
 
             if (log.isDebugEnabled()) {
                 log.debug("Parsed " + doc);
@@ -577,6 +1671,7 @@ public class FileSystemCollection extends AbstractCollection {
             return doc;
         } else {
             log.warn("Extractor does not return any ParsedFileInfo for: " + ic.getFile().getName());
+            counting().failed();
         }
         return null;
     }
@@ -56,7 +56,6 @@ import org.springframework.util.StringUtils;
 import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
-import org.apache.lucene.index.IndexWriter;
 
 import org.zilverline.extractors.HTMLExtractor;
 import org.zilverline.util.StopWatch;
@@ -183,8 +182,15 @@ public class IMAPCollection extends AbstractCollection {
      * @throws IndexException if the Collections can not be indexed
      */
     public final void index(final boolean fullIndex) throws IndexException {
-        resetCache(fullIndex);
-        doIndex(fullIndex);
+        awaitWarm();
+        beginRun();
+        try {
+            resetCache(fullIndex);
+            doIndex(fullIndex);
+        }
+        finally {
+            endRun();
+        }
     }
 
     /**
@@ -195,7 +201,7 @@ public class IMAPCollection extends AbstractCollection {
      * @return true if succesfull
      */
     private final boolean doIndex(boolean fullIndex) throws IndexException {
-        IndexWriter writer = null;
+        SharedIndexWriter writer = null;
         Store store = null;
         try {
             // record start time
@@ -213,19 +219,10 @@ public class IMAPCollection extends AbstractCollection {
                 indexDirectory.mkdirs();
             }
 
-            // create an index(writer)
-            writer = new IndexWriter(indexDirectory, this.createAnalyzer(), mustReindex);
-            // see whether there are specific indexing settings in manager
-            if (manager.getMergeFactor() != null) {
-                writer.setMergeFactor(manager.getMergeFactor().intValue());
-            }
-            if (manager.getMinMergeDocs() != null) {
-                writer.setMaxBufferedDocs(manager.getMinMergeDocs().intValue());
-            }
-
-            if (manager.getMaxMergeDocs() != null) {
-                writer.setMaxMergeDocs(manager.getMaxMergeDocs().intValue());
-            }
+            startCounting(mustReindex ? 0 : numberOfDocs);
+            // open a session on the shared index(writer)
+            writer = getIndexWriter();
+            writer.open(mustReindex);
 
             resetCache(fullIndex);
             // connect to IMAP
@@ -264,8 +261,9 @@ public class IMAPCollection extends AbstractCollection {
         finally {
             if (writer != null) {
                 try {
-                    writer.optimize();
-                    log.debug("Optimizing index for " + name);
+                    if (OptimizePolicy.mustOptimize(manager, getIndexDirWithManagerDefaults(), fullIndex)) {
+                        writer.optimize();
+                    }
                     writer.close();
                     log.debug("Closing index for " + name);
                 }
@@ -285,7 +283,7 @@ public class IMAPCollection extends AbstractCollection {
         }
     }
 
-    private final boolean indexFolder(IndexWriter writer, Folder thisFolder) throws MessagingException {
+    private final boolean indexFolder(SharedIndexWriter writer, Folder thisFolder) throws MessagingException {
         if (stopRequested) {
             log.info("Indexing stops, due to request");
             return false;
@@ -309,23 +307,31 @@ public class IMAPCollection extends AbstractCollection {
                         MimeMessage mm = (MimeMessage) messages[i];
                         msgID = mm.getMessageID();
                     }
+                    counting().discovered();
                     if (!md5DocumentCache.contains(msgID)) {
                         log.debug("new message added for message: " + msgID);
                         final Document doc = new Document();
                         doc.add(Field.Keyword(F_FOLDER, thisFolder.getFullName()));
                         doc.add(Field.Keyword("collection", name));
                         // index this message
+                        throttleRead(messages[i].getSize());
+                        counting().read(messages[i].getSize());
                         indexMessage(doc, messages[i]);
+                        counting().extracted();
                         // add it
+                        throttleDocument();
                         writer.addDocument(doc);
+                        counting().added();
                         md5DocumentCache.add(msgID);
                     } else {
                         log.debug("existing message skipped for message: " + msgID);
+                        counting().duplicate();
                     }
                 }
                 catch (Exception ioe) {
                     // can be side effect of hosed up mail headers
                     log.warn("Bad Message: " + messages[i], ioe);
+                    counting().failed();
                     continue;
                 }
             }
@@ -26,7 +26,9 @@ import java.io.File;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.document.Document;
+
+import org.zilverline.util.DirectoryCrawler;
 
 /**
  * Command pattern for providing Indexing process with parameters. The command contains a document that needs to be indexed, as well
@@ -54,9 +56,15 @@ public class IndexCommand {
     /** The file of the document. */
     private File file;
 
+    /** The directory entry of the file, if already known from crawling its directory. */
+    private DirectoryCrawler.Entry entry;
+
     /** The MD5 hash of the document. */
     private String hash;
 
+    /** The path, relative to the content directory, of the file on disk the document comes from. */
+    private String location;
+
     /** Indicates whether document was originally in an archive. */
     private boolean inZip;
 
@@ -69,8 +77,14 @@ public class IndexCommand {
     /** Indicates whether the indexing process has just started. */
     private boolean start;
 
-    /** The {@link IndexWriter}of the indexing process. */
-    private IndexWriter writer;
+    /** The {@link SharedIndexWriter}of the indexing process. */
+    private SharedIndexWriter writer;
+
+    /** The pipeline of the indexing process, null if files are indexed one by one. */
+    private IndexingPipeline pipeline;
+
+    /** The parsed Document, waiting to be added to the index. */
+    private Document document;
 
     /** The name of the document within the zip. */
     private String zipName;
@@ -87,6 +101,7 @@ public class IndexCommand {
         zipName = "";
         zipPath = "";
         hash = "";
+        location = "";
         inZip = false;
         start = false;
     }
@@ -98,9 +113,12 @@ public class IndexCommand {
      */
     public IndexCommand(final IndexCommand otherCommand) {
         writer = otherCommand.getWriter();
+        pipeline = otherCommand.getPipeline();
         file = otherCommand.getFile();
+        entry = otherCommand.getEntry();
         realName = otherCommand.getRealName();
         hash = otherCommand.getHash();
+        location = otherCommand.getLocation();
         realPath = otherCommand.getRealPath();
         zipName = otherCommand.getZipName();
         zipPath = otherCommand.getZipPath();
@@ -127,6 +145,15 @@ public class IndexCommand {
         return file;
     }
 
+    /**
+     * Get the directory entry of the file.
+     * 
+     * @return the entry, or null if the file has not been classified yet
+     */
+    public final DirectoryCrawler.Entry getEntry() {
+        return entry;
+    }
+
     /**
      * Get the MD5 hash of the file being indexed.
      * 
@@ -136,6 +163,16 @@ public class IndexCommand {
         return hash;
     }
 
+    /**
+     * Get the location of the file on disk this document comes from: the path relative to the content directory of the file
+     * itself, or of the archive containing it.
+     * 
+     * @return the location
+     */
+    public final String getLocation() {
+        return location;
+    }
+
     /**
      * Get the realname, the name of this file.
      * 
@@ -157,12 +194,30 @@ public class IndexCommand {
     /**
      * Get the IndexWriter for this porcess.
      * 
-     * @return IndexWriter the indexwriter
+     * @return SharedIndexWriter the indexwriter
      */
-    public final IndexWriter getWriter() {
+    public final SharedIndexWriter getWriter() {
         return writer;
     }
 
+    /**
+     * Get the pipeline of the indexing process.
+     * 
+     * @return the pipeline, or null if files are indexed one by one
+     */
+    final IndexingPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Get the parsed Document of the file.
+     * 
+     * @return the Document, or null if not parsed (yet)
+     */
+    public final Document getDocument() {
+        return document;
+    }
+
     /**
      * Get the name of the document within the Archive.
      * 
@@ -228,6 +283,17 @@ public class IndexCommand {
      */
     public final void setFile(final File thisFile) {
         this.file = thisFile;
+        this.entry = null;
+    }
+
+    /**
+     * Set the file for this document from a directory entry, so that the file's type needs not be determined again.
+     * 
+     * @param thisEntry The entry of the File
+     */
+    public final void setEntry(final DirectoryCrawler.Entry thisEntry) {
+        this.file = thisEntry.getFile();
+        this.entry = thisEntry;
     }
 
     /**
@@ -239,6 +305,15 @@ public class IndexCommand {
         hash = string;
     }
 
+    /**
+     * Set the location of the file on disk this document comes from.
+     * 
+     * @param thisLocation the path relative to the content directory
+     */
+    public final void setLocation(final String thisLocation) {
+        this.location = thisLocation;
+    }
+
     /**
      * Set whether this document came from an archive.
      * 
@@ -297,14 +372,32 @@ public class IndexCommand {
     }
 
     /**
-     * Set the {@link IndexWriter}of the indexing process.
+     * Set the {@link SharedIndexWriter}of the indexing process.
      * 
-     * @param thisWriter the IndexWriter
+     * @param thisWriter the SharedIndexWriter
      */
-    public final void setWriter(final IndexWriter thisWriter) {
+    public final void setWriter(final SharedIndexWriter thisWriter) {
         this.writer = thisWriter;
     }
 
+    /**
+     * Set the pipeline of the indexing process.
+     * 
+     * @param thisPipeline the pipeline, or null to index files one by one
+     */
+    final void setPipeline(final IndexingPipeline thisPipeline) {
+        this.pipeline = thisPipeline;
+    }
+
+    /**
+     * Set the parsed Document of the file.
+     * 
+     * @param thisDocument the Document
+     */
+    public final void setDocument(final Document thisDocument) {
+        this.document = thisDocument;
+    }
+
     /**
      * Set the name of the document within the archive.
      * 
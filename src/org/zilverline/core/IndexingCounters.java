@@ -0,0 +1,201 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+/**
+ * Counts what an indexing run of a collection does, while it runs: files found, skipped since already indexed, extracted, added to the
+ * index and failed, and the bytes read.
+ *
+ * <p>
+ * The counters are updated by the threads doing the work and read by the collections page, without touching the index. Each
+ * update only holds the lock of the counters for an increment.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see AbstractCollection#getCounters()
+ */
+public final class IndexingCounters {
+    /** Number of documents in the index when the run started adding documents. */
+    private final int startDocs;
+
+    /** Time the run started. */
+    private final long started = System.currentTimeMillis();
+
+    /** Number of files (or messages) found. */
+    private int discovered;
+
+    /** Number of files skipped, because they or their content are already in the index. */
+    private int duplicates;
+
+    /** Number of files extracted. */
+    private int extracted;
+
+    /** Number of documents added to the index. */
+    private int added;
+
+    /** Number of files that could not be extracted or added. */
+    private int failed;
+
+    /** Number of documents removed from the index, of files changed or removed since the last run. */
+    private int removed;
+
+    /** Number of bytes of the files read, each file counted once. */
+    private long bytes;
+
+    /**
+     * Create counters, all zero.
+     *
+     * @param theStartDocs the number of documents in the index when the run started adding documents
+     */
+    public IndexingCounters(final int theStartDocs) {
+        startDocs = theStartDocs;
+    }
+
+    /**
+     * Count a file found.
+     */
+    public synchronized void discovered() {
+        discovered++;
+    }
+
+    /**
+     * Count a file skipped, because it or its content is already in the index.
+     */
+    public synchronized void duplicate() {
+        duplicates++;
+    }
+
+    /**
+     * Count a file extracted.
+     */
+    public synchronized void extracted() {
+        extracted++;
+    }
+
+    /**
+     * Count a document added to the index.
+     */
+    public synchronized void added() {
+        added++;
+    }
+
+    /**
+     * Count a file that could not be extracted or added.
+     */
+    public synchronized void failed() {
+        failed++;
+    }
+
+    /**
+     * Count documents removed from the index.
+     *
+     * @param n the number of documents
+     */
+    public synchronized void removed(final int n) {
+        removed += n;
+    }
+
+    /**
+     * Count the bytes of a file read.
+     *
+     * @param n the number of bytes
+     */
+    public synchronized void read(final long n) {
+        bytes += n;
+    }
+
+    /**
+     * @return Returns the number of files found.
+     */
+    public synchronized int getDiscovered() {
+        return discovered;
+    }
+
+    /**
+     * @return Returns the number of files skipped, because they or their content are already in the index.
+     */
+    public synchronized int getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return Returns the number of files extracted.
+     */
+    public synchronized int getExtracted() {
+        return extracted;
+    }
+
+    /**
+     * @return Returns the number of documents added to the index.
+     */
+    public synchronized int getAdded() {
+        return added;
+    }
+
+    /**
+     * @return Returns the number of files that could not be extracted or added.
+     */
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return Returns the number of documents removed from the index.
+     */
+    public synchronized int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return Returns the number of bytes of the files read.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Returns the time the run started.
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * Get the number of documents in the index being written.
+     *
+     * @return the number of documents when the run started adding documents, plus the number added since, minus the number
+     *         removed since
+     */
+    public synchronized int getNumberOfDocs() {
+        return startDocs + added - removed;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public synchronized String toString() {
+        return discovered + " found, " + added + " added, " + duplicates + " duplicates, " + failed + " failed, "
+            + (bytes / (1024 * 1024)) + " MB read";
+    }
+}
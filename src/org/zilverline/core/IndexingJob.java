@@ -0,0 +1,183 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.util.Date;
+
+/**
+ * A collection waiting to be, or being, indexed by the {@link IndexingScheduler}.
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see IndexingScheduler
+ */
+public class IndexingJob {
+    /** Job is waiting for a free indexing thread. */
+    public static final String QUEUED = "queued";
+
+    /** Job is being indexed. */
+    public static final String RUNNING = "running";
+
+    /** Job has been indexed. */
+    public static final String DONE = "done";
+
+    /** Job could not be indexed, or was stopped before it started. */
+    public static final String FAILED = "failed";
+
+    /** The collection to index. */
+    private final DocumentCollection collection;
+
+    /** Whether a full or incremental index should be created. */
+    private final boolean fullIndex;
+
+    /** The time the job was submitted. */
+    private final Date submitted = new Date();
+
+    /** The time indexing started. */
+    private Date started;
+
+    /** The time indexing finished. */
+    private Date finished;
+
+    /** The status: QUEUED, RUNNING, DONE or FAILED. */
+    private String status = QUEUED;
+
+    /** Error message if the job failed. */
+    private String message;
+
+    /** The thread indexing the job, while RUNNING. */
+    private Thread thread;
+
+    /**
+     * Create a job.
+     *
+     * @param theCollection the collection to index
+     * @param theFullIndex whether a full or incremental index should be created
+     */
+    IndexingJob(final DocumentCollection theCollection, final boolean theFullIndex) {
+        collection = theCollection;
+        fullIndex = theFullIndex;
+    }
+
+    /**
+     * @return Returns the collection.
+     */
+    public DocumentCollection getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return Returns whether a full index is created.
+     */
+    public boolean isFullIndex() {
+        return fullIndex;
+    }
+
+    /**
+     * @return Returns the time the job was submitted.
+     */
+    public Date getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return Returns the time indexing started, null if still queued.
+     */
+    public synchronized Date getStarted() {
+        return started;
+    }
+
+    /**
+     * @return Returns the time indexing finished, null if not finished.
+     */
+    public synchronized Date getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return Returns the status.
+     */
+    public synchronized String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Returns the error message, if the job failed.
+     */
+    public synchronized String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true if the job is done or has failed
+     */
+    public synchronized boolean isFinished() {
+        return DONE.equals(status) || FAILED.equals(status);
+    }
+
+    /**
+     * @return Returns the thread indexing the job, null if not RUNNING.
+     */
+    synchronized Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Mark the job as running in the given thread.
+     *
+     * @param theThread the thread indexing the job
+     */
+    synchronized void start(final Thread theThread) {
+        status = RUNNING;
+        thread = theThread;
+        started = new Date();
+    }
+
+    /**
+     * Mark the job as done.
+     */
+    synchronized void done() {
+        status = DONE;
+        thread = null;
+        finished = new Date();
+    }
+
+    /**
+     * Mark the job as failed.
+     *
+     * @param theMessage the reason
+     */
+    synchronized void fail(final String theMessage) {
+        status = FAILED;
+        message = theMessage;
+        thread = null;
+        finished = new Date();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return (fullIndex ? "Full" : "Incremental") + " IndexingJob for collection " + collection.getName() + ": " + getStatus();
+    }
+}
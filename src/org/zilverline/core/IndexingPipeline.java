@@ -0,0 +1,496 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.util.BoundedQueue;
+
+/**
+ * Pipeline that indexes the files of a FileSystemCollection using multiple threads.
+ *
+ * <p>
+ * The thread walking the content directory submits {@link IndexCommand}s for straight files to a lane: a bounded queue with its
+ * own pool of workers, which take them off the queue, calculate the hash and extract the contents into a Lucene Document.
+ * Finished documents are put on a second bounded queue, which is drained by a single writer thread that adds them to the
+ * IndexWriter.
+ * </p>
+ * <p>
+ * Files are handled by the default lane, unless their extractor has a lane of its own (see {@link ExtractorFactory#getLanes()}).
+ * That way expensive extractions are limited to the threads of their lane, and cheap ones keep flowing through the other lanes.
+ * The queue depth and throughput of every lane are logged when the pipeline finishes, to tune the number of threads per lane.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see FileSystemCollection#index(boolean)
+ */
+final class IndexingPipeline {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(IndexingPipeline.class);
+
+    /** Default number of commands that can wait in each queue. */
+    public static final int DEFAULT_QUEUE_SIZE = 100;
+
+    /** The collection being indexed. */
+    private final FileSystemCollection collection;
+
+    /** The lane of files whose extractor has no lane of its own. */
+    private final Lane defaultLane;
+
+    /** The lanes of extractors, by extractor classname. */
+    private final Map lanes;
+
+    /** Commands with a parsed Document waiting to be added to the index. */
+    private final BoundedQueue done;
+
+    /** The thread adding documents to the index. */
+    private final Thread writer;
+
+    /** The first error of the writer stage, if any. */
+    private IndexException failure;
+
+    /**
+     * Create a pipeline for the given collection.
+     *
+     * @param col the collection being indexed
+     * @param threads the number of threads hashing and extracting files in the default lane
+     * @param queueSize the number of commands that can wait in each queue
+     * @param laneThreads the number of threads of the extractors with a lane of their own, as a Map with extractor classname as
+     *            key and number of threads (Integer) as value
+     */
+    IndexingPipeline(final FileSystemCollection col, final int threads, final int queueSize, final Map laneThreads) {
+        collection = col;
+        done = new BoundedQueue(queueSize);
+        defaultLane = new Lane("default", threads, queueSize);
+        lanes = new TreeMap();
+        for (Iterator iter = laneThreads.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry e = (Map.Entry) iter.next();
+            Integer n = (Integer) e.getValue();
+            if (n != null && n.intValue() > 0) {
+                String className = (String) e.getKey();
+                lanes.put(className, new Lane(className.substring(className.lastIndexOf('.') + 1), n.intValue(), queueSize));
+            }
+        }
+        writer = new Thread(new Runnable() {
+            public void run() {
+                write();
+            }
+        });
+        writer.setName(col.getName() + "WritingThread");
+    }
+
+    /**
+     * Start all threads of the pipeline.
+     */
+    void start() {
+        log.debug("Starting indexing pipeline for " + collection.getName() + " with " + getLanes().size() + " lanes");
+        for (Iterator iter = getLanes().iterator(); iter.hasNext();) {
+            ((Lane) iter.next()).start();
+        }
+        writer.start();
+    }
+
+    /**
+     * Get all lanes.
+     *
+     * @return List of Lanes, the default lane first
+     */
+    List getLanes() {
+        List all = new ArrayList();
+        all.add(defaultLane);
+        all.addAll(lanes.values());
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Submit a straight file to be hashed, extracted and added to the index, in the lane of its extractor. Blocks while the workers
+     * of the lane are busy.
+     *
+     * @param ic the command for the file
+     * @throws IndexException if the pipeline failed, or waiting was interrupted
+     */
+    void submit(final IndexCommand ic) throws IndexException {
+        checkFailure();
+        Lane lane = defaultLane;
+        if (!lanes.isEmpty()) {
+            String className = collection.getManager().getFactory().getClassName(ic.getFile());
+            if (className != null && lanes.containsKey(className)) {
+                lane = (Lane) lanes.get(className);
+            }
+        }
+        try {
+            lane.put(ic);
+        }
+        catch (InterruptedException e) {
+            throw new IndexException("Interrupted while submitting '" + ic.getFile().getName() + "'", e);
+        }
+        catch (IllegalStateException e) {
+            // the queue was closed because the writer stage failed
+            checkFailure();
+            throw new IndexException("Indexing of '" + collection.getName() + "' has stopped", e);
+        }
+    }
+
+    /**
+     * Submit a command with an already created Document (set on the command) directly to the writer stage.
+     *
+     * @param ic the command containing the Document
+     * @throws IndexException if the pipeline failed, or waiting was interrupted
+     */
+    void add(final IndexCommand ic) throws IndexException {
+        checkFailure();
+        try {
+            done.put(ic);
+        }
+        catch (InterruptedException e) {
+            throw new IndexException("Interrupted while adding '" + ic.getFile().getName() + "'", e);
+        }
+        catch (IllegalStateException e) {
+            // the queue was closed because the writer stage failed
+            checkFailure();
+            throw new IndexException("Indexing of '" + collection.getName() + "' has stopped", e);
+        }
+    }
+
+    /**
+     * Wait until all submitted commands have been handled, and stop all threads.
+     *
+     * @throws IndexException if the writer stage failed, or waiting was interrupted
+     */
+    void finish() throws IndexException {
+        List all = getLanes();
+        for (Iterator iter = all.iterator(); iter.hasNext();) {
+            ((Lane) iter.next()).close();
+        }
+        try {
+            for (Iterator iter = all.iterator(); iter.hasNext();) {
+                ((Lane) iter.next()).join();
+            }
+            done.close();
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            abort();
+            throw new IndexException("Interrupted while waiting for indexing of '" + collection.getName() + "' to finish", e);
+        }
+        log.debug("Indexing pipeline for " + collection.getName() + " finished");
+        for (Iterator iter = all.iterator(); iter.hasNext();) {
+            log.info("Indexing " + collection.getName() + ", lane " + iter.next());
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stop all threads, throwing away all work not done yet.
+     */
+    void abort() {
+        for (Iterator iter = getLanes().iterator(); iter.hasNext();) {
+            ((Lane) iter.next()).abort();
+        }
+        done.clear();
+        writer.interrupt();
+    }
+
+    /**
+     * Main loop of the writer: add documents to the index until the queue with finished documents is closed.
+     */
+    private void write() {
+        try {
+            IndexCommand ic;
+            while ((ic = (IndexCommand) done.take()) != null) {
+                collection.addDocument(ic);
+            }
+        }
+        catch (IndexException e) {
+            log.error("Can't add document to index of " + collection.getName() + ", stopping", e);
+            fail(e);
+        }
+        catch (RuntimeException e) {
+            log.error("Unexpected error adding document to index of " + collection.getName() + ", stopping", e);
+            fail(new IndexException("Unexpected error adding document to index of '" + collection.getName() + "'", e));
+        }
+        catch (InterruptedException e) {
+            log.debug("Writer interrupted, stopping");
+        }
+    }
+
+    /**
+     * Record the failure of the writer stage, close all queues and throw away all pending work. Closing the queues releases the
+     * producer and workers waiting on them: a put throws an IllegalStateException, a take returns null.
+     *
+     * @param e the failure
+     */
+    private synchronized void fail(final IndexException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        for (Iterator iter = getLanes().iterator(); iter.hasNext();) {
+            ((Lane) iter.next()).closeAndClear();
+        }
+        done.close();
+        done.clear();
+    }
+
+    /**
+     * Rethrow the failure of the writer stage, if any.
+     *
+     * @throws IndexException the failure
+     */
+    private synchronized void checkFailure() throws IndexException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A queue of files to hash and extract, with its own workers. Keeps count of the files extracted and the depth of its queue.
+     */
+    final class Lane {
+        /** The name, for logging. */
+        private final String name;
+
+        /** Commands waiting to be hashed and extracted. */
+        private final BoundedQueue work;
+
+        /** The threads hashing and extracting files. */
+        private final Thread[] workers;
+
+        /** The time the lane was started. */
+        private long started;
+
+        /** The time the last worker finished, 0 while running. */
+        private long finished;
+
+        /** The number of files handled. */
+        private int handled;
+
+        /** The milliseconds the workers spent handling files. */
+        private long busy;
+
+        /** The deepest the queue has been. */
+        private int maxDepth;
+
+        /**
+         * Create a lane.
+         *
+         * @param theName the name
+         * @param threads the number of workers
+         * @param queueSize the number of commands that can wait in the queue
+         */
+        Lane(final String theName, final int threads, final int queueSize) {
+            name = theName;
+            work = new BoundedQueue(queueSize);
+            workers = new Thread[Math.max(1, threads)];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread(new Runnable() {
+                    public void run() {
+                        extract();
+                    }
+                });
+                workers[i].setName(collection.getName() + "ExtractingThread-" + name + "-" + i);
+            }
+        }
+
+        /**
+         * Start the workers.
+         */
+        void start() {
+            started = System.currentTimeMillis();
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].start();
+            }
+        }
+
+        /**
+         * Add a command to the queue, waiting for room if the queue is full.
+         *
+         * @param ic the command
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void put(final IndexCommand ic) throws InterruptedException {
+            work.put(ic);
+            synchronized (this) {
+                maxDepth = Math.max(maxDepth, work.size());
+            }
+        }
+
+        /**
+         * Stop accepting commands, the workers end when the queue is empty.
+         */
+        void close() {
+            work.close();
+        }
+
+        /**
+         * Stop accepting commands, and throw away all commands waiting. Workers and producers waiting on the queue are released.
+         */
+        void closeAndClear() {
+            work.close();
+            work.clear();
+        }
+
+        /**
+         * Throw away all commands waiting, and interrupt the workers.
+         */
+        void abort() {
+            work.clear();
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].interrupt();
+            }
+        }
+
+        /**
+         * Wait for the workers to end.
+         *
+         * @throws InterruptedException if interrupted while waiting
+         */
+        void join() throws InterruptedException {
+            for (int i = 0; i < workers.length; i++) {
+                workers[i].join();
+            }
+            synchronized (this) {
+                if (finished == 0) {
+                    finished = System.currentTimeMillis();
+                }
+            }
+        }
+
+        /**
+         * @return Returns the name.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return Returns the number of workers.
+         */
+        int getThreads() {
+            return workers.length;
+        }
+
+        /**
+         * @return Returns the number of files waiting in the queue.
+         */
+        int getQueueDepth() {
+            return work.size();
+        }
+
+        /**
+         * @return Returns the deepest the queue has been.
+         */
+        synchronized int getMaxQueueDepth() {
+            return maxDepth;
+        }
+
+        /**
+         * @return Returns the number of files handled.
+         */
+        synchronized int getHandled() {
+            return handled;
+        }
+
+        /**
+         * Get the number of files handled per second since the lane was started.
+         *
+         * @return the files per second
+         */
+        synchronized double getThroughput() {
+            long end = finished == 0 ? System.currentTimeMillis() : finished;
+            return handled * 1000.0 / Math.max(1, end - started);
+        }
+
+        /**
+         * Get the average time to handle a file.
+         *
+         * @return the milliseconds
+         */
+        synchronized long getAverageTime() {
+            return handled == 0 ? 0 : busy / handled;
+        }
+
+        /**
+         * Count a file handled.
+         *
+         * @param millis the time it took
+         */
+        private synchronized void handled(final long millis) {
+            handled++;
+            busy += millis;
+        }
+
+        /**
+         * Main loop of a worker: hash and extract files until the queue is closed.
+         */
+        private void extract() {
+            try {
+                IndexCommand ic;
+                while ((ic = (IndexCommand) work.take()) != null) {
+                    long start = System.currentTimeMillis();
+                    boolean prepared = false;
+                    try {
+                        prepared = collection.prepareDocument(ic);
+                    }
+                    catch (RuntimeException e) {
+                        log.warn("Unexpected error extracting " + ic.getFile() + ", skipping", e);
+                        collection.counting().failed();
+                    }
+                    handled(System.currentTimeMillis() - start);
+                    if (prepared) {
+                        try {
+                            done.put(ic);
+                        }
+                        catch (IllegalStateException e) {
+                            // the writer stage has stopped, nothing left to do
+                            return;
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                log.debug("Worker interrupted, stopping");
+            }
+            finally {
+                // don't leave the extraction thread of this worker waiting until it notices that the worker has ended
+                ExtractionThread.releaseCurrentThread();
+            }
+        }
+
+        /**
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            return name + ": " + workers.length + " threads, " + getHandled() + " files at " + (Math.round(getThroughput() * 10) / 10.0)
+                + " files/s, " + getAverageTime() + " ms per file, queue depth " + getQueueDepth() + " (max " + getMaxQueueDepth() + ")";
+        }
+    }
+}
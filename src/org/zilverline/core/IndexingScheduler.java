@@ -0,0 +1,198 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.service.CollectionManager;
+
+/**
+ * Indexes collections in the background, at most <code>maxConcurrentIndexes</code> of the CollectionManager at the same time.
+ *
+ * <p>
+ * Collections are indexed in the order they were submitted. Indexing all collections at once, as the nightly index does, just
+ * queues them: a number of threads, started when needed and ending when the queue is empty, take them from the queue one by one.
+ * The threads run at the priority set on the CollectionManager.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see AbstractCollection#indexInThread(boolean)
+ */
+public class IndexingScheduler {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(IndexingScheduler.class);
+
+    /** The number of collections indexed at the same time, if not set. */
+    public static final int DEFAULT_MAX_CONCURRENT_INDEXES = 2;
+
+    /** The manager holding the settings. */
+    private final CollectionManager manager;
+
+    /** The jobs waiting for a thread, oldest first. */
+    private final LinkedList queue = new LinkedList();
+
+    /** The jobs being indexed. */
+    private final List running = new ArrayList();
+
+    /** The number of threads taking jobs from the queue. */
+    private int workers = 0;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param theManager the manager holding the maximum number of concurrent indexes and the priority
+     */
+    public IndexingScheduler(final CollectionManager theManager) {
+        manager = theManager;
+    }
+
+    /**
+     * Queue a collection for indexing. A thread is started if less than the maximum are running.
+     *
+     * @param collection the collection
+     * @param fullIndex whether a full or incremental index should be created
+     * @return the job, which reflects the state of indexing
+     */
+    public synchronized IndexingJob submit(final DocumentCollection collection, final boolean fullIndex) {
+        IndexingJob job = new IndexingJob(collection, fullIndex);
+        queue.addLast(job);
+        log.debug("Queued " + job + ", " + queue.size() + " waiting");
+        if (workers < getMaxConcurrentIndexes()) {
+            startWorker();
+        }
+        return job;
+    }
+
+    /**
+     * Stop a job. A queued job is removed from the queue and marked as failed, the thread of a running job is interrupted.
+     *
+     * @param job the job
+     */
+    public synchronized void cancel(final IndexingJob job) {
+        if (queue.remove(job)) {
+            job.fail("Stopped before indexing started");
+            log.debug("Removed " + job + " from queue");
+        } else {
+            Thread thread = job.getThread();
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Get the jobs waiting for a thread.
+     *
+     * @return List of IndexingJobs, oldest first
+     */
+    public synchronized List getQueued() {
+        return new ArrayList(queue);
+    }
+
+    /**
+     * Get the jobs being indexed.
+     *
+     * @return List of IndexingJobs
+     */
+    public synchronized List getRunning() {
+        return new ArrayList(running);
+    }
+
+    /**
+     * Get the maximum number of collections indexed at the same time.
+     *
+     * @return the maximum set on the manager, or DEFAULT_MAX_CONCURRENT_INDEXES
+     */
+    public int getMaxConcurrentIndexes() {
+        if (manager.getMaxConcurrentIndexes() != null && manager.getMaxConcurrentIndexes().intValue() > 0) {
+            return manager.getMaxConcurrentIndexes().intValue();
+        }
+        return DEFAULT_MAX_CONCURRENT_INDEXES;
+    }
+
+    /**
+     * Start a thread taking jobs from the queue.
+     */
+    private void startWorker() {
+        workers++;
+        Thread worker = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        });
+        worker.setName("IndexingThread" + workers);
+        if (manager.getPriority() != null) {
+            worker.setPriority(manager.getPriority().intValue());
+        } else {
+            worker.setPriority(Thread.NORM_PRIORITY);
+        }
+        worker.start();
+    }
+
+    /**
+     * Main loop of an indexing thread: index the queued jobs one by one, until the queue is empty.
+     */
+    private void work() {
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        while (true) {
+            IndexingJob job;
+            synchronized (this) {
+                // also stop if the maximum has been lowered in the meantime
+                if (queue.isEmpty() || workers > getMaxConcurrentIndexes()) {
+                    workers--;
+                    return;
+                }
+                job = (IndexingJob) queue.removeFirst();
+                job.start(thread);
+                running.add(job);
+            }
+            thread.setName(job.getCollection().getName() + "IndexingThread");
+            try {
+                log.debug("Starting " + job);
+                job.getCollection().index(job.isFullIndex());
+                job.done();
+            }
+            catch (Exception e) {
+                // in case ANY exception slips through
+                log.error("Can't succesfully finish background indexing process", e);
+                job.fail(e.getMessage());
+            }
+            finally {
+                synchronized (this) {
+                    running.remove(job);
+                }
+                // a stop request for this job should not affect the next one
+                Thread.interrupted();
+                thread.setName(threadName);
+            }
+        }
+    }
+}
@@ -0,0 +1,686 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.util.DigestSet;
+import org.zilverline.util.DirectoryCrawler;
+
+/**
+ * The manifest of a FileSystemCollection records size, modification date and MD5 hash of every file indexed, by its path
+ * relative to the content directory.
+ *
+ * <p>
+ * During an incremental index, a file whose size and modification date match the manifest is known to have the recorded hash,
+ * so it does not need to be read to find out whether it is already in the index. The manifest is stored next to the index, in
+ * the collection's index directory.
+ * </p>
+ * <p>
+ * A collection can hold millions of files, so the manifest does not keep their paths in memory. A file is known by a 64 bit hash
+ * of its path, and its size, modification date and MD5 hash are kept as longs in arrays with open addressing, some 55 bytes per
+ * file. The paths are read from the manifest on disk when they are needed, and the paths of files recorded during a run are
+ * appended to a file beside it until the manifest is saved. Hashes that are no MD5 hash, which should not occur, are kept as
+ * Strings.
+ * </p>
+ * <p>
+ * The manifest is only rewritten at the end of a run. A checkpoint during the run just marks the end of the appended entries,
+ * and syncs them to disk. If the run is interrupted, the next {@link #load()} takes the entries up to the last checkpoint.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see FileSystemCollection#index(boolean)
+ */
+final class Manifest {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(Manifest.class);
+
+    /** Name of the manifest file in the index directory. */
+    public static final String FILE_NAME = "zilverline.manifest";
+
+    /** First line of a manifest file, identifying the format. */
+    private static final String HEADER = "# zilverline manifest 1";
+
+    /** Line marking a checkpoint in the file of added entries. */
+    private static final String CHECKPOINT = "# checkpoint";
+
+    /** Initial number of slots, a power of two. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** State of a free slot. */
+    private static final byte FREE = 0;
+
+    /** State of a file read from disk, not seen during this run. */
+    private static final byte PREVIOUS = 1;
+
+    /** State of a file read from disk, and seen unchanged during this run. */
+    private static final byte SEEN = 2;
+
+    /** State of a file recorded during this run. */
+    private static final byte ADDED = 3;
+
+    /** State of a file removed during this run. */
+    private static final byte REMOVED = 4;
+
+    /** The file the manifest is stored in. */
+    private final File file;
+
+    /** The file the files recorded during this run are appended to, until the manifest is saved. */
+    private final File addedFile;
+
+    /** Writer of the added files, null if none have been added since the manifest was saved. */
+    private Writer added;
+
+    /** The stream under {@link #added}, to sync it. */
+    private FileOutputStream addedOut;
+
+    /** The hashes of the paths, by slot. */
+    private long[] keys;
+
+    /** The state of the slots. */
+    private byte[] states;
+
+    /** The sizes, by slot. */
+    private long[] sizes;
+
+    /** The modification dates, by slot. */
+    private long[] dates;
+
+    /** The high halves of the MD5 hashes, by slot. */
+    private long[] highs;
+
+    /** The low halves of the MD5 hashes, by slot. */
+    private long[] lows;
+
+    /** The number of slots in use. */
+    private int used;
+
+    /** The number of files seen or recorded this run. */
+    private int current;
+
+    /** The hashes that are no MD5 hash, by the hash of the path (a Long). */
+    private final Map others = new HashMap();
+
+    /**
+     * Create an empty manifest for the given index directory. Use {@link #load()} to read an existing one.
+     *
+     * @param indexDir the index directory of the collection
+     */
+    Manifest(final File indexDir) {
+        file = new File(indexDir, FILE_NAME);
+        addedFile = new File(indexDir, FILE_NAME + ".new");
+        clear();
+    }
+
+    /**
+     * Read the manifest from disk. A missing or unreadable manifest results in an empty one, which just means that all files will
+     * be hashed. If a run has been interrupted, the entries it added up to its last checkpoint are read as well, and saved in the
+     * manifest.
+     */
+    synchronized void load() {
+        clear();
+        if (!file.exists() && !addedFile.exists()) {
+            log.debug("No manifest " + file + " yet");
+            return;
+        }
+        try {
+            read(file, Integer.MAX_VALUE);
+            if (addedFile.exists()) {
+                // entries after the last checkpoint may have been written halfway
+                read(addedFile, getLastCheckpoint(addedFile));
+                save(false);
+            }
+            log.debug("Read " + used + " entries from manifest " + file);
+        }
+        catch (IOException e) {
+            log.warn("Can't read manifest " + file + ", all files will be hashed", e);
+            clear();
+        }
+    }
+
+    /**
+     * Read the entries of a manifest file.
+     *
+     * @param from the manifest file
+     * @param lines the number of lines after the header to read
+     * @throws IOException on error
+     */
+    private void read(final File from, final int lines) throws IOException {
+        BufferedReader in = open(from);
+        if (in == null) {
+            if (from.exists()) {
+                log.warn("Ignoring manifest " + from + " with unknown format");
+            }
+            return;
+        }
+        try {
+            String line;
+            for (int i = 0; i < lines && (line = in.readLine()) != null; i++) {
+                if (CHECKPOINT.equals(line)) {
+                    continue;
+                }
+                // size, modification date, hash and path, separated by tabs, the path last since it might contain a tab
+                int first = line.indexOf('\t');
+                int second = line.indexOf('\t', first + 1);
+                int third = line.indexOf('\t', second + 1);
+                if (first < 0 || second < 0 || third < 0) {
+                    log.warn("Ignoring corrupt line in manifest " + from + ": " + line);
+                    continue;
+                }
+                try {
+                    long size = Long.parseLong(line.substring(0, first));
+                    long lastModified = Long.parseLong(line.substring(first + 1, second));
+                    store(line.substring(third + 1), size, lastModified, line.substring(second + 1, third), PREVIOUS);
+                }
+                catch (NumberFormatException e) {
+                    log.warn("Ignoring corrupt line in manifest " + from + ": " + line);
+                }
+            }
+        }
+        finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Find the last checkpoint in a manifest file.
+     *
+     * @param from the manifest file
+     * @return the number of lines after the header up to the last checkpoint, 0 if there is none
+     * @throws IOException on error
+     */
+    private int getLastCheckpoint(final File from) throws IOException {
+        BufferedReader in = open(from);
+        if (in == null) {
+            return 0;
+        }
+        int checkpoint = 0;
+        try {
+            String line;
+            for (int i = 1; (line = in.readLine()) != null; i++) {
+                if (CHECKPOINT.equals(line)) {
+                    checkpoint = i;
+                }
+            }
+        }
+        finally {
+            close(in);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Get the hash of a file, if the file has not changed since it was recorded in the manifest. The file is then recorded for
+     * this run as well.
+     *
+     * @param path the path relative to the content directory
+     * @param size the current size
+     * @param lastModified the current modification date
+     * @return the recorded hash, or null if the file is new or changed
+     */
+    synchronized String getUnchangedHash(final String path, final long size, final long lastModified) {
+        int slot = find(key(path));
+        if ((states[slot] != PREVIOUS && states[slot] != SEEN) || sizes[slot] != size || dates[slot] != lastModified) {
+            return null;
+        }
+        if (states[slot] == PREVIOUS) {
+            states[slot] = SEEN;
+            current++;
+        }
+        return getHash(slot);
+    }
+
+    /**
+     * Forget a file read from disk if it has changed since, as found by the crawler. The old documents of the file must then be
+     * removed from the index before it is indexed again. The size and modification date of the entry are only read if the file
+     * is in the manifest.
+     *
+     * @param path the path relative to the content directory
+     * @param entry the entry of the file found by the crawler
+     * @return true if the file is in the manifest read from disk with another size or modification date
+     */
+    synchronized boolean removeIfChanged(final String path, final DirectoryCrawler.Entry entry) {
+        int slot = find(key(path));
+        if (states[slot] != PREVIOUS || (sizes[slot] == entry.getSize() && dates[slot] == entry.getLastModified())) {
+            return false;
+        }
+        states[slot] = REMOVED;
+        others.remove(new Long(keys[slot]));
+        return true;
+    }
+
+    /**
+     * Get the paths of the files in the manifest read from disk that have not been seen during this run. Once a run has seen all
+     * files, these are the files that have been removed since. The paths are read from the manifest on disk again.
+     *
+     * @return a List of paths (Strings), possibly empty
+     */
+    synchronized List getUnseenPaths() {
+        List unseen = new ArrayList();
+        BufferedReader in = open(file);
+        if (in == null) {
+            return unseen;
+        }
+        try {
+            String path;
+            while ((path = readPath(in)) != null) {
+                if (states[find(key(path))] == PREVIOUS) {
+                    unseen.add(path);
+                }
+            }
+        }
+        catch (IOException e) {
+            log.warn("Can't read manifest " + file + ", removed files may keep their documents", e);
+        }
+        finally {
+            close(in);
+        }
+        return unseen;
+    }
+
+    /**
+     * Get the paths of the files recorded during this run with one of the given hashes.
+     *
+     * @param hashes the hashes
+     * @return a List of paths (Strings), possibly empty
+     */
+    synchronized List getAddedPaths(final Set hashes) {
+        List paths = new ArrayList();
+        if (added == null || hashes.isEmpty()) {
+            return paths;
+        }
+        BufferedReader in = null;
+        try {
+            added.flush();
+            in = open(addedFile);
+            String path;
+            while (in != null && (path = readPath(in)) != null) {
+                int slot = find(key(path));
+                if (states[slot] == ADDED && hashes.contains(getHash(slot)) && !paths.contains(path)) {
+                    paths.add(path);
+                }
+            }
+        }
+        catch (IOException e) {
+            log.warn("Can't read " + addedFile, e);
+        }
+        finally {
+            close(in);
+        }
+        return paths;
+    }
+
+    /**
+     * Record a file for this run.
+     *
+     * @param path the path relative to the content directory
+     * @param size the size
+     * @param lastModified the modification date
+     * @param hash the MD5 hash
+     */
+    synchronized void put(final String path, final long size, final long lastModified, final String hash) {
+        store(path, size, lastModified, hash, ADDED);
+        try {
+            if (added == null) {
+                addedOut = new FileOutputStream(addedFile);
+                added = new BufferedWriter(new OutputStreamWriter(addedOut, "UTF-8"));
+                added.write(HEADER);
+                added.write('\n');
+            }
+            added.write(size + "\t" + lastModified + "\t" + hash + "\t" + path + "\n");
+        }
+        catch (IOException e) {
+            // the file is missing from the manifest then, and is hashed again next time
+            log.warn("Can't record " + path + " in " + addedFile, e);
+        }
+    }
+
+    /**
+     * Forget a file, e.g. because it has been deleted.
+     *
+     * @param path the path relative to the content directory
+     */
+    synchronized void remove(final String path) {
+        int slot = find(key(path));
+        if (states[slot] == FREE || states[slot] == REMOVED) {
+            return;
+        }
+        if (states[slot] != PREVIOUS) {
+            current--;
+        }
+        // the slot stays in use, so that the files after it can still be found
+        states[slot] = REMOVED;
+        others.remove(new Long(keys[slot]));
+    }
+
+    /**
+     * Get the number of files recorded this run.
+     *
+     * @return the number of files
+     */
+    synchronized int size() {
+        return current;
+    }
+
+    /**
+     * Make the files recorded so far survive a crash, without rewriting the manifest: mark a checkpoint after them, and sync them
+     * to disk.
+     *
+     * @throws IOException if the files recorded can't be written
+     */
+    synchronized void checkpoint() throws IOException {
+        if (added == null) {
+            return;
+        }
+        added.write(CHECKPOINT);
+        added.write('\n');
+        added.flush();
+        addedOut.getFD().sync();
+    }
+
+    /**
+     * Write the files recorded this run to disk, replacing the previous manifest. This reads and writes the whole manifest, so it
+     * is done at the end of a run, use {@link #checkpoint()} during the run.
+     *
+     * @param complete false if the run has not seen all files, in that case the previous entries of files not seen are kept
+     * @throws IOException if the manifest can't be written
+     */
+    synchronized void save(final boolean complete) throws IOException {
+        if (added != null) {
+            added.flush();
+        }
+        // the paths are in the files added and the previous manifest, the entries in memory tell which ones to write
+        boolean[] written = new boolean[keys.length];
+        int count = 0;
+        // write to a temporary file first, so a crash does not leave a half manifest
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+        try {
+            out.write(HEADER);
+            out.write('\n');
+            count += copy(addedFile, out, written, complete);
+            count += copy(file, out, written, complete);
+        }
+        finally {
+            out.close();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can't replace manifest " + file);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Can't rename " + tmp + " to " + file);
+        }
+        // the files added are in the manifest now
+        if (added != null) {
+            added.close();
+            added = null;
+            addedOut = null;
+        }
+        if (addedFile.exists() && !addedFile.delete()) {
+            log.warn("Can't remove " + addedFile);
+        }
+        log.debug("Wrote " + count + " entries to manifest " + file);
+    }
+
+    /**
+     * Write the entries of the paths in a manifest file that are to be saved, each path once.
+     *
+     * @param from the manifest file to take the paths from
+     * @param out the manifest written
+     * @param written the slots written so far
+     * @param complete false to write the previous entries of files not seen as well
+     * @return the number of entries written
+     * @throws IOException on error
+     */
+    private int copy(final File from, final Writer out, final boolean[] written, final boolean complete) throws IOException {
+        BufferedReader in = open(from);
+        if (in == null) {
+            return 0;
+        }
+        int count = 0;
+        try {
+            String path;
+            while ((path = readPath(in)) != null) {
+                int slot = find(key(path));
+                if (states[slot] == FREE || states[slot] == REMOVED || written[slot] || (complete && states[slot] == PREVIOUS)) {
+                    continue;
+                }
+                out.write(sizes[slot] + "\t" + dates[slot] + "\t" + getHash(slot) + "\t" + path + "\n");
+                written[slot] = true;
+                count++;
+            }
+        }
+        finally {
+            close(in);
+        }
+        return count;
+    }
+
+    /**
+     * Open a manifest file, and skip its header.
+     *
+     * @param from the file
+     * @return a reader positioned at the first entry, or null if the file does not exist or has another format
+     */
+    private BufferedReader open(final File from) {
+        if (!from.exists()) {
+            return null;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(from), "UTF-8"));
+            if (HEADER.equals(in.readLine())) {
+                return in;
+            }
+        }
+        catch (IOException e) {
+            log.warn("Can't read " + from, e);
+        }
+        close(in);
+        return null;
+    }
+
+    /**
+     * Read the path of the next entry of a manifest file, skipping corrupt lines.
+     *
+     * @param in the reader
+     * @return the path, or null at the end of the file
+     * @throws IOException on error
+     */
+    private static String readPath(final BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            int first = line.indexOf('\t');
+            int second = line.indexOf('\t', first + 1);
+            int third = line.indexOf('\t', second + 1);
+            if (first >= 0 && second >= 0 && third >= 0) {
+                return line.substring(third + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Close a reader, logging errors.
+     *
+     * @param in the reader, may be null
+     */
+    private void close(final BufferedReader in) {
+        if (in != null) {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                log.warn("Can't close manifest " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Store the entry of a file.
+     *
+     * @param path the path relative to the content directory
+     * @param size the size
+     * @param lastModified the modification date
+     * @param hash the hash
+     * @param state PREVIOUS for an entry read from disk, ADDED for one recorded this run
+     */
+    private void store(final String path, final long size, final long lastModified, final String hash, final byte state) {
+        long key = key(path);
+        int slot = find(key);
+        if (states[slot] == FREE) {
+            used++;
+            if (state == ADDED) {
+                current++;
+            }
+        } else if ((states[slot] == PREVIOUS || states[slot] == REMOVED) && state == ADDED) {
+            current++;
+        }
+        keys[slot] = key;
+        states[slot] = state;
+        sizes[slot] = size;
+        dates[slot] = lastModified;
+        if (DigestSet.isDigest(hash)) {
+            highs[slot] = DigestSet.parse(hash, 0);
+            lows[slot] = DigestSet.parse(hash, 16);
+            others.remove(new Long(key));
+        } else {
+            others.put(new Long(key), hash);
+        }
+        if (used * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Get the hash in a slot.
+     *
+     * @param slot the slot
+     * @return the hash
+     */
+    private String getHash(final int slot) {
+        String other = (String) others.get(new Long(keys[slot]));
+        if (other != null) {
+            return other;
+        }
+        return DigestSet.format(highs[slot], lows[slot]);
+    }
+
+    /**
+     * Get the 64 bit hash of a path: its String hash in the high half, and a FNV-1a hash in the low half. Taking a wrong entry
+     * would need two paths with the same 64 bits, and a file of the same size and modification date.
+     *
+     * @param path the path
+     * @return the hash
+     */
+    private static long key(final String path) {
+        int fnv = 0x811c9dc5;
+        for (int i = 0; i < path.length(); i++) {
+            fnv ^= path.charAt(i);
+            fnv *= 0x01000193;
+        }
+        return ((long) path.hashCode() << 32) | (fnv & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Find the slot of a path, or the free slot where it should go.
+     *
+     * @param key the hash of the path
+     * @return the slot
+     */
+    private int find(final long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (states[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Forget all entries.
+     */
+    private void clear() {
+        allocate(INITIAL_CAPACITY);
+        used = 0;
+        current = 0;
+        others.clear();
+    }
+
+    /**
+     * Create empty slots.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        states = new byte[capacity];
+        sizes = new long[capacity];
+        dates = new long[capacity];
+        highs = new long[capacity];
+        lows = new long[capacity];
+    }
+
+    /**
+     * Move all entries to new slots.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void resize(final int capacity) {
+        long[] oldKeys = keys;
+        byte[] oldStates = states;
+        long[] oldSizes = sizes;
+        long[] oldDates = dates;
+        long[] oldHighs = highs;
+        long[] oldLows = lows;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] != FREE) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                states[slot] = oldStates[i];
+                sizes[slot] = oldSizes[i];
+                dates[slot] = oldDates[i];
+                highs[slot] = oldHighs[i];
+                lows[slot] = oldLows[i];
+            }
+        }
+    }
+}
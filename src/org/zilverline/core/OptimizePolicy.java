@@ -0,0 +1,174 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.service.CollectionManager;
+
+/**
+ * Decides whether an index should be optimized at the end of an indexing run.
+ *
+ * <p>
+ * Optimizing merges all segments of an index into one, which means rewriting the entire index. That is worth it after a full
+ * index, but not after adding a single uploaded file to a large index. The policy is set on the CollectionManager:
+ * </p>
+ * <ul>
+ * <li><code>always</code> (or none set): optimize after every run</li>
+ * <li><code>never</code>: never optimize</li>
+ * <li><code>fullIndex</code>: only optimize after a full index</li>
+ * <li><code>segments</code>: optimize when the index has more segments than <code>optimizeMaxSegments</code></li>
+ * <li><code>offPeak</code>: optimize when the run ends between the hours <code>offPeakStart</code> and <code>offPeakEnd</code></li>
+ * </ul>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public final class OptimizePolicy {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(OptimizePolicy.class);
+
+    /** Optimize after every indexing run. */
+    public static final String ALWAYS = "always";
+
+    /** Never optimize. */
+    public static final String NEVER = "never";
+
+    /** Optimize after a full index only. */
+    public static final String FULL_INDEX = "fullIndex";
+
+    /** Optimize when the number of segments exceeds a maximum. */
+    public static final String SEGMENTS = "segments";
+
+    /** Optimize during off-peak hours only. */
+    public static final String OFF_PEAK = "offPeak";
+
+    /** All policies. */
+    public static final String[] ALL = { ALWAYS, NEVER, FULL_INDEX, SEGMENTS, OFF_PEAK };
+
+    /** Number of segments above which the <code>segments</code> policy optimizes, if not set. */
+    public static final int DEFAULT_MAX_SEGMENTS = 10;
+
+    /**
+     * Hidden default constructor.
+     */
+    private OptimizePolicy() {
+    }
+
+    /**
+     * Indicates whether a policy is known.
+     *
+     * @param policy the policy
+     * @return true if the policy is one of ALL
+     */
+    public static boolean isValid(final String policy) {
+        for (int i = 0; i < ALL.length; i++) {
+            if (ALL[i].equals(policy)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether an index should be optimized now, according to the policy of the manager.
+     *
+     * @param manager the manager holding the policy
+     * @param indexDir the directory of the index
+     * @param fullIndex whether the run was a full index
+     * @return true if the index should be optimized
+     */
+    public static boolean mustOptimize(final CollectionManager manager, final File indexDir, final boolean fullIndex) {
+        String policy = manager.getOptimizePolicy();
+        if (policy == null || ALWAYS.equals(policy)) {
+            return true;
+        }
+        if (NEVER.equals(policy)) {
+            return false;
+        }
+        if (FULL_INDEX.equals(policy)) {
+            return fullIndex;
+        }
+        if (SEGMENTS.equals(policy)) {
+            int max = DEFAULT_MAX_SEGMENTS;
+            if (manager.getOptimizeMaxSegments() != null) {
+                max = manager.getOptimizeMaxSegments().intValue();
+            }
+            int segments = countSegments(indexDir);
+            log.debug("Index " + indexDir + " has " + segments + " segments, maximum is " + max);
+            return segments > max;
+        }
+        if (OFF_PEAK.equals(policy)) {
+            if (manager.getOffPeakStart() == null || manager.getOffPeakEnd() == null) {
+                log.warn("No off-peak hours set, optimizing anyway");
+                return true;
+            }
+            int hour = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+            return isOffPeak(hour, manager.getOffPeakStart().intValue(), manager.getOffPeakEnd().intValue());
+        }
+        log.warn("Unknown optimize policy '" + policy + "', optimizing anyway");
+        return true;
+    }
+
+    /**
+     * Determine whether an hour falls in the off-peak window. The window may wrap around midnight, e.g. from 22 to 6.
+     *
+     * @param hour the hour of the day, 0-23
+     * @param start the first off-peak hour
+     * @param end the first hour after the off-peak window
+     * @return true if off-peak
+     */
+    static boolean isOffPeak(final int hour, final int start, final int end) {
+        if (start <= end) {
+            return hour >= start && hour < end;
+        }
+        return hour >= start || hour < end;
+    }
+
+    /**
+     * Count the segments of an index, by counting the distinct names of the segment files on disk (<code>_1.cfs</code>,
+     * <code>_1.del</code>, ...). Lucene has no public API for this.
+     *
+     * @param indexDir the directory of the index
+     * @return the number of segments, 0 if the directory can't be read
+     */
+    static int countSegments(final File indexDir) {
+        String[] files = indexDir.list();
+        if (files == null) {
+            return 0;
+        }
+        Set segments = new HashSet();
+        for (int i = 0; i < files.length; i++) {
+            int dot = files[i].indexOf('.');
+            if (files[i].startsWith("_") && dot > 0) {
+                segments.add(files[i].substring(0, dot));
+            }
+        }
+        return segments.size();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The quarantine of a FileSystemCollection lists the files whose extraction took too long and was stopped. They are skipped by
+ * later indexing runs, until they change.
+ *
+ * <p>
+ * Like the manifest, files are listed by their path relative to the content directory, with their size and modification date.
+ * The quarantine is stored in the collection's index directory. Files in archives are not quarantined, they are unpacked anew
+ * every run.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see ExtractionThread
+ * @see Manifest
+ */
+final class Quarantine {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(Quarantine.class);
+
+    /** Name of the quarantine file in the index directory. */
+    public static final String FILE_NAME = "zilverline.quarantine";
+
+    /** First line of a quarantine file, identifying the format. */
+    private static final String HEADER = "# zilverline quarantine 1";
+
+    /** The file the quarantine is stored in. */
+    private final File file;
+
+    /** The size and modification date (as a long[]) of the quarantined files, by path. */
+    private final Map entries = new HashMap();
+
+    /**
+     * Create a quarantine for the given index directory, and read it from disk if it exists.
+     *
+     * @param indexDir the index directory of the collection
+     */
+    Quarantine(final File indexDir) {
+        file = new File(indexDir, FILE_NAME);
+        load();
+    }
+
+    /**
+     * Read the quarantine from disk. A missing or unreadable quarantine results in an empty one.
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                log.warn("Ignoring quarantine " + file + " with unknown format");
+                return;
+            }
+            while ((line = in.readLine()) != null) {
+                // size, modification date and path, separated by tabs, the path last since it might contain a tab
+                int first = line.indexOf('\t');
+                int second = line.indexOf('\t', first + 1);
+                if (first < 0 || second < 0) {
+                    log.warn("Ignoring corrupt line in quarantine " + file + ": " + line);
+                    continue;
+                }
+                try {
+                    long size = Long.parseLong(line.substring(0, first));
+                    long lastModified = Long.parseLong(line.substring(first + 1, second));
+                    entries.put(line.substring(second + 1), new long[] {size, lastModified});
+                }
+                catch (NumberFormatException e) {
+                    log.warn("Ignoring corrupt line in quarantine " + file + ": " + line);
+                }
+            }
+        }
+        catch (IOException e) {
+            log.warn("Can't read quarantine " + file, e);
+        }
+        finally {
+            if (in != null) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {
+                    log.warn("Can't close quarantine " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine whether a file is quarantined, i.e. it is listed and has not changed since.
+     *
+     * @param path the path relative to the content directory
+     * @param size the current size
+     * @param lastModified the current modification date
+     * @return true if the file should be skipped
+     */
+    synchronized boolean contains(final String path, final long size, final long lastModified) {
+        long[] entry = (long[]) entries.get(path);
+        return entry != null && entry[0] == size && entry[1] == lastModified;
+    }
+
+    /**
+     * Add a file to the quarantine, and write the quarantine to disk.
+     *
+     * @param path the path relative to the content directory
+     * @param size the size
+     * @param lastModified the modification date
+     * @throws IOException if the quarantine can't be written
+     */
+    synchronized void add(final String path, final long size, final long lastModified) throws IOException {
+        entries.put(path, new long[] {size, lastModified});
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.write(HEADER);
+            out.write('\n');
+            for (Iterator iter = entries.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry e = (Map.Entry) iter.next();
+                long[] entry = (long[]) e.getValue();
+                out.write(entry[0] + "\t" + entry[1] + "\t" + e.getKey() + "\n");
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get the number of quarantined files.
+     *
+     * @return the number of files
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+}
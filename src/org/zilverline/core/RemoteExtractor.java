@@ -0,0 +1,113 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Extractor that has a file extracted by an Extractor in a worker JVM of an {@link ExtractionWorkerPool}.
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see ExtractorFactory#createExtractor(File)
+ */
+final class RemoteExtractor implements Extractor {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(RemoteExtractor.class);
+
+    /** The classname of the Extractor in the worker. */
+    private final String className;
+
+    /** The pool of workers. */
+    private final ExtractionWorkerPool pool;
+
+    /** The maximum number of characters of content, 0 for no maximum. */
+    private int maxContentChars;
+
+    /**
+     * Create a RemoteExtractor.
+     *
+     * @param theClassName the classname of the Extractor in the worker
+     * @param thePool the pool of workers
+     */
+    RemoteExtractor(final String theClassName, final ExtractionWorkerPool thePool) {
+        className = theClassName;
+        pool = thePool;
+    }
+
+    /**
+     * @return Returns the classname of the Extractor in the worker.
+     */
+    String getClassName() {
+        return className;
+    }
+
+    /**
+     * Set the maximum number of characters of content the worker extracts.
+     *
+     * @param max the maximum, 0 for no maximum
+     */
+    void setMaxContentChars(final int max) {
+        maxContentChars = max;
+    }
+
+    /**
+     * Abort the extraction a thread is doing with this Extractor, by killing its worker.
+     *
+     * @param thread the thread calling {@link #extractInfo(File)}
+     * @return true if the thread was extracting in a worker
+     */
+    boolean abort(final Thread thread) {
+        return pool.abort(thread);
+    }
+
+    /**
+     * Extract the file in a worker.
+     *
+     * @param f the File to extract content from
+     * @return ParsedFileInfo the object containing relevant info of the provided file, null if extraction failed
+     */
+    public ParsedFileInfo extractInfo(final File f) {
+        return pool.extract(className, f, maxContentChars);
+    }
+
+    /**
+     * Extract the content from the given InputStream. Streams can't be handed to a worker, so this is done in this JVM.
+     *
+     * @param is the InputStream
+     * @return the content
+     */
+    public String getContent(final InputStream is) {
+        try {
+            return ((Extractor) Class.forName(className).newInstance()).getContent(is);
+        }
+        catch (Exception e) {
+            log.warn("Can't create Extractor " + className, e);
+            return "";
+        }
+    }
+}
@@ -0,0 +1,710 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+import org.zilverline.service.CollectionManager;
+
+/**
+ * The single IndexWriter of a collection, shared by everything that adds documents to it: the (background) indexing run, uploads
+ * and the IMAP indexer.
+ *
+ * <p>
+ * Before, every indexing run opened its own IndexWriter, so an upload during an indexing run failed on the write lock of the
+ * index. Now writers open a session with {@link #open(boolean)}, add documents through {@link #addDocument(Document)} and close
+ * their session with {@link #close()}. All sessions share one write lock and one buffer of documents, but not one IndexWriter for
+ * their whole lifetime: the IndexWriter is closed at every flush, and the next document added opens a new one.
+ * </p>
+ * <p>
+ * Added documents become searchable when the writer is flushed: when a session closes, or while indexing, once
+ * <code>writerFlushDocs</code> documents have been added or <code>writerFlushInterval</code> seconds have passed since the
+ * last flush. The interval is checked by a timer, so documents added just before a pause in indexing don't wait for the next one
+ * to become searchable. Lucene 1.9 can only flush by closing the IndexWriter, which is why every flush closes it. Listeners are
+ * notified after every flush.
+ * </p>
+ * <p>
+ * Since documents differ in size by orders of magnitude, the writer can also be flushed by the memory its buffered documents
+ * take: once they take <code>writerRamBuffer</code> megabytes, or once the buffered documents of all collections together take
+ * <code>writerRamTotal</code> megabytes. Lucene 1.9 does not report the memory it uses, so it is estimated from the characters
+ * the analyzer reads and the stored values of the fields. Once the total is crossed, the writers buffering the most are flushed,
+ * largest first, until the documents still buffered take less than the total.
+ * </p>
+ * <p>
+ * A full index can be built beside the collection's index, in a directory set with {@link #setDirectory(File)}, and replace it
+ * with {@link #replaceIndex()} once complete. Searches see the old index until then.
+ * </p>
+ * <p>
+ * Deleting documents needs an IndexReader, which can't modify the index while the IndexWriter is open. Use
+ * {@link #withReader(ReaderTask)} for that.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see AbstractCollection#getIndexWriter()
+ */
+public final class SharedIndexWriter {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(SharedIndexWriter.class);
+
+    /** Number of documents added after which the writer is flushed, if not set. */
+    public static final int DEFAULT_FLUSH_DOCS = 1000;
+
+    /** Number of seconds after which the writer is flushed, if not set. */
+    public static final int DEFAULT_FLUSH_INTERVAL = 60;
+
+    /** Estimated bytes of memory per buffered document, for the files of its segment in memory. */
+    static final int DOCUMENT_OVERHEAD = 10 * 1024;
+
+    /** Estimated bytes of memory per character of a buffered document. */
+    static final int BYTES_PER_CHAR = 2;
+
+    /** Bytes in a megabyte. */
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /** The estimated bytes of memory of the buffered documents of all writers, guarded by the class. */
+    private static long totalBuffered;
+
+    /** The writers with buffered documents, guarded by the class. */
+    private static final Set buffering = new HashSet();
+
+    /** The timer flushing writers whose interval has passed, created when first needed, guarded by the class. */
+    private static Timer timer;
+
+    /**
+     * Gets notified when new documents become visible to readers of the index.
+     */
+    public interface Listener {
+        /**
+         * Called after the writer has been flushed.
+         *
+         * @param writer the writer
+         */
+        void flushed(SharedIndexWriter writer);
+    }
+
+    /**
+     * Something to do with an IndexReader on the index, such as deleting documents.
+     */
+    public interface ReaderTask {
+        /**
+         * Do it.
+         *
+         * @param reader an IndexReader on the index, which may be used to delete documents
+         * @return a number, e.g. of documents deleted
+         * @throws IOException on error
+         */
+        int run(IndexReader reader) throws IOException;
+    }
+
+    /** The collection whose index this writes. */
+    private final AbstractCollection collection;
+
+    /** The listeners. */
+    private final List listeners = new ArrayList();
+
+    /** The IndexWriter, null if closed. */
+    private IndexWriter writer;
+
+    /** The directory written, null for the index of the collection. */
+    private File directory;
+
+    /** The number of open sessions. */
+    private int sessions;
+
+    /** The number of documents added since the last flush. */
+    private int pending;
+
+    /** The time of the last flush. */
+    private long lastFlush = System.currentTimeMillis();
+
+    /** The estimated bytes of memory of the documents added since the last flush. */
+    private long buffered;
+
+    /** The number of characters read by the analyzer, while adding a document. */
+    private long analyzed;
+
+    /** The scheduled check of the flush interval, null if none. */
+    private TimerTask flushTask;
+
+    /**
+     * Create the writer of a collection. The IndexWriter itself is opened when it's needed.
+     *
+     * @param col the collection
+     */
+    SharedIndexWriter(final AbstractCollection col) {
+        collection = col;
+    }
+
+    /**
+     * Add a listener, to be notified after every flush.
+     *
+     * @param listener the listener
+     */
+    public synchronized void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener the listener
+     */
+    public synchronized void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Open a session. Every session must be closed with {@link #close()}.
+     *
+     * @param create true to create a new, empty index, replacing the existing one
+     * @throws IOException if the index can't be created, or if it is to be created while other sessions are open, since that would
+     *             throw away what they have added
+     */
+    public synchronized void open(final boolean create) throws IOException {
+        if (create && sessions > 0) {
+            throw new IOException("Can't create a new index for " + collection.getName() + " while " + sessions
+                + " other session(s) are writing it");
+        }
+        sessions++;
+        if (create) {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            File indexDir = getDirectory();
+            indexDir.mkdirs();
+            writer = createWriter(indexDir, true);
+            pending = 0;
+            release();
+            lastFlush = System.currentTimeMillis();
+            cancelFlush();
+        }
+        log.debug("Opened session " + sessions + " on the index of " + collection.getName());
+    }
+
+    /**
+     * Close a session, and flush the writer so that the documents added are visible. The IndexWriter is closed if this was the
+     * last session.
+     *
+     * @throws IOException if the writer can't be flushed
+     */
+    public synchronized void close() throws IOException {
+        if (sessions == 0) {
+            log.warn("No open session on the index of " + collection.getName());
+            return;
+        }
+        sessions--;
+        log.debug("Closing session on the index of " + collection.getName() + ", " + sessions + " left");
+        flush();
+    }
+
+    /**
+     * Add a document to the index, flushing the writer if enough documents have been added, enough time has passed or the buffered
+     * documents take too much memory. If the documents of all writers take too much memory, the largest writers are flushed.
+     *
+     * @param doc the document
+     * @throws IOException if the document can't be added
+     */
+    public void addDocument(final Document doc) throws IOException {
+        synchronized (this) {
+            IndexWriter w = getWriter();
+            analyzed = 0;
+            w.addDocument(doc);
+            pending++;
+            long bytes = estimateSize(doc);
+            buffered += bytes;
+            addToTotal(this, bytes);
+            if (pending >= getFlushDocs() || System.currentTimeMillis() - lastFlush >= getFlushInterval() * 1000L
+                || exceeds(buffered, collection.getManager().getWriterRamBuffer())) {
+                flush();
+            } else if (flushTask == null) {
+                scheduleFlush();
+            }
+        }
+        // outside the lock of this writer, since flushing others takes theirs
+        Integer ramTotal = collection.getManager().getWriterRamTotal();
+        if (exceeds(getTotalBuffered(), ramTotal)) {
+            flushLargest(ramTotal);
+        }
+    }
+
+    /**
+     * Flush the writers buffering the most memory, largest first, until the buffered documents of all writers take less than the
+     * total allowed. Must be called without holding the lock of a writer.
+     *
+     * @param megabytes the total allowed
+     * @throws IOException if a writer can't be flushed
+     */
+    private static void flushLargest(final Integer megabytes) throws IOException {
+        List candidates;
+        synchronized (SharedIndexWriter.class) {
+            candidates = new ArrayList(buffering);
+        }
+        while (!candidates.isEmpty() && exceeds(getTotalBuffered(), megabytes)) {
+            SharedIndexWriter largest = null;
+            long most = 0;
+            for (Iterator iter = candidates.iterator(); iter.hasNext();) {
+                SharedIndexWriter w = (SharedIndexWriter) iter.next();
+                long bytes = w.getBuffered();
+                if (largest == null || bytes > most) {
+                    largest = w;
+                    most = bytes;
+                }
+            }
+            candidates.remove(largest);
+            log.debug("Documents of all collections take more than " + megabytes + " MB, flushing the index of "
+                + largest.collection.getName());
+            largest.flush();
+        }
+    }
+
+    /**
+     * Schedule a flush for when the flush interval has passed, in case no document is added by then.
+     */
+    private void scheduleFlush() {
+        int interval = getFlushInterval();
+        if (interval <= 0) {
+            return;
+        }
+        final TimerTask task = new TimerTask() {
+            public void run() {
+                flushIfDue(this);
+            }
+        };
+        flushTask = task;
+        long delay = Math.max(0, lastFlush + interval * 1000L - System.currentTimeMillis());
+        getTimer().schedule(task, delay);
+    }
+
+    /**
+     * Flush the writer if the flush interval has passed, called by the timer.
+     *
+     * @param task the task calling, which is ignored if the flush has been cancelled since
+     */
+    private synchronized void flushIfDue(final TimerTask task) {
+        if (task != flushTask) {
+            return;
+        }
+        flushTask = null;
+        if (pending == 0) {
+            return;
+        }
+        if (System.currentTimeMillis() - lastFlush >= getFlushInterval() * 1000L) {
+            try {
+                flush();
+            }
+            catch (IOException e) {
+                log.error("Error flushing the index of " + collection.getName(), e);
+            }
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Cancel the scheduled flush, if any.
+     */
+    private void cancelFlush() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+    }
+
+    /**
+     * Get the timer flushing writers, a daemon thread so it does not keep the JVM running.
+     *
+     * @return the timer
+     */
+    private static synchronized Timer getTimer() {
+        if (timer == null) {
+            timer = new Timer(true);
+        }
+        return timer;
+    }
+
+    /**
+     * Estimate the memory a document takes while it is buffered, from the characters the analyzer has read from it and the values
+     * of its fields. Measured with Lucene 1.9, a buffered document takes some ten files of at least a kilobyte each, and one to two
+     * bytes per character analyzed.
+     *
+     * @param doc the document just added
+     * @return the estimated bytes
+     */
+    private long estimateSize(final Document doc) {
+        long chars = analyzed;
+        for (Enumeration e = doc.fields(); e.hasMoreElements();) {
+            String value = ((Field) e.nextElement()).stringValue();
+            if (value != null) {
+                chars += value.length();
+            }
+        }
+        return DOCUMENT_OVERHEAD + chars * BYTES_PER_CHAR;
+    }
+
+    /**
+     * Indicates whether a number of bytes exceeds a maximum in megabytes.
+     *
+     * @param bytes the bytes
+     * @param megabytes the maximum, null or 0 for no maximum
+     * @return true if the maximum is exceeded
+     */
+    private static boolean exceeds(final long bytes, final Integer megabytes) {
+        return megabytes != null && megabytes.intValue() > 0 && bytes >= megabytes.intValue() * MEGABYTE;
+    }
+
+    /**
+     * Add to the estimated memory of the buffered documents of all writers.
+     *
+     * @param w the writer whose documents these are
+     * @param bytes the bytes added, or the negative bytes of all documents of the writer after they have been written
+     */
+    private static synchronized void addToTotal(final SharedIndexWriter w, final long bytes) {
+        totalBuffered += bytes;
+        if (bytes > 0) {
+            buffering.add(w);
+        } else {
+            buffering.remove(w);
+        }
+    }
+
+    /**
+     * Get the estimated memory of the buffered documents of all writers.
+     *
+     * @return the bytes
+     */
+    static synchronized long getTotalBuffered() {
+        return totalBuffered;
+    }
+
+    /**
+     * Get the estimated memory of the documents buffered by this writer.
+     *
+     * @return the bytes
+     */
+    synchronized long getBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Forget the memory of the buffered documents, after they have been written.
+     */
+    private void release() {
+        addToTotal(this, -buffered);
+        buffered = 0;
+    }
+
+    /**
+     * Get the number of documents in the index, including those added but not flushed yet.
+     *
+     * @return the number of documents
+     * @throws IOException if the index can't be read
+     */
+    public synchronized int docCount() throws IOException {
+        return getWriter().docCount();
+    }
+
+    /**
+     * Optimize the index.
+     *
+     * @throws IOException if the index can't be optimized
+     */
+    public synchronized void optimize() throws IOException {
+        log.debug("Optimizing index of " + collection.getName());
+        getWriter().optimize();
+    }
+
+    /**
+     * Add the documents of other indexes, such as the partitions of a full index built at the same time. Lucene optimizes the index
+     * while adding them. The writer is flushed afterwards.
+     *
+     * @param dirs the directories of the indexes
+     * @throws IOException if the indexes can't be read or added
+     */
+    public synchronized void addIndexes(final File[] dirs) throws IOException {
+        Directory[] indexes = new Directory[dirs.length];
+        try {
+            for (int i = 0; i < dirs.length; i++) {
+                indexes[i] = FSDirectory.getDirectory(dirs[i], false);
+            }
+            getWriter().addIndexes(indexes);
+        }
+        finally {
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] != null) {
+                    indexes[i].close();
+                }
+            }
+        }
+        log.debug("Added " + dirs.length + " indexes to the index of " + collection.getName());
+        flush();
+    }
+
+    /**
+     * Run a task with an IndexReader on the index. The writer is flushed and closed first, and no documents can be added until the
+     * task is done.
+     *
+     * @param task the task
+     * @return the result of the task
+     * @throws IOException if the index can't be read or modified
+     */
+    public synchronized int withReader(final ReaderTask task) throws IOException {
+        flush();
+        IndexReader reader = IndexReader.open(getDirectory());
+        try {
+            return task.run(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Flush the documents added so far to disk, by closing the IndexWriter, and notify the listeners.
+     *
+     * @throws IOException if the writer can't be closed
+     */
+    public synchronized void flush() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        }
+        finally {
+            writer = null;
+        }
+        log.debug("Flushed " + pending + " documents (about " + (buffered / 1024) + " KB) to the index of " + collection.getName());
+        pending = 0;
+        release();
+        lastFlush = System.currentTimeMillis();
+        cancelFlush();
+        for (Iterator iter = listeners.iterator(); iter.hasNext();) {
+            ((Listener) iter.next()).flushed(this);
+        }
+    }
+
+    /**
+     * Write to another directory than the index of the collection, e.g. to build a new index beside it. The documents added so far
+     * are flushed first.
+     *
+     * @param dir the directory, or null to write to the index of the collection again
+     * @throws IOException if the writer can't be flushed
+     */
+    public synchronized void setDirectory(final File dir) throws IOException {
+        flush();
+        directory = dir;
+    }
+
+    /**
+     * Get the directory written.
+     *
+     * @return the directory set with {@link #setDirectory(File)}, or else the index directory of the collection
+     */
+    public synchronized File getDirectory() {
+        if (directory != null) {
+            return directory;
+        }
+        return collection.getIndexDirWithManagerDefaults();
+    }
+
+    /**
+     * Replace the index of the collection by the directory written, and write to the index of the collection from now on. Nothing
+     * can be added while the index is replaced.
+     *
+     * @throws IOException if the index can't be replaced, the old index is then kept
+     * @see AbstractCollection#replaceIndex(File)
+     */
+    public synchronized void replaceIndex() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        flush();
+        collection.replaceIndex(directory);
+        directory = null;
+    }
+
+    /**
+     * Remove the write lock of the index, if nothing in this JVM is writing it. The lock is then left behind by an earlier run that
+     * died, and would stop the IndexWriter from being opened.
+     *
+     * @throws IOException if the lock can't be removed
+     */
+    public synchronized void removeStaleLock() throws IOException {
+        if (writer != null || sessions > 0) {
+            return;
+        }
+        Directory dir = FSDirectory.getDirectory(getDirectory(), false);
+        try {
+            if (IndexReader.isLocked(dir)) {
+                log.warn("Removing stale lock of the index of " + collection.getName());
+                IndexReader.unlock(dir);
+            }
+        }
+        finally {
+            dir.close();
+        }
+    }
+
+    /**
+     * Indicates whether a session is open.
+     *
+     * @return true if a session is open
+     */
+    public synchronized boolean isOpen() {
+        return sessions > 0;
+    }
+
+    /**
+     * Get the IndexWriter, opening it on the existing index if needed.
+     *
+     * @return the IndexWriter
+     * @throws IOException if the index can't be opened
+     */
+    private IndexWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = createWriter(getDirectory(), false);
+        }
+        return writer;
+    }
+
+    /**
+     * Create an IndexWriter, with the indexing settings of the manager.
+     *
+     * @param indexDir the directory of the index
+     * @param create true to create a new index
+     * @return the IndexWriter
+     * @throws IOException if the index can't be opened
+     */
+    private IndexWriter createWriter(final File indexDir, final boolean create) throws IOException {
+        IndexWriter w = new IndexWriter(indexDir, new CountingAnalyzer(collection.createAnalyzer()), create);
+        CollectionManager manager = collection.getManager();
+        // see whether there are specific indexing settings in manager
+        if (manager.getMergeFactor() != null) {
+            w.setMergeFactor(manager.getMergeFactor().intValue());
+        }
+        if (manager.getMinMergeDocs() != null) {
+            w.setMaxBufferedDocs(manager.getMinMergeDocs().intValue());
+        } else if (manager.getWriterRamBuffer() != null && manager.getWriterRamBuffer().intValue() > 0) {
+            // keep the documents in memory until the budget says otherwise, instead of writing a segment every ten documents
+            w.setMaxBufferedDocs(Math.max(IndexWriter.DEFAULT_MAX_BUFFERED_DOCS, getFlushDocs()));
+        }
+        if (manager.getMaxMergeDocs() != null) {
+            w.setMaxMergeDocs(manager.getMaxMergeDocs().intValue());
+        }
+        return w;
+    }
+
+    /**
+     * @return the number of documents added after which the writer is flushed
+     */
+    private int getFlushDocs() {
+        Integer flushDocs = collection.getManager().getWriterFlushDocs();
+        if (flushDocs == null) {
+            return DEFAULT_FLUSH_DOCS;
+        }
+        return flushDocs.intValue();
+    }
+
+    /**
+     * @return the number of seconds after which the writer is flushed
+     */
+    private int getFlushInterval() {
+        Integer interval = collection.getManager().getWriterFlushInterval();
+        if (interval == null) {
+            return DEFAULT_FLUSH_INTERVAL;
+        }
+        return interval.intValue();
+    }
+
+    /**
+     * Analyzer that counts the characters read by the analyzer it wraps, to estimate the memory of the documents added.
+     */
+    private final class CountingAnalyzer extends Analyzer {
+        /** The wrapped analyzer. */
+        private final Analyzer analyzer;
+
+        /**
+         * Wrap an analyzer.
+         *
+         * @param theAnalyzer the analyzer
+         */
+        CountingAnalyzer(final Analyzer theAnalyzer) {
+            analyzer = theAnalyzer;
+        }
+
+        /**
+         * @see org.apache.lucene.analysis.Analyzer#tokenStream(java.lang.String, java.io.Reader)
+         */
+        public TokenStream tokenStream(final String fieldName, final Reader reader) {
+            return analyzer.tokenStream(fieldName, new FilterReader(reader) {
+                public int read() throws IOException {
+                    int c = super.read();
+                    if (c != -1) {
+                        analyzed++;
+                    }
+                    return c;
+                }
+
+                public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                    int n = super.read(cbuf, off, len);
+                    if (n > 0) {
+                        analyzed += n;
+                    }
+                    return n;
+                }
+            });
+        }
+
+        /**
+         * @see org.apache.lucene.analysis.Analyzer#getPositionIncrementGap(java.lang.String)
+         */
+        public int getPositionIncrementGap(final String fieldName) {
+            return analyzer.getPositionIncrementGap(fieldName);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * An Extractor that can extract from a stream of the file's bytes that has already been opened, instead of opening the file
+ * itself. This lets the indexer read every file only once, feeding the same bytes to the MD5 hash and to the extractor.
+ *
+ * <p>
+ * This is a separate interface, so that existing Extractor plugins keep working. The indexer falls back to
+ * {@link Extractor#extractInfo(File)} for extractors that don't implement it.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see org.zilverline.extractors.AbstractExtractor
+ */
+public interface StreamExtractor extends Extractor {
+    /**
+     * This method extracts all relevant info of the file as an ParsedFileInfo object, reading the content from the given stream.
+     * The file is used for its name, size and modification date only. The stream is not closed.
+     *
+     * @param f the File to extract content from
+     * @param content the content of the file, positioned at its first byte
+     *
+     * @return ParsedFileInfo the object containing relevant info of the provided file
+     */
+    ParsedFileInfo extractInfo(final File f, final InputStream content);
+}
@@ -22,7 +22,11 @@
 package org.zilverline.extractors;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 
 import org.apache.commons.logging.Log;
@@ -32,6 +36,7 @@ import org.springframework.util.StringUtils;
 
 import org.zilverline.core.Extractor;
 import org.zilverline.core.ParsedFileInfo;
+import org.zilverline.core.StreamExtractor;
 import org.zilverline.util.FileUtils;
 import org.zilverline.util.Utils;
 
@@ -44,9 +49,9 @@ import org.zilverline.util.Utils;
  * 
  * @see org.zilverline.core.ParsedFileInfo
  */
-public abstract class AbstractExtractor implements Extractor {
+public abstract class AbstractExtractor implements StreamExtractor {
     /** default size of summary extracted from the file. */
-    private static final int SUMMARY_SIZE = 200;
+    protected static final int SUMMARY_SIZE = 200;
 
     /**
      * logger for Commons logging. This is non-static final protected, such that it defines a log for all subclasses too.
@@ -58,6 +63,15 @@ public abstract class AbstractExtractor implements Extractor {
     /** default size of summary extracted from the file. */
     private ParsedFileInfo fileInfo = new ParsedFileInfo();
 
+    /** The stream to read the content from instead of the file, if given to extractInfo. */
+    private InputStream source;
+
+    /** The maximum number of characters of content to extract, 0 for no maximum. */
+    private int maxContentChars;
+
+    /** Number of characters at the start of the content in which to look for an ISBN number. */
+    protected static final int ISBN_SEARCH_SIZE = 65536;
+
     /**
      * Set the file and all file related information of the document, such as length and modification date.
      * 
@@ -141,6 +155,59 @@ public abstract class AbstractExtractor implements Extractor {
         fileInfo.setSummary(summary);
     }
 
+    /**
+     * Set the maximum number of characters of content to extract from a document. The rest of the document is not indexed.
+     * 
+     * @param max the maximum, 0 for no maximum
+     */
+    public final void setMaxContentChars(final int max) {
+        maxContentChars = max;
+    }
+
+    /**
+     * @return Returns the maximum number of characters of content to extract from a document, 0 for no maximum.
+     */
+    public final int getMaxContentChars() {
+        return maxContentChars;
+    }
+
+    /**
+     * Create a writer for the content of the document being extracted, which holds no more than the maximum number of
+     * characters. Its reader can be returned from getContent without copying the content.
+     * 
+     * @return the ContentWriter
+     */
+    protected final ContentWriter createContentWriter() {
+        return new ContentWriter(maxContentChars);
+    }
+
+    /**
+     * Cut off the content of a document at the maximum number of characters. Use this for content that is extracted as a whole by
+     * the underlying library, before making a Reader of it.
+     * 
+     * @param text the content, can be null
+     * @return the content, or its first characters
+     */
+    protected final String limitContent(final String text) {
+        if (text == null || maxContentChars <= 0 || text.length() <= maxContentChars) {
+            return text;
+        }
+        log.debug("Content cut off at " + maxContentChars + " characters");
+        return text.substring(0, maxContentChars);
+    }
+
+    /**
+     * Set the summary and ISBN number of the document from its content. The ISBN number is looked for at the start of the
+     * content only.
+     * 
+     * @param content the content extracted
+     */
+    protected final void setSummaryAndISBN(final ContentWriter content) {
+        String head = content.getHead(ISBN_SEARCH_SIZE);
+        setSummary(getSummaryFromContent(head));
+        setISBN(getISBNFromContent(head));
+    }
+
     /**
      * Extract the content from the given file. As a side effect other attributes of ParsedFileInfo may be set too.
      * 
@@ -152,6 +219,49 @@ public abstract class AbstractExtractor implements Extractor {
      */
     public abstract Reader getContent(final File f);
 
+    /**
+     * Open the content of the file being extracted. Subclasses use this instead of opening the file themselves, so that the
+     * content can come from a stream passed to {@link #extractInfo(File, InputStream)}. That stream is handed out once, and is
+     * not closed by closing the returned stream, but it must be read before getContent returns.
+     * 
+     * @param f the file being extracted
+     * @return an InputStream on the content, to be closed by the caller
+     * @throws FileNotFoundException if the file can't be opened
+     */
+    protected final InputStream openStream(final File f) throws FileNotFoundException {
+        if (source != null) {
+            InputStream in = new FilterInputStream(source) {
+                public void close() {
+                    // the stream belongs to the caller of extractInfo
+                }
+            };
+            source = null;
+            return in;
+        }
+        return new FileInputStream(f);
+    }
+
+    /**
+     * This method extracts all relevant info of the file as an ParsedFileInfo object, reading the content from the given stream
+     * instead of from the file.
+     * 
+     * @param f the File to extract content from
+     * @param content the content of the file, not closed
+     * 
+     * @return ParsedFileInfo the object containing relevant info of the provided file
+     * 
+     * @see org.zilverline.core.StreamExtractor
+     */
+    public final ParsedFileInfo extractInfo(final File f, final InputStream content) {
+        source = content;
+        try {
+            return extractInfo(f);
+        }
+        finally {
+            source = null;
+        }
+    }
+
     /**
      * This method extracts all relevant info of the file as an ParsedFileInfo object. Uses getContent as callback.
      * 
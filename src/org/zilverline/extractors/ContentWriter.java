@@ -0,0 +1,240 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.extractors;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writer that collects the extracted content of a document, up to a maximum number of characters.
+ *
+ * <p>
+ * The content is stored in blocks, so it is never copied while it grows, and {@link #getReader()} reads the blocks directly,
+ * instead of making a String and a StringReader of it. Once the maximum is reached, further characters are dropped, and
+ * extractors can check {@link #isFull()} to stop extracting.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public final class ContentWriter extends Writer {
+    /** Number of characters in a block. */
+    private static final int BLOCK_SIZE = 8192;
+
+    /** The maximum number of characters, 0 for no maximum. */
+    private final int maxChars;
+
+    /** The blocks of characters (char[]). */
+    private final List blocks = new ArrayList();
+
+    /** The number of characters written. */
+    private int length;
+
+    /** Whether the maximum has been reached. */
+    private boolean full;
+
+    /**
+     * Create a ContentWriter.
+     *
+     * @param theMaxChars the maximum number of characters, 0 for no maximum
+     */
+    public ContentWriter(final int theMaxChars) {
+        maxChars = theMaxChars;
+    }
+
+    /**
+     * Write characters, as far as they fit.
+     *
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    public void write(final char[] cbuf, final int off, final int len) {
+        if (full) {
+            return;
+        }
+        int n = len;
+        if (maxChars > 0 && length + n >= maxChars) {
+            n = maxChars - length;
+            full = true;
+        }
+        int from = off;
+        while (n > 0) {
+            int inBlock = length % BLOCK_SIZE;
+            if (inBlock == 0) {
+                blocks.add(new char[BLOCK_SIZE]);
+            }
+            char[] block = (char[]) blocks.get(blocks.size() - 1);
+            int count = Math.min(n, BLOCK_SIZE - inBlock);
+            System.arraycopy(cbuf, from, block, inBlock, count);
+            from += count;
+            n -= count;
+            length += count;
+        }
+    }
+
+    /**
+     * Write a String, as far as it fits.
+     *
+     * @see java.io.Writer#write(java.lang.String, int, int)
+     */
+    public void write(final String str, final int off, final int len) {
+        if (full) {
+            return;
+        }
+        char[] chars = new char[len];
+        str.getChars(off, off + len, chars, 0);
+        write(chars, 0, len);
+    }
+
+    /**
+     * Write a String, as far as it fits.
+     *
+     * @see java.io.Writer#write(java.lang.String)
+     */
+    public void write(final String str) {
+        write(str, 0, str.length());
+    }
+
+    /**
+     * Does nothing.
+     *
+     * @see java.io.Writer#flush()
+     */
+    public void flush() {
+    }
+
+    /**
+     * Does nothing, the content can still be read.
+     *
+     * @see java.io.Writer#close()
+     */
+    public void close() {
+    }
+
+    /**
+     * @return Returns the number of characters written.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return Returns whether the maximum number of characters has been reached.
+     */
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Get the first characters of the content.
+     *
+     * @param n the maximum number of characters
+     * @return the first n characters, or all if there are less
+     */
+    public String getHead(final int n) {
+        int count = Math.min(n, length);
+        char[] head = new char[count];
+        new BlockReader().read(head, 0, count);
+        return new String(head);
+    }
+
+    /**
+     * Get the whole content.
+     *
+     * @return the content
+     */
+    public String toString() {
+        return getHead(length);
+    }
+
+    /**
+     * Get a Reader on the content. The Reader supports mark and reset.
+     *
+     * @return the Reader
+     */
+    public Reader getReader() {
+        return new BlockReader();
+    }
+
+    /**
+     * Reader on the blocks of content.
+     */
+    private final class BlockReader extends Reader {
+        /** The position of the next character. */
+        private int pos;
+
+        /** The marked position. */
+        private int mark;
+
+        /**
+         * @see java.io.Reader#read(char[], int, int)
+         */
+        public int read(final char[] cbuf, final int off, final int len) {
+            if (pos >= length) {
+                return -1;
+            }
+            int n = Math.min(len, length - pos);
+            int to = off;
+            int left = n;
+            while (left > 0) {
+                char[] block = (char[]) blocks.get(pos / BLOCK_SIZE);
+                int inBlock = pos % BLOCK_SIZE;
+                int count = Math.min(left, BLOCK_SIZE - inBlock);
+                System.arraycopy(block, inBlock, cbuf, to, count);
+                to += count;
+                left -= count;
+                pos += count;
+            }
+            return n;
+        }
+
+        /**
+         * @see java.io.Reader#markSupported()
+         */
+        public boolean markSupported() {
+            return true;
+        }
+
+        /**
+         * @see java.io.Reader#mark(int)
+         */
+        public void mark(final int readAheadLimit) {
+            mark = pos;
+        }
+
+        /**
+         * @see java.io.Reader#reset()
+         */
+        public void reset() {
+            pos = mark;
+        }
+
+        /**
+         * Does nothing.
+         *
+         * @see java.io.Reader#close()
+         */
+        public void close() {
+        }
+    }
+}
@@ -21,10 +21,8 @@
 
 package org.zilverline.extractors;
 
-import java.io.CharArrayReader;
 import java.io.CharArrayWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.Reader;
 import java.util.Iterator;
@@ -53,16 +51,16 @@ public class ExcelExtractor extends AbstractExtractor {
         setType("EXCEL");
 
         try {
-            CharArrayWriter writer = new CharArrayWriter();
+            ContentWriter writer = createContentWriter();
 
-            POIFSFileSystem fs = new POIFSFileSystem(new FileInputStream(f));
+            POIFSFileSystem fs = new POIFSFileSystem(openStream(f));
             HSSFWorkbook workbook = new HSSFWorkbook(fs);
 
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+            for (int i = 0; i < workbook.getNumberOfSheets() && !writer.isFull(); i++) {
                 HSSFSheet sheet = workbook.getSheetAt(i);
 
                 Iterator rows = sheet.rowIterator();
-                while (rows.hasNext()) {
+                while (rows.hasNext() && !writer.isFull()) {
                     HSSFRow row = (HSSFRow) rows.next();
 
                     Iterator cells = row.cellIterator();
@@ -86,9 +84,9 @@ public class ExcelExtractor extends AbstractExtractor {
                     }
                 }
             }
-            setSummary(getSummaryFromContent(writer.toString()));
+            setSummary(getSummaryFromContent(writer.getHead(SUMMARY_SIZE)));
 
-            return new CharArrayReader(writer.toCharArray());
+            return writer.getReader();
         }
         catch (Exception e) {
             log.warn("Can't extract contents for: " + f.getName(), e);
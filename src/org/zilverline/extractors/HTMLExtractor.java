@@ -22,7 +22,6 @@
 package org.zilverline.extractors;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -59,18 +58,17 @@ public final class HTMLExtractor extends AbstractExtractor {
             DOMFragmentParser parser = new DOMFragmentParser();
             DocumentFragment node = new HTMLDocumentImpl().createDocumentFragment();
             log.debug("start parsing: " + f.getName());
-            parser.parse(new InputSource(new FileInputStream(f)), node);
+            parser.parse(new InputSource(openStream(f)), node);
             log.debug("finished parsing: " + f.getName());
-            StringBuffer sb = new StringBuffer();
             // get the Title
-            getText(sb, node, "title");
-            setTitle(sb.toString());
+            ContentWriter title = new ContentWriter(0);
+            getText(title, node, "title");
+            setTitle(title.toString());
             // get the contents
-            sb.setLength(0);
-            getText(sb, node);
-            reader = new StringReader(sb.toString());
-            setSummary(getSummaryFromContent(sb.toString()));
-            setISBN(getISBNFromContent(sb.toString()));
+            ContentWriter contents = createContentWriter();
+            getText(contents, node);
+            reader = contents.getReader();
+            setSummaryAndISBN(contents);
 
             // setSummary(sb.toString().substring(0, Math.min(SUMMARY_SIZE, sb.length())));
         }
@@ -97,10 +95,10 @@ public final class HTMLExtractor extends AbstractExtractor {
             DOMFragmentParser parser = new DOMFragmentParser();
             DocumentFragment node = new HTMLDocumentImpl().createDocumentFragment();
             parser.parse(new InputSource(new InputStreamReader(is)), node);
-            StringBuffer sb = new StringBuffer();
+            ContentWriter contents = new ContentWriter(0);
             // get the contents
-            getText(sb, node);
-            return sb.toString();
+            getText(contents, node);
+            return contents.toString();
         }
         catch (IOException e) {
             log.warn("Can't extract contents for: " + is, e);
@@ -122,10 +120,10 @@ public final class HTMLExtractor extends AbstractExtractor {
             DOMFragmentParser parser = new DOMFragmentParser();
             DocumentFragment node = new HTMLDocumentImpl().createDocumentFragment();
             parser.parse(new InputSource(new StringReader(s)), node);
-            StringBuffer sb = new StringBuffer();
+            ContentWriter contents = new ContentWriter(0);
             // get the contents
-            getText(sb, node);
-            return sb.toString();
+            getText(contents, node);
+            return contents.toString();
         }
         catch (IOException e) {
             log.warn("Can't extract contents for: " + s, e);
@@ -140,18 +138,18 @@ public final class HTMLExtractor extends AbstractExtractor {
     /**
      * Get all text from the HTML document.
      * 
-     * @param sb the buffer to add the contents to.
+     * @param out the writer to add the contents to, stops when full.
      * @param node the starting node.
      */
-    private void getText(StringBuffer sb, final Node node) {
+    private void getText(final ContentWriter out, final Node node) {
         if (node.getNodeType() == Node.TEXT_NODE) {
-            sb.append(node.getNodeValue());
+            out.write(node.getNodeValue());
         }
         NodeList children = node.getChildNodes();
         if (children != null) {
             int len = children.getLength();
-            for (int i = 0; i < len; i++) {
-                getText(sb, children.item(i));
+            for (int i = 0; i < len && !out.isFull(); i++) {
+                getText(out, children.item(i));
             }
         }
     }
@@ -159,16 +157,16 @@ public final class HTMLExtractor extends AbstractExtractor {
     /**
      * Get all text from a specific element in the HTML document.
      * 
-     * @param sb the buffer to add the contents to.
+     * @param out the writer to add the contents to.
      * @param node the starting node.
      * @param element the element, such as 'title'.
      * 
      * @return true if anything was added
      */
-    private boolean getText(final StringBuffer sb, final Node node, final String element) {
+    private boolean getText(final ContentWriter out, final Node node, final String element) {
         if (node.getNodeType() == Node.ELEMENT_NODE) {
             if (element.equalsIgnoreCase(node.getNodeName())) {
-                getText(sb, node);
+                getText(out, node);
                 return true;
             }
         }
@@ -176,7 +174,7 @@ public final class HTMLExtractor extends AbstractExtractor {
         if (children != null) {
             int len = children.getLength();
             for (int i = 0; i < len; i++) {
-                if (getText(sb, children.item(i), element)) {
+                if (getText(out, children.item(i), element)) {
                     return true;
                 }
             }
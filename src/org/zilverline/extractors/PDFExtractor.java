@@ -22,16 +22,16 @@
 package org.zilverline.extractors;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.Date;
 
+import org.pdfbox.cos.COSStream;
 import org.pdfbox.pdfparser.PDFParser;
 import org.pdfbox.pdmodel.PDDocument;
 import org.pdfbox.pdmodel.PDDocumentInformation;
+import org.pdfbox.pdmodel.PDPage;
 import org.pdfbox.util.PDFTextStripper;
 
 /**
@@ -52,20 +52,27 @@ public class PDFExtractor extends AbstractExtractor {
 
         Reader reader = null;
         PDDocument pdfDocument = null;
-        FileInputStream fis = null;
+        InputStream fis = null;
         try {
             log.debug("Getting contents from PDF: " + f.getName());
-            fis = new FileInputStream(f);
+            fis = openStream(f);
             PDFParser parser = new PDFParser(fis);
             parser.parse();
             pdfDocument = parser.getPDDocument();
-            PDFTextStripper stripper = new PDFTextStripper();
-            String contents = stripper.getText(pdfDocument);
-            reader = new StringReader(contents);
+            final ContentWriter contents = createContentWriter();
+            PDFTextStripper stripper = new PDFTextStripper() {
+                protected void processPage(final PDPage page, final COSStream content) throws IOException {
+                    // don't bother parsing the remaining pages, once we have all the text we want
+                    if (!contents.isFull()) {
+                        super.processPage(page, content);
+                    }
+                }
+            };
+            stripper.writeText(pdfDocument, contents);
+            reader = contents.getReader();
 
             // Add the summary
-            setSummary(getSummaryFromContent(contents));
-            setISBN(getISBNFromContent(contents));
+            setSummaryAndISBN(contents);
 
             log.debug("Getting info from PDF: " + f.getName());
             PDDocumentInformation info = pdfDocument.getDocumentInformation();
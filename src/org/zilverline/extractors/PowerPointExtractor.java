@@ -24,7 +24,6 @@ package org.zilverline.extractors;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
@@ -58,7 +57,7 @@ public class PowerPointExtractor extends AbstractExtractor implements POIFSReade
         try {
             POIFSReader reader = new POIFSReader();
             reader.registerListener(this);
-            reader.read(new FileInputStream(f));
+            reader.read(openStream(f));
             setSummary(getSummaryFromContent(writer.toString()));
 
             return new InputStreamReader(new ByteArrayInputStream(writer.toByteArray()));
@@ -103,6 +102,9 @@ public class PowerPointExtractor extends AbstractExtractor implements POIFSReade
             for (int i = 0; i < buffer.length - 20; i++) {
                 long type = LittleEndian.getUShort(buffer, i + 2);
                 long size = LittleEndian.getUInt(buffer, i + 4);
+                if (getMaxContentChars() > 0 && writer.size() >= getMaxContentChars()) {
+                    break;
+                }
                 if (type == 4008) {
                     writer.write(' ');
                     writer.write(buffer, i + 4 + 4, (int) size);
@@ -22,7 +22,6 @@
 package org.zilverline.extractors;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,15 +48,15 @@ public class RTFExtractor extends AbstractExtractor {
         setType("RTF");
 
         Reader reader = null;
-        FileInputStream fis = null;
+        InputStream fis = null;
         try {
-            fis = new FileInputStream(f);
+            fis = openStream(f);
             RTFEditorKit kit = new RTFEditorKit();
             Document doc = kit.createDefaultDocument();
 
             kit.read(fis, doc, 0);
 
-            String plainText = doc.getText(0, doc.getLength());
+            String plainText = limitContent(doc.getText(0, doc.getLength()));
 
             reader = new StringReader(plainText);
 
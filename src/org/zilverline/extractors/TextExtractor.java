@@ -23,11 +23,10 @@ package org.zilverline.extractors;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 
@@ -38,6 +37,8 @@ import java.io.Reader;
  * @version $Revision: 1.19 $
  */
 public class TextExtractor extends AbstractExtractor {
+    /** Number of characters read at a time. */
+    private static final int BUFFER_SIZE = 8192;
 
     /**
      * Get the reader form this file, and set the type and summary while we're at it.
@@ -49,17 +50,26 @@ public class TextExtractor extends AbstractExtractor {
         setType("TEXT");
 
         Reader reader = null;
-        FileInputStream fis = null;
+        InputStream fis = null;
         try {
-            reader = new FileReader(f);
-            fis = new FileInputStream(f);
-            String content = getContent(fis);
-            setSummary(getSummaryFromContent(content));
-            setISBN(getISBNFromContent(content));
+            // read the file once, up to the maximum, and serve the content from memory
+            fis = openStream(f);
+            Reader in = new InputStreamReader(fis);
+            ContentWriter content = createContentWriter();
+            char[] buff = new char[BUFFER_SIZE];
+            int k;
+            while (!content.isFull() && (k = in.read(buff)) != -1) {
+                content.write(buff, 0, k);
+            }
+            reader = content.getReader();
+            setSummaryAndISBN(content);
         }
         catch (FileNotFoundException e) {
             log.warn("Can't extract contents and summary from " + f.getName(), e);
         }
+        catch (IOException e) {
+            log.warn("Can't extract contents and summary from " + f.getName(), e);
+        }
         finally {
             if (fis != null) {
                 try {
@@ -22,7 +22,6 @@
 package org.zilverline.extractors;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,15 +42,15 @@ public class WordExtractor extends AbstractExtractor {
      */
     public final Reader getContent(final File f) {
         Reader reader = null;
-        FileInputStream fis = null;
+        InputStream fis = null;
         setType("WORD");
 
         org.textmining.text.extraction.WordExtractor wex = new org.textmining.text.extraction.WordExtractor();
         String text = "";
 
         try {
-            fis = new FileInputStream(f);
-            text = wex.extractText(fis);
+            fis = openStream(f);
+            text = limitContent(wex.extractText(fis));
             reader = new StringReader(text);
 
             setSummary(getSummaryFromContent(text));
@@ -26,11 +26,15 @@ import java.util.List;
 
 import org.apache.lucene.analysis.Analyzer;
 
+import org.zilverline.core.CollectionInitializer;
 import org.zilverline.core.DocumentCollection;
+import org.zilverline.core.ExtractionCache;
 import org.zilverline.core.ExtractorFactory;
 import org.zilverline.core.FileSystemCollection;
 import org.zilverline.core.Handler;
 import org.zilverline.core.IndexException;
+import org.zilverline.core.IndexingScheduler;
+import org.zilverline.util.Throttle;
 
 /**
  * The CollectionManager holds all collections, and base values for them.
@@ -111,9 +115,9 @@ public interface CollectionManager {
     File getIndexBaseDir();
 
     /**
-     * Initializes all collections.
+     * Initializes all collections. The collections are initialized in the background, and are warming until done.
      * 
-     * @throws IndexException if the Collection can not be initialized or retrieved from store.
+     * @throws IndexException if the Collection can not be retrieved from store.
      */
     void init() throws IndexException;
 
@@ -149,6 +153,41 @@ public interface CollectionManager {
      */
     void setKeepCache(final boolean b);
 
+    /**
+     * Get the scheduler indexing collections in the background.
+     * 
+     * @return the IndexingScheduler
+     */
+    IndexingScheduler getIndexingScheduler();
+
+    /**
+     * Get the initializer initializing collections in the background.
+     * 
+     * @return the CollectionInitializer
+     */
+    CollectionInitializer getCollectionInitializer();
+
+    /**
+     * Get the throttle of the bytes read while indexing, shared by all collections.
+     * 
+     * @return the Throttle, in bytes per second
+     */
+    Throttle getReadThrottle();
+
+    /**
+     * Get the throttle of the documents added while indexing, shared by all collections.
+     * 
+     * @return the Throttle, in documents per second
+     */
+    Throttle getDocumentThrottle();
+
+    /**
+     * Get the cache of extracted info, shared by all collections, in the cache base directory.
+     * 
+     * @return the ExtractionCache, or null if extractionCacheSize is not set
+     */
+    ExtractionCache getExtractionCache();
+
     /**
      * Indicates whether any indexing is going on.
      * 
@@ -241,6 +280,212 @@ public interface CollectionManager {
      */
     void setMinMergeDocs(Integer minMergeDocs);
 
+    /**
+     * @return Returns the number of threads extracting documents while indexing.
+     */
+    Integer getIndexingThreads();
+
+    /**
+     * @param indexingThreads The number of threads extracting documents while indexing, 1 or null to index one document at a
+     *            time.
+     */
+    void setIndexingThreads(Integer indexingThreads);
+
+    /**
+     * @return Returns the number of documents that can wait between the stages of the indexing pipeline.
+     */
+    Integer getIndexingQueueSize();
+
+    /**
+     * @param indexingQueueSize The number of documents that can wait between the stages of the indexing pipeline.
+     */
+    void setIndexingQueueSize(Integer indexingQueueSize);
+
+    /**
+     * @return Returns the policy deciding when to optimize an index after indexing, see {@link org.zilverline.core.OptimizePolicy}.
+     */
+    String getOptimizePolicy();
+
+    /**
+     * @param optimizePolicy The policy deciding when to optimize an index after indexing, null to always optimize.
+     */
+    void setOptimizePolicy(String optimizePolicy);
+
+    /**
+     * @return Returns all optimize policies.
+     */
+    String[] getAllOptimizePolicies();
+
+    /**
+     * @return Returns the number of segments above which an index is optimized with the 'segments' policy.
+     */
+    Integer getOptimizeMaxSegments();
+
+    /**
+     * @param optimizeMaxSegments The number of segments above which an index is optimized with the 'segments' policy.
+     */
+    void setOptimizeMaxSegments(Integer optimizeMaxSegments);
+
+    /**
+     * @return Returns the first hour of the off-peak window of the 'offPeak' optimize policy.
+     */
+    Integer getOffPeakStart();
+
+    /**
+     * @param offPeakStart The first hour (0-23) of the off-peak window of the 'offPeak' optimize policy.
+     */
+    void setOffPeakStart(Integer offPeakStart);
+
+    /**
+     * @return Returns the end hour of the off-peak window of the 'offPeak' optimize policy.
+     */
+    Integer getOffPeakEnd();
+
+    /**
+     * @param offPeakEnd The first hour (0-23) after the off-peak window of the 'offPeak' optimize policy.
+     */
+    void setOffPeakEnd(Integer offPeakEnd);
+
+    /**
+     * @return Returns the number of documents added after which a collection's IndexWriter is flushed, making them searchable.
+     */
+    Integer getWriterFlushDocs();
+
+    /**
+     * @param writerFlushDocs The number of documents added after which a collection's IndexWriter is flushed.
+     */
+    void setWriterFlushDocs(Integer writerFlushDocs);
+
+    /**
+     * @return Returns the number of seconds after which a collection's IndexWriter is flushed, making new documents searchable.
+     */
+    Integer getWriterFlushInterval();
+
+    /**
+     * @param writerFlushInterval The number of seconds after which a collection's IndexWriter is flushed.
+     */
+    void setWriterFlushInterval(Integer writerFlushInterval);
+
+    /**
+     * @return Returns the number of seconds between checks of watched collections for changes.
+     */
+    Integer getWatchInterval();
+
+    /**
+     * @param watchInterval The number of seconds between checks of watched collections for changes.
+     */
+    void setWatchInterval(Integer watchInterval);
+
+    /**
+     * @return Returns the number of threads hashing very large files.
+     */
+    Integer getHashThreads();
+
+    /**
+     * @param hashThreads The number of threads hashing very large files to set.
+     */
+    void setHashThreads(Integer hashThreads);
+
+    /**
+     * @return Returns the default number of seconds an extraction may take.
+     */
+    Integer getExtractionTimeout();
+
+    /**
+     * @param extractionTimeout The default number of seconds an extraction may take to set.
+     */
+    void setExtractionTimeout(Integer extractionTimeout);
+
+    /**
+     * @return Returns the default maximum number of characters of content indexed per document.
+     */
+    Integer getMaxContentChars();
+
+    /**
+     * @param maxContentChars The default maximum number of characters of content indexed per document to set.
+     */
+    void setMaxContentChars(Integer maxContentChars);
+
+    /**
+     * @return Returns the megabytes of RAM the documents buffered by a collection's IndexWriter may take before it is flushed.
+     */
+    Integer getWriterRamBuffer();
+
+    /**
+     * @param writerRamBuffer The megabytes of RAM the documents buffered by a collection's IndexWriter may take before it is flushed.
+     */
+    void setWriterRamBuffer(Integer writerRamBuffer);
+
+    /**
+     * @return Returns the megabytes of RAM the documents buffered by the IndexWriters of all collections together may take.
+     */
+    Integer getWriterRamTotal();
+
+    /**
+     * @param writerRamTotal The megabytes of RAM the documents buffered by the IndexWriters of all collections together may take.
+     */
+    void setWriterRamTotal(Integer writerRamTotal);
+
+    /**
+     * @return Returns the maximum number of collections indexed at the same time.
+     */
+    Integer getMaxConcurrentIndexes();
+
+    /**
+     * @param maxConcurrentIndexes The maximum number of collections indexed at the same time to set.
+     */
+    void setMaxConcurrentIndexes(Integer maxConcurrentIndexes);
+
+    /**
+     * @return Returns the number of partitions a full index is built in at the same time.
+     */
+    Integer getIndexPartitions();
+
+    /**
+     * @param indexPartitions The number of partitions a full index is built in at the same time to set.
+     */
+    void setIndexPartitions(Integer indexPartitions);
+
+    /**
+     * @return Returns the maximum number of kilobytes per second read while indexing.
+     */
+    Integer getReadRateLimit();
+
+    /**
+     * @param readRateLimit The maximum number of kilobytes per second read while indexing to set.
+     */
+    void setReadRateLimit(Integer readRateLimit);
+
+    /**
+     * @return Returns the maximum number of documents per second added while indexing.
+     */
+    Integer getDocumentRateLimit();
+
+    /**
+     * @param documentRateLimit The maximum number of documents per second added while indexing to set.
+     */
+    void setDocumentRateLimit(Integer documentRateLimit);
+
+    /**
+     * @return Returns the number of collections initialized at the same time when Zilverline starts.
+     */
+    Integer getInitThreads();
+
+    /**
+     * @param initThreads The number of collections initialized at the same time when Zilverline starts to set.
+     */
+    void setInitThreads(Integer initThreads);
+
+    /**
+     * @return Returns the maximum size in MB of the cache of extracted text.
+     */
+    Integer getExtractionCacheSize();
+
+    /**
+     * @param extractionCacheSize The maximum size in MB of the cache of extracted text to set.
+     */
+    void setExtractionCacheSize(Integer extractionCacheSize);
+
     /**
      * Expands Archive to disk. This is used is 'on-the-fly' extraction from cache
      * 
@@ -38,15 +38,20 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.springframework.util.StringUtils;
+import org.zilverline.core.CollectionInitializer;
 import org.zilverline.core.DocumentCollection;
+import org.zilverline.core.ExtractionCache;
 import org.zilverline.core.ExtractorFactory;
 import org.zilverline.core.FileSystemCollection;
 import org.zilverline.core.Handler;
 import org.zilverline.core.IndexException;
+import org.zilverline.core.IndexingScheduler;
+import org.zilverline.core.OptimizePolicy;
 import org.zilverline.dao.CollectionManagerDAO;
 import org.zilverline.dao.DAOException;
 import org.zilverline.util.FileUtils;
 import org.zilverline.util.SysUtils;
+import org.zilverline.util.Throttle;
 
 /**
  * The CollectionManagerImpl holds all collections, and base values for them.
@@ -112,6 +117,131 @@ public class CollectionManagerImpl implements CollectionManager {
      */
     private Integer priority = new Integer(2);
 
+    /**
+     * number of threads extracting documents in the indexing process.
+     */
+    private Integer indexingThreads;
+
+    /**
+     * number of documents waiting between the stages of the indexing process.
+     */
+    private Integer indexingQueueSize;
+
+    /**
+     * policy deciding when to optimize an index after indexing.
+     */
+    private String optimizePolicy;
+
+    /**
+     * number of segments above which an index is optimized.
+     */
+    private Integer optimizeMaxSegments;
+
+    /**
+     * first hour of the off-peak window for optimizing.
+     */
+    private Integer offPeakStart;
+
+    /**
+     * first hour after the off-peak window for optimizing.
+     */
+    private Integer offPeakEnd;
+
+    /**
+     * number of documents added after which the shared IndexWriter is flushed.
+     */
+    private Integer writerFlushDocs;
+
+    /**
+     * number of seconds after which the shared IndexWriter is flushed.
+     */
+    private Integer writerFlushInterval;
+
+    /**
+     * number of seconds between checks of watched collections for changes.
+     */
+    private Integer watchInterval;
+
+    /**
+     * Number of threads hashing very large files, more than one hashes them into a tree hash.
+     */
+    private Integer hashThreads;
+
+    /**
+     * Default number of seconds an extraction may take, 0 for no maximum.
+     */
+    private Integer extractionTimeout;
+
+    /**
+     * The default maximum number of characters of content indexed per document.
+     */
+    private Integer maxContentChars;
+
+    /**
+     * The megabytes of RAM the documents buffered by a collection's IndexWriter may take before it is flushed.
+     */
+    private Integer writerRamBuffer;
+
+    /**
+     * The megabytes of RAM the documents buffered by the IndexWriters of all collections together may take.
+     */
+    private Integer writerRamTotal;
+
+    /**
+     * Maximum number of collections indexed at the same time.
+     */
+    private Integer maxConcurrentIndexes;
+
+    /**
+     * Number of partitions a full index is built in at the same time.
+     */
+    private Integer indexPartitions;
+
+    /**
+     * Maximum number of kilobytes per second read while indexing.
+     */
+    private Integer readRateLimit;
+
+    /**
+     * Maximum number of documents per second added while indexing.
+     */
+    private Integer documentRateLimit;
+
+    /**
+     * Number of collections initialized at the same time when Zilverline starts.
+     */
+    private Integer initThreads;
+
+    /**
+     * Maximum size in MB of the cache of extracted text, 0 or null for no cache.
+     */
+    private Integer extractionCacheSize;
+
+    /**
+     * Indexes collections in the background, created when first needed.
+     */
+    private transient IndexingScheduler indexingScheduler;
+
+    /**
+     * Initializes collections in the background, created when first needed.
+     */
+    private transient CollectionInitializer collectionInitializer;
+
+    /**
+     * Limits the bytes read while indexing, to readRateLimit.
+     */
+    private transient Throttle readThrottle;
+
+    /**
+     * Limits the documents added while indexing, to documentRateLimit.
+     */
+    private transient Throttle documentThrottle;
+
+    /**
+     * Caches extracted info, created when first needed.
+     */
+    private transient ExtractionCache extractionCache;
+
     /**
      * @return Returns the dao.
      */
@@ -232,6 +362,78 @@ public class CollectionManagerImpl implements CollectionManager {
         }
     }
 
+    /**
+     * Get the scheduler indexing collections in the background.
+     * 
+     * @return the IndexingScheduler
+     */
+    public synchronized IndexingScheduler getIndexingScheduler() {
+        if (indexingScheduler == null) {
+            indexingScheduler = new IndexingScheduler(this);
+        }
+        return indexingScheduler;
+    }
+
+    /**
+     * Get the initializer initializing collections in the background.
+     * 
+     * @return the CollectionInitializer
+     */
+    public synchronized CollectionInitializer getCollectionInitializer() {
+        if (collectionInitializer == null) {
+            collectionInitializer = new CollectionInitializer(this);
+        }
+        return collectionInitializer;
+    }
+
+    /**
+     * Get the throttle of the bytes read while indexing, shared by all collections. Its rate follows readRateLimit, so a changed
+     * limit applies to running indexes as well.
+     * 
+     * @return the Throttle, in bytes per second
+     */
+    public synchronized Throttle getReadThrottle() {
+        if (readThrottle == null) {
+            readThrottle = new Throttle("bytes read while indexing");
+        }
+        readThrottle.setRate(readRateLimit == null ? 0 : readRateLimit.intValue() * 1024L);
+        return readThrottle;
+    }
+
+    /**
+     * Get the throttle of the documents added while indexing, shared by all collections. Its rate follows documentRateLimit, so a
+     * changed limit applies to running indexes as well.
+     * 
+     * @return the Throttle, in documents per second
+     */
+    public synchronized Throttle getDocumentThrottle() {
+        if (documentThrottle == null) {
+            documentThrottle = new Throttle("documents added while indexing");
+        }
+        documentThrottle.setRate(documentRateLimit == null ? 0 : documentRateLimit.intValue());
+        return documentThrottle;
+    }
+
+    /**
+     * Get the cache of extracted info, shared by all collections, in the cache base directory. Its size follows
+     * extractionCacheSize, and a new cache is used when the cache base directory has changed.
+     * 
+     * @return the ExtractionCache, or null if extractionCacheSize is not set
+     */
+    public synchronized ExtractionCache getExtractionCache() {
+        if (extractionCacheSize == null || extractionCacheSize.intValue() <= 0 || cacheBaseDir == null) {
+            return null;
+        }
+        File dir = new File(cacheBaseDir, ExtractionCache.DIR_NAME);
+        long maxBytes = extractionCacheSize.intValue() * 1024L * 1024L;
+        if (extractionCache == null || !extractionCache.getDir().equals(dir)) {
+            extractionCache = new ExtractionCache(dir, maxBytes);
+        } else {
+            extractionCache.setMaxBytes(maxBytes);
+        }
+        return extractionCache;
+    }
+
     /**
      * Indicates whether any indexing is going on.
      * 
@@ -330,9 +532,18 @@ public class CollectionManagerImpl implements CollectionManager {
     }
 
     /**
-     * Initializes all collections.
+     * Stop the worker JVMs of the ExtractorFactory. Called when the application stops.
+     */
+    public void destroy() {
+        if (factory != null) {
+            factory.destroy();
+        }
+    }
+
+    /**
+     * Initializes all collections, in the background, at most <code>initThreads</code> at the same time.
      * 
-     * @throws IndexException if one of the collections can not be initialized.
+     * @throws IndexException if the collections can not be retrieved from store.
      */
     public void init() throws IndexException {
         allExtractors = ExtractorFactory.findExtractorsOnClasspath();
@@ -350,20 +561,36 @@ public class CollectionManagerImpl implements CollectionManager {
             this.mergeFactor = thatManager.getMergeFactor();
             this.maxMergeDocs = thatManager.getMaxMergeDocs();
             this.minMergeDocs = thatManager.getMinMergeDocs();
+            this.indexingThreads = thatManager.getIndexingThreads();
+            this.indexingQueueSize = thatManager.getIndexingQueueSize();
+            this.optimizePolicy = thatManager.getOptimizePolicy();
+            this.optimizeMaxSegments = thatManager.getOptimizeMaxSegments();
+            this.offPeakStart = thatManager.getOffPeakStart();
+            this.offPeakEnd = thatManager.getOffPeakEnd();
+            this.writerFlushDocs = thatManager.getWriterFlushDocs();
+            this.writerFlushInterval = thatManager.getWriterFlushInterval();
+            this.watchInterval = thatManager.getWatchInterval();
+            this.hashThreads = thatManager.getHashThreads();
+            this.extractionTimeout = thatManager.getExtractionTimeout();
+            this.maxContentChars = thatManager.getMaxContentChars();
+            this.writerRamBuffer = thatManager.getWriterRamBuffer();
+            this.writerRamTotal = thatManager.getWriterRamTotal();
+            this.maxConcurrentIndexes = thatManager.getMaxConcurrentIndexes();
+            this.indexPartitions = thatManager.getIndexPartitions();
+            this.readRateLimit = thatManager.getReadRateLimit();
+            this.documentRateLimit = thatManager.getDocumentRateLimit();
+            this.initThreads = thatManager.getInitThreads();
+            this.extractionCacheSize = thatManager.getExtractionCacheSize();
             // if there is nothing, probably first time Zilverline runs
 
             collections.clear();
             Iterator li = thatManager.getCollections().iterator();
-            try {
-                while (li.hasNext()) {
-                    DocumentCollection c = (DocumentCollection) li.next();
-                    log.debug("Adding collection to manager: " + c.getName());
-                    this.addCollection(c);
-                    c.init();
-                }
-            }
-            catch (IndexException e) {
-                throw new IndexException("Error initializing all indexes in CollectionManagerImpl", e);
+            while (li.hasNext()) {
+                DocumentCollection c = (DocumentCollection) li.next();
+                log.debug("Adding collection to manager: " + c.getName());
+                this.addCollection(c);
+                // initialized in the background, searches skip the collection until done
+                getCollectionInitializer().submit(c);
             }
         } else {
             // possibly first time Zilverline runs
@@ -845,4 +1072,291 @@ public class CollectionManagerImpl implements CollectionManager {
     public void setMinMergeDocs(Integer minMergeDocs) {
         this.minMergeDocs = minMergeDocs;
     }
+
+    /**
+     * @return Returns the indexingThreads.
+     */
+    public Integer getIndexingThreads() {
+        return indexingThreads;
+    }
+
+    /**
+     * @param indexingThreads The indexingThreads to set.
+     */
+    public void setIndexingThreads(Integer indexingThreads) {
+        this.indexingThreads = indexingThreads;
+    }
+
+    /**
+     * @return Returns the indexingQueueSize.
+     */
+    public Integer getIndexingQueueSize() {
+        return indexingQueueSize;
+    }
+
+    /**
+     * @param indexingQueueSize The indexingQueueSize to set.
+     */
+    public void setIndexingQueueSize(Integer indexingQueueSize) {
+        this.indexingQueueSize = indexingQueueSize;
+    }
+
+    /**
+     * @return Returns the optimizePolicy.
+     */
+    public String getOptimizePolicy() {
+        return optimizePolicy;
+    }
+
+    /**
+     * @param optimizePolicy The optimizePolicy to set.
+     */
+    public void setOptimizePolicy(String optimizePolicy) {
+        this.optimizePolicy = optimizePolicy;
+    }
+
+    /**
+     * @return Returns the allOptimizePolicies.
+     */
+    public String[] getAllOptimizePolicies() {
+        return OptimizePolicy.ALL;
+    }
+
+    /**
+     * @return Returns the optimizeMaxSegments.
+     */
+    public Integer getOptimizeMaxSegments() {
+        return optimizeMaxSegments;
+    }
+
+    /**
+     * @param optimizeMaxSegments The optimizeMaxSegments to set.
+     */
+    public void setOptimizeMaxSegments(Integer optimizeMaxSegments) {
+        this.optimizeMaxSegments = optimizeMaxSegments;
+    }
+
+    /**
+     * @return Returns the offPeakStart.
+     */
+    public Integer getOffPeakStart() {
+        return offPeakStart;
+    }
+
+    /**
+     * @param offPeakStart The offPeakStart to set.
+     */
+    public void setOffPeakStart(Integer offPeakStart) {
+        this.offPeakStart = offPeakStart;
+    }
+
+    /**
+     * @return Returns the offPeakEnd.
+     */
+    public Integer getOffPeakEnd() {
+        return offPeakEnd;
+    }
+
+    /**
+     * @param offPeakEnd The offPeakEnd to set.
+     */
+    public void setOffPeakEnd(Integer offPeakEnd) {
+        this.offPeakEnd = offPeakEnd;
+    }
+
+    /**
+     * @return Returns the writerFlushDocs.
+     */
+    public Integer getWriterFlushDocs() {
+        return writerFlushDocs;
+    }
+
+    /**
+     * @param writerFlushDocs The writerFlushDocs to set.
+     */
+    public void setWriterFlushDocs(Integer writerFlushDocs) {
+        this.writerFlushDocs = writerFlushDocs;
+    }
+
+    /**
+     * @return Returns the writerFlushInterval.
+     */
+    public Integer getWriterFlushInterval() {
+        return writerFlushInterval;
+    }
+
+    /**
+     * @param writerFlushInterval The writerFlushInterval to set.
+     */
+    public void setWriterFlushInterval(Integer writerFlushInterval) {
+        this.writerFlushInterval = writerFlushInterval;
+    }
+
+    /**
+     * @return Returns the watchInterval.
+     */
+    public Integer getWatchInterval() {
+        return watchInterval;
+    }
+
+    /**
+     * @param watchInterval The watchInterval to set.
+     */
+    public void setWatchInterval(Integer watchInterval) {
+        this.watchInterval = watchInterval;
+    }
+
+    /**
+     * @return Returns the hashThreads.
+     */
+    public Integer getHashThreads() {
+        return hashThreads;
+    }
+
+    /**
+     * @param hashThreads The hashThreads to set.
+     */
+    public void setHashThreads(Integer hashThreads) {
+        this.hashThreads = hashThreads;
+    }
+
+    /**
+     * @return Returns the extractionTimeout.
+     */
+    public Integer getExtractionTimeout() {
+        return extractionTimeout;
+    }
+
+    /**
+     * @param extractionTimeout The extractionTimeout to set.
+     */
+    public void setExtractionTimeout(Integer extractionTimeout) {
+        this.extractionTimeout = extractionTimeout;
+    }
+
+    /**
+     * @return Returns the maxContentChars.
+     */
+    public Integer getMaxContentChars() {
+        return maxContentChars;
+    }
+
+    /**
+     * @param maxContentChars The maxContentChars to set.
+     */
+    public void setMaxContentChars(Integer maxContentChars) {
+        this.maxContentChars = maxContentChars;
+    }
+
+    /**
+     * @return Returns the writerRamBuffer.
+     */
+    public Integer getWriterRamBuffer() {
+        return writerRamBuffer;
+    }
+
+    /**
+     * @param writerRamBuffer The writerRamBuffer to set.
+     */
+    public void setWriterRamBuffer(Integer writerRamBuffer) {
+        this.writerRamBuffer = writerRamBuffer;
+    }
+
+    /**
+     * @return Returns the writerRamTotal.
+     */
+    public Integer getWriterRamTotal() {
+        return writerRamTotal;
+    }
+
+    /**
+     * @param writerRamTotal The writerRamTotal to set.
+     */
+    public void setWriterRamTotal(Integer writerRamTotal) {
+        this.writerRamTotal = writerRamTotal;
+    }
+
+    /**
+     * @return Returns the maxConcurrentIndexes.
+     */
+    public Integer getMaxConcurrentIndexes() {
+        return maxConcurrentIndexes;
+    }
+
+    /**
+     * @param maxConcurrentIndexes The maxConcurrentIndexes to set.
+     */
+    public void setMaxConcurrentIndexes(Integer maxConcurrentIndexes) {
+        this.maxConcurrentIndexes = maxConcurrentIndexes;
+    }
+
+    /**
+     * @return Returns the indexPartitions.
+     */
+    public Integer getIndexPartitions() {
+        return indexPartitions;
+    }
+
+    /**
+     * @param indexPartitions The indexPartitions to set.
+     */
+    public void setIndexPartitions(Integer indexPartitions) {
+        this.indexPartitions = indexPartitions;
+    }
+
+    /**
+     * @return Returns the readRateLimit.
+     */
+    public Integer getReadRateLimit() {
+        return readRateLimit;
+    }
+
+    /**
+     * @param readRateLimit The readRateLimit to set.
+     */
+    public void setReadRateLimit(Integer readRateLimit) {
+        this.readRateLimit = readRateLimit;
+    }
+
+    /**
+     * @return Returns the documentRateLimit.
+     */
+    public Integer getDocumentRateLimit() {
+        return documentRateLimit;
+    }
+
+    /**
+     * @param documentRateLimit The documentRateLimit to set.
+     */
+    public void setDocumentRateLimit(Integer documentRateLimit) {
+        this.documentRateLimit = documentRateLimit;
+    }
+
+    /**
+     * @return Returns the initThreads.
+     */
+    public Integer getInitThreads() {
+        return initThreads;
+    }
+
+    /**
+     * @param initThreads The initThreads to set.
+     */
+    public void setInitThreads(Integer initThreads) {
+        this.initThreads = initThreads;
+    }
+
+    /**
+     * @return Returns the extractionCacheSize.
+     */
+    public Integer getExtractionCacheSize() {
+        return extractionCacheSize;
+    }
+
+    /**
+     * @param extractionCacheSize The extractionCacheSize to set.
+     */
+    public void setExtractionCacheSize(Integer extractionCacheSize) {
+        this.extractionCacheSize = extractionCacheSize;
+    }
 }
@@ -226,6 +226,11 @@ public final class SearchServiceImpl implements SearchService {
             try {
                 // for given collections create a List of IndexSearchers
                 IndexSearcher[] allSearchers = createSearchersForCollectionsByName(names);
+                if (allSearchers.length == 0) {
+                    // e.g. all collections asked for are still being initialized
+                    log.warn("No collections to search for query '" + queryString + "'");
+                    return new SearchResult(new Result[0], 0, 0, 0);
+                }
 
                 // prepare the query
                 // TODO: which analyzer to use? Different collections may have different Analyers
@@ -338,13 +343,15 @@ public final class SearchServiceImpl implements SearchService {
 
     private void addCollectionIfValidToSearchers(DocumentCollection thisCollection, List allSearchersList) throws IndexException,
         IOException {
-        if (thisCollection.isIndexValid()) {
-            if (thisCollection.getIndexDirWithManagerDefaults() != null) {
-                // create IndexSearcher with String argument,
-                // not IndexReader, as reader will stay open
-                allSearchersList.add(new IndexSearcher(thisCollection.getIndexDirWithManagerDefaults().toString()));
-                log.info("Searching in collection: " + thisCollection.getName());
-            }
+        if (thisCollection.isWarming()) {
+            log.info("Skipping collection '" + thisCollection.getName() + "', it is not initialized yet.");
+            return;
+        }
+        // the searcher is created with the path of the index, not an IndexReader, as reader will stay open
+        IndexSearcher searcher = thisCollection.createSearcher();
+        if (searcher != null) {
+            allSearchersList.add(searcher);
+            log.info("Searching in collection: " + thisCollection.getName());
         } else {
             log.warn("Skipping possibly invalid collection '" + thisCollection.getName() + "'.");
         }
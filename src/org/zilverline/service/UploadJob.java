@@ -0,0 +1,166 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A number of uploaded files waiting to be, or being, indexed.
+ * 
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ * 
+ * @see UploadService
+ */
+public class UploadJob {
+    /** Job is waiting to be indexed. */
+    public static final String QUEUED = "queued";
+
+    /** Job is being indexed. */
+    public static final String INDEXING = "indexing";
+
+    /** Job has been indexed. */
+    public static final String DONE = "done";
+
+    /** Job could not be indexed. */
+    public static final String FAILED = "failed";
+
+    /** The id of the job. */
+    private final long id;
+
+    /** The name of the collection the files were uploaded to. */
+    private final String collectionName;
+
+    /** The uploaded files. */
+    private final List files;
+
+    /** The time the job was submitted. */
+    private final Date submitted = new Date();
+
+    /** The status: QUEUED, INDEXING, DONE or FAILED. */
+    private String status = QUEUED;
+
+    /** Error message if the job failed. */
+    private String message;
+
+    /**
+     * Create a job.
+     * 
+     * @param theId the id
+     * @param theCollectionName the name of the collection
+     * @param theFiles List of Files
+     */
+    UploadJob(final long theId, final String theCollectionName, final List theFiles) {
+        id = theId;
+        collectionName = theCollectionName;
+        files = Collections.unmodifiableList(new ArrayList(theFiles));
+    }
+
+    /**
+     * @return Returns the id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return Returns the collectionName.
+     */
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    /**
+     * @return Returns the files.
+     */
+    public List getFiles() {
+        return files;
+    }
+
+    /**
+     * @return Returns the names of the files.
+     */
+    public List getFileNames() {
+        List names = new ArrayList();
+        for (Iterator iter = files.iterator(); iter.hasNext();) {
+            names.add(((File) iter.next()).getName());
+        }
+        return names;
+    }
+
+    /**
+     * @return Returns the time the job was submitted.
+     */
+    public Date getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return Returns the status.
+     */
+    public synchronized String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Returns the error message, if the job failed.
+     */
+    public synchronized String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true if the job is done or has failed
+     */
+    public synchronized boolean isFinished() {
+        return DONE.equals(status) || FAILED.equals(status);
+    }
+
+    /**
+     * @param theStatus The status to set.
+     */
+    synchronized void setStatus(final String theStatus) {
+        status = theStatus;
+    }
+
+    /**
+     * Mark the job as failed.
+     * 
+     * @param theMessage the reason
+     */
+    synchronized void fail(final String theMessage) {
+        status = FAILED;
+        message = theMessage;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "UploadJob(" + id + ") of " + files.size() + " files for collection " + collectionName + ": " + getStatus();
+    }
+}
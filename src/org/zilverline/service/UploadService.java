@@ -0,0 +1,49 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+import java.util.List;
+
+/**
+ * Service that indexes uploaded files in the background.
+ * 
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public interface UploadService {
+    /**
+     * Queue uploaded files for indexing. The files must already be in the content directory of the collection.
+     * 
+     * @param collectionName the name of the collection the files were uploaded to
+     * @param files List of Files
+     * @return the job, whose status can be followed with {@link #getJob(long)}
+     */
+    UploadJob submit(String collectionName, List files);
+
+    /**
+     * Get a job by its id.
+     * 
+     * @param id the id of the job
+     * @return the job, or null if unknown (or forgotten, only the most recent jobs are kept)
+     */
+    UploadJob getJob(long id);
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.core.FileSystemCollection;
+import org.zilverline.core.IndexException;
+
+/**
+ * Service that indexes uploaded files in the background.
+ * 
+ * <p>
+ * Uploads are queued as jobs. A single background thread takes all queued jobs, and indexes the files of all jobs for the same
+ * collection in one go, in one session of the collection's shared IndexWriter. Jobs submitted while indexing are handled in the
+ * next batch. Since the IndexWriter is shared, uploads are indexed even while the whole collection is being indexed. While its
+ * index is rebuilt beside the old one, the jobs for a collection stay queued until the new index is in place.
+ * </p>
+ * 
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public class UploadServiceImpl implements UploadService {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(UploadServiceImpl.class);
+
+    /** Number of jobs remembered for polling their status. */
+    private static final int MAX_JOBS = 100;
+
+    /** Milliseconds between checks whether the rebuild of a collection with queued jobs is done. */
+    private static final long REBUILD_CHECK = 1000;
+
+    /** Access to collections, Populated through configuration. */
+    private CollectionManager collectionManager;
+
+    /** Jobs waiting to be indexed, oldest first. */
+    private final LinkedList queue = new LinkedList();
+
+    /** The most recent jobs by id. */
+    private final Map jobs = new RecentJobs();
+
+    /** The id of the next job. */
+    private long nextId = 1;
+
+    /** The thread indexing the jobs, started on the first job. */
+    private Thread worker;
+
+    /** Indicates whether the service is shutting down. */
+    private boolean stopped = false;
+
+    /**
+     * Gets the CollectionManager, which holds all collections.
+     * 
+     * @return CollectionManager
+     */
+    public CollectionManager getCollectionManager() {
+        return collectionManager;
+    }
+
+    /**
+     * Sets the CollectionManager, which holds all collections.
+     * 
+     * @param cm CollectionManager
+     */
+    public void setCollectionManager(final CollectionManager cm) {
+        collectionManager = cm;
+    }
+
+    /**
+     * @see org.zilverline.service.UploadService#submit(java.lang.String, java.util.List)
+     */
+    public synchronized UploadJob submit(final String collectionName, final List files) {
+        UploadJob job = new UploadJob(nextId++, collectionName, files);
+        jobs.put(new Long(job.getId()), job);
+        queue.addLast(job);
+        log.debug("Queued " + job);
+        if (worker == null || !worker.isAlive()) {
+            startWorker();
+        }
+        notifyAll();
+        return job;
+    }
+
+    /**
+     * @see org.zilverline.service.UploadService#getJob(long)
+     */
+    public synchronized UploadJob getJob(final long id) {
+        return (UploadJob) jobs.get(new Long(id));
+    }
+
+    /**
+     * Stop the background thread. Jobs not yet indexed are marked as failed.
+     */
+    public void destroy() {
+        synchronized (this) {
+            stopped = true;
+            for (Iterator iter = queue.iterator(); iter.hasNext();) {
+                ((UploadJob) iter.next()).fail("Zilverline was stopped before the files were indexed");
+            }
+            queue.clear();
+            notifyAll();
+        }
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Start the thread indexing queued jobs.
+     */
+    private void startWorker() {
+        worker = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        });
+        worker.setName("UploadIndexingThread");
+        worker.setDaemon(true);
+        if (collectionManager.getPriority() != null) {
+            worker.setPriority(collectionManager.getPriority().intValue());
+        }
+        worker.start();
+    }
+
+    /**
+     * Main loop of the background thread: take all queued jobs, and index them per collection.
+     */
+    private void work() {
+        try {
+            while (true) {
+                List batch;
+                synchronized (this) {
+                    while (queue.isEmpty() && !stopped) {
+                        wait();
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    batch = new ArrayList(queue);
+                    queue.clear();
+                }
+                // group the jobs per collection, keeping their order
+                Map perCollection = new LinkedHashMap();
+                for (Iterator iter = batch.iterator(); iter.hasNext();) {
+                    UploadJob job = (UploadJob) iter.next();
+                    List collectionJobs = (List) perCollection.get(job.getCollectionName());
+                    if (collectionJobs == null) {
+                        collectionJobs = new ArrayList();
+                        perCollection.put(job.getCollectionName(), collectionJobs);
+                    }
+                    collectionJobs.add(job);
+                }
+                List deferred = new ArrayList();
+                for (Iterator iter = perCollection.entrySet().iterator(); iter.hasNext();) {
+                    Map.Entry e = (Map.Entry) iter.next();
+                    if (!index((String) e.getKey(), (List) e.getValue())) {
+                        deferred.addAll((List) e.getValue());
+                    }
+                }
+                if (!deferred.isEmpty()) {
+                    synchronized (this) {
+                        if (stopped) {
+                            failAll(deferred, "Zilverline was stopped before the files were indexed");
+                            return;
+                        }
+                        // ahead of the jobs submitted meanwhile, to keep their order
+                        queue.addAll(0, deferred);
+                        wait(REBUILD_CHECK);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            log.debug("Upload indexing thread interrupted, stopping");
+        }
+    }
+
+    /**
+     * Index the files of a number of jobs for the same collection in one go, unless the index of the collection is being rebuilt.
+     * 
+     * @param collectionName the name of the collection
+     * @param collectionJobs List of UploadJobs
+     * @return false if the jobs must wait for the rebuild of the collection
+     */
+    private boolean index(final String collectionName, final List collectionJobs) {
+        FileSystemCollection collection = null;
+        try {
+            collection = (FileSystemCollection) collectionManager.getCollectionByName(collectionName);
+        }
+        catch (ClassCastException e) {
+            log.warn("Collection " + collectionName + " does not accept uploads");
+        }
+        if (collection == null) {
+            failAll(collectionJobs, "Unknown collection: " + collectionName);
+            return true;
+        }
+        if (collection.isRebuilding()) {
+            log.debug("Collection " + collectionName + " is being rebuilt, keeping " + collectionJobs.size() + " jobs queued");
+            return false;
+        }
+        List files = new ArrayList();
+        for (Iterator iter = collectionJobs.iterator(); iter.hasNext();) {
+            UploadJob job = (UploadJob) iter.next();
+            job.setStatus(UploadJob.INDEXING);
+            files.addAll(job.getFiles());
+        }
+        try {
+            collection.indexFiles(files);
+            for (Iterator iter = collectionJobs.iterator(); iter.hasNext();) {
+                ((UploadJob) iter.next()).setStatus(UploadJob.DONE);
+            }
+            log.info("Indexed " + files.size() + " uploaded files of " + collectionJobs.size() + " jobs for " + collectionName);
+        }
+        catch (IndexException e) {
+            log.error("Can't index uploaded files for " + collectionName, e);
+            failAll(collectionJobs, e.getMessage());
+        }
+        catch (RuntimeException e) {
+            // in case ANY exception slips through, keep the thread alive for next jobs
+            log.error("Can't index uploaded files for " + collectionName, e);
+            failAll(collectionJobs, e.toString());
+        }
+        return true;
+    }
+
+    /**
+     * Mark a number of jobs as failed.
+     * 
+     * @param collectionJobs List of UploadJobs
+     * @param message the reason
+     */
+    private void failAll(final List collectionJobs, final String message) {
+        for (Iterator iter = collectionJobs.iterator(); iter.hasNext();) {
+            ((UploadJob) iter.next()).fail(message);
+        }
+    }
+
+    /**
+     * The most recent jobs by id, forgetting the oldest job when more than MAX_JOBS are added.
+     */
+    private static final class RecentJobs extends LinkedHashMap {
+        /**
+         * The <code>serialVersionUID</code>.
+         */
+        private static final long serialVersionUID = 6202314835216337493L;
+
+        /**
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        protected boolean removeEldestEntry(final Map.Entry eldest) {
+            return size() > MAX_JOBS;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+/**
+ * Service that indexes the changes in the content directories of watched collections as they happen, so that new documents are
+ * searchable within seconds instead of after the next scheduled index.
+ * 
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ * 
+ * @see org.zilverline.core.FileSystemCollection#isWatch()
+ */
+public interface WatchService {
+    /**
+     * Check the content directories of all watched collections for changes once, and index the changes found.
+     */
+    void poll();
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.zilverline.core.DocumentCollection;
+import org.zilverline.core.FileSystemCollection;
+import org.zilverline.core.IndexException;
+import org.zilverline.util.DirectoryWatcher;
+
+/**
+ * Service that watches the content directories of collections for changes, and indexes them.
+ * 
+ * <p>
+ * A background thread polls the content directory of every collection that has <code>watch</code> set, every
+ * <code>watchInterval</code> seconds. Files created or modified are indexed once they have not changed for one interval, the
+ * documents of deleted files are removed. All changes of one poll are indexed together, in one session of the collection's
+ * IndexWriter. While a collection is being indexed as a whole or rebuilt, it is not polled.
+ * </p>
+ * <p>
+ * A poll lists every directory of the content directory, which takes long for a large tree. So that polling does not keep the
+ * disk busy, a collection whose poll takes more than a tenth of the interval is polled once every {@link #POLL_SHARE} times the
+ * time its last poll took instead.
+ * </p>
+ * 
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ * 
+ * @see org.zilverline.util.DirectoryWatcher
+ */
+public class WatchServiceImpl implements WatchService {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(WatchServiceImpl.class);
+
+    /** Number of seconds between polls, if not set. */
+    public static final int DEFAULT_INTERVAL = 10;
+
+    /** Times the duration of its last poll that a collection is not polled. */
+    public static final int POLL_SHARE = 10;
+
+    /** Access to collections, Populated through configuration. */
+    private CollectionManager collectionManager;
+
+    /** The watchers of the watched collections, by name of the collection. */
+    private final Map watchers = new HashMap();
+
+    /** The thread polling the collections. */
+    private Thread poller;
+
+    /** Indicates whether the service is shutting down. */
+    private boolean stopped = false;
+
+    /**
+     * Gets the CollectionManager, which holds all collections.
+     * 
+     * @return CollectionManager
+     */
+    public CollectionManager getCollectionManager() {
+        return collectionManager;
+    }
+
+    /**
+     * Sets the CollectionManager, which holds all collections.
+     * 
+     * @param cm CollectionManager
+     */
+    public void setCollectionManager(final CollectionManager cm) {
+        collectionManager = cm;
+    }
+
+    /**
+     * Start the background thread polling the watched collections.
+     */
+    public void init() {
+        poller = new Thread(new Runnable() {
+            public void run() {
+                work();
+            }
+        });
+        poller.setName("CollectionWatchingThread");
+        poller.setDaemon(true);
+        if (collectionManager.getPriority() != null) {
+            poller.setPriority(collectionManager.getPriority().intValue());
+        }
+        poller.start();
+    }
+
+    /**
+     * Stop the background thread.
+     */
+    public void destroy() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        if (poller != null) {
+            poller.interrupt();
+        }
+    }
+
+    /**
+     * @see org.zilverline.service.WatchService#poll()
+     */
+    public synchronized void poll() {
+        Set watched = new HashSet();
+        for (Iterator iter = collectionManager.getCollections().iterator(); iter.hasNext();) {
+            DocumentCollection c = (DocumentCollection) iter.next();
+            if (!(c instanceof FileSystemCollection)) {
+                continue;
+            }
+            FileSystemCollection col = (FileSystemCollection) c;
+            if (!col.isWatch() || col.getContentDir() == null) {
+                continue;
+            }
+            watched.add(col.getName());
+            DirectoryWatcher watcher = (DirectoryWatcher) watchers.get(col.getName());
+            if (watcher == null || !watcher.getRoot().equals(col.getContentDir())) {
+                log.info("Watching " + col.getContentDir() + " for changes to collection " + col.getName());
+                watcher = new DirectoryWatcher(col.getContentDir());
+                watchers.put(col.getName(), watcher);
+            }
+            if (col.isIndexingInProgress() || col.isRebuilding()) {
+                log.debug("Collection " + col.getName() + " is being indexed, not watching it now");
+                continue;
+            }
+            long pause = POLL_SHARE * watcher.getPollTime();
+            if (pause > getInterval() * 1000L && System.currentTimeMillis() - watcher.getLastPoll() < pause) {
+                log.debug("Last poll of collection " + col.getName() + " took " + watcher.getPollTime()
+                    + " ms, not polling it yet");
+                continue;
+            }
+            DirectoryWatcher.Changes changes = watcher.poll();
+            if (changes.isEmpty()) {
+                continue;
+            }
+            try {
+                col.indexChanges(changes.getChanged(), changes.getDeleted());
+            }
+            catch (IndexException e) {
+                log.error("Can't index changes of " + col.getName(), e);
+            }
+            catch (RuntimeException e) {
+                // in case ANY exception slips through, keep watching the other collections
+                log.error("Can't index changes of " + col.getName(), e);
+            }
+        }
+        // forget about the collections that are no longer watched
+        watchers.keySet().retainAll(watched);
+    }
+
+    /**
+     * Get the number of seconds between polls.
+     * 
+     * @return the watch interval of the manager, or the default
+     */
+    private int getInterval() {
+        if (collectionManager.getWatchInterval() != null) {
+            return collectionManager.getWatchInterval().intValue();
+        }
+        return DEFAULT_INTERVAL;
+    }
+
+    /**
+     * Main loop of the background thread: poll, and wait for the next poll.
+     */
+    private void work() {
+        try {
+            while (true) {
+                int interval = getInterval();
+                synchronized (this) {
+                    if (stopped) {
+                        return;
+                    }
+                    wait(interval * 1000L);
+                    if (stopped) {
+                        return;
+                    }
+                }
+                poll();
+            }
+        }
+        catch (InterruptedException e) {
+            log.debug("Collection watching thread interrupted, stopping");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.util.LinkedList;
+
+/**
+ * A first-in-first-out queue with a maximum size, used to hand work from one thread to another.
+ *
+ * <p>
+ * Producers block in {@link #put(Object)} while the queue is full, consumers block in {@link #take()} while it is empty. Once the
+ * queue is closed no more elements are accepted, and consumers get <code>null</code> as soon as the queue has been drained.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public class BoundedQueue {
+    /** The elements in the queue, oldest first. */
+    private final LinkedList elements = new LinkedList();
+
+    /** Maximum number of elements in the queue. */
+    private final int capacity;
+
+    /** Indicates whether the queue still accepts elements. */
+    private boolean closed = false;
+
+    /**
+     * Creates a queue holding at most the given number of elements.
+     *
+     * @param theCapacity the maximum number of elements, at least 1
+     */
+    public BoundedQueue(final int theCapacity) {
+        if (theCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, not " + theCapacity);
+        }
+        capacity = theCapacity;
+    }
+
+    /**
+     * Adds an element to the end of the queue, waiting for room if the queue is full.
+     *
+     * @param o the element, not null
+     * @throws InterruptedException if interrupted while waiting
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public final synchronized void put(final Object o) throws InterruptedException {
+        if (o == null) {
+            throw new IllegalArgumentException("Can't put null in queue");
+        }
+        while (!closed && elements.size() >= capacity) {
+            wait();
+        }
+        if (closed) {
+            throw new IllegalStateException("Queue is closed");
+        }
+        elements.addLast(o);
+        notifyAll();
+    }
+
+    /**
+     * Removes the first element of the queue, waiting for one if the queue is empty.
+     *
+     * @return the first element, or null if the queue is closed and empty
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public final synchronized Object take() throws InterruptedException {
+        while (!closed && elements.isEmpty()) {
+            wait();
+        }
+        if (elements.isEmpty()) {
+            return null;
+        }
+        Object o = elements.removeFirst();
+        notifyAll();
+        return o;
+    }
+
+    /**
+     * Stop accepting elements. Elements already in the queue can still be taken.
+     */
+    public final synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Closes the queue and throws away all elements in it.
+     */
+    public final synchronized void clear() {
+        closed = true;
+        elements.clear();
+        notifyAll();
+    }
+
+    /**
+     * Indicates whether the queue has been closed.
+     *
+     * @return true if so
+     */
+    public final synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of elements currently in the queue.
+     *
+     * @return the number of elements
+     */
+    public final synchronized int size() {
+        return elements.size();
+    }
+
+    /**
+     * Get the maximum number of elements in the queue.
+     *
+     * @return the capacity
+     */
+    public final int getCapacity() {
+        return capacity;
+    }
+}
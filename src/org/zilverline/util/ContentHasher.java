@@ -0,0 +1,308 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Computes the hashes of files, as used to recognize documents that are already in an index.
+ *
+ * <p>
+ * Files are read through a FileChannel into a large buffer, or mapped into memory if they are large, and every thread reuses its
+ * own buffer and MD5 digest. The hash of a file is its MD5 hash as a hexadecimal String, like it has always been.
+ * </p>
+ * <p>
+ * Hashing a file of several gigabytes still takes a while, since MD5 can't be computed in parallel. Files of at least
+ * {@link #TREE_THRESHOLD} bytes can therefore be hashed by several threads at once, into a tree hash: the MD5 hash of the MD5
+ * digests of the consecutive chunks of {@link #CHUNK_SIZE} bytes. This is a different hash than the MD5 hash of the same file, so
+ * it starts with {@link #TREE_PREFIX}: the two kinds never match, and can be in one index together. Changing the number of threads
+ * only gives files of at least {@link #TREE_THRESHOLD} bytes another hash.
+ * </p>
+ * <p>
+ * Files are not mapped on Windows, since a mapped file can't be deleted there until the mapping is garbage collected.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ *
+ * @see FileUtils#getContentHash(File, int)
+ */
+public final class ContentHasher {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(ContentHasher.class);
+
+    /** Size of the buffer of every thread. */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** Files of at least this size are mapped into memory, instead of read into the buffer. */
+    public static final long MAP_THRESHOLD = 16L * 1024 * 1024;
+
+    /** Size of the chunks a file is mapped and tree hashed in. */
+    public static final long CHUNK_SIZE = 64L * 1024 * 1024;
+
+    /** Files of at least this size can be tree hashed. */
+    public static final long TREE_THRESHOLD = 256L * 1024 * 1024;
+
+    /** Prefix of a tree hash, which is no hexadecimal digit, so a tree hash can't be taken for an MD5 hash. */
+    public static final String TREE_PREFIX = "tree-";
+
+    /** Whether files can be mapped on this platform. */
+    private static final boolean MAP = System.getProperty("os.name").indexOf("Windows") < 0;
+
+    /** The MD5 digest of every thread. */
+    private static final ThreadLocal DIGEST = new ThreadLocal() {
+        protected Object initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            }
+            catch (NoSuchAlgorithmException e) {
+                log.error("Can't create MessageDigest for MD5", e);
+                return null;
+            }
+        }
+    };
+
+    /** The buffer of every thread. */
+    private static final ThreadLocal BUFFER = new ThreadLocal() {
+        protected Object initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Hidden default constructor.
+     */
+    private ContentHasher() {
+    }
+
+    /**
+     * Get the MD5 hash of a file.
+     *
+     * @param f the file
+     * @return the MD5 hash as a String of lowercase hexadecimal digits
+     * @throws IOException if the file can't be read
+     */
+    public static String md5(final File f) throws IOException {
+        return md5(f, null);
+    }
+
+    /**
+     * Get the MD5 hash of a file, taking every buffer read from a throttle.
+     *
+     * @param f the file
+     * @param throttle the throttle to take the bytes read from, null for none
+     * @return the MD5 hash as a String of lowercase hexadecimal digits
+     * @throws IOException if the file can't be read
+     */
+    public static String md5(final File f, final Throttle throttle) throws IOException {
+        FileInputStream in = new FileInputStream(f);
+        try {
+            FileChannel channel = in.getChannel();
+            MessageDigest md = getDigest();
+            update(md, channel, 0, channel.size(), throttle);
+            return FileUtils.toHexString(md.digest());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the hash of a file, using the given number of threads. Files smaller than {@link #TREE_THRESHOLD}, or when using a single
+     * thread, get their MD5 hash, larger ones a tree hash.
+     *
+     * @param f the file
+     * @param threads the number of threads to hash with
+     * @return the MD5 hash as a String of lowercase hexadecimal digits, or the tree hash
+     * @throws IOException if the file can't be read
+     */
+    public static String hash(final File f, final int threads) throws IOException {
+        return hash(f, threads, null);
+    }
+
+    /**
+     * Get the hash of a file, using the given number of threads, taking every buffer read from a throttle.
+     *
+     * @param f the file
+     * @param threads the number of threads to hash with
+     * @param throttle the throttle to take the bytes read from, null for none
+     * @return the MD5 hash as a String of lowercase hexadecimal digits, or the tree hash
+     * @throws IOException if the file can't be read
+     * @see #hash(File, int)
+     */
+    public static String hash(final File f, final int threads, final Throttle throttle) throws IOException {
+        if (threads <= 1 || f.length() < TREE_THRESHOLD) {
+            return md5(f, throttle);
+        }
+        return treeHash(f, threads, CHUNK_SIZE, throttle);
+    }
+
+    /**
+     * Get the tree hash of a file: the MD5 hash of the MD5 digests of its chunks.
+     *
+     * @param f the file
+     * @param threads the number of threads to hash the chunks with
+     * @param chunkSize the size of the chunks
+     * @param throttle the throttle to take the bytes read from, null for none
+     * @return {@link #TREE_PREFIX} followed by the hash as lowercase hexadecimal digits
+     * @throws IOException if the file can't be read
+     */
+    static String treeHash(final File f, final int threads, final long chunkSize, final Throttle throttle) throws IOException {
+        FileInputStream in = new FileInputStream(f);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            final int chunks = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+            final byte[][] digests = new byte[chunks][];
+            final IOException[] error = new IOException[1];
+            final int[] next = new int[1];
+            // all threads, including this one, take the next chunk until all chunks are done
+            Runnable worker = new Runnable() {
+                public void run() {
+                    while (true) {
+                        int chunk;
+                        synchronized (next) {
+                            if (next[0] == chunks || error[0] != null) {
+                                return;
+                            }
+                            chunk = next[0]++;
+                        }
+                        try {
+                            MessageDigest md = getDigest();
+                            long start = chunk * chunkSize;
+                            update(md, channel, start, Math.min(chunkSize, size - start), throttle);
+                            digests[chunk] = md.digest();
+                        }
+                        catch (IOException e) {
+                            synchronized (next) {
+                                error[0] = e;
+                            }
+                        }
+                    }
+                }
+            };
+            Thread[] helpers = new Thread[Math.min(threads, chunks) - 1];
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = new Thread(worker, "HashingThread-" + i);
+                helpers[i].setDaemon(true);
+                helpers[i].start();
+            }
+            worker.run();
+            for (int i = 0; i < helpers.length; i++) {
+                try {
+                    helpers[i].join();
+                }
+                catch (InterruptedException e) {
+                    throw new IOException("Interrupted while hashing " + f);
+                }
+            }
+            if (error[0] != null) {
+                throw error[0];
+            }
+            MessageDigest md = getDigest();
+            for (int i = 0; i < chunks; i++) {
+                md.update(digests[i]);
+            }
+            log.debug("Tree hashed " + chunks + " chunks of " + f + " with " + (helpers.length + 1) + " threads");
+            return TREE_PREFIX + FileUtils.toHexString(md.digest());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the digest of this thread, reset.
+     *
+     * @return the digest
+     * @throws IOException if there is no MD5 digest
+     */
+    private static MessageDigest getDigest() throws IOException {
+        MessageDigest md = (MessageDigest) DIGEST.get();
+        if (md == null) {
+            throw new IOException("No MD5 digest available");
+        }
+        md.reset();
+        return md;
+    }
+
+    /**
+     * Update a digest with a part of a file, using the buffer of this thread. Reads at an absolute position, so several threads
+     * can read the same channel. Every buffer full is taken from the throttle before it is read, so reading a large file is spread
+     * evenly over the time the throttle allows for it.
+     *
+     * @param md the digest
+     * @param channel the channel of the file
+     * @param start the position of the first byte
+     * @param length the number of bytes
+     * @param throttle the throttle to take the bytes read from, null for none
+     * @throws IOException if the file can't be read
+     */
+    private static void update(final MessageDigest md, final FileChannel channel, final long start, final long length,
+        final Throttle throttle) throws IOException {
+        byte[] buffer = (byte[]) BUFFER.get();
+        long end = start + length;
+        if (MAP && length >= MAP_THRESHOLD) {
+            for (long pos = start; pos < end; pos += CHUNK_SIZE) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(CHUNK_SIZE, end - pos));
+                while (mapped.hasRemaining()) {
+                    int len = Math.min(buffer.length, mapped.remaining());
+                    if (throttle != null) {
+                        throttle.acquire(len);
+                    }
+                    // this is where the mapped pages are read
+                    mapped.get(buffer, 0, len);
+                    md.update(buffer, 0, len);
+                }
+            }
+        } else {
+            ByteBuffer buf = ByteBuffer.wrap(buffer);
+            long pos = start;
+            while (pos < end) {
+                buf.clear();
+                if (end - pos < buffer.length) {
+                    buf.limit((int) (end - pos));
+                }
+                if (throttle != null) {
+                    throttle.acquire(buf.remaining());
+                }
+                int len = channel.read(buf, pos);
+                if (len < 0) {
+                    // the file has become shorter
+                    break;
+                }
+                md.update(buffer, 0, len);
+                pos += len;
+            }
+        }
+    }
+}
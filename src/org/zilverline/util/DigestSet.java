@@ -0,0 +1,361 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A Set of MD5 hashes, as 32 lowercase hexadecimal characters, that stores every hash as two longs instead of a String.
+ *
+ * <p>
+ * A String of 32 characters in a HashSet takes about 150 bytes of heap. This set keeps the hashes in a single long array with open
+ * addressing and linear probing, at most three quarters full, which takes 16 to 43 bytes per hash. Anything else added, such as
+ * the message ids of an IMAPCollection or the hash <code>unknown</code>, is kept in an ordinary HashSet beside it.
+ * </p>
+ * <p>
+ * Like HashSet this set is not synchronized. Its iterator does not support <code>remove()</code>.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public final class DigestSet extends AbstractSet {
+    /** Number of hexadecimal characters of a hash. */
+    private static final int DIGEST_LENGTH = 32;
+
+    /** Initial number of slots, a power of two. */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The hexadecimal digits, by value. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The hashes, the high and low half of a hash in slots 2i and 2i+1; a slot holding 0 and 0 is free. */
+    private long[] slots = new long[2 * INITIAL_CAPACITY];
+
+    /** Number of hashes in the slots. */
+    private int size;
+
+    /** Whether the hash of all zeros is in the set, since it can't be stored in a slot. */
+    private boolean containsZero;
+
+    /** Everything else than hashes. */
+    private final Set others = new HashSet();
+
+    /**
+     * @see java.util.Collection#add(java.lang.Object)
+     */
+    public boolean add(final Object o) {
+        if (!isDigest(o)) {
+            return others.add(o);
+        }
+        String s = (String) o;
+        return add(parse(s, 0), parse(s, DIGEST_LENGTH / 2));
+    }
+
+    /**
+     * Add a hash as two longs, as parsed by {@link #parse(String, int)}, without making a String of it.
+     *
+     * @param high the high half of the hash
+     * @param low the low half of the hash
+     * @return true if the hash was not in the set yet
+     */
+    public boolean add(final long high, final long low) {
+        if (high == 0 && low == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int slot = find(high, low);
+        if (slots[slot] != 0 || slots[slot + 1] != 0) {
+            return false;
+        }
+        slots[slot] = high;
+        slots[slot + 1] = low;
+        size++;
+        if (size * 4 > capacity() * 3) {
+            resize(capacity() * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Add all elements of a collection. The hashes of another DigestSet are added as they are stored, without making Strings of
+     * them.
+     *
+     * @see java.util.Collection#addAll(java.util.Collection)
+     */
+    public boolean addAll(final Collection c) {
+        if (!(c instanceof DigestSet)) {
+            return super.addAll(c);
+        }
+        DigestSet other = (DigestSet) c;
+        boolean changed = false;
+        for (int i = 0; i < other.slots.length; i += 2) {
+            if (other.slots[i] != 0 || other.slots[i + 1] != 0) {
+                changed |= add(other.slots[i], other.slots[i + 1]);
+            }
+        }
+        if (other.containsZero) {
+            changed |= add(0, 0);
+        }
+        changed |= others.addAll(other.others);
+        return changed;
+    }
+
+    /**
+     * @see java.util.Collection#contains(java.lang.Object)
+     */
+    public boolean contains(final Object o) {
+        if (!isDigest(o)) {
+            return others.contains(o);
+        }
+        String s = (String) o;
+        long high = parse(s, 0);
+        long low = parse(s, DIGEST_LENGTH / 2);
+        if (high == 0 && low == 0) {
+            return containsZero;
+        }
+        int slot = find(high, low);
+        return slots[slot] != 0 || slots[slot + 1] != 0;
+    }
+
+    /**
+     * @see java.util.Collection#remove(java.lang.Object)
+     */
+    public boolean remove(final Object o) {
+        if (!isDigest(o)) {
+            return others.remove(o);
+        }
+        String s = (String) o;
+        long high = parse(s, 0);
+        long low = parse(s, DIGEST_LENGTH / 2);
+        if (high == 0 && low == 0) {
+            boolean removed = containsZero;
+            containsZero = false;
+            return removed;
+        }
+        int slot = find(high, low);
+        if (slots[slot] == 0 && slots[slot + 1] == 0) {
+            return false;
+        }
+        // shift the following hashes back, so that no hash is separated from its home slot by a free slot
+        int mask = slots.length - 1;
+        int free = slot;
+        int next = (free + 2) & mask;
+        while (slots[next] != 0 || slots[next + 1] != 0) {
+            int home = home(slots[next], slots[next + 1]);
+            // move the hash if its home is not between the free slot (exclusive) and its own slot (inclusive)
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                slots[free] = slots[next];
+                slots[free + 1] = slots[next + 1];
+                free = next;
+            }
+            next = (next + 2) & mask;
+        }
+        slots[free] = 0;
+        slots[free + 1] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * @see java.util.Collection#clear()
+     */
+    public void clear() {
+        slots = new long[2 * INITIAL_CAPACITY];
+        size = 0;
+        containsZero = false;
+        others.clear();
+    }
+
+    /**
+     * @see java.util.Collection#size()
+     */
+    public int size() {
+        return size + (containsZero ? 1 : 0) + others.size();
+    }
+
+    /**
+     * Get the number of bytes taken by the slots. This is what the hashes take, apart from a few bytes for the set itself.
+     *
+     * @return the number of bytes
+     */
+    public long getSlotBytes() {
+        return slots.length * 8L;
+    }
+
+    /**
+     * @see java.util.Collection#iterator()
+     */
+    public Iterator iterator() {
+        return new Iterator() {
+            private int slot = -2;
+
+            private boolean zeroDone = !containsZero;
+
+            private final Iterator otherIter = others.iterator();
+
+            public boolean hasNext() {
+                return nextSlot() < slots.length || !zeroDone || otherIter.hasNext();
+            }
+
+            public Object next() {
+                int next = nextSlot();
+                if (next < slots.length) {
+                    slot = next;
+                    return format(slots[slot], slots[slot + 1]);
+                }
+                if (!zeroDone) {
+                    zeroDone = true;
+                    return format(0, 0);
+                }
+                if (otherIter.hasNext()) {
+                    return otherIter.next();
+                }
+                throw new NoSuchElementException();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("DigestSet can't remove while iterating");
+            }
+
+            private int nextSlot() {
+                int next = slot + 2;
+                while (next < slots.length && slots[next] == 0 && slots[next + 1] == 0) {
+                    next += 2;
+                }
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Find the slot of a hash, or the free slot where it should go.
+     *
+     * @param high the high half of the hash
+     * @param low the low half of the hash
+     * @return the index of the high half of the slot
+     */
+    private int find(final long high, final long low) {
+        int mask = slots.length - 1;
+        int slot = home(high, low);
+        while ((slots[slot] != 0 || slots[slot + 1] != 0) && (slots[slot] != high || slots[slot + 1] != low)) {
+            slot = (slot + 2) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Get the slot a hash belongs in. The bits of an MD5 hash are evenly distributed, so any of them will do.
+     *
+     * @param high the high half of the hash
+     * @param low the low half of the hash
+     * @return the index of the high half of the slot
+     */
+    private int home(final long high, final long low) {
+        return ((int) (low ^ (high >>> 32)) << 1) & (slots.length - 1);
+    }
+
+    /**
+     * @return the number of slots
+     */
+    private int capacity() {
+        return slots.length / 2;
+    }
+
+    /**
+     * Move all hashes to a new array of slots.
+     *
+     * @param newCapacity the number of slots, a power of two
+     */
+    private void resize(final int newCapacity) {
+        long[] old = slots;
+        slots = new long[2 * newCapacity];
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                int slot = find(old[i], old[i + 1]);
+                slots[slot] = old[i];
+                slots[slot + 1] = old[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Indicates whether an object is a String of 32 lowercase hexadecimal characters, which can be stored as two longs.
+     *
+     * @param o the object
+     * @return true if so
+     */
+    public static boolean isDigest(final Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        String s = (String) o;
+        if (s.length() != DIGEST_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse 16 hexadecimal characters into a long.
+     *
+     * @param s the hash
+     * @param start the index of the first character, 0 for the high half of a hash and 16 for the low half
+     * @return the value
+     */
+    public static long parse(final String s, final int start) {
+        long value = 0;
+        for (int i = start; i < start + DIGEST_LENGTH / 2; i++) {
+            char c = s.charAt(i);
+            value = (value << 4) | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return value;
+    }
+
+    /**
+     * Format a hash as 32 hexadecimal characters.
+     *
+     * @param high the high half of the hash
+     * @param low the low half of the hash
+     * @return the hash
+     */
+    public static String format(final long high, final long low) {
+        char[] chars = new char[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH / 2; i++) {
+            chars[DIGEST_LENGTH / 2 - 1 - i] = HEX[(int) (high >>> (4 * i)) & 0xF];
+            chars[DIGEST_LENGTH - 1 - i] = HEX[(int) (low >>> (4 * i)) & 0xF];
+        }
+        return new String(chars);
+    }
+}
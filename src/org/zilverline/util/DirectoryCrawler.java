@@ -0,0 +1,292 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Crawls directories, determining the type of every entry only once.
+ *
+ * <p>
+ * Walking a tree with <code>File.list()</code>, <code>isDirectory()</code>, <code>isFile()</code> and
+ * {@link FileUtils#isLink(File)} costs several system calls per entry, which adds up on network file systems. The crawler lists a
+ * directory once, resolves the canonical path of the directory once, and classifies each entry with a single canonical path
+ * lookup and one <code>isFile()</code> (plus an <code>isDirectory()</code> for entries that are not files). Size and modification
+ * date are only read when asked for, and then kept in the {@link Entry}.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public class DirectoryCrawler {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(DirectoryCrawler.class);
+
+    /** Windows has no symbolic links (that Java knows of). */
+    private static final boolean CAN_HAVE_LINKS = System.getProperty("os.name").indexOf("Windows") < 0;
+
+    /**
+     * Callback for {@link DirectoryCrawler#crawl(File, Visitor)}.
+     */
+    public interface Visitor {
+        /**
+         * Called for each entry in the tree, directories before their contents.
+         *
+         * @param entry the entry
+         * @return true to continue crawling (and descend into a directory), false to skip the directory's contents
+         */
+        boolean visit(Entry entry);
+    }
+
+    /**
+     * An entry of a directory, with its type and (lazily) its size and modification date.
+     */
+    public static final class Entry {
+        /** Entry is a directory. */
+        public static final int DIRECTORY = 1;
+
+        /** Entry is a normal file. */
+        public static final int FILE = 2;
+
+        /** Entry is a symbolic link to a file or directory. */
+        public static final int LINK = 3;
+
+        /** Entry is something else, or has disappeared. */
+        public static final int OTHER = 4;
+
+        /** The file of this entry. */
+        private final File file;
+
+        /** The type of this entry. */
+        private final int type;
+
+        /** The size in bytes, -1 if not read yet. */
+        private long size = -1;
+
+        /** The modification date, -1 if not read yet. */
+        private long lastModified = -1;
+
+        /**
+         * Creates an Entry.
+         *
+         * @param theFile the file
+         * @param theType the type
+         */
+        Entry(final File theFile, final int theType) {
+            file = theFile;
+            type = theType;
+        }
+
+        /**
+         * @return the file of this entry
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the name of the file of this entry
+         */
+        public String getName() {
+            return file.getName();
+        }
+
+        /**
+         * @return the type: DIRECTORY, FILE, LINK or OTHER
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return true if this entry is a (real) directory
+         */
+        public boolean isDirectory() {
+            return type == DIRECTORY;
+        }
+
+        /**
+         * @return true if this entry is a normal file
+         */
+        public boolean isFile() {
+            return type == FILE;
+        }
+
+        /**
+         * @return true if this entry is a symbolic link
+         */
+        public boolean isLink() {
+            return type == LINK;
+        }
+
+        /**
+         * Get the size of the file, read from disk the first time.
+         *
+         * @return the size in bytes
+         */
+        public long getSize() {
+            if (size < 0) {
+                size = file.length();
+            }
+            return size;
+        }
+
+        /**
+         * Get the modification date of the file, read from disk the first time.
+         *
+         * @return the modification date in milliseconds since January 1, 1970, 00:00:00 GMT
+         */
+        public long getLastModified() {
+            if (lastModified < 0) {
+                lastModified = file.lastModified();
+            }
+            return lastModified;
+        }
+
+        /**
+         * @see java.lang.Object#toString()
+         */
+        public String toString() {
+            return file + " (" + type + ")";
+        }
+    }
+
+    /**
+     * Classify a single file or directory.
+     *
+     * @param file the file
+     * @return the entry for the file
+     */
+    public final Entry entry(final File file) {
+        // compare with the canonical path of the parent, so that a link higher up in the path does not count
+        File parent = file.getAbsoluteFile().getParentFile();
+        String dirPath = (parent == null) ? null : canonicalPath(parent);
+        if (file.isDirectory()) {
+            return new Entry(file, isLink(file, dirPath) ? Entry.LINK : Entry.DIRECTORY);
+        }
+        if (file.isFile()) {
+            return new Entry(file, isLink(file, dirPath) ? Entry.LINK : Entry.FILE);
+        }
+        return new Entry(file, Entry.OTHER);
+    }
+
+    /**
+     * List and classify the entries of a directory.
+     *
+     * @param dir the directory
+     * @return the entries, or null if the directory can't be read
+     */
+    public final Entry[] list(final File dir) {
+        String[] names = dir.list();
+        // I've seen list return null, so be carefull, guess dir names too long for OS
+        if (names == null) {
+            log.warn("Could not list '" + dir + "'. Name or path too long?");
+            return null;
+        }
+        String dirPath = canonicalPath(dir);
+        Entry[] entries = new Entry[names.length];
+        for (int i = 0; i < names.length; i++) {
+            File file = new File(dir, names[i]);
+            int type;
+            if (isLink(file, dirPath)) {
+                type = Entry.LINK;
+            } else if (file.isFile()) {
+                // most entries are files, ask that first
+                type = Entry.FILE;
+            } else if (file.isDirectory()) {
+                type = Entry.DIRECTORY;
+            } else {
+                type = Entry.OTHER;
+            }
+            entries[i] = new Entry(file, type);
+        }
+        return entries;
+    }
+
+    /**
+     * Crawl a tree depth first, skipping symbolic links to directories.
+     *
+     * @param root the directory to start at
+     * @param visitor the callback for each entry
+     * @return the number of entries visited
+     */
+    public final int crawl(final File root, final Visitor visitor) {
+        Entry[] entries = list(root);
+        if (entries == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < entries.length; i++) {
+            count++;
+            if (visitor.visit(entries[i]) && entries[i].isDirectory()) {
+                count += crawl(entries[i].getFile(), visitor);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determine whether a file is a symbolic link by comparing its canonical path with where it should be.
+     *
+     * @param file the file
+     * @param dirPath the canonical path of its directory, or null if unknown
+     * @return true if the file is a symbolic link
+     */
+    private boolean isLink(final File file, final String dirPath) {
+        if (!CAN_HAVE_LINKS) {
+            return false;
+        }
+        try {
+            String expected;
+            if (dirPath == null) {
+                expected = file.getAbsolutePath();
+            } else {
+                expected = new File(dirPath, file.getName()).getPath();
+            }
+            return !expected.equals(file.getCanonicalPath());
+        }
+        catch (IOException e) {
+            log.warn("could not determine whether " + file.getAbsolutePath() + " is a symbolic link", e);
+            return false;
+        }
+    }
+
+    /**
+     * Get the canonical path of a directory, or the absolute path if that fails.
+     *
+     * @param dir the directory
+     * @return the path
+     */
+    private String canonicalPath(final File dir) {
+        try {
+            return dir.getCanonicalPath();
+        }
+        catch (IOException e) {
+            log.warn("could not determine canonical path of " + dir, e);
+            return dir.getAbsolutePath();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Finds the files that have been created, modified or deleted in a directory tree, by comparing the sizes and modification dates
+ * of its files with those of the previous poll.
+ *
+ * <p>
+ * A file that is still being written would be reported over and over, so a created or modified file is only reported once it
+ * has not changed for a whole poll, i.e. it is reported by the second poll that sees it. Deleted files are reported right away. A
+ * moved file is reported as deleted at its old path and created at its new one.
+ * </p>
+ * <p>
+ * The first poll only records the tree; changes are reported from the second poll on. Paths are relative to the root, with
+ * <code>/</code> as separator, like the <code>location</code> of indexed documents. Symbolic links are not followed.
+ * </p>
+ * <p>
+ * Every poll lists all directories of the tree, and keeps the size and modification date of all its files in memory. The time
+ * the last poll took is available from {@link #getPollTime()}, so that large trees can be polled less often.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public final class DirectoryWatcher {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(DirectoryWatcher.class);
+
+    /** Lists the directories being watched. */
+    private static final DirectoryCrawler CRAWLER = new DirectoryCrawler();
+
+    /** The root of the tree. */
+    private final File root;
+
+    /** The files reported so far, with their size and modification date, by path. */
+    private Map snapshot;
+
+    /** The files that have changed but may still be changing, by path. */
+    private final Map pending = new HashMap();
+
+    /** The time the last poll started, 0 before the first poll. */
+    private long lastPoll;
+
+    /** The milliseconds the last poll took. */
+    private long pollTime;
+
+    /**
+     * The result of a poll.
+     */
+    public static final class Changes {
+        /** The created or modified Files. */
+        private final List changed;
+
+        /** The paths of deleted files. */
+        private final List deleted;
+
+        /**
+         * Create a result.
+         *
+         * @param theChanged the created or modified Files
+         * @param theDeleted the paths of deleted files
+         */
+        Changes(final List theChanged, final List theDeleted) {
+            changed = theChanged;
+            deleted = theDeleted;
+        }
+
+        /**
+         * @return the created or modified Files, that have not changed since the previous poll
+         */
+        public List getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return the paths, relative to the root, of the files deleted since the previous poll
+         */
+        public List getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return true if nothing has changed
+         */
+        public boolean isEmpty() {
+            return changed.isEmpty() && deleted.isEmpty();
+        }
+    }
+
+    /**
+     * Size and modification date of a file.
+     */
+    private static final class Stamp {
+        /** The size. */
+        private final long size;
+
+        /** The modification date. */
+        private final long lastModified;
+
+        /**
+         * Create a Stamp.
+         *
+         * @param theSize the size
+         * @param theLastModified the modification date
+         */
+        Stamp(final long theSize, final long theLastModified) {
+            size = theSize;
+            lastModified = theLastModified;
+        }
+
+        /**
+         * Stamps are equal if their size and modification date are.
+         *
+         * @param o the other Stamp
+         * @return true if equal
+         */
+        public boolean equals(final Object o) {
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return size == other.size && lastModified == other.lastModified;
+        }
+
+        /**
+         * @return the hashcode
+         */
+        public int hashCode() {
+            return (int) (size ^ lastModified);
+        }
+    }
+
+    /**
+     * Create a watcher for a tree.
+     *
+     * @param theRoot the root directory of the tree
+     */
+    public DirectoryWatcher(final File theRoot) {
+        root = theRoot;
+    }
+
+    /**
+     * Get the root of the tree.
+     *
+     * @return the root directory
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Crawl the tree and report the changes since the previous poll.
+     *
+     * @return the changes, empty on the first poll
+     */
+    public synchronized Changes poll() {
+        lastPoll = System.currentTimeMillis();
+        Map current = new HashMap();
+        scan(root, "", current);
+        pollTime = System.currentTimeMillis() - lastPoll;
+        if (snapshot == null) {
+            log.debug("Watching " + current.size() + " files in " + root);
+            snapshot = current;
+            return new Changes(Collections.EMPTY_LIST, Collections.EMPTY_LIST);
+        }
+        List changed = new ArrayList();
+        for (Iterator iter = current.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry e = (Map.Entry) iter.next();
+            String path = (String) e.getKey();
+            Stamp stamp = (Stamp) e.getValue();
+            if (stamp.equals(snapshot.get(path))) {
+                pending.remove(path);
+                continue;
+            }
+            // report a change once the file has settled
+            Stamp previous = (Stamp) pending.put(path, stamp);
+            if (stamp.equals(previous)) {
+                pending.remove(path);
+                snapshot.put(path, stamp);
+                changed.add(new File(root, path));
+            }
+        }
+        List deleted = new ArrayList();
+        for (Iterator iter = snapshot.keySet().iterator(); iter.hasNext();) {
+            String path = (String) iter.next();
+            if (!current.containsKey(path)) {
+                deleted.add(path);
+                iter.remove();
+            }
+        }
+        pending.keySet().retainAll(current.keySet());
+        if (!changed.isEmpty() || !deleted.isEmpty()) {
+            log.debug(root + ": " + changed.size() + " files created or modified, " + deleted.size() + " deleted, " + pending.size()
+                + " still changing");
+        }
+        return new Changes(changed, deleted);
+    }
+
+    /**
+     * Get the time the last poll started.
+     *
+     * @return the time in milliseconds, 0 if not polled yet
+     */
+    public synchronized long getLastPoll() {
+        return lastPoll;
+    }
+
+    /**
+     * Get the time the last poll took to crawl the tree, which grows with the number of files and directories in it.
+     *
+     * @return the milliseconds
+     */
+    public synchronized long getPollTime() {
+        return pollTime;
+    }
+
+    /**
+     * Record the files of a directory and its subdirectories.
+     *
+     * @param dir the directory
+     * @param prefix the path of the directory relative to the root, ending with / unless empty
+     * @param files the Map to add Stamps to, by path
+     */
+    private void scan(final File dir, final String prefix, final Map files) {
+        DirectoryCrawler.Entry[] entries = CRAWLER.list(dir);
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.length; i++) {
+            DirectoryCrawler.Entry entry = entries[i];
+            if (entry.isFile()) {
+                files.put(prefix + entry.getName(), new Stamp(entry.getSize(), entry.getLastModified()));
+            } else if (entry.isDirectory()) {
+                scan(entry.getFile(), prefix + entry.getName() + "/", files);
+            }
+        }
+    }
+}
@@ -21,11 +21,12 @@
 
 package org.zilverline.util;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -292,64 +293,103 @@ public final class FileUtils {
      * @return MD5 hash of file as a String, null if it can't create a hash.
      */
     public static String getMD5Hash(final File sourceFile) {
-        log.debug("Getting MD5 hash for " + sourceFile);
+        return getContentHash(sourceFile, 1);
+    }
 
-        final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * Get the hash of a file, hashing very large files with several threads. This is the MD5 hash of the file, unless the file is
+     * very large and more than one thread is used: then it is a tree hash, starting with {@link ContentHasher#TREE_PREFIX}.
+     * 
+     * @param sourceFile the File the hash is created from, can take null or not a normalFile
+     * @param threads the number of threads, with more than one very large files get a tree hash instead of their MD5 hash
+     * 
+     * @return hash of file as a String, null if it can't create a hash.
+     * 
+     * @see ContentHasher#hash(File, int)
+     */
+    public static String getContentHash(final File sourceFile, final int threads) {
+        return getContentHash(sourceFile, threads, null);
+    }
+
+    /**
+     * Get the hash of a file, hashing very large files with several threads, and reading the file within the rate of a throttle.
+     * 
+     * @param sourceFile the File the hash is created from, can take null or not a normalFile
+     * @param threads the number of threads, with more than one very large files get a tree hash instead of their MD5 hash
+     * @param throttle the throttle to take every buffer read from, null for none
+     * 
+     * @return hash of file as a String, null if it can't create a hash.
+     * 
+     * @see #getContentHash(File, int)
+     */
+    public static String getContentHash(final File sourceFile, final int threads, final Throttle throttle) {
+        log.debug("Getting hash for " + sourceFile);
 
         if (sourceFile == null || !sourceFile.isFile()) {
-            log.error("Error creating MD5 Hash for " + sourceFile);
+            log.error("Error creating hash for " + sourceFile);
             return null;
         }
-        BufferedInputStream bis = null;
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            // IMessageDigest md = HashFactory.getInstance("MD5");
-            if (md == null) {
-                log.error("Error creating MessageDigest for " + sourceFile);
-                return null;
-            }
-
-            bis = new BufferedInputStream(new FileInputStream(sourceFile));
-            md.reset();
-            int len = 0;
-            byte[] buffer = new byte[8192];
-            while ((len = bis.read(buffer)) > -1) {
-                md.update(buffer, 0, len);
-            }
+            String hash = ContentHasher.hash(sourceFile, threads, throttle);
+            log.debug("Hash for " + sourceFile + " is " + hash);
+            return hash;
+        }
+        catch (Exception e) {
+            log.error("Can't determine hash for " + sourceFile, e);
 
-            byte[] bytes = md.digest();
-            if (bytes == null) {
-                log.error("MessageDigest has no bytes for " + sourceFile);
+            return null;
+        }
+    }
 
-                return null;
-            }
+    /**
+     * Get a new MessageDigest for MD5 hashes, as used by {@link #getMD5Hash(File)}.
+     * 
+     * @return the MessageDigest, null if MD5 is not available
+     */
+    public static MessageDigest getMD5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            log.error("Can't create MessageDigest for MD5", e);
+            return null;
+        }
+    }
 
-            // base64? encode the digest
-            StringBuffer sb = new StringBuffer(bytes.length * 2);
-            int b;
-            for (int i = 0; i < bytes.length; i++) {
-                b = bytes[i] & 0xFF;
-                sb.append(HEX[b >>> 4]);
-                sb.append(HEX[b & 0x0F]);
-            }
+    /**
+     * Get the hexadecimal representation of a digest, the way {@link #getMD5Hash(File)} returns it.
+     * 
+     * @param bytes the digest
+     * @return the digest as a String of lowercase hexadecimal digits
+     */
+    public static String toHexString(final byte[] bytes) {
+        final char[] HEX = "0123456789abcdef".toCharArray();
 
-            log.debug("MD5 hash for " + sourceFile + " is " + sb);
-            return sb.toString();
+        StringBuffer sb = new StringBuffer(bytes.length * 2);
+        int b;
+        for (int i = 0; i < bytes.length; i++) {
+            b = bytes[i] & 0xFF;
+            sb.append(HEX[b >>> 4]);
+            sb.append(HEX[b & 0x0F]);
         }
-        catch (Exception e) {
-            log.error("Can't determine MD5 hash for " + sourceFile, e);
+        return sb.toString();
+    }
 
-            return null;
-        }
-        finally {
-            if (bis != null) {
-                try {
-                    bis.close();
-                }
-                catch (IOException e) {
-                    log.warn("Can't close stream for " + sourceFile, e);
-                }
-            }
+    /**
+     * Read the remainder of a stream into memory. The stream is not closed.
+     * 
+     * @param in the stream
+     * @param sizeHint the expected number of bytes
+     * @return the bytes read
+     * @throws IOException if the stream can't be read
+     */
+    public static byte[] readFully(final InputStream in, final int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(sizeHint, 32));
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = in.read(buffer)) > -1) {
+            out.write(buffer, 0, len);
         }
+        return out.toByteArray();
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Limits the rate at which something is done, such as reading bytes or adding documents, shared by all threads doing it.
+ *
+ * <p>
+ * The throttle holds a budget of at most one second's worth. Every call to {@link #acquire(long)} takes its amount from the
+ * budget, and waits for as long as the budget is in debt, so the average rate stays within the limit, also for amounts larger
+ * than the budget. The rate can be changed at any time.
+ * </p>
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public final class Throttle {
+    /** logger for Commons logging. */
+    private static Log log = LogFactory.getLog(Throttle.class);
+
+    /** What is limited, for logging. */
+    private final String name;
+
+    /** The maximum amount per second, 0 for no limit. */
+    private long rate;
+
+    /** The amount that can be taken without waiting, negative if in debt. */
+    private double budget;
+
+    /** The clock to measure and wait with. */
+    private final Clock clock;
+
+    /** The time the budget was last updated. */
+    private long updated;
+
+    /**
+     * Create a throttle without limit.
+     *
+     * @param theName what is limited, e.g. "bytes read"
+     */
+    public Throttle(final String theName) {
+        this(theName, Clock.SYSTEM);
+    }
+
+    /**
+     * Create a throttle without limit, that measures and waits with the given clock.
+     *
+     * @param theName what is limited
+     * @param theClock the clock
+     */
+    Throttle(final String theName, final Clock theClock) {
+        name = theName;
+        clock = theClock;
+        updated = clock.now();
+    }
+
+    /**
+     * Set the maximum amount per second.
+     *
+     * @param theRate the rate, 0 or less for no limit
+     */
+    public synchronized void setRate(final long theRate) {
+        long newRate = Math.max(0, theRate);
+        if (newRate != rate) {
+            log.debug("Limiting " + name + " to " + newRate + " per second");
+            update();
+            rate = newRate;
+            budget = Math.min(budget, rate);
+        }
+    }
+
+    /**
+     * Get the maximum amount per second.
+     *
+     * @return the rate, 0 for no limit
+     */
+    public synchronized long getRate() {
+        return rate;
+    }
+
+    /**
+     * Take an amount from the budget, waiting as long as needed to stay within the rate. If the waiting thread is interrupted, it
+     * returns at once, with its interrupted status set.
+     *
+     * @param amount the amount, nothing is taken if 0 or less
+     */
+    public void acquire(final long amount) {
+        long wait;
+        synchronized (this) {
+            if (amount <= 0 || rate == 0) {
+                return;
+            }
+            update();
+            budget -= amount;
+            if (budget >= 0) {
+                return;
+            }
+            wait = (long) Math.ceil(-budget * 1000 / rate);
+        }
+        try {
+            clock.sleep(wait);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Add what has become available since the last update to the budget, up to one second's worth.
+     */
+    private void update() {
+        long now = clock.now();
+        budget = Math.min(rate, budget + (now - updated) * rate / 1000.0);
+        updated = now;
+    }
+
+    /**
+     * The time as a throttle sees it, so tests can run a throttle without waiting.
+     */
+    interface Clock {
+        /** The system clock. */
+        Clock SYSTEM = new Clock() {
+            public long now() {
+                return System.currentTimeMillis();
+            }
+
+            public void sleep(final long millis) throws InterruptedException {
+                Thread.sleep(millis);
+            }
+        };
+
+        /**
+         * Get the current time.
+         *
+         * @return the time in milliseconds
+         */
+        long now();
+
+        /**
+         * Wait for some time.
+         *
+         * @param millis the time in milliseconds
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        void sleep(long millis) throws InterruptedException;
+    }
+}
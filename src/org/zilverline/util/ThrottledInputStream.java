@@ -0,0 +1,70 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream that takes every byte it reads from a {@link Throttle}, so that reading it stays within the rate of the throttle.
+ * The bytes are taken after each read, in the amounts actually read, so wrap it in a BufferedInputStream to read in larger
+ * amounts.
+ *
+ * @author Michael Franken
+ * @version $Revision: 1.1 $
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    /** The throttle to take the bytes from. */
+    private final Throttle throttle;
+
+    /**
+     * Create a stream that reads through a throttle.
+     *
+     * @param in the stream to read from
+     * @param theThrottle the throttle to take the bytes from
+     */
+    public ThrottledInputStream(final InputStream in, final Throttle theThrottle) {
+        super(in);
+        throttle = theThrottle;
+    }
+
+    /**
+     * @see java.io.InputStream#read()
+     */
+    public int read() throws IOException {
+        int b = super.read();
+        if (b > -1) {
+            throttle.acquire(1);
+        }
+        return b;
+    }
+
+    /**
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        int n = super.read(b, off, len);
+        throttle.acquire(n);
+        return n;
+    }
+}
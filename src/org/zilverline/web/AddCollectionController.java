@@ -20,10 +20,14 @@
  */
 package org.zilverline.web;
 
+import java.text.NumberFormat;
+
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.propertyeditors.CustomNumberEditor;
+import org.springframework.web.bind.ServletRequestDataBinder;
 import org.springframework.web.servlet.ModelAndView;
 
 import org.zilverline.core.DocumentCollection;
@@ -41,6 +45,18 @@ public class AddCollectionController extends AbstractZilverController {
         setSessionForm(true);
     }
 
+    /**
+     * Allow empty numbers, which means the manager's default is used.
+     * 
+     * @see org.springframework.web.servlet.mvc.BaseCommandController#initBinder(javax.servlet.http.HttpServletRequest,
+     *      org.springframework.web.bind.ServletRequestDataBinder)
+     */
+    protected void initBinder(HttpServletRequest request, ServletRequestDataBinder binder) throws Exception {
+        super.initBinder(request, binder);
+        NumberFormat nf = NumberFormat.getInstance(request.getLocale());
+        binder.registerCustomEditor(java.lang.Integer.class, new CustomNumberEditor(java.lang.Integer.class, nf, true));
+    }
+
     /** Method inserts a new <code>Collection</code>. */
     protected ModelAndView onSubmit(Object command) throws ServletException {
         DocumentCollection collection = (DocumentCollection) command;
@@ -47,6 +47,10 @@ public class CollectionValidator implements Validator {
         if (thisFile == null || !thisFile.isDirectory()) {
             errors.rejectValue("contentDir", "error.dirnoexist", "directory does not exist");
         }
+        if (collection.getMaxContentChars() != null && collection.getMaxContentChars().intValue() < 0) {
+            errors.rejectValue("maxContentChars", "error.notapositivenumber", new Object[] { collection.getMaxContentChars() },
+                "must be a positive number.");
+        }
 
     }
 
@@ -20,6 +20,7 @@
  */
 package org.zilverline.web;
 
+import java.text.NumberFormat;
 import java.util.Iterator;
 import java.util.List;
 
@@ -27,9 +28,11 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.propertyeditors.CustomNumberEditor;
 import org.springframework.validation.BindException;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.RequestUtils;
+import org.springframework.web.bind.ServletRequestDataBinder;
 import org.springframework.web.servlet.ModelAndView;
 import org.zilverline.core.DocumentCollection;
 import org.zilverline.core.FileSystemCollection;
@@ -72,6 +75,20 @@ public class EditCollectionController extends AbstractZilverController {
 		return (FileSystemCollection) collection;
 	}
 
+	/**
+	 * Allow empty numbers, which means the manager's default is used.
+	 * 
+	 * @see org.springframework.web.servlet.mvc.BaseCommandController#initBinder(javax.servlet.http.HttpServletRequest,
+	 *      org.springframework.web.bind.ServletRequestDataBinder)
+	 */
+	protected void initBinder(HttpServletRequest request,
+			ServletRequestDataBinder binder) throws Exception {
+		super.initBinder(request, binder);
+		NumberFormat nf = NumberFormat.getInstance(request.getLocale());
+		binder.registerCustomEditor(java.lang.Integer.class,
+				new CustomNumberEditor(java.lang.Integer.class, nf, true));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
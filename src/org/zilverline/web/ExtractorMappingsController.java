@@ -112,6 +112,9 @@ public class ExtractorMappingsController extends AbstractZilverController {
         }
         collectionManager.getFactory().setCaseSensitive(RequestUtils.getBooleanParameter(request, "casesensitive", false));
         collectionManager.getFactory().setDefaultFileinfo(RequestUtils.getBooleanParameter(request, "defaultfileinfo", false));
+        collectionManager.getFactory().setWorkers(RequestUtils.getIntParameter(request, "workers", 0));
+        collectionManager.getFactory().setWorkerHeap(RequestUtils.getIntParameter(request, "workerheap", 0));
+        collectionManager.getFactory().setWorkerDocuments(RequestUtils.getIntParameter(request, "workerdocuments", 0));
         collectionManager.getFactory().setMappings(props);
         try {
             collectionManager.store();
@@ -27,6 +27,7 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.validation.Errors;
 import org.springframework.validation.Validator;
 
+import org.zilverline.core.OptimizePolicy;
 import org.zilverline.service.CollectionManager;
 
 /**
@@ -77,5 +78,125 @@ public class IndexDefaultsValidator implements Validator {
                     "must be a positive number.");
             }
         }
+        if (manager.getIndexingThreads() != null) {
+            if (manager.getIndexingThreads().intValue() < 1) {
+                errors.rejectValue("indexingThreads", "error.notapositivenumber", new Object[] { manager.getIndexingThreads() },
+                    "must be a positive number.");
+            }
+        }
+        if (manager.getIndexingQueueSize() != null) {
+            if (manager.getIndexingQueueSize().intValue() < 1) {
+                errors.rejectValue("indexingQueueSize", "error.notapositivenumber",
+                    new Object[] { manager.getIndexingQueueSize() }, "must be a positive number.");
+            }
+        }
+        if (manager.getOptimizePolicy() != null) {
+            if (!OptimizePolicy.isValid(manager.getOptimizePolicy())) {
+                errors.rejectValue("optimizePolicy", null, new Object[] { manager.getOptimizePolicy() },
+                    "unknown optimize policy.");
+            }
+        }
+        if (manager.getOptimizeMaxSegments() != null) {
+            if (manager.getOptimizeMaxSegments().intValue() < 1) {
+                errors.rejectValue("optimizeMaxSegments", "error.notapositivenumber",
+                    new Object[] { manager.getOptimizeMaxSegments() }, "must be a positive number.");
+            }
+        }
+        if (manager.getOffPeakStart() != null) {
+            if (manager.getOffPeakStart().intValue() < 0 || manager.getOffPeakStart().intValue() > 23) {
+                errors.rejectValue("offPeakStart", null, new Object[] { manager.getOffPeakStart() },
+                    "must be an hour between 0 and 23.");
+            }
+        }
+        if (manager.getOffPeakEnd() != null) {
+            if (manager.getOffPeakEnd().intValue() < 0 || manager.getOffPeakEnd().intValue() > 23) {
+                errors.rejectValue("offPeakEnd", null, new Object[] { manager.getOffPeakEnd() },
+                    "must be an hour between 0 and 23.");
+            }
+        }
+        if (manager.getWriterFlushDocs() != null) {
+            if (manager.getWriterFlushDocs().intValue() < 1) {
+                errors.rejectValue("writerFlushDocs", "error.notapositivenumber",
+                    new Object[] { manager.getWriterFlushDocs() }, "must be a positive number.");
+            }
+        }
+        if (manager.getWriterFlushInterval() != null) {
+            if (manager.getWriterFlushInterval().intValue() < 1) {
+                errors.rejectValue("writerFlushInterval", "error.notapositivenumber",
+                    new Object[] { manager.getWriterFlushInterval() }, "must be a positive number.");
+            }
+        }
+        if (manager.getWatchInterval() != null) {
+            if (manager.getWatchInterval().intValue() < 1) {
+                errors.rejectValue("watchInterval", "error.notapositivenumber",
+                    new Object[] { manager.getWatchInterval() }, "must be a positive number.");
+            }
+        }
+        if (manager.getHashThreads() != null) {
+            if (manager.getHashThreads().intValue() < 1) {
+                errors.rejectValue("hashThreads", "error.notapositivenumber",
+                    new Object[] { manager.getHashThreads() }, "must be a positive number.");
+            }
+        }
+        if (manager.getExtractionTimeout() != null) {
+            if (manager.getExtractionTimeout().intValue() < 0) {
+                errors.rejectValue("extractionTimeout", "error.notapositivenumber",
+                    new Object[] { manager.getExtractionTimeout() }, "must be a positive number.");
+            }
+        }
+        if (manager.getMaxContentChars() != null) {
+            if (manager.getMaxContentChars().intValue() < 0) {
+                errors.rejectValue("maxContentChars", "error.notapositivenumber",
+                    new Object[] { manager.getMaxContentChars() }, "must be a positive number.");
+            }
+        }
+        if (manager.getWriterRamBuffer() != null) {
+            if (manager.getWriterRamBuffer().intValue() < 0) {
+                errors.rejectValue("writerRamBuffer", "error.notapositivenumber",
+                    new Object[] { manager.getWriterRamBuffer() }, "must be a positive number.");
+            }
+        }
+        if (manager.getWriterRamTotal() != null) {
+            if (manager.getWriterRamTotal().intValue() < 0) {
+                errors.rejectValue("writerRamTotal", "error.notapositivenumber",
+                    new Object[] { manager.getWriterRamTotal() }, "must be a positive number.");
+            }
+        }
+        if (manager.getMaxConcurrentIndexes() != null) {
+            if (manager.getMaxConcurrentIndexes().intValue() < 1) {
+                errors.rejectValue("maxConcurrentIndexes", "error.notapositivenumber",
+                    new Object[] { manager.getMaxConcurrentIndexes() }, "must be a positive number.");
+            }
+        }
+        if (manager.getIndexPartitions() != null) {
+            if (manager.getIndexPartitions().intValue() < 0) {
+                errors.rejectValue("indexPartitions", "error.notapositivenumber",
+                    new Object[] { manager.getIndexPartitions() }, "must be a positive number.");
+            }
+        }
+        if (manager.getReadRateLimit() != null) {
+            if (manager.getReadRateLimit().intValue() < 0) {
+                errors.rejectValue("readRateLimit", "error.notapositivenumber",
+                    new Object[] { manager.getReadRateLimit() }, "must be a positive number.");
+            }
+        }
+        if (manager.getDocumentRateLimit() != null) {
+            if (manager.getDocumentRateLimit().intValue() < 0) {
+                errors.rejectValue("documentRateLimit", "error.notapositivenumber",
+                    new Object[] { manager.getDocumentRateLimit() }, "must be a positive number.");
+            }
+        }
+        if (manager.getInitThreads() != null) {
+            if (manager.getInitThreads().intValue() < 1) {
+                errors.rejectValue("initThreads", "error.notapositivenumber",
+                    new Object[] { manager.getInitThreads() }, "must be a positive number.");
+            }
+        }
+        if (manager.getExtractionCacheSize() != null) {
+            if (manager.getExtractionCacheSize().intValue() < 0) {
+                errors.rejectValue("extractionCacheSize", "error.notapositivenumber",
+                    new Object[] { manager.getExtractionCacheSize() }, "must be a positive number.");
+            }
+        }
     }
 }
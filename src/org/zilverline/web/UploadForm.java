@@ -21,10 +21,11 @@ import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.springframework.web.servlet.ModelAndView;
 
 import org.zilverline.core.FileSystemCollection;
-import org.zilverline.core.IndexException;
+import org.zilverline.service.UploadJob;
+import org.zilverline.service.UploadService;
 
 /**
- * Controller deals with uploading files, adding them to the corresponding collection, and indexing the file.
+ * Controller deals with uploading files, adding them to the corresponding collection, and queueing them for indexing.
  * 
  * @author Michael Franken
  */
@@ -32,6 +33,9 @@ public class UploadForm extends AbstractZilverController {
 
     private static final Log log = LogFactory.getLog(UploadForm.class);
 
+    /** Indexes the uploaded files in the background. */
+    private UploadService uploadService;
+
     public UploadForm() {
         setSessionForm(true);
         setBindOnNewForm(true);
@@ -75,6 +79,7 @@ public class UploadForm extends AbstractZilverController {
                 .getCollectionByName(upload.getCollectionName());
             if (thisCollection != null) {
                 List names = new ArrayList();
+                List uploaded = new ArrayList();
                 for (Iterator myIter = upload.getFiles().values().iterator(); myIter.hasNext();) {
                     MultipartFile file = (MultipartFile) myIter.next();
                     if (file != null && file.getSize() > 0) {
@@ -84,11 +89,16 @@ public class UploadForm extends AbstractZilverController {
                         File uploadFileInDestination = new File(thisCollection.getContentDir(), name);
                         log.info("Uploading file " + uploadFileInDestination);
                         file.transferTo(uploadFileInDestination);
-                        thisCollection.indexFile(uploadFileInDestination);
+                        uploaded.add(uploadFileInDestination);
                         names.add(name);
                     }
                 }
                 model.put("files", names);
+                if (!uploaded.isEmpty()) {
+                    // index in the background, the user can follow the job's status
+                    UploadJob job = uploadService.submit(thisCollection.getName(), uploaded);
+                    model.put("job", job);
+                }
             } else {
                 log.error("Error finding collection:" + upload.getCollectionName());
             }
@@ -101,10 +111,6 @@ public class UploadForm extends AbstractZilverController {
         catch (IOException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
-        }
-        catch (IndexException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
             // } catch (MaxUploadSizeExceededException e) {
             // // TODO Auto-generated catch block
             // e.printStackTrace();
@@ -112,6 +118,20 @@ public class UploadForm extends AbstractZilverController {
         return showForm(request, errors, getSuccessView(), model);
     }
 
+    /**
+     * @return Returns the uploadService.
+     */
+    public UploadService getUploadService() {
+        return uploadService;
+    }
+
+    /**
+     * @param uploadService The uploadService to set.
+     */
+    public void setUploadService(UploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
     private String getFileName(String originalFilename) {
         int index = originalFilename.lastIndexOf("/");
         if (index == -1)
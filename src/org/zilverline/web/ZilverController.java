@@ -21,6 +21,10 @@
 
 package org.zilverline.web;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -33,9 +37,11 @@ import org.springframework.context.ApplicationContextException;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.multiaction.MultiActionController;
 
+import org.zilverline.core.DocumentCollection;
 import org.zilverline.core.FileSystemCollection;
-import org.zilverline.core.IndexException;
 import org.zilverline.service.CollectionManager;
+import org.zilverline.service.UploadJob;
+import org.zilverline.service.UploadService;
 import org.zilverline.util.FileUtils;
 
 /**
@@ -51,6 +57,9 @@ public final class ZilverController extends MultiActionController implements Ini
     /** CollectionManager holds all collections. */
     private CollectionManager collectionManager;
 
+    /** UploadService indexes uploaded files. */
+    private UploadService uploadService;
+
     /**
      * Set the collectionManager.
      * 
@@ -69,6 +78,24 @@ public final class ZilverController extends MultiActionController implements Ini
         return collectionManager;
     }
 
+    /**
+     * Set the uploadService.
+     * 
+     * @param us the UploadService
+     */
+    public void setUploadService(UploadService us) {
+        uploadService = us;
+    }
+
+    /**
+     * Get the uploadService.
+     * 
+     * @return UploadService the uploadService
+     */
+    public UploadService getUploadService() {
+        return uploadService;
+    }
+
     /**
      * Checks whether we have a collectionManager.
      * 
@@ -144,6 +171,33 @@ public final class ZilverController extends MultiActionController implements Ini
         return new ModelAndView("collections", "collections", collectionManager.getCollections());
     }
 
+    /**
+     * Custom handler for the status of an upload job.
+     * 
+     * @param request current HTTP request, with the id of the job as parameter 'job'
+     * @param response current HTTP response
+     * 
+     * @return a ModelAndView to render the response
+     * 
+     * @throws ServletException on error
+     */
+    public ModelAndView uploadStatusHandler(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+        String id = request.getParameter("job");
+        log.debug("Request for status of upload job: " + id);
+
+        UploadJob job = null;
+        try {
+            if (uploadService != null && id != null) {
+                job = uploadService.getJob(Long.parseLong(id));
+            }
+        }
+        catch (NumberFormatException e) {
+            log.debug("Not a job id: " + id);
+        }
+
+        return new ModelAndView("uploadStatus", "job", job);
+    }
+
     /**
      * Custom handler for errors display.
      * 
@@ -157,15 +211,56 @@ public final class ZilverController extends MultiActionController implements Ini
     public ModelAndView errorsHandler(HttpServletRequest request, HttpServletResponse response) throws ServletException {
         log.warn("returning 'error' view");
 
-        // Reinitialize all collections for safety sake. The index may have been
-        // update while an error occurred
-        try {
-            collectionManager.init();
-        }
-        catch (IndexException e) {
-            log.error("Can't reinitialize index after error");
+        // Reinitialize the collections the failed request was about for safety sake. The index may have been
+        // updated while an error occurred
+        List affected = getAffectedCollections(request);
+        for (int i = 0; i < affected.size(); i++) {
+            DocumentCollection collection = (DocumentCollection) affected.get(i);
+            if (collection.isIndexingInProgress() || collection.isBeingIndexed()) {
+                // initializing would reset the hashes the indexing relies on, and hide the collection from searches
+                log.debug("Not reinitializing collection " + collection.getName() + " after error, it is being indexed");
+                continue;
+            }
+            log.debug("Reinitializing collection " + collection.getName() + " after error");
+            collectionManager.getCollectionInitializer().submit(collection);
         }
 
         return new ModelAndView("error");
     }
+
+    /**
+     * Get the collections a request is about, from its parameters 'collection' and 'collections' (names) and 'collectionId'.
+     * 
+     * @param request the HTTP request
+     * @return List of DocumentCollections, possibly empty
+     */
+    private List getAffectedCollections(final HttpServletRequest request) {
+        List affected = new ArrayList();
+        List names = new ArrayList();
+        if (request.getParameter("collection") != null) {
+            names.add(request.getParameter("collection"));
+        }
+        if (request.getParameterValues("collections") != null) {
+            names.addAll(Arrays.asList(request.getParameterValues("collections")));
+        }
+        for (int i = 0; i < names.size(); i++) {
+            DocumentCollection collection = collectionManager.getCollectionByName((String) names.get(i));
+            if (collection != null && !affected.contains(collection)) {
+                affected.add(collection);
+            }
+        }
+        String id = request.getParameter("collectionId");
+        if (id != null) {
+            try {
+                DocumentCollection collection = collectionManager.getCollection(new Long(id));
+                if (collection != null && !affected.contains(collection)) {
+                    affected.add(collection);
+                }
+            }
+            catch (NumberFormatException e) {
+                log.debug("Not a collection id: " + id);
+            }
+        }
+        return affected;
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import junit.framework.TestCase;
+
+import org.zilverline.service.CollectionManagerImpl;
+
+/**
+ * Test class for CollectionInitializer.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.CollectionInitializer
+ */
+public class TestCollectionInitializer extends TestCase {
+    private CollectionManagerImpl collectionManager;
+
+    /** Number of collections being initialized right now, and the most seen at the same time. */
+    private int initializing;
+
+    private int maxInitializing;
+
+    /** Indicates whether the collections may finish initializing. */
+    private boolean released;
+
+    protected void setUp() throws Exception {
+        collectionManager = new CollectionManagerImpl();
+    }
+
+    protected synchronized void tearDown() throws Exception {
+        released = true;
+        notifyAll();
+    }
+
+    public void testInitThreads() throws Exception {
+        collectionManager.setInitThreads(new Integer(2));
+        CollectionInitializer initializer = collectionManager.getCollectionInitializer();
+        BlockingCollection[] cols = new BlockingCollection[5];
+        for (int i = 0; i < cols.length; i++) {
+            cols[i] = new BlockingCollection("col" + i);
+            cols[i].setId(new Long(i));
+            initializer.submit(cols[i]);
+            assertTrue(cols[i].isWarming());
+        }
+        waitFor(2);
+        assertEquals(3, initializer.getQueueSize());
+
+        synchronized (this) {
+            released = true;
+            notifyAll();
+        }
+        for (int i = 0; i < cols.length; i++) {
+            waitUntilWarm(cols[i]);
+        }
+        assertEquals(2, maxInitializing);
+        assertEquals(0, initializer.getQueueSize());
+    }
+
+    public void testIndexWaitsUntilWarm() throws Exception {
+        final BlockingCollection col = new BlockingCollection("col");
+        col.setWarming(true);
+        final boolean[] indexed = new boolean[1];
+        Thread indexer = new Thread() {
+            public void run() {
+                try {
+                    col.awaitWarm();
+                    indexed[0] = true;
+                }
+                catch (IndexException e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+        indexer.start();
+        Thread.sleep(200);
+        assertFalse(indexed[0]);
+        col.setWarming(false);
+        indexer.join(10000);
+        assertTrue(indexed[0]);
+    }
+
+    private synchronized void waitFor(final int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (initializing < count && System.currentTimeMillis() < end) {
+            wait(100);
+        }
+        assertEquals(count, initializing);
+    }
+
+    private void waitUntilWarm(final AbstractCollection col) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (col.isWarming() && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertFalse(col.isWarming());
+    }
+
+    /**
+     * Collection whose initialization waits until the test releases it. It has no index, so that's all there is to initialize.
+     */
+    private class BlockingCollection extends AbstractCollection {
+        BlockingCollection(final String theName) {
+            setName(theName);
+            setManager(collectionManager);
+        }
+
+        public String getRoot() {
+            return getName();
+        }
+
+        protected void setExistsOnDisk() {
+            synchronized (TestCollectionInitializer.this) {
+                initializing++;
+                maxInitializing = Math.max(maxInitializing, initializing);
+                TestCollectionInitializer.this.notifyAll();
+                try {
+                    while (!released) {
+                        TestCollectionInitializer.this.wait();
+                    }
+                }
+                catch (InterruptedException e) {
+                    // done
+                }
+                finally {
+                    initializing--;
+                }
+            }
+        }
+
+        public void index(final boolean fullIndex) throws IndexException {
+        }
+    }
+}
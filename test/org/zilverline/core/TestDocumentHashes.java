@@ -0,0 +1,144 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+
+import org.zilverline.util.DigestSet;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for DocumentHashes, and reading the hashes of an index.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.DocumentHashes
+ */
+public class TestDocumentHashes extends TestCase {
+    private static final String HASH1 = "0123456789abcdef0123456789abcdef";
+
+    private static final String HASH2 = "fedcba9876543210fedcba9876543210";
+
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-hashes-" + System.currentTimeMillis());
+        assertTrue(dir.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testSaveAndLoad() throws IOException {
+        Set hashes = new HashSet();
+        hashes.add(HASH1);
+        hashes.add(HASH2);
+        hashes.add("<1234.5678@example.com>");
+        DocumentHashes documentHashes = new DocumentHashes(dir);
+        assertFalse(documentHashes.load(1L, new HashSet()));
+        documentHashes.save(1L, hashes);
+        assertTrue(new File(dir, DocumentHashes.FILE_NAME).exists());
+
+        Set loaded = new DigestSet();
+        assertTrue(new DocumentHashes(dir).load(1L, loaded));
+        assertEquals(hashes, loaded);
+        // another version of the index
+        assertFalse(new DocumentHashes(dir).load(2L, new HashSet()));
+    }
+
+    public void testCorruptHashes() throws IOException {
+        File file = new File(dir, DocumentHashes.FILE_NAME);
+        FileWriter w = new FileWriter(file);
+        w.write("something else");
+        w.close();
+        assertFalse(new DocumentHashes(dir).load(1L, new HashSet()));
+
+        Set hashes = new HashSet();
+        hashes.add(HASH1);
+        new DocumentHashes(dir).save(1L, hashes);
+        // chop off the end
+        byte[] bytes = new byte[(int) file.length() - 1];
+        FileInputStream in = new FileInputStream(file);
+        in.read(bytes);
+        in.close();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(bytes);
+        out.close();
+        assertFalse(new DocumentHashes(dir).load(1L, new HashSet()));
+    }
+
+    public void testUppercaseIsNoDigest() throws IOException {
+        Set hashes = new HashSet();
+        hashes.add("0123456789ABCDEF0123456789ABCDEF");
+        hashes.add("unknown");
+        new DocumentHashes(dir).save(1L, hashes);
+        Set loaded = new HashSet();
+        assertTrue(new DocumentHashes(dir).load(1L, loaded));
+        assertEquals(hashes, loaded);
+    }
+
+    public void testReadHashesFromTerms() throws IOException {
+        IndexWriter writer = new IndexWriter(dir, new StandardAnalyzer(), true);
+        writer.addDocument(document(HASH1));
+        writer.addDocument(document(HASH2));
+        writer.addDocument(document("unknown"));
+        writer.close();
+        IndexReader reader = IndexReader.open(dir);
+        reader.deleteDocument(1);
+        reader.close();
+
+        reader = IndexReader.open(dir);
+        try {
+            Set hashes = new HashSet();
+            AbstractCollection.readHashes(reader, hashes);
+            assertEquals(2, hashes.size());
+            assertTrue(hashes.contains(HASH1));
+            assertFalse(hashes.contains(HASH2));
+            assertTrue(hashes.contains("unknown"));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private Document document(final String hash) {
+        Document doc = new Document();
+        doc.add(new Field("hash", hash, Field.Store.YES, Field.Index.UN_TOKENIZED));
+        doc.add(new Field("contents", "some text", Field.Store.NO, Field.Index.TOKENIZED));
+        return doc;
+    }
+}
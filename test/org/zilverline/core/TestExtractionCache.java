@@ -0,0 +1,126 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for ExtractionCache.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.ExtractionCache
+ */
+public class TestExtractionCache extends TestCase {
+    private static final String HASH1 = "0123456789abcdef0123456789abcdef";
+
+    private static final String HASH2 = "fedcba9876543210fedcba9876543210";
+
+    private static final String HASH3 = "00112233445566778899aabbccddeeff";
+
+    private static final String EXTRACTOR = "org.zilverline.extractors.TextExtractor";
+
+    private File dir;
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-extractions-" + System.currentTimeMillis());
+        assertTrue(dir.mkdirs());
+        file = new File(dir, "file.txt");
+        assertTrue(file.createNewFile());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testPutAndGet() throws IOException {
+        ExtractionCache cache = new ExtractionCache(new File(dir, "cache"), 1024 * 1024);
+        assertNull(cache.get(HASH1, EXTRACTOR, 100, file));
+        ParsedFileInfo info = info("the contents");
+        info.setTitle("title");
+        info.setModificationDate(file.lastModified());
+        info = cache.put(HASH1, EXTRACTOR, 100, info);
+        // the content can still be read
+        assertEquals("the contents", read(info.getReader()));
+
+        // a new cache finds the entry on disk
+        cache = new ExtractionCache(new File(dir, "cache"), 1024 * 1024);
+        File other = new File(dir, "other.txt");
+        assertTrue(other.createNewFile());
+        other.setLastModified(file.lastModified() - 60000);
+        ParsedFileInfo cached = cache.get(HASH1, EXTRACTOR, 100, other);
+        assertNotNull(cached);
+        assertEquals("title", cached.getTitle());
+        assertEquals("the contents", read(cached.getReader()));
+        // the date of the file it was extracted from is replaced
+        assertEquals(other.lastModified(), cached.getModificationDate());
+        assertEquals(1, cache.getHits());
+
+        // another extractor or maximum
+        assertNull(cache.get(HASH1, "org.zilverline.extractors.HTMLExtractor", 100, file));
+        assertNull(cache.get(HASH1, EXTRACTOR, 200, file));
+        // not an MD5 hash
+        assertEquals("text", read(cache.put("unknown", EXTRACTOR, 100, info("text")).getReader()));
+        assertNull(cache.get("unknown", EXTRACTOR, 100, file));
+    }
+
+    public void testEviction() throws IOException {
+        ExtractionCache cache = new ExtractionCache(new File(dir, "cache"), 1024 * 1024);
+        cache.put(HASH1, EXTRACTOR, 100, info("one"));
+        cache.put(HASH2, EXTRACTOR, 100, info("two"));
+        long size = cache.getBytes() / 2;
+        // room for two entries, using HASH1 makes HASH2 the least recently used
+        cache.setMaxBytes(size * 2 + size / 2);
+        assertNotNull(cache.get(HASH1, EXTRACTOR, 100, file));
+        cache.put(HASH3, EXTRACTOR, 100, info("six"));
+        assertNotNull(cache.get(HASH1, EXTRACTOR, 100, file));
+        assertNull(cache.get(HASH2, EXTRACTOR, 100, file));
+        assertNotNull(cache.get(HASH3, EXTRACTOR, 100, file));
+        assertTrue(cache.getBytes() <= size * 2 + size / 2);
+    }
+
+    private ParsedFileInfo info(final String text) {
+        ParsedFileInfo info = new ParsedFileInfo();
+        info.setFile(file);
+        info.setType("TXT");
+        info.setReader(new StringReader(text));
+        return info;
+    }
+
+    private String read(final Reader reader) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        int c;
+        while ((c = reader.read()) > -1) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+}
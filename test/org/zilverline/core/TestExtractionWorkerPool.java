@@ -0,0 +1,185 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.zilverline.extractors.AbstractExtractor;
+import org.zilverline.extractors.TextExtractor;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for ExtractionWorkerPool, starts worker JVMs.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.ExtractionWorkerPool
+ */
+public class TestExtractionWorkerPool extends TestCase {
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-workers-" + System.currentTimeMillis());
+        assertTrue(dir.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testExtract() throws IOException {
+        File file = new File(dir, "file.txt");
+        FileWriter w = new FileWriter(file);
+        w.write("the contents of file.txt");
+        w.close();
+        ExtractionWorkerPool pool = new ExtractionWorkerPool(1, 32, 2);
+        try {
+            for (int i = 0; i < 3; i++) {
+                ParsedFileInfo info = pool.extract(TextExtractor.class.getName(), file, 0);
+                assertNotNull(info);
+                assertEquals("TEXT", info.getType());
+                assertEquals(file.length(), info.getSize());
+                assertEquals("the contents of file.txt", new BufferedReader(info.getReader()).readLine());
+            }
+            // a worker is replaced after two documents
+            assertEquals(2, pool.getStarted());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testCrash() throws IOException {
+        File file = new File(dir, "file.txt");
+        new FileWriter(file).close();
+        ExtractionWorkerPool pool = new ExtractionWorkerPool(1, 32, 100);
+        try {
+            assertNull(pool.extract(CrashingExtractor.class.getName(), file, 0));
+            // the crashed worker is replaced
+            assertNotNull(pool.extract(TextExtractor.class.getName(), file, 0));
+            assertEquals(2, pool.getStarted());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testAbort() throws Exception {
+        final File file = new File(dir, "file.loop");
+        new FileWriter(file).close();
+        final ExtractionWorkerPool pool = new ExtractionWorkerPool(1, 32, 100);
+        try {
+            final ParsedFileInfo[] result = new ParsedFileInfo[1];
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    result[0] = pool.extract(TestFileSystemCollection.LoopingExtractor.class.getName(), file, 0);
+                }
+            });
+            thread.start();
+            Thread.sleep(500);
+            assertTrue(pool.abort(thread));
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+            assertNull(result[0]);
+            assertFalse(pool.abort(thread));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testContentInChunks() throws IOException {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; sb.length() < 100000; i++) {
+            sb.append("word").append(i).append(" \u20ac ");
+        }
+        String text = sb.toString();
+        ParsedFileInfo info = new ParsedFileInfo();
+        info.setType("TEXT");
+        info.setReader(new StringReader(text));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ExtractionWorker.write(out, info);
+        ExtractionWorker.write(out, null);
+        out.close();
+
+        File file = new File(dir, "file.txt");
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        info = ExtractionWorker.read(in, file, 0);
+        assertEquals("TEXT", info.getType());
+        assertEquals(text, readAll(info.getReader()));
+        assertNull(ExtractionWorker.read(in, file, 0));
+
+        // beyond the maximum, the content is dropped, but the stream stays in sync
+        in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        info = ExtractionWorker.read(in, file, 10);
+        assertEquals(text.substring(0, 10), readAll(info.getReader()));
+        assertNull(ExtractionWorker.read(in, file, 0));
+    }
+
+    public void testFactory() {
+        ExtractorFactory factory = new ExtractorFactory();
+        File file = new File(dir, "file.txt");
+        assertTrue(factory.createExtractor(file) instanceof TextExtractor);
+        factory.setWorkers(2);
+        Extractor ext = factory.createExtractor(file);
+        assertTrue(ext instanceof RemoteExtractor);
+        assertEquals(TextExtractor.class.getName(), ((RemoteExtractor) ext).getClassName());
+        factory.setWorkers(0);
+    }
+
+    private String readAll(final Reader reader) throws IOException {
+        StringBuffer sb = new StringBuffer();
+        char[] buffer = new char[1000];
+        int len;
+        while ((len = reader.read(buffer)) > -1) {
+            sb.append(buffer, 0, len);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Extractor that takes its JVM down.
+     */
+    public static class CrashingExtractor extends AbstractExtractor {
+        public Reader getContent(final File f) {
+            System.exit(1);
+            return null;
+        }
+
+        public String getContent(final InputStream is) {
+            return "";
+        }
+    }
+}
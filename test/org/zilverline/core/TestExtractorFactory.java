@@ -151,4 +151,16 @@ public class TestExtractorFactory extends TestCase {
         }
     }
 
+    public void testLanes() {
+        ExtractorFactory ef = new ExtractorFactory();
+        assertTrue(ef.getLanes().isEmpty());
+        assertEquals("org.zilverline.extractors.PDFExtractor", ef.getClassName(new File("some.PDF")));
+        assertNull(ef.getClassName(new File("some.unknown")));
+        ef.setDefaultFileinfo(true);
+        assertEquals("org.zilverline.extractors.FileInfoExtractor", ef.getClassName(new File("some.unknown")));
+
+        // factories stored before there were lanes have none
+        ef.setLanes(null);
+        assertTrue(ef.getLanes().isEmpty());
+    }
 }
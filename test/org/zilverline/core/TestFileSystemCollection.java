@@ -22,6 +22,12 @@
 package org.zilverline.core;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
@@ -29,10 +35,19 @@ import java.util.ListIterator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+
 import org.springframework.test.AbstractDependencyInjectionSpringContextTests;
 import org.springframework.util.StringUtils;
 
+import org.zilverline.extractors.AbstractExtractor;
 import org.zilverline.service.CollectionManager;
+import org.zilverline.service.CollectionManagerImpl;
+import org.zilverline.util.FileUtils;
 
 /**
  * Test class for Collection, self documenting.
@@ -171,4 +186,618 @@ public class TestFileSystemCollection extends AbstractDependencyInjectionSpringC
         }
     }
 
+    public void testResumeInterruptedIndex() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-resume-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            for (int i = 0; i < 3; i++) {
+                FileWriter w = new FileWriter(new File(contentDir, "file" + i + ".txt"));
+                w.write("the contents of file " + i);
+                w.close();
+            }
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("resume");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(3, col.getNumberOfDocs());
+            File checkpoint = new File(col.getIndexDirWithManagerDefaults(), FileSystemCollection.CHECKPOINT_FILE);
+            assertFalse(checkpoint.exists());
+
+            // add a document that is not in the manifest, a full index from scratch would lose it
+            SharedIndexWriter writer = col.getIndexWriter();
+            writer.open(false);
+            Document doc = new Document();
+            doc.add(new Field("location", "extra.txt", Field.Store.YES, Field.Index.UN_TOKENIZED));
+            writer.addDocument(doc);
+            writer.close();
+
+            // pretend the last full index was interrupted: it is resumed
+            checkpoint.createNewFile();
+            col.index(true);
+            assertEquals(4, col.getNumberOfDocs());
+            assertFalse(checkpoint.exists());
+
+            // without a checkpoint, a full index starts from scratch
+            col.index(true);
+            assertEquals(3, col.getNumberOfDocs());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testPartitionedIndex() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-partitions-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            write(new File(contentDir, "top.txt"), "the contents of the top file");
+            String[] subs = { "a", "b", "c", "d" };
+            for (int i = 0; i < subs.length; i++) {
+                File sub = new File(contentDir, subs[i]);
+                sub.mkdir();
+                for (int j = 0; j < 2; j++) {
+                    write(new File(sub, "file" + j + ".txt"), "the contents of file " + j + " in " + subs[i]);
+                }
+            }
+            // the same content in another partition is added once
+            write(new File(contentDir, "d/copy.txt"), "the contents of file 0 in a");
+
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            manager.setIndexPartitions(new Integer(3));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("partitions");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(9, col.getNumberOfDocs());
+            File indexDir = col.getIndexDirWithManagerDefaults();
+            for (int i = 0; i < 3; i++) {
+                assertFalse(new File(indexDir.getPath() + FileSystemCollection.PARTITION_SUFFIX + i).exists());
+            }
+            IndexSearcher searcher = col.createSearcher();
+            assertEquals(1, searcher.getIndexReader().docFreq(new Term("location", "b/file1.txt")));
+            assertEquals(1, searcher.getIndexReader().docFreq(new Term("location", "top.txt")));
+            searcher.close();
+
+            // the manifest is complete, so an incremental index finds nothing new
+            col.index(false);
+            assertEquals(9, col.getNumberOfDocs());
+
+            // a full index of an existing index is built in partitions beside it
+            write(new File(contentDir, "c/file2.txt"), "the contents of file 2 in c");
+            col.index(true);
+            assertEquals(10, col.getNumberOfDocs());
+            assertFalse(new File(indexDir.getPath() + FileSystemCollection.SHADOW_SUFFIX).exists());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testExtractionLanes() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-lanes-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            for (int i = 0; i < 5; i++) {
+                write(new File(contentDir, "file" + i + ".txt"), "the contents of file " + i);
+            }
+            write(new File(contentDir, "page.html"), "<html><body>the contents of a page</body></html>");
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            // text files have a lane of their own, the page goes through the default lane
+            manager.getFactory().getLanes().put("org.zilverline.extractors.TextExtractor", new Integer(2));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("lanes");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(6, col.getNumberOfDocs());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testExtractionCache() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-extractions-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            write(new File(contentDir, "page.html"), "<html><body>the contents of a page</body></html>");
+            write(new File(contentDir, "other.html"), "<html><body>the contents of another page</body></html>");
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            manager.setExtractionCacheSize(new Integer(1));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("extractions");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(2, col.getNumberOfDocs());
+            ExtractionCache cache = manager.getExtractionCache();
+            assertEquals(0, cache.getHits());
+            assertTrue(cache.getBytes() > 0);
+
+            // a full index takes the same content from the cache
+            col.index(true);
+            assertEquals(2, col.getNumberOfDocs());
+            assertEquals(2, cache.getHits());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testIndexingCounters() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-counters-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            write(new File(contentDir, "one.txt"), "the contents of one");
+            write(new File(contentDir, "two.txt"), "the contents of two");
+            write(new File(contentDir, "copy.txt"), "the contents of one");
+            long bytes = 3 * "the contents of one".length();
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("counters");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            assertNull(col.getCounters());
+            col.index(true);
+            IndexingCounters counters = col.getCounters();
+            assertEquals(3, counters.getDiscovered());
+            assertEquals(1, counters.getDuplicates());
+            assertEquals(2, counters.getExtracted());
+            assertEquals(2, counters.getAdded());
+            assertEquals(0, counters.getFailed());
+            assertEquals(bytes, counters.getBytes());
+            assertEquals(2, counters.getNumberOfDocs());
+            assertEquals(2, col.getNumberOfDocs());
+
+            // an incremental index skips the unchanged files, and counts on from the documents in the index
+            col.index(false);
+            counters = col.getCounters();
+            assertEquals(3, counters.getDiscovered());
+            assertEquals(3, counters.getDuplicates());
+            assertEquals(0, counters.getAdded());
+            assertEquals(0, counters.getBytes());
+            assertEquals(2, counters.getNumberOfDocs());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testBytesCountedOnce() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-charge-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        CollectionManager manager = new CollectionManagerImpl();
+        try {
+            write(new File(contentDir, "page.html"), "<html><body>the contents of a page</body></html>");
+            write(new File(contentDir, "other.html"), "<html><body>the contents of another page</body></html>");
+            long bytes = new File(contentDir, "page.html").length() + new File(contentDir, "other.html").length();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            manager.setExtractionCacheSize(new Integer(1));
+            // extraction in a worker reads the file a second time, after hashing it
+            manager.getFactory().setWorkers(1);
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("charge");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(2, col.getNumberOfDocs());
+            // the files are counted once
+            assertEquals(bytes, col.getCounters().getBytes());
+
+            // with the extracted info in the cache, only hashing reads the files
+            col.index(true);
+            assertEquals(2, col.getNumberOfDocs());
+            assertEquals(bytes, col.getCounters().getBytes());
+        }
+        finally {
+            manager.getFactory().setWorkers(0);
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testInitKeepsHashesWhileIndexed() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-runs-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            write(new File(contentDir, "one.txt"), "the contents of one");
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("runs");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertFalse(col.isBeingIndexed());
+
+            // while another thread indexes, the hashes of documents not in the index yet are kept
+            String pending = "0123456789abcdef0123456789abcdef";
+            Run other = new Run(col, false);
+            other.start();
+            other.awaitStarted();
+            assertTrue(col.isBeingIndexed());
+            col.getMd5DocumentCache().add(pending);
+            col.init();
+            assertTrue(col.getMd5DocumentCache().contains(pending));
+            assertEquals(1, col.getNumberOfDocs());
+
+            other.release();
+            other.join();
+            assertFalse(col.isBeingIndexed());
+            col.init();
+            assertFalse(col.getMd5DocumentCache().contains(pending));
+            assertEquals(1, col.getMd5DocumentCache().size());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testIndexChangesUpdatesManifest() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-changes-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            File one = new File(contentDir, "one.txt");
+            write(one, "the contents of one");
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("changes");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+
+            File two = new File(contentDir, "two.txt");
+            write(two, "the contents of two");
+            col.indexChanges(Collections.singletonList(two), Collections.EMPTY_LIST);
+            assertEquals(2, col.getNumberOfDocs());
+            // the next index knows the new file is unchanged, without reading it
+            Manifest manifest = new Manifest(col.getIndexDirWithManagerDefaults());
+            manifest.load();
+            assertNotNull(manifest.getUnchangedHash("two.txt", two.length(), two.lastModified()));
+            assertNotNull(manifest.getUnchangedHash("one.txt", one.length(), one.lastModified()));
+
+            long size = one.length();
+            long lastModified = one.lastModified();
+            one.delete();
+            col.indexChanges(Collections.EMPTY_LIST, Collections.singletonList("one.txt"));
+            assertEquals(1, col.getNumberOfDocs());
+            manifest = new Manifest(col.getIndexDirWithManagerDefaults());
+            manifest.load();
+            assertNull(manifest.getUnchangedHash("one.txt", size, lastModified));
+            assertNotNull(manifest.getUnchangedHash("two.txt", two.length(), two.lastModified()));
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testHashThreadsChange() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-kind-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            write(new File(contentDir, "one.txt"), "the contents of one");
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("kind");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(1, col.getNumberOfDocs());
+
+            // the MD5 hashes in the index stay valid, only very large files would get a tree hash
+            manager.setHashThreads(new Integer(4));
+            col.index(false);
+            assertEquals(1, col.getNumberOfDocs());
+            assertEquals(0, col.getCounters().getAdded());
+            write(new File(contentDir, "two.txt"), "the contents of two");
+            col.index(false);
+            assertEquals(2, col.getNumberOfDocs());
+            assertEquals(1, col.getCounters().getAdded());
+            assertTrue(col.getMd5DocumentCache().contains(FileUtils.getMD5Hash(new File(contentDir, "two.txt"))));
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testChangedRemovedAndMovedFiles() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-changes-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            write(new File(contentDir, "one.txt"), "the contents of one");
+            write(new File(contentDir, "two.txt"), "the contents of two");
+            write(new File(contentDir, "three.txt"), "the contents of three");
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("changes");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(3, col.getNumberOfDocs());
+
+            write(new File(contentDir, "one.txt"), "the changed and longer contents of one");
+            assertTrue(new File(contentDir, "two.txt").delete());
+            assertTrue(new File(contentDir, "three.txt").renameTo(new File(contentDir, "moved.txt")));
+            col.index(false);
+            assertEquals(2, col.getNumberOfDocs());
+            assertEquals(3, col.getCounters().getRemoved());
+            IndexSearcher searcher = col.createSearcher();
+            try {
+                assertEquals(1, searcher.search(new TermQuery(new Term("location", "one.txt"))).length());
+                assertEquals(0, searcher.search(new TermQuery(new Term("location", "two.txt"))).length());
+                assertEquals(0, searcher.search(new TermQuery(new Term("location", "three.txt"))).length());
+                // the moved file was a duplicate of the removed one at first
+                assertEquals(1, searcher.search(new TermQuery(new Term("location", "moved.txt"))).length());
+            }
+            finally {
+                searcher.close();
+            }
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testRebuildHoldsOffOtherRuns() throws Exception {
+        FileSystemCollection col = new FileSystemCollection();
+        col.setName("rebuild runs");
+
+        // other runs wait for a rebuild
+        Run rebuild = new Run(col, true);
+        rebuild.start();
+        rebuild.awaitStarted();
+        assertTrue(col.isRebuilding());
+        Run other = new Run(col, false);
+        other.start();
+        Thread.sleep(200);
+        assertFalse(other.isStarted());
+        rebuild.release();
+        other.awaitStarted();
+        assertFalse(col.isRebuilding());
+
+        // a rebuild waits for other runs
+        rebuild = new Run(col, true);
+        rebuild.start();
+        Thread.sleep(200);
+        assertFalse(rebuild.isStarted());
+        other.release();
+        rebuild.awaitStarted();
+        assertTrue(col.isRebuilding());
+        rebuild.release();
+        rebuild.join();
+        other.join();
+        assertFalse(col.isRebuilding());
+    }
+
+    public void testRebuildBesideIndex() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-rebuild-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            for (int i = 0; i < 3; i++) {
+                FileWriter w = new FileWriter(new File(contentDir, "file" + i + ".txt"));
+                w.write("the contents of file " + i);
+                w.close();
+            }
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("rebuild");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            col.index(true);
+            assertEquals(3, col.getNumberOfDocs());
+            File indexDir = col.getIndexDirWithManagerDefaults();
+            File shadow = new File(indexDir.getPath() + FileSystemCollection.SHADOW_SUFFIX);
+            new Quarantine(indexDir).add("slow.pdf", 10, 1000);
+
+            // a searcher opened before the rebuild keeps searching the old index
+            boolean windows = System.getProperty("os.name").indexOf("Windows") >= 0;
+            IndexSearcher searcher = windows ? null : col.createSearcher();
+            FileWriter w = new FileWriter(new File(contentDir, "file3.txt"));
+            w.write("the contents of file 3");
+            w.close();
+            col.index(true);
+            assertEquals(4, col.getNumberOfDocs());
+            assertFalse(shadow.exists());
+            assertTrue(new Quarantine(indexDir).contains("slow.pdf", 10, 1000));
+            if (searcher != null) {
+                assertEquals(3, searcher.maxDoc());
+                searcher.close();
+            }
+            searcher = col.createSearcher();
+            assertEquals(4, searcher.maxDoc());
+            searcher.close();
+
+            // pretend a rebuild was interrupted: the old index is untouched, and the next index continues the rebuild
+            SharedIndexWriter writer = col.getIndexWriter();
+            writer.setDirectory(shadow);
+            writer.open(true);
+            Document doc = new Document();
+            doc.add(new Field("location", "extra.txt", Field.Store.YES, Field.Index.UN_TOKENIZED));
+            writer.addDocument(doc);
+            writer.close();
+            writer.setDirectory(null);
+            new File(shadow, FileSystemCollection.CHECKPOINT_FILE).createNewFile();
+            assertEquals(4, col.getNumberOfDocs());
+            col.index(false);
+            assertEquals(5, col.getNumberOfDocs());
+            assertFalse(shadow.exists());
+            assertFalse(new File(indexDir, FileSystemCollection.CHECKPOINT_FILE).exists());
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    public void testQuarantineOverdueExtraction() throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-quarantine-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        try {
+            FileWriter w = new FileWriter(new File(contentDir, "file.txt"));
+            w.write("the contents of file");
+            w.close();
+            w = new FileWriter(new File(contentDir, "file.loop"));
+            w.write("never extracted");
+            w.close();
+            CollectionManager manager = new CollectionManagerImpl();
+            manager.setIndexBaseDir(new File(dir, "index"));
+            manager.setCacheBaseDir(new File(dir, "cache"));
+            manager.getFactory().getMappings().put("loop", LoopingExtractor.class.getName());
+            manager.getFactory().getTimeouts().put(LoopingExtractor.class.getName(), new Integer(1));
+            FileSystemCollection col = new FileSystemCollection();
+            col.setName("quarantine");
+            col.setContentDir(contentDir);
+            manager.addCollection(col);
+            col.init();
+            long start = System.currentTimeMillis();
+            col.index(true);
+            assertEquals(1, col.getNumberOfDocs());
+            assertTrue(new File(col.getIndexDirWithManagerDefaults(), Quarantine.FILE_NAME).exists());
+            // the looping extraction has been stopped, only the thread that extracted file.txt is left
+            Thread.sleep(500);
+            Thread[] threads = new Thread[Thread.activeCount() + 10];
+            int extracting = 0;
+            for (int i = Thread.enumerate(threads) - 1; i >= 0; i--) {
+                if (threads[i].getName().indexOf("ExtractionThread") >= 0) {
+                    extracting++;
+                }
+            }
+            assertEquals(1, extracting);
+
+            // the quarantined file is skipped, without waiting for the timeout again
+            long first = System.currentTimeMillis() - start;
+            assertTrue(first >= 1000);
+            start = System.currentTimeMillis();
+            col.index(true);
+            assertEquals(1, col.getNumberOfDocs());
+            assertTrue(System.currentTimeMillis() - start < first);
+        }
+        finally {
+            FileUtils.removeDir(dir);
+        }
+    }
+
+    /**
+     * Extractor that never finishes.
+     */
+    public static class LoopingExtractor extends AbstractExtractor {
+        public Reader getContent(final File f) {
+            // a parser that loops until its thread is abandoned
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.yield();
+            }
+            return new StringReader("");
+        }
+
+        public String getContent(final InputStream is) {
+            return "";
+        }
+    }
+
+    /**
+     * Thread holding an indexing run of a collection, until released.
+     */
+    private static final class Run extends Thread {
+        private final AbstractCollection col;
+
+        private final boolean rebuild;
+
+        private boolean started;
+
+        private boolean released;
+
+        Run(final AbstractCollection theCol, final boolean theRebuild) {
+            col = theCol;
+            rebuild = theRebuild;
+        }
+
+        public void run() {
+            try {
+                col.beginRun();
+                if (rebuild) {
+                    col.beginRebuild();
+                }
+                synchronized (this) {
+                    started = true;
+                    notifyAll();
+                    while (!released) {
+                        wait();
+                    }
+                }
+            }
+            catch (Exception e) {
+                log.error("Run failed", e);
+            }
+            finally {
+                col.endRun();
+            }
+        }
+
+        synchronized boolean isStarted() {
+            return started;
+        }
+
+        synchronized void awaitStarted() throws InterruptedException {
+            long end = System.currentTimeMillis() + 5000;
+            while (!started && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            assertTrue(started);
+        }
+
+        synchronized void release() {
+            released = true;
+            notifyAll();
+        }
+    }
+
+    private void write(final File file, final String content) throws IOException {
+        FileWriter w = new FileWriter(file);
+        w.write(content);
+        w.close();
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for IndexingCounters.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.IndexingCounters
+ */
+public class TestIndexingCounters extends TestCase {
+    public void testCounters() {
+        IndexingCounters counters = new IndexingCounters(10);
+        assertEquals(10, counters.getNumberOfDocs());
+        counters.discovered();
+        counters.discovered();
+        counters.discovered();
+        counters.duplicate();
+        counters.extracted();
+        counters.failed();
+        counters.added();
+        counters.read(3 * 1024 * 1024);
+        assertEquals(3, counters.getDiscovered());
+        assertEquals(1, counters.getDuplicates());
+        assertEquals(1, counters.getExtracted());
+        assertEquals(1, counters.getAdded());
+        assertEquals(1, counters.getFailed());
+        assertEquals(3 * 1024 * 1024, counters.getBytes());
+        assertEquals(11, counters.getNumberOfDocs());
+        assertEquals("3 found, 1 added, 1 duplicates, 1 failed, 3 MB read", counters.toString());
+        counters.removed(2);
+        assertEquals(2, counters.getRemoved());
+        assertEquals(9, counters.getNumberOfDocs());
+    }
+
+    public void testConcurrentUpdates() throws InterruptedException {
+        final IndexingCounters counters = new IndexingCounters(0);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counters.added();
+                        counters.read(2);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertEquals(40000, counters.getAdded());
+        assertEquals(80000, counters.getBytes());
+    }
+}
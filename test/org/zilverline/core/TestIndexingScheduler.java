@@ -0,0 +1,154 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import junit.framework.TestCase;
+
+import org.zilverline.service.CollectionManagerImpl;
+
+/**
+ * Test class for IndexingScheduler.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.IndexingScheduler
+ */
+public class TestIndexingScheduler extends TestCase {
+    private CollectionManagerImpl collectionManager;
+
+    /** Number of collections being indexed right now, and the most seen at the same time. */
+    private int indexing;
+
+    private int maxIndexing;
+
+    /** Indicates whether the collections may finish indexing. */
+    private boolean released;
+
+    protected void setUp() throws Exception {
+        collectionManager = new CollectionManagerImpl();
+    }
+
+    protected synchronized void tearDown() throws Exception {
+        released = true;
+        notifyAll();
+    }
+
+    public void testMaxConcurrentIndexes() throws Exception {
+        collectionManager.setMaxConcurrentIndexes(new Integer(2));
+        IndexingScheduler scheduler = collectionManager.getIndexingScheduler();
+        BlockingCollection[] cols = new BlockingCollection[5];
+        for (int i = 0; i < cols.length; i++) {
+            cols[i] = new BlockingCollection("col" + i);
+            cols[i].indexInThread(false);
+            assertTrue(cols[i].isIndexingInProgress());
+        }
+        waitFor(2);
+        assertEquals(2, scheduler.getRunning().size());
+        assertEquals(3, scheduler.getQueued().size());
+        // first in, first out
+        assertEquals(IndexingJob.RUNNING, cols[0].getIndexingJob().getStatus());
+        assertEquals(IndexingJob.RUNNING, cols[1].getIndexingJob().getStatus());
+        assertEquals(IndexingJob.QUEUED, cols[2].getIndexingJob().getStatus());
+
+        synchronized (this) {
+            released = true;
+            notifyAll();
+        }
+        for (int i = 0; i < cols.length; i++) {
+            waitUntilFinished(cols[i]);
+            assertEquals(IndexingJob.DONE, cols[i].getIndexingJob().getStatus());
+        }
+        assertEquals(2, maxIndexing);
+    }
+
+    public void testStop() throws Exception {
+        collectionManager.setMaxConcurrentIndexes(new Integer(1));
+        BlockingCollection running = new BlockingCollection("running");
+        BlockingCollection queued = new BlockingCollection("queued");
+        running.indexInThread(true);
+        queued.indexInThread(true);
+        waitFor(1);
+
+        // indexing again stops the queued collection, it never starts
+        queued.indexInThread(true);
+        assertFalse(queued.isIndexingInProgress());
+        assertEquals(IndexingJob.FAILED, queued.getIndexingJob().getStatus());
+
+        // and interrupts the running one
+        running.indexInThread(true);
+        waitUntilFinished(running);
+        assertEquals(IndexingJob.FAILED, running.getIndexingJob().getStatus());
+        assertEquals(0, collectionManager.getIndexingScheduler().getQueued().size());
+    }
+
+    private synchronized void waitFor(final int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (indexing < count && System.currentTimeMillis() < end) {
+            wait(100);
+        }
+        assertEquals(count, indexing);
+    }
+
+    private void waitUntilFinished(final AbstractCollection col) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (col.isIndexingInProgress() && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+        assertFalse(col.isIndexingInProgress());
+    }
+
+    /**
+     * Collection whose index waits until the test releases it, or fails if interrupted.
+     */
+    private class BlockingCollection extends AbstractCollection {
+        BlockingCollection(final String theName) {
+            setName(theName);
+            setManager(collectionManager);
+        }
+
+        public String getRoot() {
+            return getName();
+        }
+
+        protected void setExistsOnDisk() {
+        }
+
+        public void index(final boolean fullIndex) throws IndexException {
+            synchronized (TestIndexingScheduler.this) {
+                indexing++;
+                maxIndexing = Math.max(maxIndexing, indexing);
+                TestIndexingScheduler.this.notifyAll();
+                try {
+                    while (!released) {
+                        TestIndexingScheduler.this.wait();
+                    }
+                }
+                catch (InterruptedException e) {
+                    throw new IndexException("Interrupted", e);
+                }
+                finally {
+                    indexing--;
+                }
+            }
+        }
+    }
+}
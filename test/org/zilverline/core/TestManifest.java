@@ -0,0 +1,232 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.zilverline.util.DirectoryCrawler;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for Manifest.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.Manifest
+ */
+public class TestManifest extends TestCase {
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-manifest-" + System.currentTimeMillis());
+        assertTrue(dir.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testSaveAndLoad() throws IOException {
+        Manifest manifest = new Manifest(dir);
+        manifest.load();
+        assertNull(manifest.getUnchangedHash("a.txt", 10, 1000));
+        manifest.put("a.txt", 10, 1000, "hash1");
+        manifest.put("sub/b\tc.txt", 20, 2000, "hash2");
+        manifest.save(true);
+        assertTrue(new File(dir, Manifest.FILE_NAME).exists());
+
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertEquals("hash1", manifest.getUnchangedHash("a.txt", 10, 1000));
+        assertEquals("hash2", manifest.getUnchangedHash("sub/b\tc.txt", 20, 2000));
+        // changed size or modification date
+        assertNull(manifest.getUnchangedHash("a.txt", 11, 1000));
+        assertNull(manifest.getUnchangedHash("sub/b\tc.txt", 20, 2001));
+    }
+
+    public void testOnlySeenFilesAreSaved() throws IOException {
+        Manifest manifest = new Manifest(dir);
+        manifest.put("a.txt", 10, 1000, "hash1");
+        manifest.put("b.txt", 20, 2000, "hash2");
+        manifest.save(true);
+
+        // a complete run that only sees a.txt forgets about b.txt
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertEquals("hash1", manifest.getUnchangedHash("a.txt", 10, 1000));
+        assertEquals(1, manifest.size());
+        manifest.save(true);
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertNull(manifest.getUnchangedHash("b.txt", 20, 2000));
+
+        // an interrupted run keeps the files it has not seen
+        manifest.put("c.txt", 30, 3000, "hash3");
+        manifest.save(false);
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertEquals("hash1", manifest.getUnchangedHash("a.txt", 10, 1000));
+        assertEquals("hash3", manifest.getUnchangedHash("c.txt", 30, 3000));
+    }
+
+    public void testChangedPaths() throws IOException {
+        File content = new File(dir, "content");
+        content.mkdir();
+        File same = new File(content, "same.txt");
+        File changed = new File(content, "changed.txt");
+        write(same, "same");
+        write(changed, "before");
+        Manifest manifest = new Manifest(dir);
+        manifest.put("same.txt", same.length(), same.lastModified(), "hash1");
+        manifest.put("changed.txt", changed.length(), changed.lastModified(), "hash2");
+        manifest.put("removed.txt", 10, 1000, "hash3");
+        manifest.save(true);
+
+        write(changed, "after, and longer");
+        manifest = new Manifest(dir);
+        manifest.load();
+        // what the crawler finds
+        DirectoryCrawler crawler = new DirectoryCrawler();
+        assertFalse(manifest.removeIfChanged("same.txt", crawler.entry(same)));
+        assertNotNull(manifest.getUnchangedHash("same.txt", same.length(), same.lastModified()));
+        assertTrue(manifest.removeIfChanged("changed.txt", crawler.entry(changed)));
+        assertNull(manifest.getUnchangedHash("changed.txt", changed.length(), changed.lastModified()));
+        // once all files have been crawled, the files not seen are gone
+        List paths = manifest.getUnseenPaths();
+        assertEquals(1, paths.size());
+        assertTrue(paths.contains("removed.txt"));
+    }
+
+    public void testAddedPaths() throws IOException {
+        Manifest manifest = new Manifest(dir);
+        manifest.put("a.txt", 10, 1000, "hash1");
+        manifest.put("b.txt", 20, 2000, "hash2");
+        manifest.put("c.txt", 30, 3000, "hash1");
+        Set hashes = new HashSet();
+        hashes.add("hash1");
+        List paths = manifest.getAddedPaths(hashes);
+        assertEquals(2, paths.size());
+        assertTrue(paths.contains("a.txt"));
+        assertTrue(paths.contains("c.txt"));
+    }
+
+    public void testCheckpoints() throws IOException {
+        String digest = "0123456789abcdef0123456789abcdef";
+        Manifest manifest = new Manifest(dir);
+        manifest.load();
+        // enough files to fill the initial slots a few times
+        for (int i = 0; i < 5000; i++) {
+            manifest.put("dir/file" + i + ".txt", i, 1000 + i, digest);
+            if (i % 1000 == 999) {
+                manifest.checkpoint();
+            }
+        }
+        // checkpoints only append to the file of added entries
+        assertFalse(new File(dir, Manifest.FILE_NAME).exists());
+        manifest.save(true);
+        assertEquals(5000, manifest.size());
+        assertFalse(new File(dir, Manifest.FILE_NAME + ".new").exists());
+
+        manifest = new Manifest(dir);
+        manifest.load();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(digest, manifest.getUnchangedHash("dir/file" + i + ".txt", i, 1000 + i));
+        }
+        // a file seen and recorded again is saved once
+        manifest.put("dir/file0.txt", 1, 2000, "fedcba9876543210fedcba9876543210");
+        manifest.save(true);
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertEquals("fedcba9876543210fedcba9876543210", manifest.getUnchangedHash("dir/file0.txt", 1, 2000));
+        assertEquals(digest, manifest.getUnchangedHash("dir/file1.txt", 1, 1001));
+        assertEquals(2, manifest.size());
+    }
+
+    public void testInterruptedRun() throws IOException {
+        Manifest manifest = new Manifest(dir);
+        manifest.put("a.txt", 10, 1000, "hash1");
+        manifest.save(true);
+        manifest.put("b.txt", 20, 2000, "hash2");
+        manifest.checkpoint();
+        manifest.put("c.txt", 30, 3000, "hash3");
+        manifest.checkpoint();
+        // the run dies while writing an entry after the last checkpoint
+        FileWriter w = new FileWriter(new File(dir, Manifest.FILE_NAME + ".new"), true);
+        w.write("40\t4000\thash4\td.t");
+        w.close();
+
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertEquals("hash1", manifest.getUnchangedHash("a.txt", 10, 1000));
+        assertEquals("hash2", manifest.getUnchangedHash("b.txt", 20, 2000));
+        assertEquals("hash3", manifest.getUnchangedHash("c.txt", 30, 3000));
+        assertNull(manifest.getUnchangedHash("d.t", 40, 4000));
+        // the entries of the interrupted run are in the manifest now
+        assertFalse(new File(dir, Manifest.FILE_NAME + ".new").exists());
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertEquals("hash3", manifest.getUnchangedHash("c.txt", 30, 3000));
+    }
+
+    public void testRemove() throws IOException {
+        Manifest manifest = new Manifest(dir);
+        manifest.put("a.txt", 10, 1000, "hash1");
+        manifest.put("b.txt", 20, 2000, "hash2");
+        manifest.remove("a.txt");
+        assertEquals(1, manifest.size());
+        manifest.save(false);
+
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertNull(manifest.getUnchangedHash("a.txt", 10, 1000));
+        assertEquals("hash2", manifest.getUnchangedHash("b.txt", 20, 2000));
+        // a file read from disk and removed is not saved, even by an interrupted run
+        manifest.remove("b.txt");
+        manifest.put("a.txt", 11, 1100, "hash1");
+        manifest.save(false);
+        manifest = new Manifest(dir);
+        manifest.load();
+        assertNull(manifest.getUnchangedHash("b.txt", 20, 2000));
+        assertEquals("hash1", manifest.getUnchangedHash("a.txt", 11, 1100));
+    }
+
+    public void testCorruptManifest() throws IOException {
+        File file = new File(dir, Manifest.FILE_NAME);
+        write(file, "something else\n10\t1000\thash1\ta.txt\n");
+        Manifest manifest = new Manifest(dir);
+        manifest.load();
+        assertNull(manifest.getUnchangedHash("a.txt", 10, 1000));
+    }
+
+    private void write(final File file, final String content) throws IOException {
+        FileWriter w = new FileWriter(file);
+        w.write(content);
+        w.close();
+    }
+}
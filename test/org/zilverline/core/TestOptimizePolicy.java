@@ -0,0 +1,89 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.zilverline.service.CollectionManagerImpl;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for OptimizePolicy.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.OptimizePolicy
+ */
+public class TestOptimizePolicy extends TestCase {
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-optimize-" + System.currentTimeMillis());
+        assertTrue(dir.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testPolicies() throws IOException {
+        CollectionManagerImpl manager = new CollectionManagerImpl();
+        assertTrue(OptimizePolicy.mustOptimize(manager, dir, false));
+        manager.setOptimizePolicy(OptimizePolicy.ALWAYS);
+        assertTrue(OptimizePolicy.mustOptimize(manager, dir, false));
+        manager.setOptimizePolicy(OptimizePolicy.NEVER);
+        assertFalse(OptimizePolicy.mustOptimize(manager, dir, true));
+        manager.setOptimizePolicy(OptimizePolicy.FULL_INDEX);
+        assertTrue(OptimizePolicy.mustOptimize(manager, dir, true));
+        assertFalse(OptimizePolicy.mustOptimize(manager, dir, false));
+
+        manager.setOptimizePolicy(OptimizePolicy.SEGMENTS);
+        manager.setOptimizeMaxSegments(new Integer(2));
+        new File(dir, "segments").createNewFile();
+        new File(dir, "_1.cfs").createNewFile();
+        new File(dir, "_2.cfs").createNewFile();
+        new File(dir, "_2.del").createNewFile();
+        assertEquals(2, OptimizePolicy.countSegments(dir));
+        assertFalse(OptimizePolicy.mustOptimize(manager, dir, false));
+        new File(dir, "_3.cfs").createNewFile();
+        assertTrue(OptimizePolicy.mustOptimize(manager, dir, false));
+    }
+
+    public void testOffPeak() {
+        assertTrue(OptimizePolicy.isOffPeak(2, 1, 5));
+        assertFalse(OptimizePolicy.isOffPeak(5, 1, 5));
+        assertFalse(OptimizePolicy.isOffPeak(12, 1, 5));
+        // window around midnight
+        assertTrue(OptimizePolicy.isOffPeak(23, 22, 6));
+        assertTrue(OptimizePolicy.isOffPeak(3, 22, 6));
+        assertFalse(OptimizePolicy.isOffPeak(12, 22, 6));
+    }
+
+    public void testIsValid() {
+        assertTrue(OptimizePolicy.isValid("segments"));
+        assertFalse(OptimizePolicy.isValid("sometimes"));
+        assertFalse(OptimizePolicy.isValid(null));
+    }
+}
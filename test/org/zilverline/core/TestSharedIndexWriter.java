@@ -0,0 +1,260 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+
+import org.zilverline.service.CollectionManager;
+import org.zilverline.service.CollectionManagerImpl;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for SharedIndexWriter.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.core.SharedIndexWriter
+ */
+public class TestSharedIndexWriter extends TestCase {
+    private File dir;
+
+    private CollectionManager manager;
+
+    private FileSystemCollection col;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-writer-" + System.currentTimeMillis());
+        File contentDir = new File(dir, "content");
+        assertTrue(contentDir.mkdirs());
+        manager = new CollectionManagerImpl();
+        manager.setIndexBaseDir(new File(dir, "index"));
+        manager.setCacheBaseDir(new File(dir, "cache"));
+        col = new FileSystemCollection();
+        col.setName("writer");
+        col.setContentDir(contentDir);
+        manager.addCollection(col);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testFlushAfterDocuments() throws IOException {
+        manager.setWriterFlushDocs(new Integer(2));
+        SharedIndexWriter writer = col.getIndexWriter();
+        final int[] flushes = new int[1];
+        writer.addListener(new SharedIndexWriter.Listener() {
+            public void flushed(SharedIndexWriter w) {
+                flushes[0]++;
+            }
+        });
+        writer.open(true);
+        writer.addDocument(doc("a"));
+        assertEquals(0, flushes[0]);
+        writer.addDocument(doc("b"));
+        // the first two documents are visible while the session is still open
+        assertEquals(1, flushes[0]);
+        assertEquals(2, numDocs());
+        writer.addDocument(doc("c"));
+        assertEquals(2, numDocs());
+        writer.close();
+        assertEquals(2, flushes[0]);
+        assertEquals(3, numDocs());
+        assertFalse(writer.isOpen());
+    }
+
+    public void testSessionsShareTheWriter() throws IOException {
+        SharedIndexWriter writer = col.getIndexWriter();
+        writer.open(true);
+        writer.addDocument(doc("a"));
+        // a second session, e.g. an upload during an indexing run, does not wait for the lock of the first
+        writer.open(false);
+        writer.addDocument(doc("b"));
+        // creating a new index would throw away the documents of the other sessions
+        try {
+            writer.open(true);
+            fail("created a new index while it is being written");
+        }
+        catch (IOException e) {
+            assertTrue(writer.isOpen());
+        }
+        int removed = writer.withReader(new SharedIndexWriter.ReaderTask() {
+            public int run(IndexReader reader) throws IOException {
+                return reader.deleteDocuments(new Term("location", "a"));
+            }
+        });
+        assertEquals(1, removed);
+        writer.addDocument(doc("c"));
+        writer.close();
+        assertTrue(writer.isOpen());
+        assertEquals(2, numDocs());
+        writer.addDocument(doc("d"));
+        writer.close();
+        assertFalse(writer.isOpen());
+        assertEquals(3, numDocs());
+    }
+
+    public void testFlushByMemory() throws IOException {
+        manager.setWriterRamBuffer(new Integer(1));
+        long before = SharedIndexWriter.getTotalBuffered();
+        SharedIndexWriter writer = col.getIndexWriter();
+        final int[] flushes = new int[1];
+        writer.addListener(new SharedIndexWriter.Listener() {
+            public void flushed(SharedIndexWriter w) {
+                flushes[0]++;
+            }
+        });
+        writer.open(true);
+        // small documents are buffered
+        writer.addDocument(doc("a"));
+        writer.addDocument(doc("b"));
+        assertEquals(0, flushes[0]);
+        assertTrue(writer.getBuffered() >= 2 * SharedIndexWriter.DOCUMENT_OVERHEAD);
+        assertEquals(before + writer.getBuffered(), SharedIndexWriter.getTotalBuffered());
+        // a large one fills the buffer of a megabyte, and is flushed with them
+        StringBuffer text = new StringBuffer();
+        while (text.length() < 512 * 1024) {
+            text.append("some words to analyze ");
+        }
+        Document large = doc("c");
+        large.add(new Field("contents", new StringReader(text.toString())));
+        large.add(new Field("summary", text.toString(), Field.Store.YES, Field.Index.NO));
+        writer.addDocument(large);
+        assertEquals(1, flushes[0]);
+        assertEquals(3, numDocs());
+        assertEquals(0, writer.getBuffered());
+        assertEquals(before, SharedIndexWriter.getTotalBuffered());
+        writer.close();
+    }
+
+    public void testFlushByTotalMemory() throws IOException {
+        manager.setWriterRamTotal(new Integer(1));
+        SharedIndexWriter writer = col.getIndexWriter();
+        final int[] flushes = new int[1];
+        writer.addListener(new SharedIndexWriter.Listener() {
+            public void flushed(SharedIndexWriter w) {
+                flushes[0]++;
+            }
+        });
+        writer.open(true);
+        long before = SharedIndexWriter.getTotalBuffered();
+        int docs = 0;
+        while (flushes[0] == 0 && docs < 1000) {
+            writer.addDocument(doc("doc" + docs++));
+        }
+        // flushed when the documents of all writers took a megabyte
+        assertEquals((1024 * 1024 - before) / SharedIndexWriter.DOCUMENT_OVERHEAD + 1, docs, 2);
+        writer.close();
+    }
+
+    public void testTotalMemoryFlushesLargestWriter() throws IOException {
+        manager.setWriterRamTotal(new Integer(1));
+        FileSystemCollection other = new FileSystemCollection();
+        other.setName("other writer");
+        other.setContentDir(new File(dir, "content"));
+        manager.addCollection(other);
+        SharedIndexWriter writer = col.getIndexWriter();
+        SharedIndexWriter small = other.getIndexWriter();
+        final int[] flushes = new int[2];
+        writer.addListener(new SharedIndexWriter.Listener() {
+            public void flushed(SharedIndexWriter w) {
+                flushes[0]++;
+            }
+        });
+        small.addListener(new SharedIndexWriter.Listener() {
+            public void flushed(SharedIndexWriter w) {
+                flushes[1]++;
+            }
+        });
+        writer.open(true);
+        small.open(true);
+        StringBuffer text = new StringBuffer();
+        while (text.length() < 350 * 1024) {
+            text.append("some words to analyze ");
+        }
+        Document large = doc("large");
+        large.add(new Field("summary", text.toString(), Field.Store.YES, Field.Index.NO));
+        writer.addDocument(large);
+        int docs = 0;
+        while (flushes[0] == 0 && docs < 1000) {
+            small.addDocument(doc("doc" + docs++));
+        }
+        // the writer crossing the total is not the one that takes the most
+        assertEquals(1, flushes[0]);
+        assertEquals(0, flushes[1]);
+        assertEquals(0, writer.getBuffered());
+        assertTrue(small.getBuffered() > 0);
+        small.close();
+        writer.close();
+    }
+
+    public void testFlushByInterval() throws Exception {
+        manager.setWriterFlushInterval(new Integer(1));
+        SharedIndexWriter writer = col.getIndexWriter();
+        final int[] flushes = new int[1];
+        writer.addListener(new SharedIndexWriter.Listener() {
+            public void flushed(SharedIndexWriter w) {
+                synchronized (flushes) {
+                    flushes[0]++;
+                }
+            }
+        });
+        writer.open(true);
+        writer.addDocument(doc("a"));
+        // no other document comes along, the timer flushes it
+        long end = System.currentTimeMillis() + 5000;
+        while (writer.getBuffered() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(100);
+        }
+        synchronized (flushes) {
+            assertEquals(1, flushes[0]);
+        }
+        assertEquals(1, numDocs());
+        assertTrue(writer.isOpen());
+        writer.close();
+    }
+
+    private Document doc(final String location) {
+        Document doc = new Document();
+        doc.add(new Field("location", location, Field.Store.YES, Field.Index.UN_TOKENIZED));
+        return doc;
+    }
+
+    private int numDocs() throws IOException {
+        IndexReader reader = IndexReader.open(col.getIndexDirWithManagerDefaults());
+        try {
+            return reader.numDocs();
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.extractors;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for ContentWriter.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.extractors.ContentWriter
+ */
+public class TestContentWriter extends TestCase {
+    public void testUnlimited() throws IOException {
+        ContentWriter writer = new ContentWriter(0);
+        StringBuffer expected = new StringBuffer();
+        // more than a few blocks
+        for (int i = 0; i < 5000; i++) {
+            writer.write("word" + i + " ");
+            expected.append("word" + i + " ");
+        }
+        assertFalse(writer.isFull());
+        assertEquals(expected.length(), writer.length());
+        assertEquals(expected.toString(), writer.toString());
+        assertEquals("word0 word1", writer.getHead(11));
+
+        Reader reader = writer.getReader();
+        StringBuffer read = new StringBuffer();
+        char[] buffer = new char[1000];
+        int len;
+        while ((len = reader.read(buffer)) != -1) {
+            read.append(buffer, 0, len);
+        }
+        assertEquals(expected.toString(), read.toString());
+    }
+
+    public void testMaximum() {
+        ContentWriter writer = new ContentWriter(10000);
+        char[] chars = new char[3000];
+        for (int i = 0; i < 5; i++) {
+            writer.write(chars, 0, chars.length);
+        }
+        assertTrue(writer.isFull());
+        assertEquals(10000, writer.length());
+        writer.write("more");
+        assertEquals(10000, writer.length());
+    }
+
+    public void testMarkAndReset() throws IOException {
+        ContentWriter writer = new ContentWriter(0);
+        writer.write("Summary and the rest");
+        Reader reader = writer.getReader();
+        assertTrue(reader.markSupported());
+        reader.mark(7);
+        char[] summary = new char[7];
+        assertEquals(7, reader.read(summary));
+        assertEquals("Summary", new String(summary));
+        reader.reset();
+        char[] all = new char[100];
+        assertEquals(20, reader.read(all));
+        assertEquals(-1, reader.read(all));
+    }
+}
@@ -21,6 +21,7 @@
 
 package org.zilverline.extractors;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -81,4 +82,29 @@ public class TestTextExtractor extends TestCase {
             fail(e.getMessage());
         }
     }
+
+    public void testExtractInfoFromStream() throws IOException {
+        TextExtractor tex = new TextExtractor();
+        File file = new File("test\\data\\readme");
+        InputStream is = new ByteArrayInputStream("Read from the stream, not from the file.".getBytes());
+        ParsedFileInfo pfi = tex.extractInfo(file, is);
+        assertNotNull(pfi);
+        assertEquals("TEXT", pfi.getType());
+        assertEquals(file.length(), pfi.getSize());
+        assertTrue(pfi.getSummary().startsWith("Read from the stream"));
+        // the stream has been read, but not closed
+        assertEquals(-1, is.read());
+    }
+
+    public void testMaxContentChars() throws IOException {
+        TextExtractor tex = new TextExtractor();
+        tex.setMaxContentChars(10);
+        File file = new File("test\\data\\readme");
+        InputStream is = new ByteArrayInputStream("Only the first ten characters are indexed.".getBytes());
+        ParsedFileInfo pfi = tex.extractInfo(file, is);
+        char[] text = new char[100];
+        assertEquals(10, pfi.getReader().read(text));
+        assertEquals("Only the f", new String(text, 0, 10));
+        assertEquals(-1, pfi.getReader().read(text));
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.zilverline.core.FileSystemCollection;
+import org.zilverline.core.IndexException;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for UploadServiceImpl.
+ * 
+ * @author Michael Franken
+ * 
+ * @see org.zilverline.service.UploadServiceImpl
+ */
+public class TestUploadService extends TestCase {
+    private File tempDirectory;
+
+    private UploadServiceImpl service;
+
+    private HeldCollection col;
+
+    protected void setUp() throws Exception {
+        tempDirectory = new File(System.getProperty("java.io.tmpdir"), "zilverline-upload-" + System.currentTimeMillis());
+        File contentDir = new File(tempDirectory, "content");
+        assertTrue(contentDir.mkdirs());
+
+        CollectionManager manager = new CollectionManagerImpl();
+        manager.setCacheBaseDir(new File(tempDirectory, "cache"));
+        manager.setIndexBaseDir(new File(tempDirectory, "index"));
+        col = new HeldCollection();
+        col.setName("upload");
+        col.setContentDir(contentDir);
+        manager.addCollection(col);
+        col.init();
+
+        service = new UploadServiceImpl();
+        service.setCollectionManager(manager);
+    }
+
+    protected void tearDown() throws Exception {
+        service.destroy();
+        FileUtils.removeDir(tempDirectory);
+    }
+
+    public void testUpload() throws Exception {
+        List files = new ArrayList();
+        files.add(write("one.txt", "the first uploaded file"));
+        files.add(write("two.txt", "the second uploaded file"));
+        UploadJob job = service.submit("upload", files);
+        assertSame(job, service.getJob(job.getId()));
+        waitFor(job);
+        assertEquals(UploadJob.DONE, job.getStatus());
+        assertEquals(2, col.getNumberOfDocs());
+
+        // uploading a new version of a file replaces its document
+        files.clear();
+        files.add(write("one.txt", "the first uploaded file, changed"));
+        job = service.submit("upload", files);
+        waitFor(job);
+        assertEquals(UploadJob.DONE, job.getStatus());
+        assertEquals(2, col.getNumberOfDocs());
+    }
+
+    public void testUploadWaitsForRebuild() throws Exception {
+        List files = new ArrayList();
+        files.add(write("one.txt", "the first uploaded file"));
+        col.holdRebuild();
+        UploadJob job;
+        try {
+            job = service.submit("upload", files);
+            Thread.sleep(500);
+            assertEquals(UploadJob.QUEUED, job.getStatus());
+        }
+        finally {
+            col.releaseRebuild();
+        }
+        waitFor(job);
+        assertEquals(UploadJob.DONE, job.getStatus());
+        assertEquals(1, col.getNumberOfDocs());
+    }
+
+    public void testUnknownCollection() throws Exception {
+        List files = new ArrayList();
+        files.add(write("one.txt", "the first uploaded file"));
+        UploadJob job = service.submit("nonexisting", files);
+        waitFor(job);
+        assertEquals(UploadJob.FAILED, job.getStatus());
+        assertNotNull(job.getMessage());
+        assertNull(service.getJob(job.getId() + 1));
+    }
+
+    private void waitFor(final UploadJob job) throws InterruptedException {
+        for (int i = 0; i < 100 && !job.isFinished(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(job.isFinished());
+    }
+
+    /**
+     * Collection whose index can be marked as being rebuilt by the test.
+     */
+    public static class HeldCollection extends FileSystemCollection {
+        void holdRebuild() throws IndexException {
+            beginRun();
+            beginRebuild();
+        }
+
+        void releaseRebuild() {
+            endRun();
+        }
+    }
+
+    private File write(final String name, final String content) throws IOException {
+        File file = new File(col.getContentDir(), name);
+        FileWriter w = new FileWriter(file);
+        w.write(content);
+        w.close();
+        return file;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.service;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+
+import org.zilverline.core.FileSystemCollection;
+import org.zilverline.util.FileUtils;
+
+/**
+ * Test class for WatchServiceImpl.
+ * 
+ * @author Michael Franken
+ * 
+ * @see org.zilverline.service.WatchServiceImpl
+ */
+public class TestWatchService extends TestCase {
+    private File tempDirectory;
+
+    private File contentDir;
+
+    private WatchServiceImpl service;
+
+    private FileSystemCollection col;
+
+    protected void setUp() throws Exception {
+        tempDirectory = new File(System.getProperty("java.io.tmpdir"), "zilverline-watch-" + System.currentTimeMillis());
+        contentDir = new File(tempDirectory, "content");
+        assertTrue(contentDir.mkdirs());
+
+        CollectionManager manager = new CollectionManagerImpl();
+        manager.setCacheBaseDir(new File(tempDirectory, "cache"));
+        manager.setIndexBaseDir(new File(tempDirectory, "index"));
+        col = new FileSystemCollection();
+        col.setName("watch");
+        col.setContentDir(contentDir);
+        col.setWatch(true);
+        manager.addCollection(col);
+        col.init();
+
+        // no background thread, poll by hand
+        service = new WatchServiceImpl();
+        service.setCollectionManager(manager);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(tempDirectory);
+    }
+
+    public void testWatch() throws Exception {
+        service.poll();
+        File dir = new File(contentDir, "dir");
+        dir.mkdir();
+        File file = write(new File(dir, "watched.txt"), "a watched file");
+        service.poll();
+        assertEquals(0, col.getNumberOfDocs());
+        service.poll();
+        assertEquals(1, col.getNumberOfDocs());
+        assertEquals(1, count("location", "dir/watched.txt"));
+        assertEquals(1, count("path", "dir"));
+
+        // a modified file replaces its document
+        write(file, "a watched file, modified");
+        service.poll();
+        service.poll();
+        assertEquals(1, col.getNumberOfDocs());
+        assertEquals(1, count("contents", "modified"));
+
+        file.delete();
+        service.poll();
+        assertEquals(0, col.getNumberOfDocs());
+    }
+
+    public void testNotWatched() throws Exception {
+        col.setWatch(false);
+        service.poll();
+        write(new File(contentDir, "unwatched.txt"), "not watched");
+        service.poll();
+        service.poll();
+        assertEquals(0, col.getNumberOfDocs());
+    }
+
+    private File write(final File file, final String content) throws IOException {
+        FileWriter w = new FileWriter(file);
+        w.write(content);
+        w.close();
+        return file;
+    }
+
+    private int count(final String field, final String value) throws IOException {
+        IndexReader reader = IndexReader.open(col.getIndexDirWithManagerDefaults());
+        try {
+            return reader.docFreq(new Term(field, value));
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
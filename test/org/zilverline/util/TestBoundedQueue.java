@@ -0,0 +1,140 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for BoundedQueue.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.util.BoundedQueue
+ */
+public class TestBoundedQueue extends TestCase {
+
+    public void testFifo() throws InterruptedException {
+        BoundedQueue q = new BoundedQueue(3);
+        q.put("a");
+        q.put("b");
+        assertEquals(2, q.size());
+        assertEquals("a", q.take());
+        assertEquals("b", q.take());
+        assertEquals(0, q.size());
+    }
+
+    public void testClose() throws InterruptedException {
+        BoundedQueue q = new BoundedQueue(3);
+        q.put("a");
+        q.close();
+        assertTrue(q.isClosed());
+        // elements put before closing can still be taken
+        assertEquals("a", q.take());
+        assertNull(q.take());
+        try {
+            q.put("b");
+            fail("closed queue should not accept elements");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testProducerConsumer() throws InterruptedException {
+        final BoundedQueue q = new BoundedQueue(2);
+        final int count = 1000;
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        q.put(new Integer(i));
+                    }
+                    q.close();
+                }
+                catch (InterruptedException e) {
+                    // stop
+                }
+            }
+        });
+        producer.start();
+        int expected = 0;
+        Object o;
+        while ((o = q.take()) != null) {
+            assertEquals(expected++, ((Integer) o).intValue());
+            assertTrue(q.size() <= q.getCapacity());
+        }
+        assertEquals(count, expected);
+        producer.join();
+    }
+
+    public void testClearReleasesWaitingThreads() throws InterruptedException {
+        final BoundedQueue full = new BoundedQueue(1);
+        final BoundedQueue empty = new BoundedQueue(1);
+        full.put("a");
+        final boolean[] released = new boolean[2];
+        Thread producer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    full.put("b");
+                }
+                catch (IllegalStateException e) {
+                    released[0] = true;
+                }
+                catch (InterruptedException e) {
+                    // stop
+                }
+            }
+        });
+        Thread consumer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    released[1] = empty.take() == null;
+                }
+                catch (InterruptedException e) {
+                    // stop
+                }
+            }
+        });
+        producer.start();
+        consumer.start();
+        Thread.sleep(100);
+        full.clear();
+        empty.clear();
+        producer.join(5000);
+        consumer.join(5000);
+        assertFalse(producer.isAlive());
+        assertFalse(consumer.isAlive());
+        assertTrue(released[0]);
+        assertTrue(released[1]);
+        assertEquals(0, full.size());
+    }
+
+    public void testCapacity() {
+        try {
+            new BoundedQueue(0);
+            fail("capacity must be positive");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for ContentHasher, including a benchmark against the old stream based hashing.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.util.ContentHasher
+ */
+public class TestContentHasher extends TestCase {
+    private File dir;
+
+    protected void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"), "zilverline-hasher-" + System.currentTimeMillis());
+        assertTrue(dir.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(dir);
+    }
+
+    public void testMD5() throws Exception {
+        File empty = write("empty", 0);
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", ContentHasher.md5(empty));
+        File small = write("small", 100000);
+        assertEquals(md5(small), ContentHasher.md5(small));
+        assertEquals(md5(small), FileUtils.getMD5Hash(small));
+        // a tree hash is only used for very large files
+        assertEquals(md5(small), FileUtils.getContentHash(small, 4));
+    }
+
+    public void testThrottle() throws Exception {
+        TestThrottle.TestClock clock = new TestThrottle.TestClock();
+        Throttle throttle = new Throttle("test", clock);
+        throttle.setRate(ContentHasher.BUFFER_SIZE);
+        File f = write("throttled", 3 * ContentHasher.BUFFER_SIZE);
+        assertEquals(md5(f), ContentHasher.md5(f, throttle));
+        // a second's worth is read at a time, not all of it at once
+        assertEquals(3, clock.sleeps.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new Long(1000), clock.sleeps.get(i));
+        }
+    }
+
+    public void testMappedMD5Benchmark() throws Exception {
+        File large = write("large", (int) ContentHasher.MAP_THRESHOLD + 12345);
+        // warm up both, so that the OS caches are filled
+        String expected = md5(large);
+        assertEquals(expected, ContentHasher.md5(large));
+
+        long start = System.currentTimeMillis();
+        assertEquals(expected, ContentHasher.md5(large));
+        long hasherTime = Math.max(1, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        assertEquals(expected, md5(large));
+        long oldTime = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println("Hashed " + large.length() + " bytes: ContentHasher " + hasherTime + " ms, streams " + oldTime + " ms");
+    }
+
+    public void testTreeHash() throws Exception {
+        File f = write("tree", 1000000);
+        String one = ContentHasher.treeHash(f, 1, 65536, null);
+        assertEquals(one, ContentHasher.treeHash(f, 4, 65536, null));
+        assertTrue(one.startsWith(ContentHasher.TREE_PREFIX));
+        assertFalse(DigestSet.isDigest(one));
+        // a single chunk hashes to the hash of its MD5 digest
+        File small = write("single", 1000);
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(MessageDigest.getInstance("MD5").digest(read(small)));
+        assertEquals(ContentHasher.TREE_PREFIX + FileUtils.toHexString(md.digest()), ContentHasher.treeHash(small, 4, 65536, null));
+    }
+
+    /**
+     * Hashes the way FileUtils did before ContentHasher.
+     */
+    private String md5(final File f) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(read(f));
+        return FileUtils.toHexString(md.digest());
+    }
+
+    private byte[] read(final File f) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(f));
+        try {
+            return FileUtils.readFully(in, (int) f.length());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private File write(final String name, final int size) throws IOException {
+        File f = new File(dir, name);
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        OutputStream out = new FileOutputStream(f);
+        out.write(content);
+        out.close();
+        return f;
+    }
+}
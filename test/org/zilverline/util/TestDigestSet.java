@@ -0,0 +1,185 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for DigestSet, including a benchmark of memory and lookups against HashSet.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.util.DigestSet
+ */
+public class TestDigestSet extends TestCase {
+    /** Number of hashes in the benchmark. */
+    private static final int HASHES = 200000;
+
+    public void testAddContainsRemove() throws NoSuchAlgorithmException {
+        Set set = new DigestSet();
+        String a = hash(1);
+        String b = hash(2);
+        assertFalse(set.contains(a));
+        assertTrue(set.add(a));
+        assertFalse(set.add(a));
+        assertTrue(set.contains(a));
+        assertFalse(set.contains(b));
+        assertEquals(1, set.size());
+        assertFalse(set.remove(b));
+        assertTrue(set.remove(a));
+        assertFalse(set.contains(a));
+        assertTrue(set.isEmpty());
+    }
+
+    public void testOthers() {
+        Set set = new DigestSet();
+        String zero = "00000000000000000000000000000000";
+        assertTrue(set.add(zero));
+        assertTrue(set.add("unknown"));
+        // uppercase is not a hash as made by FileUtils.toHexString, but must still work
+        assertTrue(set.add("0123456789ABCDEF0123456789ABCDEF"));
+        assertTrue(set.add("<1234.5678@example.com>"));
+        assertEquals(4, set.size());
+        assertTrue(set.contains(zero));
+        assertTrue(set.contains("unknown"));
+        assertTrue(set.contains("0123456789ABCDEF0123456789ABCDEF"));
+        assertFalse(set.contains("0123456789abcdef0123456789abcdef"));
+        assertFalse(set.contains(null));
+        assertTrue(set.remove(zero));
+        assertFalse(set.contains(zero));
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+
+    public void testAddLongs() throws NoSuchAlgorithmException {
+        DigestSet set = new DigestSet();
+        String a = hash(1);
+        assertTrue(set.add(DigestSet.parse(a, 0), DigestSet.parse(a, 16)));
+        assertFalse(set.add(a));
+        assertTrue(set.contains(a));
+        assertEquals(a, DigestSet.format(DigestSet.parse(a, 0), DigestSet.parse(a, 16)));
+        assertTrue(set.add(0, 0));
+        assertTrue(set.contains("00000000000000000000000000000000"));
+        set.add("unknown");
+
+        DigestSet other = new DigestSet();
+        other.add(hash(2));
+        assertTrue(other.addAll(set));
+        assertFalse(other.addAll(set));
+        assertEquals(4, other.size());
+        assertTrue(other.containsAll(set));
+        assertTrue(other.contains(hash(2)));
+    }
+
+    public void testManyHashes() throws NoSuchAlgorithmException {
+        Set set = new DigestSet();
+        Set reference = new HashSet();
+        for (int i = 0; i < 10000; i++) {
+            String h = hash(i);
+            assertEquals(reference.add(h), set.add(h));
+        }
+        assertEquals(reference.size(), set.size());
+        // remove every third, the others must still be found after moving back
+        for (int i = 0; i < 10000; i += 3) {
+            String h = hash(i);
+            assertTrue(set.remove(h));
+            reference.remove(h);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(reference.contains(hash(i)), set.contains(hash(i)));
+        }
+        Set iterated = new HashSet();
+        for (Iterator iter = set.iterator(); iter.hasNext();) {
+            iterated.add(iter.next());
+        }
+        assertEquals(reference, iterated);
+        assertEquals(reference, set);
+    }
+
+    public void testBenchmark() throws NoSuchAlgorithmException {
+        String[] hashes = new String[HASHES];
+        for (int i = 0; i < HASHES; i++) {
+            hashes[i] = hash(i);
+        }
+        long hashSetBytes = used();
+        Set hashSet = new HashSet();
+        for (int i = 0; i < HASHES; i++) {
+            // a copy, like the Strings read from the index, so the memory of the Strings counts as well
+            hashSet.add(new String(hashes[i].toCharArray()));
+        }
+        hashSetBytes = used() - hashSetBytes;
+        long digestSetBytes = used();
+        DigestSet digestSet = new DigestSet();
+        for (int i = 0; i < HASHES; i++) {
+            digestSet.add(hashes[i]);
+        }
+        digestSetBytes = used() - digestSetBytes;
+
+        // warm up both
+        lookup(hashSet, hashes);
+        lookup(digestSet, hashes);
+
+        long start = System.currentTimeMillis();
+        assertEquals(HASHES, lookup(hashSet, hashes));
+        long hashSetTime = Math.max(1, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        assertEquals(HASHES, lookup(digestSet, hashes));
+        long digestSetTime = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println("Stored " + HASHES + " hashes: DigestSet " + (digestSetBytes / HASHES) + " bytes/hash (slots "
+            + (digestSet.getSlotBytes() / HASHES) + "), HashSet " + (hashSetBytes / HASHES) + " bytes/hash");
+        System.out.println("Looked up " + HASHES + " hashes: DigestSet " + digestSetTime + " ms (" + (HASHES * 1000L / digestSetTime)
+            + " lookups/s), HashSet " + hashSetTime + " ms (" + (HASHES * 1000L / hashSetTime) + " lookups/s)");
+        assertTrue(digestSet.getSlotBytes() < hashSetBytes);
+    }
+
+    private int lookup(final Set set, final String[] hashes) {
+        int found = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            // a new String each time, like a hash of a file just read, so HashSet can't use a cached hashCode
+            if (set.contains(new String(hashes[i].toCharArray()))) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private long used() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private String hash(final int i) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        return FileUtils.toHexString(md.digest(("file " + i).getBytes()));
+    }
+}
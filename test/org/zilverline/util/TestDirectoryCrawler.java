@@ -0,0 +1,181 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for DirectoryCrawler, including a benchmark against the old File.list() based traversal.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.util.DirectoryCrawler
+ */
+public class TestDirectoryCrawler extends TestCase {
+    /** Directories per level of the synthetic tree. */
+    private static final int DIRS = 5;
+
+    /** Files per directory of the synthetic tree. */
+    private static final int FILES = 40;
+
+    /** Levels of the synthetic tree. */
+    private static final int DEPTH = 3;
+
+    private File root;
+
+    protected void setUp() throws Exception {
+        root = new File(System.getProperty("java.io.tmpdir"), "zilverline-crawler-" + System.currentTimeMillis());
+        assertTrue(root.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(root);
+    }
+
+    public void testList() throws IOException {
+        File dir = new File(root, "dir");
+        dir.mkdir();
+        File file = new File(root, "file.txt");
+        write(file, "hello");
+
+        DirectoryCrawler.Entry[] entries = new DirectoryCrawler().list(root);
+        assertEquals(2, entries.length);
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i].getName().equals("dir")) {
+                assertTrue(entries[i].isDirectory());
+            } else {
+                assertTrue(entries[i].isFile());
+                assertEquals(5, entries[i].getSize());
+                assertEquals(file.lastModified(), entries[i].getLastModified());
+            }
+        }
+        assertNull(new DirectoryCrawler().list(new File(root, "nonexisting")));
+    }
+
+    public void testEntry() throws IOException {
+        File file = new File(root, "file.txt");
+        write(file, "hello");
+        DirectoryCrawler crawler = new DirectoryCrawler();
+        assertTrue(crawler.entry(root).isDirectory());
+        assertTrue(crawler.entry(file).isFile());
+        assertEquals(DirectoryCrawler.Entry.OTHER, crawler.entry(new File(root, "nonexisting")).getType());
+    }
+
+    public void testLinks() throws Exception {
+        if (System.getProperty("os.name").indexOf("Windows") >= 0) {
+            return;
+        }
+        File dir = new File(root, "dir");
+        dir.mkdir();
+        write(new File(dir, "file.txt"), "hello");
+        Process p = Runtime.getRuntime().exec(new String[] {"ln", "-s", dir.getAbsolutePath(), new File(root, "link").getAbsolutePath()});
+        if (p.waitFor() != 0) {
+            // can't make links here, nothing to test
+            return;
+        }
+        DirectoryCrawler crawler = new DirectoryCrawler();
+        assertTrue(crawler.entry(new File(root, "link")).isLink());
+        final int[] files = new int[1];
+        int count = crawler.crawl(root, new DirectoryCrawler.Visitor() {
+            public boolean visit(DirectoryCrawler.Entry entry) {
+                if (entry.isFile()) {
+                    files[0]++;
+                }
+                return true;
+            }
+        });
+        // dir, link and dir/file.txt, but not link/file.txt
+        assertEquals(3, count);
+        assertEquals(1, files[0]);
+    }
+
+    public void testCrawlBenchmark() throws IOException {
+        int expected = makeTree(root, DEPTH);
+        DirectoryCrawler crawler = new DirectoryCrawler();
+        DirectoryCrawler.Visitor all = new DirectoryCrawler.Visitor() {
+            public boolean visit(DirectoryCrawler.Entry entry) {
+                return true;
+            }
+        };
+        // warm up both, so that the OS caches are filled
+        assertEquals(expected, crawler.crawl(root, all));
+        assertEquals(expected, oldCrawl(root));
+
+        long start = System.currentTimeMillis();
+        assertEquals(expected, crawler.crawl(root, all));
+        long crawlerTime = Math.max(1, System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        assertEquals(expected, oldCrawl(root));
+        long oldTime = Math.max(1, System.currentTimeMillis() - start);
+
+        System.out.println("Crawled " + expected + " entries: DirectoryCrawler " + crawlerTime + " ms (" + (expected * 1000 / crawlerTime)
+            + " entries/s), File.list() " + oldTime + " ms (" + (expected * 1000 / oldTime) + " entries/s)");
+    }
+
+    /**
+     * The traversal as FileSystemCollection did it before DirectoryCrawler.
+     */
+    private int oldCrawl(final File dir) {
+        String[] names = dir.list();
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            File file = new File(dir, names[i]);
+            count++;
+            if (file.isDirectory()) {
+                if (!FileUtils.isLink(file)) {
+                    count += oldCrawl(file);
+                }
+            } else if (file.isFile()) {
+                FileUtils.isLink(file);
+            }
+        }
+        return count;
+    }
+
+    private int makeTree(final File dir, final int depth) throws IOException {
+        int count = 0;
+        for (int i = 0; i < FILES; i++) {
+            write(new File(dir, "file" + i + ".txt"), "file " + i);
+            count++;
+        }
+        if (depth > 0) {
+            for (int i = 0; i < DIRS; i++) {
+                File sub = new File(dir, "dir" + i);
+                sub.mkdir();
+                count++;
+                count += makeTree(sub, depth - 1);
+            }
+        }
+        return count;
+    }
+
+    private void write(final File file, final String content) throws IOException {
+        FileWriter w = new FileWriter(file);
+        w.write(content);
+        w.close();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for DirectoryWatcher.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.util.DirectoryWatcher
+ */
+public class TestDirectoryWatcher extends TestCase {
+    private File root;
+
+    protected void setUp() throws Exception {
+        root = new File(System.getProperty("java.io.tmpdir"), "zilverline-watcher-" + System.currentTimeMillis());
+        assertTrue(root.mkdirs());
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.removeDir(root);
+    }
+
+    public void testChanges() throws IOException {
+        write(new File(root, "old.txt"), "old");
+        DirectoryWatcher watcher = new DirectoryWatcher(root);
+        // the first poll only records the tree
+        assertTrue(watcher.poll().isEmpty());
+
+        File dir = new File(root, "dir");
+        dir.mkdir();
+        File created = new File(dir, "new.txt");
+        write(created, "new");
+        // not reported until it has settled
+        assertTrue(watcher.poll().isEmpty());
+        DirectoryWatcher.Changes changes = watcher.poll();
+        assertEquals(1, changes.getChanged().size());
+        assertEquals(created, changes.getChanged().get(0));
+        assertTrue(changes.getDeleted().isEmpty());
+        assertTrue(watcher.poll().isEmpty());
+
+        // a file that keeps changing is not reported
+        write(created, "newer");
+        assertTrue(watcher.poll().isEmpty());
+        write(created, "newest");
+        assertTrue(watcher.poll().isEmpty());
+        assertEquals(1, watcher.poll().getChanged().size());
+
+        // deletions are reported right away, by path
+        new File(root, "old.txt").delete();
+        changes = watcher.poll();
+        assertTrue(changes.getChanged().isEmpty());
+        assertEquals(1, changes.getDeleted().size());
+        assertEquals("old.txt", changes.getDeleted().get(0));
+        created.delete();
+        assertEquals("dir/new.txt", watcher.poll().getDeleted().get(0));
+    }
+
+    public void testPollTime() throws IOException {
+        write(new File(root, "file.txt"), "a file");
+        DirectoryWatcher watcher = new DirectoryWatcher(root);
+        assertEquals(0, watcher.getLastPoll());
+        long before = System.currentTimeMillis();
+        watcher.poll();
+        assertTrue(watcher.getLastPoll() >= before);
+        assertTrue(watcher.getPollTime() >= 0);
+        assertTrue(watcher.getPollTime() <= System.currentTimeMillis() - before);
+    }
+
+    private void write(final File file, final String content) throws IOException {
+        FileWriter w = new FileWriter(file);
+        w.write(content);
+        w.close();
+    }
+}
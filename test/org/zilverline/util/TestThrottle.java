@@ -0,0 +1,124 @@
+/*
+ * Copyright 2003-2006 Michael Franken, Zilverline.
+ *
+ * The contents of this file, or the files included with this file, are subject to
+ * the current version of ZILVERLINE Collaborative Source License for the
+ * Zilverline Search Engine (the "License"); You may not use this file except in
+ * compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.zilverline.org.
+ *
+ * See the License for the rights, obligations and
+ * limitations governing use of the contents of the file.
+ *
+ * The Original and Upgraded Code is the Zilverline Search Engine. The developer of
+ * the Original and Upgraded Code is Michael Franken. Michael Franken owns the
+ * copyrights in the portions it created. All Rights Reserved.
+ *
+ */
+
+package org.zilverline.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Test class for Throttle.
+ *
+ * @author Michael Franken
+ *
+ * @see org.zilverline.util.Throttle
+ */
+public class TestThrottle extends TestCase {
+    public void testNoLimit() {
+        Throttle throttle = new Throttle("test");
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            throttle.acquire(1000000);
+        }
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+
+    public void testRate() {
+        Throttle throttle = new Throttle("test");
+        throttle.setRate(1000);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            throttle.acquire(250);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("took " + elapsed + " ms", elapsed >= 900 && elapsed < 3000);
+
+        // the rate can be lifted at any time
+        start = System.currentTimeMillis();
+        throttle.setRate(0);
+        throttle.acquire(1000);
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+
+    public void testInterrupted() {
+        Throttle throttle = new Throttle("test");
+        throttle.setRate(1);
+        Thread.currentThread().interrupt();
+        long start = System.currentTimeMillis();
+        throttle.acquire(1000);
+        assertTrue(Thread.interrupted());
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+
+    public void testDebt() {
+        TestClock clock = new TestClock();
+        Throttle throttle = new Throttle("test", clock);
+        throttle.setRate(1000);
+        // the budget starts empty, and a large amount waits for all of its debt
+        throttle.acquire(3000);
+        assertEquals(1, clock.sleeps.size());
+        assertEquals(new Long(3000), clock.sleeps.get(0));
+        // a second after paying off the debt, a second's worth can be taken without waiting
+        clock.time += 1000;
+        throttle.acquire(1000);
+        assertEquals(1, clock.sleeps.size());
+    }
+
+    public void testThrottledInputStream() throws Exception {
+        TestClock clock = new TestClock();
+        Throttle throttle = new Throttle("test", clock);
+        throttle.setRate(1000);
+        InputStream in = new ThrottledInputStream(new ByteArrayInputStream(new byte[3000]), throttle);
+        byte[] buffer = new byte[1000];
+        while (in.read(buffer) > -1) {
+            continue;
+        }
+        // every read waits for its own bytes, instead of a single wait for all of them
+        assertEquals(3, clock.sleeps.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new Long(1000), clock.sleeps.get(i));
+        }
+    }
+
+    /**
+     * A clock that only moves when a throttle sleeps, recording every sleep.
+     */
+    static class TestClock implements Throttle.Clock {
+        /** The current time. */
+        long time = 1000000;
+
+        /** The times slept, as Longs. */
+        final List sleeps = new ArrayList();
+
+        public long now() {
+            return time;
+        }
+
+        public void sleep(final long millis) {
+            sleeps.add(new Long(millis));
+            time += millis;
+        }
+    }
+}
@@ -224,6 +224,31 @@ function switchDiv(div_id)
 			</c:if>>
 		</spring:bind></td>
 	</tr>
+
+	<tr>
+		<td><fmt:message key="Watch"/></td>
+		<td><spring:bind path="command.watch">
+			<input type="hidden" name="_<%= status.getExpression() %>"
+				value="false"> <input type="checkbox"
+				name="<%= status.getExpression() %>" value="true" title="<fmt:message key="Watch.hint"/>"
+				<c:if test="${status.value}">
+				checked
+			</c:if>>
+		</spring:bind></td>
+	</tr>
+
+	<tr>
+		<td><fmt:message key="MaxContentChars"/></td>
+		<td><spring:bind path="command.maxContentChars">
+			<INPUT type="text" size="45" name="maxContentChars" title="<fmt:message key="CollectionMaxContentChars.hint"/>"
+				value="<c:out value="${status.value}"/>" />
+			<c:if test="${empty status.value}">
+				<fmt:message key="Optional"/><fmt:message key="defaultvalue"/> <c:out
+					value="${command.maxContentCharsWithManagerDefaults}" />
+			</c:if>
+			<span class="error"><c:out value="${status.errorMessage}" /></span>
+		</spring:bind></td>
+	</tr>
 </table>
 </div></div>
 </FORM>
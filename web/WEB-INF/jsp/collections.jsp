@@ -49,8 +49,14 @@ function SetAllCheckBoxes(FieldName)
 			<td><c:out value="${col.root}" /></td>
 			<td align="right">
 				<c:out value="${col.numberOfDocs}" />
+				<c:if test="${col.warming}">
+					(initializing...)
+				</c:if>
 				<c:if test="${col.indexingInProgress}">
 					<img src='images/indexing.gif' align='absbottom' title="indexing..." border=0>
+					<c:if test="${col.counters != null}">
+						<br/><small><c:out value="${col.counters}" /></small>
+					</c:if>
 				</c:if>
 			</td>
 			<td align="right"><fmt:formatDate type="both"
@@ -62,6 +62,20 @@
  <fmt:message key="CaseSensitive" />
 <input type="checkbox" name="defaultfileinfo" <c:if test="${command.factory.defaultFileinfo}">checked</c:if> />
  <fmt:message key="defaultFileinfo" />
+<table>
+	<tr>
+		<td><fmt:message key="Workers" /></td>
+		<td><input type="text" name="workers" size="6" value="<c:out value="${command.factory.workers}"/>" title="<fmt:message key="Workers.hint" />"></td>
+	</tr>
+	<tr>
+		<td><fmt:message key="WorkerHeap" /></td>
+		<td><input type="text" name="workerheap" size="6" value="<c:out value="${command.factory.workerHeap}"/>" title="<fmt:message key="WorkerHeap.hint" />"></td>
+	</tr>
+	<tr>
+		<td><fmt:message key="WorkerDocuments" /></td>
+		<td><input type="text" name="workerdocuments" size="6" value="<c:out value="${command.factory.workerDocuments}"/>" title="<fmt:message key="WorkerDocuments.hint" />"></td>
+	</tr>
+</table>
 </div>
 <p><INPUT type="submit" value="<fmt:message key="Save" />" />
 </FORM>
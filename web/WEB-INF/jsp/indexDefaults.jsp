@@ -63,6 +63,156 @@
         <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
         </spring:bind>
 	</tr>
+	<tr>
+		<td><fmt:message key="IndexingThreads" /></td>
+		<spring:bind path="command.indexingThreads">
+		<td><INPUT type="text" name="indexingThreads" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="IndexingThreads.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="IndexingQueueSize" /></td>
+		<spring:bind path="command.indexingQueueSize">
+		<td><INPUT type="text" name="indexingQueueSize" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="IndexingQueueSize.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="OptimizePolicy" /></td>
+		<spring:bind path="command.optimizePolicy">
+		<td>
+			<SELECT name="optimizePolicy" title="<fmt:message key="OptimizePolicy.hint" />">
+				<c:forEach items="${command.allOptimizePolicies}" var="option">
+				<OPTION value="<c:out value="${option}"/>"
+					<c:if test="${status.value == option}">
+		                selected
+            		</c:if>>
+		            <c:out value="${option}"/>
+			</c:forEach>
+			</SELECT>
+		</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="OptimizeMaxSegments" /></td>
+		<spring:bind path="command.optimizeMaxSegments">
+		<td><INPUT type="text" name="optimizeMaxSegments" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="OptimizeMaxSegments.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="OffPeakStart" /></td>
+		<spring:bind path="command.offPeakStart">
+		<td><INPUT type="text" name="offPeakStart" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="OffPeakStart.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="OffPeakEnd" /></td>
+		<spring:bind path="command.offPeakEnd">
+		<td><INPUT type="text" name="offPeakEnd" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="OffPeakEnd.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="WriterFlushDocs" /></td>
+		<spring:bind path="command.writerFlushDocs">
+		<td><INPUT type="text" name="writerFlushDocs" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="WriterFlushDocs.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="WriterFlushInterval" /></td>
+		<spring:bind path="command.writerFlushInterval">
+		<td><INPUT type="text" name="writerFlushInterval" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="WriterFlushInterval.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="WatchInterval" /></td>
+		<spring:bind path="command.watchInterval">
+		<td><INPUT type="text" name="watchInterval" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="WatchInterval.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="HashThreads" /></td>
+		<spring:bind path="command.hashThreads">
+		<td><INPUT type="text" name="hashThreads" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="HashThreads.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="ExtractionTimeout" /></td>
+		<spring:bind path="command.extractionTimeout">
+		<td><INPUT type="text" name="extractionTimeout" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="ExtractionTimeout.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="MaxContentChars" /></td>
+		<spring:bind path="command.maxContentChars">
+		<td><INPUT type="text" name="maxContentChars" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="MaxContentChars.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="WriterRamBuffer" /></td>
+		<spring:bind path="command.writerRamBuffer">
+		<td><INPUT type="text" name="writerRamBuffer" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="WriterRamBuffer.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="WriterRamTotal" /></td>
+		<spring:bind path="command.writerRamTotal">
+		<td><INPUT type="text" name="writerRamTotal" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="WriterRamTotal.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="MaxConcurrentIndexes" /></td>
+		<spring:bind path="command.maxConcurrentIndexes">
+		<td><INPUT type="text" name="maxConcurrentIndexes" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="MaxConcurrentIndexes.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="IndexPartitions" /></td>
+		<spring:bind path="command.indexPartitions">
+		<td><INPUT type="text" name="indexPartitions" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="IndexPartitions.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="ReadRateLimit" /></td>
+		<spring:bind path="command.readRateLimit">
+		<td><INPUT type="text" name="readRateLimit" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="ReadRateLimit.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="DocumentRateLimit" /></td>
+		<spring:bind path="command.documentRateLimit">
+		<td><INPUT type="text" name="documentRateLimit" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="DocumentRateLimit.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="InitThreads" /></td>
+		<spring:bind path="command.initThreads">
+		<td><INPUT type="text" name="initThreads" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="InitThreads.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
+	<tr>
+		<td><fmt:message key="ExtractionCacheSize" /></td>
+		<spring:bind path="command.extractionCacheSize">
+		<td><INPUT type="text" name="extractionCacheSize" size="45" value="<c:out value="${status.value}"/>"  title="<fmt:message key="ExtractionCacheSize.hint" />"</td>
+        <td><span class="error"><c:out value="${status.errorMessage}" /></span></td>
+        </spring:bind>
+	</tr>
 	<tr>
 		<td><fmt:message key="Analyzer" /></td>
 		<td>
@@ -68,7 +68,11 @@
 					<c:out value="${file}" />
 				</li>
 			</c:forEach>
-			</ul></span>
+			</ul>
+			<c:if test="${!empty job}">
+			The files are being indexed in the background, see the <a href="<c:url value="uploadStatus.htm"><c:param name="job" value="${job.id}"/></c:url>">status of job <c:out value="${job.id}" /></a>.
+			</c:if>
+			</span>
 		</c:if>     
 		<div>
 			<spring:bind path="command.*">
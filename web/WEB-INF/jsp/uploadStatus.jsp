@@ -0,0 +1,30 @@
+<%@ include file="header.jsp"%>
+
+		<div class="zilverpanel">
+		<c:choose>
+			<c:when test="${empty job}">
+				Unknown upload job.
+			</c:when>
+			<c:otherwise>
+				Upload job <c:out value="${job.id}" /> for Collection <c:out value="${job.collectionName}" />:
+				<c:out value="${job.status}" />
+				<c:if test="${!empty job.message}">
+					<div class="error"><c:out value="${job.message}" /></div>
+				</c:if>
+				<ul>
+				<c:forEach var="file" items="${job.fileNames}">
+					<li>
+						<c:out value="${file}" />
+					</li>
+				</c:forEach>
+				</ul>
+				<c:if test="${!job.finished}">
+					<script type="text/javascript">
+						setTimeout("window.location.reload()", 2000);
+					</script>
+				</c:if>
+			</c:otherwise>
+		</c:choose>
+		</div>
+
+<%@ include file="footer.jsp"%>